@@ -16,6 +16,9 @@ public final class AsnIdentifier
   /** Distinguishes between primitive and constructed types. */
   private final int CONSTRUCTED = 0x20;
 
+  /** Cached identifiers for all identifier octets, indexed by octet. */
+  private static final AsnIdentifier[] IDENTIFIERS = createIdentifiers();
+
   // VARIABLES
 
   private final AsnClass clazz;
@@ -101,6 +104,65 @@ public final class AsnIdentifier
 
   // METHODS
 
+  /**
+   * Returns the {@link AsnIdentifier} for the given class and tag number,
+   * which allows one to denote tags such as <tt>[APPLICATION 3]</tt> or
+   * <tt>[0]</tt>.
+   * <p>
+   * This method returns a cached instance and does not allocate anything.
+   * </p>
+   * 
+   * @param aClass
+   *          the {@link AsnClass} of the identifier, cannot be
+   *          <code>null</code>;
+   * @param aConstructed
+   *          <code>true</code> if the identifier is <em>constructed</em>,
+   *          <code>false</code> if it is <em>primitive</em>;
+   * @param aNumber
+   *          the tag number, 0..30.
+   * @return the {@link AsnIdentifier} for the given tag, never
+   *         <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case the class is <code>null</code>, or the tag number needs
+   *           the (unsupported) long form.
+   */
+  public static AsnIdentifier valueOf( final AsnClass aClass, final boolean aConstructed, final int aNumber )
+  {
+    if ( aClass == null )
+    {
+      throw new IllegalArgumentException( "AsnClass cannot be null!" );
+    }
+    if ( ( aNumber < 0 ) || ( aNumber >= AsnType.LONG_FORM_TYPE.ordinal() ) )
+    {
+      throw new IllegalArgumentException( "Invalid tag number: " + aNumber + "! Only 0..30 are supported." );
+    }
+    return valueOf( aClass.getMask() | ( aConstructed ? 0x20 : 0 ) | aNumber );
+  }
+
+  /**
+   * Returns the {@link AsnIdentifier} for the given identifier octet.
+   * <p>
+   * Unlike {@link #AsnIdentifier(int)}, this method returns a cached instance
+   * and does not allocate anything.
+   * </p>
+   * 
+   * @param aOctet
+   *          the octet to convert into an identifier.
+   * @return the {@link AsnIdentifier} for the given octet, never
+   *         <code>null</code>.
+   * @throws IllegalArgumentException
+   *           in case a long-form tag is given, or an invalid octet value.
+   */
+  public static AsnIdentifier valueOf( final int aOctet )
+  {
+    if ( ( aOctet < 0 ) || ( aOctet > 0xFF ) || ( IDENTIFIERS[aOctet] == null ) )
+    {
+      // Let the constructor report the problem...
+      return new AsnIdentifier( aOctet );
+    }
+    return IDENTIFIERS[aOctet];
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -197,6 +259,30 @@ public final class AsnIdentifier
   @Override
   public String toString()
   {
+    if ( this.clazz != AsnClass.UNIVERSAL )
+    {
+      // The type is meaningless for non-universal tags, only its number is...
+      return "[" + this.clazz + " " + this.type.ordinal() + "][constructed: " + isConstructed() + "]";
+    }
     return getType() + "[constructed: " + isConstructed() + ", class = " + getClazz() + "]";
   }
+
+  /**
+   * Creates the identifiers for all valid identifier octets.
+   * 
+   * @return an array with 256 identifiers, of which the long-form tags are
+   *         <code>null</code>.
+   */
+  private static AsnIdentifier[] createIdentifiers()
+  {
+    final AsnIdentifier[] result = new AsnIdentifier[256];
+    for ( int i = 0; i < result.length; i++ )
+    {
+      if ( AsnType.valueOf( i ) != AsnType.LONG_FORM_TYPE )
+      {
+        result[i] = new AsnIdentifier( i );
+      }
+    }
+    return result;
+  }
 }
@@ -0,0 +1,161 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.util.*;
+
+
+/**
+ * Provides a reusable region of scratch memory from which a
+ * {@link BerInputStream} draws the space for the content it decodes.
+ * <p>
+ * Space is handed out as slices of a single, growable, byte array. All slices
+ * are released at once by {@link #reset()}, after which the underlying array is
+ * reused. Hence, in steady state, decoding does not allocate any scratch
+ * memory at all. A {@link BerInputStream} resets its arena each time it starts
+ * decoding a new value. Arenas can be shared between multiple streams, as
+ * long as these streams are used from a single thread.
+ * </p>
+ * <p>
+ * To avoid that a single large value pins a large amount of memory, the arena
+ * falls back to its initial capacity on reset if it has grown beyond its
+ * maximum retained capacity.
+ * </p>
+ * <p>
+ * This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public final class BerArena
+{
+  // CONSTANTS
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 256;
+  private static final int DEFAULT_MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  // VARIABLES
+
+  private final int initialCapacity;
+  private final int maxRetainedCapacity;
+
+  private byte[] buffer;
+  private int position;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerArena} with a default initial capacity of 256 bytes
+   * and a maximum retained capacity of 64KB.
+   */
+  public BerArena()
+  {
+    this( DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_RETAINED_CAPACITY );
+  }
+
+  /**
+   * Creates a new {@link BerArena} instance.
+   * 
+   * @param aInitialCapacity
+   *          the initial capacity, in bytes, >= 0;
+   * @param aMaxRetainedCapacity
+   *          the maximum capacity, in bytes, that is retained after a reset, >=
+   *          the initial capacity.
+   */
+  public BerArena( final int aInitialCapacity, final int aMaxRetainedCapacity )
+  {
+    if ( aInitialCapacity < 0 )
+    {
+      throw new IllegalArgumentException( "Initial capacity cannot be negative!" );
+    }
+    if ( aMaxRetainedCapacity < aInitialCapacity )
+    {
+      throw new IllegalArgumentException( "Maximum retained capacity cannot be less than initial capacity!" );
+    }
+
+    this.initialCapacity = aInitialCapacity;
+    this.maxRetainedCapacity = aMaxRetainedCapacity;
+    this.buffer = new byte[aInitialCapacity];
+  }
+
+  // METHODS
+
+  /**
+   * Allocates a slice of the given length from this arena.
+   * <p>
+   * NOTE: allocating might cause the underlying array to be replaced with a
+   * larger one, hence {@link #getBuffer()} should be called <em>after</em>
+   * all slices are allocated. The content of earlier slices is retained.
+   * </p>
+   * 
+   * @param aLength
+   *          the length of the slice, in bytes, >= 0.
+   * @return the offset of the allocated slice in {@link #getBuffer()}.
+   */
+  public int allocate( final int aLength )
+  {
+    if ( aLength < 0 )
+    {
+      throw new IllegalArgumentException( "Length cannot be negative!" );
+    }
+
+    final int offset = this.position;
+    final long required = ( long )offset + aLength;
+    if ( required > Integer.MAX_VALUE )
+    {
+      throw new OutOfMemoryError( "Arena capacity exceeded!" );
+    }
+    if ( required > this.buffer.length )
+    {
+      final int capacity = ( int )Math.min( Integer.MAX_VALUE, Math.max( required, 2L * this.buffer.length ) );
+      this.buffer = Arrays.copyOf( this.buffer, capacity );
+    }
+
+    this.position = ( int )required;
+    return offset;
+  }
+
+  /**
+   * Returns the array backing all slices allocated from this arena.
+   * 
+   * @return the backing array, never <code>null</code>.
+   */
+  public byte[] getBuffer()
+  {
+    return this.buffer;
+  }
+
+  /**
+   * Returns the current capacity of this arena.
+   * 
+   * @return a capacity, in bytes, >= 0.
+   */
+  public int getCapacity()
+  {
+    return this.buffer.length;
+  }
+
+  /**
+   * Returns the number of bytes allocated since the last reset.
+   * 
+   * @return a number of bytes, >= 0.
+   */
+  public int getSize()
+  {
+    return this.position;
+  }
+
+  /**
+   * Releases all slices allocated from this arena.
+   */
+  public void reset()
+  {
+    this.position = 0;
+    if ( this.buffer.length > this.maxRetainedCapacity )
+    {
+      this.buffer = new byte[this.initialCapacity];
+    }
+  }
+}
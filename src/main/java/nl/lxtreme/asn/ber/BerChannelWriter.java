@@ -0,0 +1,596 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
+
+import java.io.*;
+import java.math.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Provides a BER writer that writes to a {@link GatheringByteChannel} without
+ * copying large content.
+ * <p>
+ * Headers and small values are encoded into a single, reused, header buffer.
+ * Content of {@link #getCopyThreshold() threshold} bytes or more is not copied
+ * at all, but is kept as-is and handed, together with the slices of the header
+ * buffer in between, to {@link GatheringByteChannel#write(ByteBuffer[])} in
+ * batches. The resulting bytes are identical to those written by
+ * {@link BerOutputStream}.
+ * </p>
+ * <p>
+ * NOTE: as large content is not copied, arrays and buffers passed to this
+ * writer should not be modified until {@link #flush()} is called. Written
+ * values are only guaranteed to be written to the channel after calling
+ * {@link #flush()}. This writer is meant for blocking channels.
+ * </p>
+ * <p>
+ * This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public final class BerChannelWriter implements Flushable
+{
+  // CONSTANTS
+
+  /** Denotes the constructed value bit; used for sequences and sets. */
+  private static final int CONSTRUCTED = 0x20;
+  /** Denotes the default size of the header buffer. */
+  private static final int HEADER_BUFFER_SIZE = 4096;
+  /** Denotes the default size from which content is no longer copied. */
+  private static final int COPY_THRESHOLD = 256;
+  /** Denotes the maximum number of buffers written in a single batch. */
+  private static final int BATCH_SIZE = 64;
+  /** Denotes the maximum length of an encoded header. */
+  private static final int MAX_HEADER_LENGTH = 6;
+
+  // VARIABLES
+
+  private final GatheringByteChannel channel;
+  private final ByteBuffer headerBuffer;
+  private final int copyThreshold;
+  private final ByteBuffer[] pending;
+
+  private int pendingCount;
+  private int sliceStart;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerChannelWriter} with a header buffer of 4KB, that
+   * copies content smaller than 256 bytes.
+   * 
+   * @param aChannel
+   *          the channel to write to, cannot be <code>null</code>.
+   */
+  public BerChannelWriter( final GatheringByteChannel aChannel )
+  {
+    this( aChannel, HEADER_BUFFER_SIZE, COPY_THRESHOLD );
+  }
+
+  /**
+   * Creates a new {@link BerChannelWriter} instance.
+   * 
+   * @param aChannel
+   *          the channel to write to, cannot be <code>null</code>;
+   * @param aHeaderBufferSize
+   *          the size of the buffer in which headers and small values are
+   *          encoded, in bytes;
+   * @param aCopyThreshold
+   *          the content length, in bytes, from which content is no longer
+   *          copied into the header buffer, > 0 and at most the header buffer
+   *          size minus 6.
+   */
+  public BerChannelWriter( final GatheringByteChannel aChannel, final int aHeaderBufferSize, final int aCopyThreshold )
+  {
+    if ( aChannel == null )
+    {
+      throw new IllegalArgumentException( "Channel cannot be null!" );
+    }
+    if ( ( aCopyThreshold <= 0 ) || ( aCopyThreshold > ( aHeaderBufferSize - MAX_HEADER_LENGTH ) ) )
+    {
+      throw new IllegalArgumentException( "Invalid copy threshold!" );
+    }
+
+    this.channel = aChannel;
+    this.headerBuffer = ByteBuffer.allocate( aHeaderBufferSize );
+    this.copyThreshold = aCopyThreshold;
+    this.pending = new ByteBuffer[BATCH_SIZE];
+  }
+
+  // METHODS
+
+  /**
+   * Writes all pending values to the underlying channel.
+   * 
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  @Override
+  public void flush() throws IOException
+  {
+    closeSlice();
+    writePending();
+
+    this.headerBuffer.clear();
+    this.sliceStart = 0;
+  }
+
+  /**
+   * Returns the content length from which content is no longer copied.
+   * 
+   * @return a length in bytes, > 0.
+   */
+  public int getCopyThreshold()
+  {
+    return this.copyThreshold;
+  }
+
+  /**
+   * Writes a primitive bit string value.
+   * 
+   * @param aBitString
+   *          the bit string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final BigInteger aBitString ) throws IOException
+  {
+    writeTLV( BIT_STRING, encodeBitString( aBitString ) );
+  }
+
+  /**
+   * Writes a primitive boolean value.
+   * 
+   * @param aValue
+   *          the boolean value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBoolean( final boolean aValue ) throws IOException
+  {
+    ensureCapacity( 3 );
+    this.headerBuffer.put( ( byte )BOOLEAN.ordinal() ).put( ( byte )0x01 ).put( ( byte )( aValue ? 0xFF : 0x00 ) );
+  }
+
+  /**
+   * Writes the given element, including all of its children. Primitive
+   * elements with large content are written without copying their content.
+   * 
+   * @param aElement
+   *          the element to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeElement( final BerElement aElement ) throws IOException
+  {
+    if ( aElement == null )
+    {
+      throw new IllegalArgumentException( "Element cannot be null!" );
+    }
+    aElement.writeTo( this );
+  }
+
+  /**
+   * Writes a primitive enumerated value.
+   * 
+   * @param aValue
+   *          the enumerated value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeEnumeratedValue( final int aValue ) throws IOException
+  {
+    writeInteger( ENUMERATED, aValue );
+  }
+
+  /**
+   * Writes a primitive generalized timestamp as UTC string value.
+   * 
+   * @param aTimestamp
+   *          the generalized timestamp to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeGeneralizedTime( final Calendar aTimestamp ) throws IOException
+  {
+    writeTLV( GENERALIZED_TIME, encodeISO8601Time( aTimestamp ) );
+  }
+
+  /**
+   * Writes an IA5 (ASCII) encoded string value.
+   * 
+   * @param aString
+   *          the IA5 (ASCII) string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeIA5String( final String aString ) throws IOException
+  {
+    writeTLV( IA5_STRING, encodeString( aString, CHARSET_ASCII ) );
+  }
+
+  /**
+   * Writes a primitive integer value.
+   * 
+   * @param aValue
+   *          the integer value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeInt( final int aValue ) throws IOException
+  {
+    writeInteger( INTEGER, aValue );
+  }
+
+  /**
+   * Writes a primitive null value.
+   * 
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeNull() throws IOException
+  {
+    ensureCapacity( 2 );
+    this.headerBuffer.put( ( byte )NULL.ordinal() ).put( ( byte )0x00 );
+  }
+
+  /**
+   * Writes a object identifier.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the object identifier, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeObjectIdentifier( final int[] aSubIDs ) throws IOException
+  {
+    writeTLV( OBJECT_ID, encodeObjectIdentifier( aSubIDs ) );
+  }
+
+  /**
+   * Writes a primitive octet-string value.
+   * 
+   * @param aString
+   *          the octet-string value to write, should not be modified until
+   *          this writer is flushed.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeOctetString( final byte[] aString ) throws IOException
+  {
+    writeTLV( OCTET_STRING, aString );
+  }
+
+  /**
+   * Writes a primitive octet-string value with the remaining content of the
+   * given buffer.
+   * <p>
+   * The position of the given buffer is not changed, and its content should
+   * not be modified until this writer is flushed.
+   * </p>
+   * 
+   * @param aString
+   *          the buffer containing the octet-string value to write, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeOctetString( final ByteBuffer aString ) throws IOException
+  {
+    final int length = aString.remaining();
+    if ( length < this.copyThreshold )
+    {
+      ensureCapacity( MAX_HEADER_LENGTH + length );
+      writeHeader( OCTET_STRING.ordinal(), length );
+      this.headerBuffer.put( aString.duplicate() );
+    }
+    else
+    {
+      writeHeader( OCTET_STRING.ordinal(), length );
+      addBuffer( aString.duplicate() );
+    }
+  }
+
+  /**
+   * Writes a printable string, leaving out all non-printable characters.
+   * 
+   * @param aValue
+   *          the printable string value to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writePrintableString( final String aValue ) throws IOException
+  {
+    writeTLV( PRINTABLE_STRING, encodePrintableString( aValue ) );
+  }
+
+  /**
+   * Writes a relative object identifier.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the relative object identifier, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeRelativeObjectIdentifier( final int[] aSubIDs ) throws IOException
+  {
+    writeTLV( RELATIVE_OID, encodeSubIdentifiers( aSubIDs ) );
+  }
+
+  /**
+   * Writes the header of a ASN.1 sequence with the given content length.
+   * 
+   * @param aContentLength
+   *          the length of the content of the sequence, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   * @see BerOutputStream#writeSequenceHeader(int)
+   */
+  public void writeSequenceHeader( final int aContentLength ) throws IOException
+  {
+    writeHeader( SEQUENCE.ordinal() | CONSTRUCTED, aContentLength );
+  }
+
+  /**
+   * Writes the header of a ASN.1 set with the given content length.
+   * 
+   * @param aContentLength
+   *          the length of the content of the set, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   * @see BerOutputStream#writeSetHeader(int)
+   */
+  public void writeSetHeader( final int aContentLength ) throws IOException
+  {
+    writeHeader( SET.ordinal() | CONSTRUCTED, aContentLength );
+  }
+
+  /**
+   * Writes a primitive ISO8859-1 encoded string value.
+   * 
+   * @param aString
+   *          the string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeString( final String aString ) throws IOException
+  {
+    writeTLV( OCTET_STRING, encodeString( aString, CHARSET_ISO8859_1 ) );
+  }
+
+  /**
+   * Writes a primitive timestamp as UTC string value.
+   * 
+   * @param aTimestamp
+   *          the timestamp to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeUtcTime( final Calendar aTimestamp ) throws IOException
+  {
+    writeTLV( UTC_TIME, encodeUTCTime( aTimestamp ) );
+  }
+
+  /**
+   * Writes a primitive UTF-8 encoded string value.
+   * 
+   * @param aString
+   *          the string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeUTF8String( final String aString ) throws IOException
+  {
+    writeTLV( UTF8_STRING, encodeString( aString, CHARSET_UTF8 ) );
+  }
+
+  /**
+   * Writes the header of a value, consisting of an identifier and length.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the value;
+   * @param aLength
+   *          the length of the content, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  void writeHeader( final int aIdentifier, final int aLength ) throws IOException
+  {
+    if ( aLength < 0 )
+    {
+      throw new IllegalArgumentException( "Length cannot be negative!" );
+    }
+    ensureCapacity( MAX_HEADER_LENGTH );
+
+    final ByteBuffer buf = this.headerBuffer;
+    final int pos = buf.position();
+    buf.position( pos + encodeHeader( buf.array(), buf.arrayOffset() + pos, aIdentifier, aLength ) );
+  }
+
+  /**
+   * Writes a complete value, consisting of an identifier, length and content.
+   * Small content is copied into the header buffer, large content is kept
+   * as-is.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the value;
+   * @param aContent
+   *          the buffer containing the content of the value;
+   * @param aOffset
+   *          the offset of the content in the given buffer;
+   * @param aLength
+   *          the length of the content, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  void writeTLV( final int aIdentifier, final byte[] aContent, final int aOffset, final int aLength )
+      throws IOException
+  {
+    if ( aLength < this.copyThreshold )
+    {
+      ensureCapacity( MAX_HEADER_LENGTH + aLength );
+      writeHeader( aIdentifier, aLength );
+      this.headerBuffer.put( aContent, aOffset, aLength );
+    }
+    else
+    {
+      writeHeader( aIdentifier, aLength );
+      addBuffer( ByteBuffer.wrap( aContent, aOffset, aLength ) );
+    }
+  }
+
+  /**
+   * Adds the given buffer to the list of pending buffers, after the bytes
+   * written to the header buffer so far.
+   * 
+   * @param aBuffer
+   *          the buffer to add, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void addBuffer( final ByteBuffer aBuffer ) throws IOException
+  {
+    closeSlice();
+    addPending( aBuffer );
+  }
+
+  /**
+   * Adds the given buffer to the list of pending buffers, writing all pending
+   * buffers in case the list is full.
+   * 
+   * @param aBuffer
+   *          the buffer to add, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void addPending( final ByteBuffer aBuffer ) throws IOException
+  {
+    if ( this.pendingCount == this.pending.length )
+    {
+      writePending();
+    }
+    this.pending[this.pendingCount++] = aBuffer;
+  }
+
+  /**
+   * Adds the bytes written to the header buffer since the last slice as new
+   * pending slice.
+   * 
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void closeSlice() throws IOException
+  {
+    final ByteBuffer buf = this.headerBuffer;
+    if ( buf.position() > this.sliceStart )
+    {
+      final ByteBuffer slice = buf.duplicate();
+      slice.limit( buf.position() );
+      slice.position( this.sliceStart );
+
+      this.sliceStart = buf.position();
+      addPending( slice );
+    }
+  }
+
+  /**
+   * Ensures the header buffer has room for at least the given number of bytes,
+   * flushing this writer if needed.
+   * 
+   * @param aLength
+   *          the number of bytes needed, at most the header buffer size.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void ensureCapacity( final int aLength ) throws IOException
+  {
+    if ( this.headerBuffer.remaining() < aLength )
+    {
+      flush();
+    }
+  }
+
+  /**
+   * Writes a primitive integer value directly into the header buffer.
+   * 
+   * @param aType
+   *          the type of the value;
+   * @param aValue
+   *          the integer value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void writeInteger( final AsnType aType, final int aValue ) throws IOException
+  {
+    final int length = getIntegerLength( aValue );
+    ensureCapacity( length + 2 );
+
+    final ByteBuffer buf = this.headerBuffer;
+    buf.put( ( byte )aType.ordinal() ).put( ( byte )length );
+    for ( int shift = 8 * ( length - 1 ); shift >= 0; shift -= 8 )
+    {
+      buf.put( ( byte )( aValue >> shift ) );
+    }
+  }
+
+  /**
+   * Writes all pending buffers to the channel using gathering writes.
+   * 
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void writePending() throws IOException
+  {
+    final ByteBuffer[] buffers = this.pending;
+    final int count = this.pendingCount;
+
+    long remaining = 0L;
+    for ( int i = 0; i < count; i++ )
+    {
+      remaining += buffers[i].remaining();
+    }
+
+    int offset = 0;
+    while ( remaining > 0 )
+    {
+      remaining -= this.channel.write( buffers, offset, count - offset );
+      // Skip the buffers that are completely written...
+      while ( ( offset < count ) && !buffers[offset].hasRemaining() )
+      {
+        offset++;
+      }
+    }
+
+    Arrays.fill( buffers, 0, count, null );
+    this.pendingCount = 0;
+  }
+
+  /**
+   * Writes a complete primitive value, consisting of an identifier, length
+   * and content.
+   * 
+   * @param aType
+   *          the type of the value;
+   * @param aContent
+   *          the content of the value.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void writeTLV( final AsnType aType, final byte[] aContent ) throws IOException
+  {
+    writeTLV( aType.ordinal(), aContent, 0, aContent.length );
+  }
+}
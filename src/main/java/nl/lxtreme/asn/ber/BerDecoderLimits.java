@@ -0,0 +1,115 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+/**
+ * Provides the resource limits a {@link BerInputStream} enforces while
+ * decoding.
+ * <p>
+ * All limits are checked as soon as the length of a value is known, that is,
+ * before any memory for its content is reserved. A violation results in an
+ * {@link java.io.IOException}.
+ * </p>
+ */
+public final class BerDecoderLimits
+{
+  // CONSTANTS
+
+  /** Imposes no limits at all; used when no limits are given explicitly. */
+  public static final BerDecoderLimits UNLIMITED = new BerDecoderLimits( Integer.MAX_VALUE, Integer.MAX_VALUE,
+      Long.MAX_VALUE, Integer.MAX_VALUE );
+
+  // VARIABLES
+
+  private final int maxLength;
+  private final int maxDepth;
+  private final long maxAllocation;
+  private final int maxSegmentCount;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerDecoderLimits} instance.
+   * 
+   * @param aMaxLength
+   *          the maximum content length of a single primitive value or
+   *          constructed string, >= 0;
+   * @param aMaxDepth
+   *          the maximum number of nested constructed values, >= 0;
+   * @param aMaxAllocation
+   *          the maximum number of bytes allocated for content while decoding
+   *          a single top-level value (message), >= 0;
+   * @param aMaxSegmentCount
+   *          the maximum number of segments of a constructed string, >= 0.
+   */
+  public BerDecoderLimits( final int aMaxLength, final int aMaxDepth, final long aMaxAllocation,
+      final int aMaxSegmentCount )
+  {
+    if ( ( aMaxLength < 0 ) || ( aMaxDepth < 0 ) || ( aMaxAllocation < 0 ) || ( aMaxSegmentCount < 0 ) )
+    {
+      throw new IllegalArgumentException( "Limits cannot be negative!" );
+    }
+    this.maxLength = aMaxLength;
+    this.maxDepth = aMaxDepth;
+    this.maxAllocation = aMaxAllocation;
+    this.maxSegmentCount = aMaxSegmentCount;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the maximum number of bytes allocated for content while decoding a
+   * single top-level value.
+   * 
+   * @return a number of bytes, >= 0.
+   */
+  public long getMaxAllocation()
+  {
+    return this.maxAllocation;
+  }
+
+  /**
+   * Returns the maximum number of nested constructed values.
+   * 
+   * @return a nesting depth, >= 0.
+   */
+  public int getMaxDepth()
+  {
+    return this.maxDepth;
+  }
+
+  /**
+   * Returns the maximum content length of a single primitive value or
+   * constructed string.
+   * 
+   * @return a length in bytes, >= 0.
+   */
+  public int getMaxLength()
+  {
+    return this.maxLength;
+  }
+
+  /**
+   * Returns the maximum number of segments of a constructed string.
+   * 
+   * @return a segment count, >= 0.
+   */
+  public int getMaxSegmentCount()
+  {
+    return this.maxSegmentCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BerDecoderLimits[maxLength = " + this.maxLength + ", maxDepth = " + this.maxDepth + ", maxAllocation = "
+        + this.maxAllocation + ", maxSegmentCount = " + this.maxSegmentCount + "]";
+  }
+}
@@ -0,0 +1,546 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
+
+import java.io.*;
+import java.math.*;
+import java.nio.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Represents an immutable BER-encodable value, which is either primitive or
+ * constructed from other elements.
+ * <p>
+ * The encoded length of an element is computed once, when first needed, and
+ * is available <em>before</em> anything is written. Hence, a tree of elements
+ * can be written in a single pass, without any intermediary buffers, using
+ * {@link BerOutputStream#writeElement(BerElement)}, or encoded into a buffer of
+ * exactly the right size using {@link #encode()}.
+ * </p>
+ */
+public final class BerElement
+{
+  // CONSTANTS
+
+  /** Denotes the constructed value bit; used for sequences and sets. */
+  private static final int CONSTRUCTED = 0x20;
+
+  // VARIABLES
+
+  private final int identifier;
+  private final byte[] content;
+  private final BerElement[] children;
+
+  private int contentLength;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerElement} instance.
+   * 
+   * @param aIdentifier
+   *          the identifier octet;
+   * @param aContent
+   *          the content of a primitive element, or <code>null</code>;
+   * @param aChildren
+   *          the children of a constructed element, or <code>null</code>.
+   */
+  private BerElement( final int aIdentifier, final byte[] aContent, final BerElement[] aChildren )
+  {
+    this.identifier = aIdentifier;
+    this.content = aContent;
+    this.children = aChildren;
+    this.contentLength = -1;
+  }
+
+  // METHODS
+
+  /**
+   * Creates a primitive bit string element.
+   * 
+   * @param aBitString
+   *          the bit string value, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement bitString( final BigInteger aBitString )
+  {
+    return new BerElement( BIT_STRING.ordinal(), encodeBitString( aBitString ), null );
+  }
+
+  /**
+   * Creates a primitive boolean element.
+   * 
+   * @param aValue
+   *          the boolean value.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement booleanValue( final boolean aValue )
+  {
+    return new BerElement( BOOLEAN.ordinal(), new byte[] { ( byte )( aValue ? 0xFF : 0x00 ) }, null );
+  }
+
+  /**
+   * Creates a constructed element with the given identifier and children.
+   * 
+   * @param aIdentifier
+   *          the identifier of the element, cannot be <code>null</code> and
+   *          should be constructed;
+   * @param aChildren
+   *          the children of the element, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement constructed( final AsnIdentifier aIdentifier, final BerElement... aChildren )
+  {
+    if ( !aIdentifier.isConstructed() )
+    {
+      throw new IllegalArgumentException( "Identifier should be constructed!" );
+    }
+    return new BerElement( aIdentifier.getTag(), null, copyChildren( aChildren ) );
+  }
+
+  /**
+   * Creates a primitive enumerated element.
+   * 
+   * @param aValue
+   *          the enumerated value.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement enumeratedValue( final int aValue )
+  {
+    return new BerElement( ENUMERATED.ordinal(), encodeInteger( aValue ), null );
+  }
+
+  /**
+   * Creates a primitive generalized timestamp element.
+   * 
+   * @param aTimestamp
+   *          the timestamp, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement generalizedTime( final Calendar aTimestamp )
+  {
+    return new BerElement( GENERALIZED_TIME.ordinal(), encodeISO8601Time( aTimestamp ), null );
+  }
+
+  /**
+   * Returns the encoded length of a value with the given content length, that
+   * is, including its identifier and length octets.
+   * 
+   * @param aContentLength
+   *          the content length, >= 0.
+   * @return the encoded length, > aContentLength.
+   */
+  public static int getEncodedLength( final int aContentLength )
+  {
+    return 1 + getLengthLength( aContentLength ) + aContentLength;
+  }
+
+  /**
+   * Creates an IA5 (ASCII) encoded string element.
+   * 
+   * @param aString
+   *          the string value.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement ia5String( final String aString )
+  {
+    return new BerElement( IA5_STRING.ordinal(), encodeString( aString, CHARSET_ASCII ), null );
+  }
+
+  /**
+   * Creates a primitive integer element.
+   * 
+   * @param aValue
+   *          the integer value.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement intValue( final int aValue )
+  {
+    return new BerElement( INTEGER.ordinal(), encodeInteger( aValue ), null );
+  }
+
+  /**
+   * Creates a primitive null element.
+   * 
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement nullValue()
+  {
+    return new BerElement( NULL.ordinal(), new byte[0], null );
+  }
+
+  /**
+   * Creates an object identifier element.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the object identifier, cannot be
+   *          <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement objectIdentifier( final int[] aSubIDs )
+  {
+    return new BerElement( OBJECT_ID.ordinal(), encodeObjectIdentifier( aSubIDs ), null );
+  }
+
+  /**
+   * Creates a primitive octet-string element.
+   * 
+   * @param aString
+   *          the octet-string value, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement octetString( final byte[] aString )
+  {
+    return new BerElement( OCTET_STRING.ordinal(), aString.clone(), null );
+  }
+
+  /**
+   * Creates a primitive element with the given identifier and content.
+   * 
+   * @param aIdentifier
+   *          the identifier of the element, cannot be <code>null</code> and
+   *          should be primitive;
+   * @param aContent
+   *          the content of the element, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement primitive( final AsnIdentifier aIdentifier, final byte[] aContent )
+  {
+    if ( aIdentifier.isConstructed() )
+    {
+      throw new IllegalArgumentException( "Identifier should be primitive!" );
+    }
+    return new BerElement( aIdentifier.getTag(), aContent.clone(), null );
+  }
+
+  /**
+   * Creates a printable string element, leaving out all non-printable
+   * characters.
+   * 
+   * @param aValue
+   *          the printable string value, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement printableString( final String aValue )
+  {
+    return new BerElement( PRINTABLE_STRING.ordinal(), encodePrintableString( aValue ), null );
+  }
+
+  /**
+   * Creates a relative object identifier element.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the relative object identifier, cannot be
+   *          <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement relativeObjectIdentifier( final int[] aSubIDs )
+  {
+    return new BerElement( RELATIVE_OID.ordinal(), encodeSubIdentifiers( aSubIDs ), null );
+  }
+
+  /**
+   * Creates a sequence element.
+   * 
+   * @param aChildren
+   *          the elements of the sequence, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement sequence( final BerElement... aChildren )
+  {
+    return new BerElement( SEQUENCE.ordinal() | CONSTRUCTED, null, copyChildren( aChildren ) );
+  }
+
+  /**
+   * Creates a sequence element.
+   * 
+   * @param aChildren
+   *          the elements of the sequence, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement sequence( final List<BerElement> aChildren )
+  {
+    return sequence( aChildren.toArray( new BerElement[aChildren.size()] ) );
+  }
+
+  /**
+   * Creates a set element.
+   * 
+   * @param aChildren
+   *          the elements of the set, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement set( final BerElement... aChildren )
+  {
+    return new BerElement( SET.ordinal() | CONSTRUCTED, null, copyChildren( aChildren ) );
+  }
+
+  /**
+   * Creates a set element.
+   * 
+   * @param aChildren
+   *          the elements of the set, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement set( final List<BerElement> aChildren )
+  {
+    return set( aChildren.toArray( new BerElement[aChildren.size()] ) );
+  }
+
+  /**
+   * Creates a primitive ISO8859-1 encoded string element.
+   * 
+   * @param aString
+   *          the string value, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement string( final String aString )
+  {
+    return new BerElement( OCTET_STRING.ordinal(), encodeString( aString, CHARSET_ISO8859_1 ), null );
+  }
+
+  /**
+   * Creates a primitive UTC timestamp element.
+   * 
+   * @param aTimestamp
+   *          the timestamp, cannot be <code>null</code>.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement utcTime( final Calendar aTimestamp )
+  {
+    return new BerElement( UTC_TIME.ordinal(), encodeUTCTime( aTimestamp ), null );
+  }
+
+  /**
+   * Creates a primitive UTF-8 encoded string element.
+   * 
+   * @param aString
+   *          the string value.
+   * @return a new {@link BerElement}, never <code>null</code>.
+   */
+  public static BerElement utf8String( final String aString )
+  {
+    return new BerElement( UTF8_STRING.ordinal(), encodeString( aString, CHARSET_UTF8 ), null );
+  }
+
+  /**
+   * Copies the given children, verifying none of them is <code>null</code>.
+   * 
+   * @param aChildren
+   *          the children to copy, cannot be <code>null</code>.
+   * @return a copy of the given children, never <code>null</code>.
+   */
+  private static BerElement[] copyChildren( final BerElement[] aChildren )
+  {
+    final BerElement[] result = aChildren.clone();
+    for ( BerElement child : result )
+    {
+      if ( child == null )
+      {
+        throw new IllegalArgumentException( "Children cannot contain null!" );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Encodes this element into a new byte array of exactly the right size.
+   * 
+   * @return the encoded element, never <code>null</code>.
+   */
+  public byte[] encode()
+  {
+    final byte[] result = new byte[getEncodedLength()];
+    encode( result, 0 );
+    return result;
+  }
+
+  /**
+   * Encodes this element into the given buffer, starting at its current
+   * position.
+   * 
+   * @param aBuffer
+   *          the buffer to encode this element into, cannot be
+   *          <code>null</code>.
+   * @throws BufferOverflowException
+   *           in case the given buffer has insufficient space remaining.
+   */
+  public void encode( final ByteBuffer aBuffer )
+  {
+    final int length = getEncodedLength();
+    if ( aBuffer.remaining() < length )
+    {
+      throw new BufferOverflowException();
+    }
+
+    if ( aBuffer.hasArray() )
+    {
+      final int position = aBuffer.position();
+      encode( aBuffer.array(), aBuffer.arrayOffset() + position );
+      aBuffer.position( position + length );
+    }
+    else
+    {
+      aBuffer.put( encode() );
+    }
+  }
+
+  /**
+   * Returns the length of the content of this element.
+   * 
+   * @return a content length, in bytes, >= 0.
+   */
+  public int getContentLength()
+  {
+    if ( this.contentLength < 0 )
+    {
+      if ( this.content != null )
+      {
+        this.contentLength = this.content.length;
+      }
+      else
+      {
+        long length = 0;
+        for ( BerElement child : this.children )
+        {
+          length += child.getEncodedLength();
+        }
+        if ( length > Integer.MAX_VALUE )
+        {
+          throw new IllegalStateException( "Element too large to encode!" );
+        }
+        this.contentLength = ( int )length;
+      }
+    }
+    return this.contentLength;
+  }
+
+  /**
+   * Returns the encoded length of this element, including its identifier and
+   * length octets.
+   * 
+   * @return an encoded length, in bytes, > 0.
+   */
+  public int getEncodedLength()
+  {
+    return getEncodedLength( getContentLength() );
+  }
+
+  /**
+   * Returns the identifier octet of this element.
+   * 
+   * @return an identifier octet, 0..255.
+   */
+  public int getIdentifier()
+  {
+    return this.identifier;
+  }
+
+  /**
+   * Returns whether this element is a constructed element.
+   * 
+   * @return <code>true</code> if this element is constructed,
+   *         <code>false</code> if it is primitive.
+   */
+  public boolean isConstructed()
+  {
+    return this.children != null;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BerElement[identifier = 0x" + Integer.toHexString( this.identifier ) + ", length = "
+        + getContentLength() + "]";
+  }
+
+  /**
+   * Writes this element to the given channel writer, without copying large
+   * content.
+   * 
+   * @param aWriter
+   *          the channel writer to write to, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  void writeTo( final BerChannelWriter aWriter ) throws IOException
+  {
+    if ( this.content != null )
+    {
+      aWriter.writeTLV( this.identifier, this.content, 0, this.content.length );
+    }
+    else
+    {
+      aWriter.writeHeader( this.identifier, getContentLength() );
+      for ( BerElement child : this.children )
+      {
+        child.writeTo( aWriter );
+      }
+    }
+  }
+
+  /**
+   * Writes this element to the given output stream, without any intermediary
+   * buffers.
+   * 
+   * @param aOutStream
+   *          the output stream to write to, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  void writeTo( final BerOutputStream aOutStream ) throws IOException
+  {
+    if ( this.content != null )
+    {
+      aOutStream.writeTLV( this.identifier, this.content, 0, this.content.length );
+    }
+    else
+    {
+      aOutStream.writeHeader( this.identifier, getContentLength() );
+      for ( BerElement child : this.children )
+      {
+        child.writeTo( aOutStream );
+      }
+    }
+  }
+
+  /**
+   * Encodes this element into the given array, starting at the given offset.
+   * 
+   * @param aBuffer
+   *          the array to encode into;
+   * @param aOffset
+   *          the offset to start encoding at.
+   * @return the offset directly after this element.
+   */
+  private int encode( final byte[] aBuffer, final int aOffset )
+  {
+    int offset = aOffset + encodeHeader( aBuffer, aOffset, this.identifier, getContentLength() );
+    if ( this.content != null )
+    {
+      System.arraycopy( this.content, 0, aBuffer, offset, this.content.length );
+      offset += this.content.length;
+    }
+    else
+    {
+      for ( BerElement child : this.children )
+      {
+        offset = child.encode( aBuffer, offset );
+      }
+    }
+    return offset;
+  }
+}
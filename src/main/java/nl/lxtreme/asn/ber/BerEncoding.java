@@ -0,0 +1,685 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.math.*;
+import java.text.*;
+import java.util.*;
+
+
+/**
+ * Provides the content encodings shared by the various BER encoders.
+ */
+final class BerEncoding
+{
+  // CONSTANTS
+
+  /** Encodes characters as ASCII, non-ASCII characters become '?'. */
+  static final int CHARSET_ASCII = 0;
+  /** Encodes characters as ISO8859-1, other characters become '?'. */
+  static final int CHARSET_ISO8859_1 = 1;
+  /** Encodes characters as ASCII, leaving out all non-printable characters. */
+  static final int CHARSET_PRINTABLE = 2;
+  /** Encodes characters as UTF-8. */
+  static final int CHARSET_UTF8 = 3;
+
+  /** Denotes the special real value for positive infinity. */
+  static final int REAL_PLUS_INFINITY = 0x40;
+  /** Denotes the special real value for negative infinity. */
+  static final int REAL_MINUS_INFINITY = 0x41;
+  /** Denotes the special real value for not-a-number. */
+  static final int REAL_NAN = 0x42;
+  /** Denotes the special real value for minus zero. */
+  static final int REAL_MINUS_ZERO = 0x43;
+
+  /** Denotes which ASCII characters are allowed in a printable string. */
+  private static final boolean[] PRINTABLE = createPrintableTable();
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerEncoding} instance, never used.
+   */
+  private BerEncoding()
+  {
+    // Nop
+  }
+
+  // METHODS
+
+  /**
+   * Encodes the given bit string value into a series of bytes, the first of
+   * which denotes the number of unused bits.
+   * 
+   * @param aBitString
+   *          the bit string value to encode, cannot be <code>null</code>.
+   * @return the encoded bit string, never <code>null</code>.
+   */
+  static byte[] encodeBitString( final BigInteger aBitString )
+  {
+    int bitLength = aBitString.bitLength();
+    final int stuffBits = ( int )( ( Math.ceil( bitLength / 8.0 ) * 8.0 ) - bitLength );
+
+    final byte[] bytes = aBitString.shiftLeft( stuffBits ).toByteArray();
+    final byte[] values = new byte[bytes.length + 1];
+    values[0] = ( byte )stuffBits;
+    System.arraycopy( bytes, 0, values, 1, bytes.length );
+
+    return values;
+  }
+
+  /**
+   * Encodes the given bit set into a series of bytes, the first of which
+   * denotes the number of unused bits. Bit <em>n</em> of the bit set denotes
+   * bit <em>n</em> of the bit string, that is, bit 0 is encoded as the most
+   * significant bit of the first octet.
+   * 
+   * @param aBits
+   *          the bit set to encode, cannot be <code>null</code>.
+   * @return the encoded bit string, never <code>null</code>.
+   */
+  static byte[] encodeBitString( final BitSet aBits )
+  {
+    final int bitLength = aBits.length();
+    final int byteLength = ( bitLength + 7 ) >> 3;
+
+    final byte[] values = new byte[byteLength + 1];
+    values[0] = ( byte )( ( byteLength << 3 ) - bitLength );
+    for ( int i = aBits.nextSetBit( 0 ); i >= 0; i = aBits.nextSetBit( i + 1 ) )
+    {
+      values[1 + ( i >> 3 )] |= ( 0x80 >>> ( i & 7 ) );
+    }
+    return values;
+  }
+
+  /**
+   * Encodes the given bit mask into the given buffer, the first byte of which
+   * denotes the number of unused bits. Bit <em>n</em> of the mask denotes bit
+   * <em>n</em> of the bit string, that is, bit 0 is encoded as the most
+   * significant bit of the first octet.
+   * 
+   * @param aMask
+   *          the bit mask to encode;
+   * @param aBuffer
+   *          the buffer to encode into, should have room for at least 9 bytes
+   *          after the given offset;
+   * @param aOffset
+   *          the offset to start encoding at.
+   * @return the number of bytes encoded, 1..9.
+   */
+  static int encodeBitString( final long aMask, final byte[] aBuffer, final int aOffset )
+  {
+    final int bitLength = 64 - Long.numberOfLeadingZeros( aMask );
+    final int byteLength = ( bitLength + 7 ) >> 3;
+
+    aBuffer[aOffset] = ( byte )( ( byteLength << 3 ) - bitLength );
+    for ( int i = 0; i < byteLength; i++ )
+    {
+      // The first bit of each octet is its most significant bit...
+      aBuffer[aOffset + 1 + i] = ( byte )( Integer.reverse( ( int )( aMask >>> ( i * 8 ) ) & 0xFF ) >>> 24 );
+    }
+    return byteLength + 1;
+  }
+
+  /**
+   * Encodes a single code point into the given buffer, using the given
+   * character set.
+   * 
+   * @param aCodePoint
+   *          the code point to encode;
+   * @param aCharset
+   *          the character set to use, one of the <tt>CHARSET_*</tt>
+   *          constants;
+   * @param aBuffer
+   *          the buffer to encode into, should have room for at least 4 bytes
+   *          after the given offset;
+   * @param aOffset
+   *          the offset to start encoding at.
+   * @return the offset directly after the encoded code point.
+   */
+  static int encodeCodePoint( final int aCodePoint, final int aCharset, final byte[] aBuffer, final int aOffset )
+  {
+    int offset = aOffset;
+    switch ( aCharset )
+    {
+      case CHARSET_ASCII:
+        aBuffer[offset++] = ( byte )( ( aCodePoint < 0x80 ) ? aCodePoint : '?' );
+        break;
+
+      case CHARSET_ISO8859_1:
+        aBuffer[offset++] = ( byte )( ( aCodePoint < 0x100 ) ? aCodePoint : '?' );
+        break;
+
+      case CHARSET_PRINTABLE:
+        if ( ( aCodePoint < 0x80 ) && PRINTABLE[aCodePoint] )
+        {
+          aBuffer[offset++] = ( byte )aCodePoint;
+        }
+        break;
+
+      default:
+        if ( aCodePoint < 0x80 )
+        {
+          aBuffer[offset++] = ( byte )aCodePoint;
+        }
+        else if ( aCodePoint < 0x800 )
+        {
+          aBuffer[offset++] = ( byte )( 0xC0 | ( aCodePoint >> 6 ) );
+          aBuffer[offset++] = ( byte )( 0x80 | ( aCodePoint & 0x3F ) );
+        }
+        else if ( ( aCodePoint >= Character.MIN_SURROGATE ) && ( aCodePoint <= Character.MAX_SURROGATE ) )
+        {
+          // Unpaired surrogate...
+          aBuffer[offset++] = '?';
+        }
+        else if ( aCodePoint < 0x10000 )
+        {
+          aBuffer[offset++] = ( byte )( 0xE0 | ( aCodePoint >> 12 ) );
+          aBuffer[offset++] = ( byte )( 0x80 | ( ( aCodePoint >> 6 ) & 0x3F ) );
+          aBuffer[offset++] = ( byte )( 0x80 | ( aCodePoint & 0x3F ) );
+        }
+        else
+        {
+          aBuffer[offset++] = ( byte )( 0xF0 | ( aCodePoint >> 18 ) );
+          aBuffer[offset++] = ( byte )( 0x80 | ( ( aCodePoint >> 12 ) & 0x3F ) );
+          aBuffer[offset++] = ( byte )( 0x80 | ( ( aCodePoint >> 6 ) & 0x3F ) );
+          aBuffer[offset++] = ( byte )( 0x80 | ( aCodePoint & 0x3F ) );
+        }
+        break;
+    }
+    return offset;
+  }
+
+  /**
+   * Encodes the given identifier octet and length into the given buffer.
+   * 
+   * @param aBuffer
+   *          the buffer to encode the header into, should have room for at
+   *          least 6 bytes after the given offset;
+   * @param aOffset
+   *          the offset in the buffer to start encoding at;
+   * @param aIdentifier
+   *          the identifier octet;
+   * @param aLength
+   *          the content length, >= 0.
+   * @return the number of bytes encoded, 2..6.
+   */
+  static int encodeHeader( final byte[] aBuffer, final int aOffset, final int aIdentifier, final int aLength )
+  {
+    int pos = aOffset;
+    aBuffer[pos++] = ( byte )aIdentifier;
+    if ( aLength < 128 )
+    {
+      aBuffer[pos++] = ( byte )aLength;
+    }
+    else if ( aLength <= 0xff )
+    {
+      aBuffer[pos++] = ( byte )0x81;
+      aBuffer[pos++] = ( byte )aLength;
+    }
+    else if ( aLength <= 0xffff )
+    {
+      aBuffer[pos++] = ( byte )0x82;
+      aBuffer[pos++] = ( byte )( aLength >> 8 );
+      aBuffer[pos++] = ( byte )( aLength & 0xff );
+    }
+    else if ( aLength <= 0xffffff )
+    {
+      aBuffer[pos++] = ( byte )0x83;
+      aBuffer[pos++] = ( byte )( aLength >> 16 );
+      aBuffer[pos++] = ( byte )( aLength >> 8 );
+      aBuffer[pos++] = ( byte )( aLength & 0xff );
+    }
+    else
+    {
+      aBuffer[pos++] = ( byte )0x84;
+      aBuffer[pos++] = ( byte )( aLength >> 24 );
+      aBuffer[pos++] = ( byte )( aLength >> 16 );
+      aBuffer[pos++] = ( byte )( aLength >> 8 );
+      aBuffer[pos++] = ( byte )( aLength & 0xff );
+    }
+    return pos - aOffset;
+  }
+
+  /**
+   * Encodes the given integer value into a series of bytes.
+   * 
+   * @param aValue
+   *          the integer value to encode.
+   * @return a int-array denoting the individual bytes of the encoded integer,
+   *         never <code>null</code>.
+   */
+  static byte[] encodeInteger( final int aValue )
+  {
+    int intsize = getIntegerLength( aValue );
+
+    final int mask = 0xff800000;
+    int value = ( aValue << ( ( 4 - intsize ) * 8 ) );
+
+    byte[] result = new byte[intsize];
+    int i = 0;
+    while ( intsize-- > 0 )
+    {
+      result[i++] = ( byte )( ( ( value & mask ) >> 24 ) & 0xFF );
+      value <<= 8;
+    }
+
+    return result;
+  }
+
+  /**
+   * Encodes a complete primitive integer value, consisting of the given
+   * identifier, its length and its content, into the given buffer.
+   * 
+   * @param aBuffer
+   *          the buffer to encode into, should have room for at least 6 bytes
+   *          after the given offset;
+   * @param aOffset
+   *          the offset to start encoding at;
+   * @param aIdentifier
+   *          the identifier octet;
+   * @param aValue
+   *          the integer value to encode.
+   * @return the number of bytes encoded, 3..6.
+   */
+  static int encodeIntegerValue( final byte[] aBuffer, final int aOffset, final int aIdentifier, final int aValue )
+  {
+    final int length = getIntegerLength( aValue );
+
+    int pos = aOffset;
+    aBuffer[pos++] = ( byte )aIdentifier;
+    aBuffer[pos++] = ( byte )length;
+    for ( int shift = 8 * ( length - 1 ); shift >= 0; shift -= 8 )
+    {
+      aBuffer[pos++] = ( byte )( aValue >> shift );
+    }
+    return pos - aOffset;
+  }
+
+  /**
+   * Encodes a given timestamp as a series of bytes representing a ISO8601
+   * timestamp.
+   * 
+   * @param aTimestamp
+   *          the timestamp to encode, cannot be <code>null</code>.
+   * @return the encoded timestamp, never <code>null</code>.
+   */
+  static byte[] encodeISO8601Time( final Calendar aTimestamp )
+  {
+    final TimeZone utcTZ = TimeZone.getTimeZone( "UTC" );
+
+    String format = "yyyyMMddHHmmss";
+    if ( aTimestamp.get( Calendar.MILLISECOND ) > 0 )
+    {
+      format = format.concat( ".S" );
+    }
+    if ( utcTZ.equals( aTimestamp.getTimeZone() ) )
+    {
+      format = format.concat( "'Z'" );
+    }
+    else
+    {
+      format = format.concat( "Z" );
+    }
+
+    final SimpleDateFormat formatter = new SimpleDateFormat( format );
+    formatter.setTimeZone( aTimestamp.getTimeZone() );
+
+    String result = formatter.format( aTimestamp.getTime() );
+    return encodeString( result, CHARSET_ASCII );
+  }
+
+  /**
+   * Encodes the given object identifier into a series of bytes, packing its
+   * first two sub identifiers into a single one.
+   * 
+   * @param aSubIDs
+   *          the sub identifiers to encode, cannot be <code>null</code> and
+   *          should contain at least two sub identifiers.
+   * @return the encoded object identifier, never <code>null</code>.
+   */
+  static byte[] encodeObjectIdentifier( final int[] aSubIDs )
+  {
+    // Element 0 + 1 are packed into a single sub identifier...
+    final int first = ( aSubIDs[0] * 40 ) + aSubIDs[1];
+
+    int length = getSubIdentifierLength( first );
+    for ( int i = 2; i < aSubIDs.length; i++ )
+    {
+      length += getSubIdentifierLength( aSubIDs[i] );
+    }
+
+    final byte[] content = new byte[length];
+    int offset = encodeSubIdentifier( content, 0, first );
+    for ( int i = 2; i < aSubIDs.length; i++ )
+    {
+      offset = encodeSubIdentifier( content, offset, aSubIDs[i] );
+    }
+
+    return content;
+  }
+
+  /**
+   * Encodes a printable string, leaving out all non-printable characters.
+   * 
+   * @param aValue
+   *          the printable string value to encode, cannot be <code>null</code>.
+   * @return a byte array, never <code>null</code>.
+   */
+  static byte[] encodePrintableString( final String aValue )
+  {
+    return encodeString( aValue, CHARSET_PRINTABLE );
+  }
+
+  /**
+   * Encodes the given real value into the given buffer, using the binary
+   * (base 2) encoding, with a normalized (odd) mantissa, as defined by X.690.
+   * Zero is encoded without content; infinities, NaN and minus zero are
+   * encoded as special real values.
+   * 
+   * @param aValue
+   *          the real value to encode;
+   * @param aBuffer
+   *          the buffer to encode into, should have room for at least 10 bytes
+   *          after the given offset;
+   * @param aOffset
+   *          the offset to start encoding at.
+   * @return the number of bytes encoded, 0..10.
+   */
+  static int encodeReal( final double aValue, final byte[] aBuffer, final int aOffset )
+  {
+    final long bits = Double.doubleToRawLongBits( aValue );
+    final int biasedExponent = ( int )( ( bits >>> 52 ) & 0x7FF );
+    long mantissa = bits & 0xFFFFFFFFFFFFFL;
+
+    if ( biasedExponent == 0x7FF )
+    {
+      aBuffer[aOffset] = ( byte )( ( mantissa != 0 ) ? REAL_NAN : ( ( bits < 0 ) ? REAL_MINUS_INFINITY
+          : REAL_PLUS_INFINITY ) );
+      return 1;
+    }
+    if ( ( biasedExponent == 0 ) && ( mantissa == 0 ) )
+    {
+      if ( bits == 0 )
+      {
+        return 0;
+      }
+      aBuffer[aOffset] = ( byte )REAL_MINUS_ZERO;
+      return 1;
+    }
+
+    int exponent;
+    if ( biasedExponent == 0 )
+    {
+      // Subnormal value...
+      exponent = -1074;
+    }
+    else
+    {
+      mantissa |= 0x10000000000000L;
+      exponent = biasedExponent - 1075;
+    }
+
+    // Normalize the mantissa to an odd value...
+    final int shift = Long.numberOfTrailingZeros( mantissa );
+    mantissa >>>= shift;
+    exponent += shift;
+
+    final boolean shortExponent = ( exponent >= Byte.MIN_VALUE ) && ( exponent <= Byte.MAX_VALUE );
+
+    int pos = aOffset;
+    aBuffer[pos++] = ( byte )( 0x80 | ( ( bits < 0 ) ? 0x40 : 0x00 ) | ( shortExponent ? 0x00 : 0x01 ) );
+    if ( !shortExponent )
+    {
+      aBuffer[pos++] = ( byte )( exponent >> 8 );
+    }
+    aBuffer[pos++] = ( byte )exponent;
+    for ( int i = ( ( 64 - Long.numberOfLeadingZeros( mantissa ) + 7 ) >> 3 ) - 1; i >= 0; i-- )
+    {
+      aBuffer[pos++] = ( byte )( mantissa >>> ( i * 8 ) );
+    }
+    return pos - aOffset;
+  }
+
+  /**
+   * Encodes a given string into bytes, using the given character set.
+   * <p>
+   * The resulting array is allocated once, with exactly the right size.
+   * </p>
+   * 
+   * @param aValue
+   *          the string value to encode, may be <code>null</code>;
+   * @param aCharset
+   *          the character set to use, one of the <tt>CHARSET_*</tt>
+   *          constants.
+   * @return a byte array, never <code>null</code>.
+   */
+  static byte[] encodeString( final String aValue, final int aCharset )
+  {
+    if ( aValue == null )
+    {
+      return new byte[0];
+    }
+
+    final byte[] result = new byte[getStringLength( aValue, aCharset )];
+    final int length = aValue.length();
+    for ( int i = 0, offset = 0, cp; i < length; i += Character.charCount( cp ) )
+    {
+      cp = aValue.codePointAt( i );
+      offset = encodeCodePoint( cp, aCharset, result, offset );
+    }
+    return result;
+  }
+
+  /**
+   * Encodes the given array of sub identifiers into a series of bytes.
+   * 
+   * @param aSubIDs
+   *          the sub identifiers to encode, cannot be <code>null</code>.
+   * @return the encoded sub identifiers, never <code>null</code>.
+   */
+  static byte[] encodeSubIdentifiers( final int[] aSubIDs )
+  {
+    int length = 0;
+    for ( final int value : aSubIDs )
+    {
+      length += getSubIdentifierLength( value );
+    }
+
+    final byte[] content = new byte[length];
+    int offset = 0;
+    for ( final int value : aSubIDs )
+    {
+      offset = encodeSubIdentifier( content, offset, value );
+    }
+
+    return content;
+  }
+
+  /**
+   * Encodes a given timestamp as a series of bytes represting a UTC timestamp.
+   * 
+   * @param aTimestamp
+   *          the timestamp to encode, cannot be <code>null</code>.
+   * @return the encoded timestamp, never <code>null</code>.
+   */
+  static byte[] encodeUTCTime( final Calendar aTimestamp )
+  {
+    String format = "yyMMddHHmmss'Z'";
+
+    SimpleDateFormat formatter = new SimpleDateFormat( format );
+    formatter.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+
+    String result = formatter.format( aTimestamp.getTime() );
+    return encodeString( result, CHARSET_ASCII );
+  }
+
+  /**
+   * Uses a fast way to determine the length of a given integer when it should
+   * be encoded in bytes.
+   * 
+   * @param aValue
+   *          the value to return its length for.
+   * @return the length of the given value; 1..4.
+   */
+  static int getIntegerLength( final int aValue )
+  {
+    final int mask = 0xff800000;
+    int intsize = 4;
+    int value = aValue;
+
+    while ( ( ( ( value & mask ) == 0 ) || ( ( value & mask ) == mask ) ) && ( intsize > 1 ) )
+    {
+      intsize--;
+      value <<= 8;
+    }
+    return intsize;
+  }
+
+  /**
+   * Returns the number of length octets needed to encode the given length.
+   * 
+   * @param aLength
+   *          the length to encode, >= 0.
+   * @return the number of length octets, 1..5.
+   */
+  static int getLengthLength( final int aLength )
+  {
+    if ( aLength < 128 )
+    {
+      return 1;
+    }
+    else if ( aLength <= 0xff )
+    {
+      return 2;
+    }
+    else if ( aLength <= 0xffff )
+    {
+      return 3;
+    }
+    else if ( aLength <= 0xffffff )
+    {
+      return 4;
+    }
+    return 5;
+  }
+
+  /**
+   * Returns the number of bytes needed to encode the given string using the
+   * given character set.
+   * 
+   * @param aValue
+   *          the string value to return the length for, may be
+   *          <code>null</code>;
+   * @param aCharset
+   *          the character set to use, one of the <tt>CHARSET_*</tt>
+   *          constants.
+   * @return the encoded length, in bytes, >= 0.
+   */
+  static int getStringLength( final String aValue, final int aCharset )
+  {
+    if ( aValue == null )
+    {
+      return 0;
+    }
+
+    final int length = aValue.length();
+    if ( ( aCharset == CHARSET_ASCII ) || ( aCharset == CHARSET_ISO8859_1 ) )
+    {
+      // Every code point takes exactly one byte...
+      return aValue.codePointCount( 0, length );
+    }
+
+    int result = 0;
+    for ( int i = 0, cp; i < length; i += Character.charCount( cp ) )
+    {
+      cp = aValue.codePointAt( i );
+      if ( aCharset == CHARSET_PRINTABLE )
+      {
+        result += ( ( cp < 0x80 ) && PRINTABLE[cp] ) ? 1 : 0;
+      }
+      else if ( ( cp < 0x80 ) || ( ( cp >= Character.MIN_SURROGATE ) && ( cp <= Character.MAX_SURROGATE ) ) )
+      {
+        result += 1;
+      }
+      else
+      {
+        result += ( cp < 0x800 ) ? 2 : ( ( cp < 0x10000 ) ? 3 : 4 );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of octets needed to encode the given sub identifier.
+   * 
+   * @param aValue
+   *          the sub identifier to return its length for.
+   * @return the length of the given sub identifier; 1..5.
+   */
+  static int getSubIdentifierLength( final int aValue )
+  {
+    int result = 1;
+    int value = aValue >>> 7;
+    while ( value != 0 )
+    {
+      result++;
+      value >>>= 7;
+    }
+    return result;
+  }
+
+  /**
+   * Creates the lookup table of printable characters.
+   * 
+   * @return a table with 128 entries, never <code>null</code>.
+   */
+  private static boolean[] createPrintableTable()
+  {
+    final boolean[] result = new boolean[128];
+    for ( int c = 'a'; c <= 'z'; c++ )
+    {
+      result[c] = true;
+    }
+    for ( int c = 'A'; c <= 'Z'; c++ )
+    {
+      result[c] = true;
+    }
+    for ( int c = '0'; c <= '9'; c++ )
+    {
+      result[c] = true;
+    }
+    for ( char c : " '()+,-./:=?".toCharArray() )
+    {
+      result[c] = true;
+    }
+    return result;
+  }
+
+  /**
+   * Encodes a single sub identifier into the given buffer.
+   * 
+   * @param aBuffer
+   *          the buffer to encode into;
+   * @param aOffset
+   *          the offset to start encoding at;
+   * @param aValue
+   *          the sub identifier to encode.
+   * @return the offset directly after the encoded sub identifier.
+   */
+  private static int encodeSubIdentifier( final byte[] aBuffer, final int aOffset, final int aValue )
+  {
+    final int size = getSubIdentifierLength( aValue );
+    // All but the last octet have their MSB set...
+    for ( int j = 0; j < size; j++ )
+    {
+      final int shift = 7 * ( size - j - 1 );
+      aBuffer[aOffset + j] = ( byte )( ( ( aValue >>> shift ) & 0x7F ) | ( ( shift > 0 ) ? 0x80 : 0x00 ) );
+    }
+    return aOffset + size;
+  }
+}
@@ -0,0 +1,482 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Provides a {@link Flow.Processor} that decodes the top-level values, or
+ * records, in a flow of byte chunks.
+ * <p>
+ * Chunks may split records at any position; they are collected until a
+ * complete record is available. Records are only framed and decoded when the
+ * subscriber has demand, and a next chunk is only requested when no complete
+ * record is left. Hence, at most one record and one chunk are buffered, and
+ * slow subscribers slow down the publisher of the chunks instead of filling up
+ * memory. Records larger than the maximum buffer size are signalled as error.
+ * </p>
+ * <p>
+ * A decoder supports a single subscriber. All signals to the subscriber are
+ * serialized, and may be delivered from both the thread publishing the chunks
+ * and the thread requesting records.
+ * </p>
+ * 
+ * @param <T>
+ *          the type of the decoded records.
+ * @see BerFlowEncoder
+ */
+public final class BerFlowDecoder<T> implements Flow.Processor<ByteBuffer, T>
+{
+  // INNER TYPES
+
+  /**
+   * Provides the subscription handed to the subscriber of the records.
+   */
+  final class RecordSubscription implements Subscription
+  {
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel()
+    {
+      BerFlowDecoder.this.cancelled = true;
+      drain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void request( final long aCount )
+    {
+      if ( aCount <= 0 )
+      {
+        BerFlowDecoder.this.error = new IllegalArgumentException( "Request count should be positive!" );
+        BerFlowDecoder.this.failed = true;
+      }
+      else
+      {
+        long current;
+        long next;
+        do
+        {
+          current = BerFlowDecoder.this.requested.get();
+          next = current + aCount;
+          // Saturate at Long.MAX_VALUE, meaning unbounded...
+          if ( next < 0 )
+          {
+            next = Long.MAX_VALUE;
+          }
+        }
+        while ( !BerFlowDecoder.this.requested.compareAndSet( current, next ) );
+      }
+      drain();
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes the default maximum buffer size, in bytes. */
+  private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+  /** Denotes the initial buffer size, in bytes. */
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  // VARIABLES
+
+  private final BerRecords.Decoder<T> decoder;
+  private final BerDecoderLimits limits;
+  private final int maxBufferSize;
+  private final Queue<ByteBuffer> chunks;
+  private final AtomicLong requested;
+  private final AtomicInteger workInProgress;
+  private final AtomicReference<Subscriber<? super T>> subscriber;
+
+  private volatile Subscription upstream;
+  private volatile boolean done;
+  private volatile boolean cancelled;
+  private volatile boolean failed;
+  private volatile Throwable error;
+
+  // Only accessed while draining...
+  private byte[] buffer;
+  private ByteBuffer view;
+  private int start;
+  private int end;
+  private long emitted;
+  private boolean chunkRequested;
+  private boolean terminated;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerFlowDecoder} instance, buffering at most 1MB.
+   * 
+   * @param aDecoder
+   *          the decoder for the records, cannot be <code>null</code>.
+   */
+  public BerFlowDecoder( final BerRecords.Decoder<T> aDecoder )
+  {
+    this( aDecoder, BerDecoderLimits.UNLIMITED, MAX_BUFFER_SIZE );
+  }
+
+  /**
+   * Creates a new {@link BerFlowDecoder} instance.
+   * 
+   * @param aDecoder
+   *          the decoder for the records, cannot be <code>null</code>;
+   * @param aLimits
+   *          the limits to enforce while decoding each record, cannot be
+   *          <code>null</code>;
+   * @param aMaxBufferSize
+   *          the maximum number of bytes to buffer, > 0. This bounds the size
+   *          of a single record plus one chunk.
+   */
+  public BerFlowDecoder( final BerRecords.Decoder<T> aDecoder, final BerDecoderLimits aLimits,
+      final int aMaxBufferSize )
+  {
+    if ( aDecoder == null )
+    {
+      throw new IllegalArgumentException( "Decoder cannot be null!" );
+    }
+    if ( aLimits == null )
+    {
+      throw new IllegalArgumentException( "Limits cannot be null!" );
+    }
+    if ( aMaxBufferSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Maximum buffer size should be positive!" );
+    }
+
+    this.decoder = aDecoder;
+    this.limits = aLimits;
+    this.maxBufferSize = aMaxBufferSize;
+    this.chunks = new ConcurrentLinkedQueue<ByteBuffer>();
+    this.requested = new AtomicLong();
+    this.workInProgress = new AtomicInteger();
+    this.subscriber = new AtomicReference<Subscriber<? super T>>();
+
+    this.buffer = new byte[Math.min( INITIAL_BUFFER_SIZE, aMaxBufferSize )];
+    this.view = ByteBuffer.wrap( this.buffer );
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onComplete()
+  {
+    this.done = true;
+    drain();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onError( final Throwable aThrowable )
+  {
+    if ( aThrowable == null )
+    {
+      throw new NullPointerException( "Throwable cannot be null!" );
+    }
+    this.error = aThrowable;
+    this.done = true;
+    drain();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onNext( final ByteBuffer aChunk )
+  {
+    if ( aChunk == null )
+    {
+      throw new NullPointerException( "Chunk cannot be null!" );
+    }
+    this.chunks.add( aChunk );
+    drain();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onSubscribe( final Subscription aSubscription )
+  {
+    if ( aSubscription == null )
+    {
+      throw new NullPointerException( "Subscription cannot be null!" );
+    }
+    if ( ( this.upstream != null ) || this.cancelled )
+    {
+      aSubscription.cancel();
+      return;
+    }
+    this.upstream = aSubscription;
+    drain();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void subscribe( final Subscriber<? super T> aSubscriber )
+  {
+    if ( aSubscriber == null )
+    {
+      throw new NullPointerException( "Subscriber cannot be null!" );
+    }
+    if ( !this.subscriber.compareAndSet( null, aSubscriber ) )
+    {
+      aSubscriber.onSubscribe( new Subscription()
+      {
+        @Override
+        public void cancel()
+        {
+          // Nop
+        }
+
+        @Override
+        public void request( final long aCount )
+        {
+          // Nop
+        }
+      } );
+      aSubscriber.onError( new IllegalStateException( "Decoder supports only a single subscriber!" ) );
+      return;
+    }
+    aSubscriber.onSubscribe( new RecordSubscription() );
+    drain();
+  }
+
+  /**
+   * Appends the given chunk to the buffered bytes.
+   * 
+   * @throws IOException
+   *           in case the buffered bytes would exceed the maximum buffer size.
+   */
+  private void append( final ByteBuffer aChunk ) throws IOException
+  {
+    final int length = aChunk.remaining();
+    if ( length > ( this.buffer.length - this.end ) )
+    {
+      final int buffered = this.end - this.start;
+      if ( ( buffered + length ) > this.maxBufferSize )
+      {
+        throw new IOException( "Record exceeds maximum buffer size of " + this.maxBufferSize + " bytes!" );
+      }
+      if ( ( buffered + length ) > this.buffer.length )
+      {
+        final int size = ( int )Math.min( this.maxBufferSize, Math.max( 2L * this.buffer.length, buffered + length ) );
+        this.buffer = Arrays.copyOfRange( this.buffer, this.start, this.start + size );
+        this.view = ByteBuffer.wrap( this.buffer );
+      }
+      else
+      {
+        System.arraycopy( this.buffer, this.start, this.buffer, 0, buffered );
+      }
+      this.start = 0;
+      this.end = buffered;
+    }
+    aChunk.get( this.buffer, this.end, length );
+    this.end += length;
+  }
+
+  /**
+   * Delivers as many records as demanded and available, and requests a next
+   * chunk if needed. Only a single thread drains at a time; others signal it
+   * to drain again.
+   */
+  private void drain()
+  {
+    if ( this.workInProgress.getAndIncrement() != 0 )
+    {
+      return;
+    }
+
+    int missed = 1;
+    do
+    {
+      final Subscriber<? super T> s = this.subscriber.get();
+      if ( ( s != null ) && !this.terminated )
+      {
+        drainLoop( s );
+      }
+      missed = this.workInProgress.addAndGet( -missed );
+    }
+    while ( missed != 0 );
+  }
+
+  /**
+   * Delivers records to the given subscriber.
+   */
+  private void drainLoop( final Subscriber<? super T> aSubscriber )
+  {
+    for ( ;; )
+    {
+      if ( this.cancelled )
+      {
+        terminate();
+        return;
+      }
+      if ( this.failed )
+      {
+        terminate();
+        aSubscriber.onError( this.error );
+        return;
+      }
+
+      T record = null;
+      try
+      {
+        final int recordEnd = frame();
+        if ( recordEnd >= 0 )
+        {
+          if ( this.emitted == this.requested.get() )
+          {
+            // No demand (yet)...
+            return;
+          }
+          record = decode( recordEnd );
+        }
+        else
+        {
+          final ByteBuffer chunk = this.chunks.poll();
+          if ( chunk != null )
+          {
+            this.chunkRequested = false;
+            append( chunk );
+            continue;
+          }
+        }
+      }
+      catch ( IOException exception )
+      {
+        terminate();
+        aSubscriber.onError( exception );
+        return;
+      }
+      catch ( RuntimeException exception )
+      {
+        terminate();
+        aSubscriber.onError( exception );
+        return;
+      }
+
+      if ( record != null )
+      {
+        this.emitted++;
+        aSubscriber.onNext( record );
+        continue;
+      }
+
+      if ( this.done )
+      {
+        // Make sure no chunk was added right before completion...
+        if ( !this.chunks.isEmpty() )
+        {
+          continue;
+        }
+        final int left = this.end - this.start;
+        terminate();
+        if ( this.error != null )
+        {
+          aSubscriber.onError( this.error );
+        }
+        else if ( left > 0 )
+        {
+          aSubscriber.onError( new EOFException( "Truncated record: " + left + " bytes left!" ) );
+        }
+        else
+        {
+          aSubscriber.onComplete();
+        }
+        return;
+      }
+
+      final Subscription s = this.upstream;
+      if ( ( s == null ) || this.chunkRequested || ( this.emitted == this.requested.get() ) )
+      {
+        return;
+      }
+      this.chunkRequested = true;
+      // The chunk might be delivered synchronously, which is picked up by the
+      // next iteration...
+      s.request( 1 );
+    }
+  }
+
+  /**
+   * Decodes the buffered record that ends at the given position.
+   */
+  private T decode( final int aRecordEnd ) throws IOException
+  {
+    final InputStream input = new ByteArrayInputStream( this.buffer, this.start, aRecordEnd - this.start );
+    this.start = aRecordEnd;
+
+    final T record = this.decoder.decode( new BerInputStream( input, this.limits ) );
+    if ( record == null )
+    {
+      throw new IOException( "Decoder returned null!" );
+    }
+    return record;
+  }
+
+  /**
+   * Returns the end of the first buffered record, if complete.
+   * 
+   * @return the end of the first buffered record, or -1 in case no complete
+   *         record is buffered.
+   */
+  private int frame() throws IOException
+  {
+    if ( this.start >= this.end )
+    {
+      return -1;
+    }
+    try
+    {
+      return BerRecords.findEndOfRecord( this.view, this.start, this.end );
+    }
+    catch ( EOFException exception )
+    {
+      return -1;
+    }
+  }
+
+  /**
+   * Stops delivering records, cancels the upstream subscription, if still
+   * active, and releases the buffered bytes.
+   */
+  private void terminate()
+  {
+    this.terminated = true;
+    this.chunks.clear();
+    this.buffer = new byte[0];
+    this.view = ByteBuffer.wrap( this.buffer );
+    this.start = 0;
+    this.end = 0;
+
+    final Subscription s = this.upstream;
+    if ( ( s != null ) && !this.done )
+    {
+      s.cancel();
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+
+/**
+ * Provides a {@link Flow.Subscriber} that encodes records onto an output
+ * stream in batches.
+ * <p>
+ * Records are requested, and encoded into a reused buffer, a batch at a time.
+ * Each full batch is written to the output stream with a single write, after
+ * which the next batch is requested. Hence, a slow output stream slows down
+ * the publisher instead of filling up memory. The output stream is flushed,
+ * but not closed, when the flow completes.
+ * </p>
+ * <p>
+ * Completion, or failure, of the flow, including any I/O problems while
+ * encoding, is reported through {@link #getCompletion()}. In case a record
+ * cannot be encoded, its partial encoding is discarded, the records before it
+ * are written and the subscription is cancelled.
+ * </p>
+ * 
+ * @param <T>
+ *          the type of the encoded records.
+ * @see BerFlowDecoder
+ */
+public final class BerFlowEncoder<T> implements Flow.Subscriber<T>
+{
+  // INNER TYPES
+
+  /**
+   * Holds the encoded records of a batch, allowing a partially encoded record
+   * to be discarded.
+   */
+  private static final class Batch extends ByteArrayOutputStream
+  {
+    // METHODS
+
+    /**
+     * Discards all bytes after the given size.
+     */
+    void truncate( final int aSize )
+    {
+      this.count = Math.min( this.count, aSize );
+    }
+  }
+
+  /**
+   * Encodes a single record.
+   * 
+   * @param <T>
+   *          the type of the encoded records.
+   */
+  @FunctionalInterface
+  public static interface Encoder<T>
+  {
+    /**
+     * Encodes the given record onto the given output stream.
+     * 
+     * @param aOutput
+     *          the output stream to write the record to, never
+     *          <code>null</code>;
+     * @param aRecord
+     *          the record to encode, never <code>null</code>.
+     * @throws IOException
+     *           in case the record could not be encoded.
+     */
+    void encode( BerOutputStream aOutput, T aRecord ) throws IOException;
+  }
+
+  // CONSTANTS
+
+  /** Denotes the default number of records per batch. */
+  private static final int BATCH_SIZE = 256;
+
+  // VARIABLES
+
+  private final OutputStream sink;
+  private final Encoder<T> encoder;
+  private final int batchSize;
+  private final Batch batch;
+  private final BerOutputStream output;
+  private final CompletableFuture<Void> completion;
+
+  private Subscription subscription;
+  private int count;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerFlowEncoder} instance, encoding 256 records per
+   * batch.
+   * 
+   * @param aSink
+   *          the output stream to write the encoded records to, cannot be
+   *          <code>null</code>;
+   * @param aEncoder
+   *          the encoder for the records, cannot be <code>null</code>.
+   */
+  public BerFlowEncoder( final OutputStream aSink, final Encoder<T> aEncoder )
+  {
+    this( aSink, aEncoder, BATCH_SIZE );
+  }
+
+  /**
+   * Creates a new {@link BerFlowEncoder} instance.
+   * 
+   * @param aSink
+   *          the output stream to write the encoded records to, cannot be
+   *          <code>null</code>;
+   * @param aEncoder
+   *          the encoder for the records, cannot be <code>null</code>;
+   * @param aBatchSize
+   *          the number of records to request and write at a time, > 0.
+   */
+  public BerFlowEncoder( final OutputStream aSink, final Encoder<T> aEncoder, final int aBatchSize )
+  {
+    if ( aSink == null )
+    {
+      throw new IllegalArgumentException( "Sink cannot be null!" );
+    }
+    if ( aEncoder == null )
+    {
+      throw new IllegalArgumentException( "Encoder cannot be null!" );
+    }
+    if ( aBatchSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Batch size should be positive!" );
+    }
+
+    this.sink = aSink;
+    this.encoder = aEncoder;
+    this.batchSize = aBatchSize;
+    this.batch = new Batch();
+    this.output = new BerOutputStream( this.batch );
+    this.completion = new CompletableFuture<Void>();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the completion of this encoder.
+   * 
+   * @return a future that completes once all records are written and the
+   *         output stream is flushed, or completes exceptionally in case the
+   *         flow failed or the records could not be written. Never
+   *         <code>null</code>.
+   */
+  public CompletableFuture<Void> getCompletion()
+  {
+    return this.completion;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onComplete()
+  {
+    if ( this.completion.isDone() )
+    {
+      return;
+    }
+    try
+    {
+      writeBatch();
+      this.sink.flush();
+      this.completion.complete( null );
+    }
+    catch ( IOException exception )
+    {
+      this.completion.completeExceptionally( exception );
+    }
+  }
+
+  /**
+   * Writes the records received so far, as they are complete, before failing.
+   */
+  @Override
+  public void onError( final Throwable aThrowable )
+  {
+    if ( aThrowable == null )
+    {
+      throw new NullPointerException( "Throwable cannot be null!" );
+    }
+    if ( this.completion.isDone() )
+    {
+      return;
+    }
+    try
+    {
+      writeBatch();
+      this.sink.flush();
+    }
+    catch ( IOException exception )
+    {
+      aThrowable.addSuppressed( exception );
+    }
+    this.completion.completeExceptionally( aThrowable );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onNext( final T aRecord )
+  {
+    if ( aRecord == null )
+    {
+      throw new NullPointerException( "Record cannot be null!" );
+    }
+    if ( this.completion.isDone() )
+    {
+      return;
+    }
+
+    // The output stream is unbuffered, so this is where the record starts...
+    final int mark = this.batch.size();
+    try
+    {
+      this.encoder.encode( this.output, aRecord );
+    }
+    catch ( IOException exception )
+    {
+      abort( mark, exception );
+      return;
+    }
+    catch ( RuntimeException exception )
+    {
+      // A faulty encoder should not leave the flow hanging...
+      abort( mark, exception );
+      return;
+    }
+
+    if ( ++this.count == this.batchSize )
+    {
+      try
+      {
+        writeBatch();
+        this.subscription.request( this.batchSize );
+      }
+      catch ( IOException exception )
+      {
+        this.subscription.cancel();
+        this.completion.completeExceptionally( exception );
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onSubscribe( final Subscription aSubscription )
+  {
+    if ( aSubscription == null )
+    {
+      throw new NullPointerException( "Subscription cannot be null!" );
+    }
+    if ( this.subscription != null )
+    {
+      aSubscription.cancel();
+      return;
+    }
+    this.subscription = aSubscription;
+    aSubscription.request( this.batchSize );
+  }
+
+  /**
+   * Discards the partially encoded record, starting at the given position in
+   * the batch, and writes the complete records before failing.
+   */
+  private void abort( final int aMark, final Exception aException )
+  {
+    this.subscription.cancel();
+    this.batch.truncate( aMark );
+    try
+    {
+      writeBatch();
+      this.sink.flush();
+    }
+    catch ( IOException exception )
+    {
+      aException.addSuppressed( exception );
+    }
+    this.completion.completeExceptionally( aException );
+  }
+
+  /**
+   * Writes the encoded records to the output stream, with a single write.
+   */
+  private void writeBatch() throws IOException
+  {
+    this.output.flush();
+    if ( this.batch.size() > 0 )
+    {
+      this.batch.writeTo( this.sink );
+      this.batch.reset();
+    }
+    this.count = 0;
+  }
+}
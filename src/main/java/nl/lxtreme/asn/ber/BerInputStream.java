@@ -7,6 +7,7 @@ package nl.lxtreme.asn.ber;
 
 
 import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
 
 import java.io.*;
 import java.math.*;
@@ -25,59 +26,28 @@ public class BerInputStream extends FilterInputStream
   // INNER TYPES
 
   /**
-   * Denotes an {@link BerValue}.
+   * Keeps track of the number of bytes allocated while decoding a single
+   * top-level value; shared between a stream and all its nested streams.
    */
-  private static class BerValue
+  private static class AllocationCounter
   {
     // VARIABLES
 
-    private final AsnIdentifier id;
-    private final int length;
-    private final byte[] content;
-    private final boolean hasByteContent;
-    private final List<BerValue> subValues;
-
-    // CONSTRUCTORS
+    long allocated;
+  }
 
-    /**
-     * Creates a new {@link BerValue} for the given identifier, length and byte
-     * content.
-     * 
-     * @param aId
-     *          the identifier;
-     * @param aLength
-     *          the content length;
-     * @param aContent
-     *          the byte content.
-     */
-    public BerValue( final AsnIdentifier aId, final int aLength, final byte... aContent )
-    {
-      this.id = aId;
-      this.length = aLength;
-      this.hasByteContent = true;
-      this.content = aContent;
-      this.subValues = null;
-    }
+  /**
+   * Denotes a decoded BER value, whose content is a slice of the arena of the
+   * stream that decoded it.
+   */
+  private static class BerValue
+  {
+    // VARIABLES
 
-    /**
-     * Creates a new {@link BerValue} for the given identifier, length and byte
-     * content.
-     * 
-     * @param aId
-     *          the identifier;
-     * @param aLength
-     *          the content length;
-     * @param aSubValues
-     *          the list with {@link BerValue}s as sub-values.
-     */
-    public BerValue( final AsnIdentifier aId, final int aLength, final List<BerValue> aSubValues )
-    {
-      this.id = aId;
-      this.length = aLength;
-      this.hasByteContent = false;
-      this.content = null;
-      this.subValues = aSubValues;
-    }
+    AsnIdentifier id;
+    byte[] buffer;
+    int offset;
+    int length;
   }
 
   /**
@@ -132,22 +102,303 @@ public class BerInputStream extends FilterInputStream
     }
   }
 
+  // CONSTANTS
+
+  private static final int INDEFINITE_LENGTH = -1;
+
+  // VARIABLES
+
+  private final BerDecoderLimits limits;
+  private final AllocationCounter counter;
+  private final int depth;
+  private final BerArena arena;
+  private final BerValue value;
+  private final boolean indefinite;
+
+  private boolean endOfContents;
+  // the peeked octets, the first one in the least significant byte...
+  private long lookahead;
+  private int lookaheadCount;
+  private int lookaheadPos;
+
   // CONSTRUCTORS
 
   /**
-   * Creates a new {@link BerInputStream}
+   * Creates a new {@link BerInputStream} without any decoding limits.
    * 
    * @param aInputStream
    *          the input stream to read the BER-encoded bytes from, cannot be
    *          <code>null</code>.
    */
   public BerInputStream( final InputStream aInputStream )
+  {
+    this( aInputStream, BerDecoderLimits.UNLIMITED, new BerArena(), 0, new AllocationCounter(), false );
+  }
+
+  /**
+   * Creates a new {@link BerInputStream} that enforces the given decoding
+   * limits.
+   * 
+   * @param aInputStream
+   *          the input stream to read the BER-encoded bytes from, cannot be
+   *          <code>null</code>;
+   * @param aLimits
+   *          the decoding limits to enforce, cannot be <code>null</code>.
+   */
+  public BerInputStream( final InputStream aInputStream, final BerDecoderLimits aLimits )
+  {
+    this( aInputStream, aLimits, new BerArena(), 0, new AllocationCounter(), false );
+  }
+
+  /**
+   * Creates a new {@link BerInputStream} that enforces the given decoding
+   * limits and draws its scratch space from the given arena.
+   * 
+   * @param aInputStream
+   *          the input stream to read the BER-encoded bytes from, cannot be
+   *          <code>null</code>;
+   * @param aLimits
+   *          the decoding limits to enforce, cannot be <code>null</code>;
+   * @param aArena
+   *          the arena to use for scratch space, cannot be <code>null</code>.
+   */
+  public BerInputStream( final InputStream aInputStream, final BerDecoderLimits aLimits, final BerArena aArena )
+  {
+    this( aInputStream, aLimits, aArena, 0, new AllocationCounter(), false );
+  }
+
+  /**
+   * Creates a new (nested) {@link BerInputStream} instance.
+   * 
+   * @param aInputStream
+   *          the input stream to read the BER-encoded bytes from;
+   * @param aLimits
+   *          the decoding limits to enforce;
+   * @param aArena
+   *          the arena to use for scratch space;
+   * @param aDepth
+   *          the nesting depth of this stream;
+   * @param aCounter
+   *          the allocation counter to use;
+   * @param aIndefinite
+   *          <code>true</code> if this stream represents the content of an
+   *          indefinite length value, which ends with an end-of-contents,
+   *          <code>false</code> otherwise.
+   */
+  private BerInputStream( final InputStream aInputStream, final BerDecoderLimits aLimits, final BerArena aArena,
+      final int aDepth, final AllocationCounter aCounter, final boolean aIndefinite )
   {
     super( aInputStream );
+
+    if ( aLimits == null )
+    {
+      throw new IllegalArgumentException( "Limits cannot be null!" );
+    }
+    if ( aArena == null )
+    {
+      throw new IllegalArgumentException( "Arena cannot be null!" );
+    }
+
+    this.limits = aLimits;
+    this.arena = aArena;
+    this.depth = aDepth;
+    this.counter = aCounter;
+    this.indefinite = aIndefinite;
+    this.value = new BerValue();
   }
 
   // METHODS
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int available() throws IOException
+  {
+    return ( this.lookaheadCount - this.lookaheadPos ) + super.available();
+  }
+
+  /**
+   * Returns the decoding limits this stream enforces.
+   * 
+   * @return the decoding limits, never <code>null</code>.
+   */
+  public BerDecoderLimits getLimits()
+  {
+    return this.limits;
+  }
+
+  /**
+   * Returns <code>false</code>, as the octets read ahead by
+   * {@link #peekIdentifier()} and {@link #peekLength()} cannot be reset.
+   * 
+   * @return <code>false</code>.
+   */
+  @Override
+  public boolean markSupported()
+  {
+    return false;
+  }
+
+  /**
+   * Returns the identifier of the next value without consuming it.
+   * <p>
+   * This allows one to decide which reader to call, for example, to detect
+   * whether an OPTIONAL component is present or which alternative of a CHOICE
+   * follows. The peeked octets are kept in this stream, without any
+   * allocations, and are returned by the next read. Each nested stream, as
+   * returned by {@link #readSequenceAsStream()} and alike, has its own
+   * lookahead.
+   * </p>
+   * 
+   * @return the identifier of the next value, or <code>null</code> in case the
+   *         end of the stream, or the end-of-contents of an indefinite length
+   *         value, is reached.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public AsnIdentifier peekIdentifier() throws IOException
+  {
+    if ( this.endOfContents )
+    {
+      return null;
+    }
+
+    final int idOctet = peekOctet( 0 );
+    if ( idOctet < 0 )
+    {
+      return null;
+    }
+    if ( this.indefinite && ( idOctet == 0x00 ) )
+    {
+      // Consume the end-of-contents, as there is nothing to read after it...
+      return readIdentifier();
+    }
+    return AsnIdentifier.valueOf( idOctet );
+  }
+
+  /**
+   * Returns the content length of the next value without consuming it.
+   * 
+   * @return the content length of the next value, >= 0, or -1 in case the next
+   *         value has an indefinite length.
+   * @throws EOFException
+   *           in case no value follows;
+   * @throws IOException
+   *           in case of an invalid length or I/O problems.
+   * @see #peekIdentifier()
+   */
+  public int peekLength() throws IOException
+  {
+    if ( peekIdentifier() == null )
+    {
+      throw new EOFException();
+    }
+
+    final int first = peekOctet( 1 );
+    if ( first < 0 )
+    {
+      throw new EOFException();
+    }
+    // Too many length octets are rejected by readLength()...
+    final int count = Math.min( ( first > 127 ) ? ( first & 0x7F ) : 0, 4 );
+    for ( int i = 0; i < count; i++ )
+    {
+      if ( peekOctet( 2 + i ) < 0 )
+      {
+        throw new EOFException();
+      }
+    }
+
+    // Parse the peeked octets, skipping the identifier...
+    this.lookaheadPos = 1;
+    try
+    {
+      return readLength();
+    }
+    finally
+    {
+      this.lookaheadPos = 0;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read() throws IOException
+  {
+    if ( this.lookaheadPos < this.lookaheadCount )
+    {
+      return ( int )( this.lookahead >>> ( 8 * this.lookaheadPos++ ) ) & 0xFF;
+    }
+    return super.read();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( ( this.lookaheadPos < this.lookaheadCount ) && ( aLength > 0 ) )
+    {
+      int count = 0;
+      while ( ( count < aLength ) && ( this.lookaheadPos < this.lookaheadCount ) )
+      {
+        aBuffer[aOffset + count++] = ( byte )read();
+      }
+      return count;
+    }
+    return super.read( aBuffer, aOffset, aLength );
+  }
+
+  /**
+   * Reads the next value, of any type, from the input stream and returns it as
+   * lazily decoded {@link BerNode}.
+   * <p>
+   * The encoded value is read as a whole into a single buffer, which is
+   * shared by the returned node and all its descendants. Nothing of the value
+   * is decoded up front: its children are parsed, and its content is decoded,
+   * only when they are accessed. The decoding limits of this stream apply to
+   * the encoded value as a whole.
+   * </p>
+   * 
+   * @return the value as {@link BerNode}, or <code>null</code> if an
+   *         end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors or invalid values.
+   */
+  public BerNode readAny() throws IOException
+  {
+    final AsnIdentifier id = readIdentifier();
+    if ( id == null )
+    {
+      return null;
+    }
+
+    final byte[] encoded;
+    final int length = readLength();
+    if ( length == INDEFINITE_LENGTH )
+    {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      copyIndefiniteValue( out, id, this.depth );
+      encoded = out.toByteArray();
+    }
+    else
+    {
+      checkLength( length );
+      allocate( length );
+
+      // Read the content directly behind its (re-encoded) header...
+      final int headerLength = 1 + getLengthLength( length );
+      encoded = new byte[headerLength + length];
+      encodeHeader( encoded, 0, id.getTag(), length );
+      readFully( encoded, headerLength, length );
+    }
+    return BerNode.parse( encoded );
+  }
+
   /**
    * Reads a ASN.1 bitstring from the input stream and returns its value as byte
    * array.
@@ -159,48 +410,148 @@ public class BerInputStream extends FilterInputStream
    */
   public BigInteger readBitString() throws IOException
   {
-    final BerValue v = readBerValue( BIT_STRING );
+    return readBitString( AsnIdentifier.valueOf( BIT_STRING.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 bitstring from the input stream and returns its value as byte
+   * array.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a byte array representing the bit stream, can be <code>null</code>
+   *         if an end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public BigInteger readBitString( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
     }
+    return convertToBigInteger( v );
+  }
 
-    if ( v.hasByteContent )
+  /**
+   * Reads a ASN.1 bitstring from the input stream and returns its value as
+   * bit set, in which bit <em>n</em> denotes bit <em>n</em> of the bit string
+   * (the most significant bit of the first octet being bit 0), as is used for
+   * named bits.
+   * 
+   * @return a bit set, can be <code>null</code> if an end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public BitSet readBitStringAsBitSet() throws IOException
+  {
+    return readBitStringAsBitSet( AsnIdentifier.valueOf( BIT_STRING.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 bitstring from the input stream and returns its value as
+   * bit set, in which bit <em>n</em> denotes bit <em>n</em> of the bit string
+   * (the most significant bit of the first octet being bit 0), as is used for
+   * named bits.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a bit set, can be <code>null</code> if an end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public BitSet readBitStringAsBitSet( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
+    if ( v == null )
     {
-      return convertToBigInteger( v.content );
+      return null;
     }
-    else
-    {
-      byte[] buffer = new byte[v.length];
-      int offset = 1;
+    return convertToBitSet( v );
+  }
 
-      final int count = v.subValues.size();
-      for ( int i = 0; i < count; i++ )
-      {
-        BerValue tmpV = v.subValues.get( i );
-        byte ignoredBits = tmpV.content[0];
+  /**
+   * Reads a ASN.1 bitstring from the input stream and returns its raw content.
+   * 
+   * @return a byte array whose first element denotes the number of unused bits
+   *         in the last element, followed by the bits themselves, can be
+   *         <code>null</code> if an end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public byte[] readBitStringAsBytes() throws IOException
+  {
+    return readBitStringAsBytes( AsnIdentifier.valueOf( BIT_STRING.ordinal() ) );
+  }
 
-        if ( i == ( count - 1 ) )
-        {
-          // last element; take the ignoredBits...
-          buffer[0] = ignoredBits;
-        }
-        else
-        {
-          // non-last element; all ignoredBits should be zero!
-          if ( ignoredBits != 0 )
-          {
-            throw new IOException( "Invalid bit-string!" );
-          }
-        }
+  /**
+   * Reads a ASN.1 bitstring from the input stream and returns its raw content.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a byte array whose first element denotes the number of unused bits
+   *         in the last element, followed by the bits themselves, can be
+   *         <code>null</code> if an end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public byte[] readBitStringAsBytes( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
+    if ( v == null )
+    {
+      return null;
+    }
+    getUnusedBits( v );
+    return Arrays.copyOfRange( v.buffer, v.offset, v.offset + v.length );
+  }
 
-        int length = tmpV.length - 1;
-        System.arraycopy( tmpV.content, 1, buffer, offset, length );
-        offset += length;
-      }
+  /**
+   * Reads a ASN.1 bitstring of at most 64 bits from the input stream and
+   * returns its value as mask, in which bit <em>n</em> denotes bit <em>n</em>
+   * of the bit string (the most significant bit of the first octet being bit
+   * 0), as is used for named bits.
+   * 
+   * @return a Long value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors, or in case any bit beyond the first 64
+   *           bits is set.
+   */
+  public Long readBitStringAsLong() throws IOException
+  {
+    return readBitStringAsLong( AsnIdentifier.valueOf( BIT_STRING.ordinal() ) );
+  }
 
-      return convertToBigInteger( Arrays.copyOf( buffer, offset ) );
+  /**
+   * Reads a ASN.1 bitstring of at most 64 bits from the input stream and
+   * returns its value as mask, in which bit <em>n</em> denotes bit <em>n</em>
+   * of the bit string (the most significant bit of the first octet being bit
+   * 0), as is used for named bits.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a Long value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors, or in case any bit beyond the first 64
+   *           bits is set.
+   */
+  public Long readBitStringAsLong( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
+    if ( v == null )
+    {
+      return null;
     }
+    return Long.valueOf( convertToLong( v ) );
   }
 
   /**
@@ -213,7 +564,23 @@ public class BerInputStream extends FilterInputStream
    */
   public Boolean readBoolean() throws IOException
   {
-    final BerValue v = readBerValue( BOOLEAN );
+    return readBoolean( AsnIdentifier.valueOf( BOOLEAN.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 boolean from the input stream and returns its value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a Boolean value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Boolean readBoolean( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -222,7 +589,48 @@ public class BerInputStream extends FilterInputStream
     {
       throw new IOException( "Invalid BOOLEAN encoding; should be primitive!" );
     }
-    return convertToBoolean( v.content );
+    return convertToBoolean( v );
+  }
+
+  /**
+   * Reads a constructed value with the given tag from the input stream and
+   * returns an input stream that allows one to read its content.
+   * <p>
+   * This method can be used to read explicitly tagged values, for example
+   * <tt>[0] EXPLICIT INTEGER</tt>, in which case the returned stream contains
+   * the integer value, or implicitly tagged sequences and sets, for example
+   * <tt>[APPLICATION 1] IMPLICIT SEQUENCE</tt>. The same restrictions as for
+   * {@link #readSequenceAsStream()} apply.
+   * </p>
+   * 
+   * @param aTag
+   *          the tag of the constructed value, cannot be <code>null</code>.
+   * @return a {@link BerInputStream} instance for the content of the value,
+   *         can only be <code>null</code> if end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public BerInputStream readConstructedAsStream( final AsnIdentifier aTag ) throws IOException
+  {
+    if ( aTag == null )
+    {
+      throw new IllegalArgumentException( "Tag cannot be null!" );
+    }
+
+    final AsnIdentifier id = readIdentifier();
+    if ( id == null )
+    {
+      return null;
+    }
+
+    validateTag( id, aTag );
+    if ( !id.isConstructed() )
+    {
+      throw new IOException( "Non-constructed value found for tag " + aTag + "?!" );
+    }
+    final int length = readLength();
+
+    return createNestedStream( length );
   }
 
   /**
@@ -235,7 +643,23 @@ public class BerInputStream extends FilterInputStream
    */
   public Integer readEnumeratedValue() throws IOException
   {
-    final BerValue v = readBerValue( ENUMERATED );
+    return readEnumeratedValue( AsnIdentifier.valueOf( ENUMERATED.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 enumerated value from the input stream and returns its value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return an integer representing the enumerated value, can only be
+   *         <code>null</code> if end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Integer readEnumeratedValue( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -244,7 +668,7 @@ public class BerInputStream extends FilterInputStream
     {
       throw new IOException( "Invalid ENUMERATED encoding; should be primitive!" );
     }
-    return convertToInteger( v.content );
+    return convertToInteger( v );
   }
 
   /**
@@ -262,7 +686,28 @@ public class BerInputStream extends FilterInputStream
    */
   public Calendar readGeneralizedTime() throws IOException
   {
-    final BerValue v = readBerValue( GENERALIZED_TIME );
+    return readGeneralizedTime( AsnIdentifier.valueOf( GENERALIZED_TIME.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 string representation of a generalized timestamp from the
+   * input stream and returns its value.
+   * <p>
+   * Only the following time representations is supported:
+   * <code>YYMMDDhhmmss.SSS'Z'</code>.
+   * </p>
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a UTC date value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Calendar readGeneralizedTime( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -281,7 +726,24 @@ public class BerInputStream extends FilterInputStream
    */
   public String readIA5String() throws IOException
   {
-    final BerValue v = readBerValue( IA5_STRING );
+    return readIA5String( AsnIdentifier.valueOf( IA5_STRING.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 IA5 (ASCII) encoded string from the input stream and returns
+   * its value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a IA5/ASCII encoded string value, can only be <code>null</code> if
+   *         end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public String readIA5String( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -299,7 +761,23 @@ public class BerInputStream extends FilterInputStream
    */
   public Integer readInt() throws IOException
   {
-    final BerValue v = readBerValue( INTEGER );
+    return readInt( AsnIdentifier.valueOf( INTEGER.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 integer from the input stream and returns its value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a integer value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Integer readInt( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -308,7 +786,7 @@ public class BerInputStream extends FilterInputStream
     {
       throw new IOException( "Invalid INTEGER encoding; should be primitive!" );
     }
-    return convertToInteger( v.content );
+    return convertToInteger( v );
   }
 
   /**
@@ -320,8 +798,27 @@ public class BerInputStream extends FilterInputStream
    */
   public Object readNull() throws IOException
   {
-    final BerValue v = readBerValue( NULL );
-    if ( ( v.content == null ) || ( v.content.length != 0 ) )
+    return readNull( AsnIdentifier.valueOf( NULL.ordinal() ) );
+  }
+
+  /**
+   * Reads a ANS.1 null-value from the input stream.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return always <code>null</code>.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Object readNull( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
+    if ( v == null )
+    {
+      return null;
+    }
+    if ( v.length != 0 )
     {
       throw new IOException( "Failed to read null: invalid content!" );
     }
@@ -342,7 +839,23 @@ public class BerInputStream extends FilterInputStream
    */
   public int[] readObjectIdentifier() throws IOException
   {
-    final BerValue v = readBerValue( OBJECT_ID );
+    return readObjectIdentifier( AsnIdentifier.valueOf( OBJECT_ID.ordinal() ) );
+  }
+
+  /**
+   * Reads a ANS.1 object identifier-value from the input stream.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return an array of values denoting the read object identifier, can only be
+   *         <code>null</code> if the end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public int[] readObjectIdentifier( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -352,10 +865,15 @@ public class BerInputStream extends FilterInputStream
       throw new IOException( "Invalid OBJECT_ID encoding; should be primitive!" );
     }
 
-    final List<Integer> subIDs = convertToIDs( v );
+    // Reserve one additional slot for the split first sub-identifier...
+    final int[] result = convertToIDs( v, 1 );
+    if ( result.length < 2 )
+    {
+      throw new IOException( "Invalid OBJECT_ID encoding; no sub-identifiers!" );
+    }
 
     // The first sub-identifier is calculated by means of: Z = (X*40)+Y...
-    int z = subIDs.get( 0 );
+    int z = result[1];
     int x = z / 40;
     int y = z % 40;
     // X = {0, 1, 2}; see X.690-0207, 8.19.4...
@@ -364,16 +882,8 @@ public class BerInputStream extends FilterInputStream
       y += ( x - 2 ) * 40;
       x = 2;
     }
-    // Overwrite the original value...
-    subIDs.set( 0, x );
-    // Insert the new sub identifier...
-    subIDs.add( 1, y );
-
-    int[] result = new int[subIDs.size()];
-    for ( int i = 0; i < result.length; i++ )
-    {
-      result[i] = subIDs.get( i ).intValue();
-    }
+    result[0] = x;
+    result[1] = y;
 
     return result;
   }
@@ -381,39 +891,58 @@ public class BerInputStream extends FilterInputStream
   /**
    * Reads a ASN.1 octet string from the input stream and returns its value.
    * 
-   * @return a byte-array value, can only be <code>null</code> if end-of-stream
-   *         is reached.
+   * @return a byte-array value, can only be <code>null</code> if end-of-stream
+   *         is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public byte[] readOctetString() throws IOException
+  {
+    return readOctetString( AsnIdentifier.valueOf( OCTET_STRING.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 octet string from the input stream and returns its value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a byte-array value, can only be <code>null</code> if end-of-stream
+   *         is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public byte[] readOctetString( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
+    if ( v == null )
+    {
+      return null;
+    }
+    return Arrays.copyOfRange( v.buffer, v.offset, v.offset + v.length );
+  }
+
+  /**
+   * Reads a ASN.1 printable string from the input stream and returns its value.
+   * <p>
+   * A printable string contains of the following characters:
+   * </p>
+   * 
+   * <pre>
+   * A, B, ..., Z
+   * a, b, ..., z
+   * 0, 1, ..., 9
+   * (space) ' ( ) + , - . / : = ?
+   * </pre>
+   * 
+   * @return a printable string value, can only be <code>null</code> if
+   *         end-of-stream is reached.
    * @throws IOException
    *           in case of I/O errors.
    */
-  public byte[] readOctetString() throws IOException
+  public String readPrintableString() throws IOException
   {
-    final BerValue v = readBerValue( OCTET_STRING );
-    if ( v == null )
-    {
-      return null;
-    }
-
-    if ( v.hasByteContent )
-    {
-      return v.content;
-    }
-    else
-    {
-      byte[] buffer = new byte[v.length];
-      int offset = 0;
-
-      final int count = v.subValues.size();
-      for ( int i = 0; i < count; i++ )
-      {
-        BerValue tmpV = v.subValues.get( i );
-        int length = tmpV.length;
-        System.arraycopy( tmpV.content, 0, buffer, offset, length );
-        offset += length;
-      }
-
-      return Arrays.copyOf( buffer, offset );
-    }
+    return readPrintableString( AsnIdentifier.valueOf( PRINTABLE_STRING.ordinal() ) );
   }
 
   /**
@@ -429,14 +958,17 @@ public class BerInputStream extends FilterInputStream
    * (space) ' ( ) + , - . / : = ?
    * </pre>
    * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
    * @return a printable string value, can only be <code>null</code> if
    *         end-of-stream is reached.
    * @throws IOException
    *           in case of I/O errors.
    */
-  public String readPrintableString() throws IOException
+  public String readPrintableString( final AsnIdentifier aTag ) throws IOException
   {
-    final BerValue v = readBerValue( PRINTABLE_STRING );
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -444,6 +976,42 @@ public class BerInputStream extends FilterInputStream
     return convertToString( v, "ASCII" );
   }
 
+  /**
+   * Reads a ASN.1 real value from the input stream. Both the binary and the
+   * decimal (ISO 6093) encodings are supported.
+   * 
+   * @return a Double value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Double readReal() throws IOException
+  {
+    return readReal( AsnIdentifier.valueOf( REAL.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 real value from the input stream. Both the binary and the
+   * decimal (ISO 6093) encodings are supported.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a Double value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Double readReal( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
+    if ( v == null )
+    {
+      return null;
+    }
+    return Double.valueOf( convertToReal( v ) );
+  }
+
   /**
    * Reads a ANS.1 relative object identifier-value from the input stream.
    * 
@@ -454,7 +1022,23 @@ public class BerInputStream extends FilterInputStream
    */
   public int[] readRelativeObjectIdentifier() throws IOException
   {
-    final BerValue v = readBerValue( RELATIVE_OID );
+    return readRelativeObjectIdentifier( AsnIdentifier.valueOf( RELATIVE_OID.ordinal() ) );
+  }
+
+  /**
+   * Reads a ANS.1 relative object identifier-value from the input stream.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return an array of values denoting the read relative object identifier,
+   *         can only be <code>null</code> if the end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public int[] readRelativeObjectIdentifier( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -464,15 +1048,7 @@ public class BerInputStream extends FilterInputStream
       throw new IOException( "Invalid RELATIVE_OID encoding; should be primitive!" );
     }
 
-    final List<Integer> subIDs = convertToIDs( v );
-
-    int[] result = new int[subIDs.size()];
-    for ( int i = 0; i < result.length; i++ )
-    {
-      result[i] = subIDs.get( i ).intValue();
-    }
-
-    return result;
+    return convertToIDs( v, 0 );
   }
 
   /**
@@ -482,7 +1058,8 @@ public class BerInputStream extends FilterInputStream
    * NOTE: the pointer in the underlying input stream will point to the first
    * sequence-item after this method has been called. This means that you
    * <b>must</b> first read the entire sequence, in order to read the item
-   * succeeding the sequence itself.
+   * succeeding the sequence itself. Both definite and indefinite length
+   * sequences are supported; the latter are read up to their end-of-contents.
    * </p>
    * 
    * @return a {@link BerInputStream} instance for the sequence' values, can
@@ -505,7 +1082,7 @@ public class BerInputStream extends FilterInputStream
     }
     final int length = readLength();
 
-    return new BerInputStream( new BoundInputStream( this, length ) );
+    return createNestedStream( length );
   }
 
   /**
@@ -538,7 +1115,7 @@ public class BerInputStream extends FilterInputStream
     }
     final int length = readLength();
 
-    return new BerInputStream( new BoundInputStream( this, length ) );
+    return createNestedStream( length );
   }
 
   /**
@@ -552,7 +1129,24 @@ public class BerInputStream extends FilterInputStream
    */
   public String readString() throws IOException
   {
-    final BerValue v = readBerValue( OCTET_STRING );
+    return readString( AsnIdentifier.valueOf( OCTET_STRING.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 ISO8859-1 encoded string from the input stream and returns
+   * its value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a ISO8859-1 encoded string value, can only be <code>null</code> if
+   *         end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public String readString( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -575,7 +1169,28 @@ public class BerInputStream extends FilterInputStream
    */
   public Calendar readUtcTime() throws IOException
   {
-    final BerValue v = readBerValue( UTC_TIME );
+    return readUtcTime( AsnIdentifier.valueOf( UTC_TIME.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 string representation of a UTC timestamp from the input
+   * stream and returns its value.
+   * <p>
+   * Only the following time representations is supported:
+   * <code>YYMMDDhhmmss'Z'</code>.
+   * </p>
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a UTC date value, can only be <code>null</code> if end-of-stream is
+   *         reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public Calendar readUtcTime( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -594,7 +1209,24 @@ public class BerInputStream extends FilterInputStream
    */
   public String readUTF8String() throws IOException
   {
-    final BerValue v = readBerValue( UTF8_STRING );
+    return readUTF8String( AsnIdentifier.valueOf( UTF8_STRING.ordinal() ) );
+  }
+
+  /**
+   * Reads a ASN.1 UTF-8 encoded string from the input stream and returns its
+   * value.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @return a UTF-8 encoded string value, can only be <code>null</code> if
+   *         end-of-stream is reached.
+   * @throws IOException
+   *           in case of I/O errors.
+   */
+  public String readUTF8String( final AsnIdentifier aTag ) throws IOException
+  {
+    final BerValue v = readBerValue( aTag );
     if ( v == null )
     {
       return null;
@@ -603,26 +1235,93 @@ public class BerInputStream extends FilterInputStream
   }
 
   /**
-   * Converts a given byte array to a {@link BigInteger} value.
+   * Not supported, see {@link #markSupported()}.
+   * 
+   * @throws IOException
+   *           always.
+   */
+  @Override
+  public void reset() throws IOException
+  {
+    throw new IOException( "Mark/reset not supported!" );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long skip( final long aCount ) throws IOException
+  {
+    long count = 0L;
+    while ( ( count < aCount ) && ( this.lookaheadPos < this.lookaheadCount ) )
+    {
+      read();
+      count++;
+    }
+    return count + super.skip( aCount - count );
+  }
+
+  /**
+   * Accounts for the allocation of the given number of bytes for the current
+   * top-level value.
+   * 
+   * @param aLength
+   *          the number of bytes to allocate, >= 0.
+   * @throws IOException
+   *           in case the allocation exceeds the maximum allocation.
+   */
+  private void allocate( final int aLength ) throws IOException
+  {
+    final long allocated = this.counter.allocated + aLength;
+    if ( allocated > this.limits.getMaxAllocation() )
+    {
+      throw new IOException( "Allocation limit exceeded! Only " + this.limits.getMaxAllocation()
+          + " bytes are allowed per value!" );
+    }
+    this.counter.allocated = allocated;
+  }
+
+  /**
+   * Verifies the given content length against the maximum length and, for
+   * nested values, the remaining length of the enclosing value.
+   * 
+   * @param aLength
+   *          the content length to verify, >= 0.
+   * @throws IOException
+   *           in case the given length is not acceptable.
+   */
+  private void checkLength( final int aLength ) throws IOException
+  {
+    if ( aLength > this.limits.getMaxLength() )
+    {
+      throw new IOException( "Length limit exceeded! Got " + aLength + " bytes, only " + this.limits.getMaxLength()
+          + " bytes are allowed!" );
+    }
+    if ( ( this.in instanceof BoundInputStream ) && ( aLength > this.in.available() ) )
+    {
+      throw new IOException( "Invalid length: " + aLength + " bytes exceeds enclosing value!" );
+    }
+  }
+
+  /**
+   * Converts a given {@link BerValue} to a {@link BigInteger} value.
    * 
-   * @param aContent
-   *          the byte array to convert, cannot be <code>null</code>.
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>.
    * @return the {@link BigInteger} value.
    * @throws IOException
-   *           in case the given byte array was <code>null</code> or not of the
-   *           correct length.
+   *           in case the given value has no content or an invalid number of
+   *           ignored bits.
    */
-  private BigInteger convertToBigInteger( final byte[] aBytes ) throws IOException
+  private BigInteger convertToBigInteger( final BerValue aBerValue ) throws IOException
   {
-    // byte 0 == ignoredBits for this part...
-    int ignoredBits = ( aBytes[0] & 0xFF );
-    if ( ignoredBits >= 8 )
+    final int ignoredBits = getUnusedBits( aBerValue );
+    if ( aBerValue.length == 1 )
     {
-      throw new IOException( "Invalid bit-string: ignored bits should be less than 8!" );
+      return BigInteger.ZERO;
     }
 
-    byte[] rawData = new byte[aBytes.length - 1];
-    System.arraycopy( aBytes, 1, rawData, 0, rawData.length );
+    byte[] rawData = Arrays.copyOfRange( aBerValue.buffer, aBerValue.offset + 1, aBerValue.offset + aBerValue.length );
 
     BigInteger bigInteger = new BigInteger( rawData );
     if ( ignoredBits > 0 )
@@ -634,41 +1333,83 @@ public class BerInputStream extends FilterInputStream
   }
 
   /**
-   * Converts a given byte array to a boolean value.
+   * Converts a given {@link BerValue} to a {@link BitSet} value, directly from
+   * its content.
+   * 
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>.
+   * @return the {@link BitSet} value.
+   * @throws IOException
+   *           in case the given value has no content or an invalid number of
+   *           ignored bits.
+   */
+  private BitSet convertToBitSet( final BerValue aBerValue ) throws IOException
+  {
+    final int unusedBits = getUnusedBits( aBerValue );
+    final int bitLength = ( ( aBerValue.length - 1 ) * 8 ) - unusedBits;
+
+    final BitSet result = new BitSet( bitLength );
+    final byte[] buf = aBerValue.buffer;
+    final int start = aBerValue.offset + 1;
+    for ( int i = 0; i < bitLength; i++ )
+    {
+      if ( ( buf[start + ( i >> 3 )] & ( 0x80 >>> ( i & 7 ) ) ) != 0 )
+      {
+        result.set( i );
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts a given {@link BerValue} to a boolean value.
    * 
-   * @param aContent
-   *          the byte array to convert, cannot be <code>null</code>.
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>.
    * @return the boolean value.
    * @throws IOException
-   *           in case the given byte array was <code>null</code> or not of
-   *           length 1.
+   *           in case the given value was not of length 1.
    */
-  private boolean convertToBoolean( final byte[] aContent ) throws IOException
+  private boolean convertToBoolean( final BerValue aBerValue ) throws IOException
   {
-    if ( ( aContent == null ) || ( aContent.length != 1 ) )
+    if ( aBerValue.length != 1 )
     {
       throw new IOException( "Failed to instantiate boolean: no/invalid content!" );
     }
-    return aContent[0] == ( byte )0xFF;
+    return aBerValue.buffer[aBerValue.offset] == ( byte )0xFF;
   }
 
   /**
-   * Converts a given byte array to a integer value.
+   * Converts a given {@link BerValue} to an array of sub-identifiers.
    * 
-   * @param aContent
-   *          the byte array to convert, cannot be <code>null</code>.
-   * @return the integer value.
-   * @throws IOException
-   *           in case the given byte array was <code>null</code> or not of an
-   *           expected length (1..4).
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>;
+   * @param aReserved
+   *          the number of leading slots to reserve in the result, >= 0.
+   * @return the sub-identifiers, starting at index <tt>aReserved</tt>.
    */
-  private List<Integer> convertToIDs( final BerValue aBerValue )
+  private int[] convertToIDs( final BerValue aBerValue, final int aReserved )
   {
-    List<Integer> subIDs = new ArrayList<Integer>();
+    final byte[] buffer = aBerValue.buffer;
+    final int end = aBerValue.offset + aBerValue.length;
+
+    // Each sub-identifier ends with an octet whose MSB is cleared...
+    int count = 0;
+    for ( int i = aBerValue.offset; i < end; i++ )
+    {
+      if ( ( buffer[i] & 0x80 ) != 0x80 )
+      {
+        count++;
+      }
+    }
+
+    int[] result = new int[aReserved + count];
+    int idx = aReserved;
 
     int value = 0;
-    for ( byte b : aBerValue.content )
+    for ( int i = aBerValue.offset; i < end; i++ )
     {
+      final byte b = buffer[i];
       // only the first 7 bits are relevant..
       value <<= 7;
       value |= ( b & 0x7F );
@@ -676,36 +1417,38 @@ public class BerInputStream extends FilterInputStream
       if ( ( b & 0x80 ) != 0x80 )
       {
         // last octet found...
-        subIDs.add( value );
+        result[idx++] = value;
         value = 0;
       }
     }
 
-    return subIDs;
+    return result;
   }
 
   /**
-   * Converts a given byte array to a integer value.
+   * Converts a given {@link BerValue} to a integer value.
    * 
-   * @param aContent
-   *          the byte array to convert, cannot be <code>null</code>.
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>.
    * @return the integer value.
    * @throws IOException
-   *           in case the given byte array was <code>null</code> or not of an
-   *           expected length (1..4).
+   *           in case the given value was not of an expected length (1..4).
    */
-  private int convertToInteger( final byte[] aContent ) throws IOException
+  private int convertToInteger( final BerValue aBerValue ) throws IOException
   {
-    if ( ( aContent == null ) || ( ( aContent.length <= 0 ) || ( aContent.length > 4 ) ) )
+    if ( ( aBerValue.length <= 0 ) || ( aBerValue.length > 4 ) )
     {
       throw new IOException( "Failed to instantiate integer: no/invalid content!" );
     }
 
-    int result = aContent[0];
-    for ( int i = 1; i < aContent.length; i++ )
+    final byte[] buffer = aBerValue.buffer;
+    final int end = aBerValue.offset + aBerValue.length;
+
+    int result = buffer[aBerValue.offset];
+    for ( int i = aBerValue.offset + 1; i < end; i++ )
     {
       result <<= 8;
-      result |= ( aContent[i] & 0xFF );
+      result |= ( buffer[i] & 0xFF );
     }
 
     return result;
@@ -736,28 +1479,181 @@ public class BerInputStream extends FilterInputStream
     }
     if ( timeStr.endsWith( "Z" ) )
     {
-      format.append( "'Z'" );
+      format.append( "'Z'" );
+    }
+    else
+    {
+      format.append( "Z" );
+    }
+
+    final SimpleDateFormat parser = new SimpleDateFormat( format.toString() );
+
+    final Calendar result = Calendar.getInstance();
+
+    ParsePosition pos = new ParsePosition( 0 );
+    Date timestamp = parser.parse( timeStr, pos );
+
+    if ( ( timestamp == null ) || ( pos.getErrorIndex() >= 0 ) )
+    {
+      throw new IOException( "Invalid UTC timestamp: " + timeStr );
+    }
+
+    result.setTime( timestamp );
+
+    return result;
+  }
+
+  /**
+   * Converts a given {@link BerValue} to a bit mask, directly from its content.
+   * 
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>.
+   * @return the bit mask.
+   * @throws IOException
+   *           in case the given value has no content, an invalid number of
+   *           ignored bits, or has any bit beyond the first 64 bits set.
+   */
+  private long convertToLong( final BerValue aBerValue ) throws IOException
+  {
+    final int unusedBits = getUnusedBits( aBerValue );
+
+    final byte[] buf = aBerValue.buffer;
+    final int start = aBerValue.offset + 1;
+    final int count = aBerValue.length - 1;
+
+    long result = 0L;
+    for ( int i = 0; i < count; i++ )
+    {
+      int b = buf[start + i] & 0xFF;
+      if ( i == ( count - 1 ) )
+      {
+        b &= ( 0xFF << unusedBits );
+      }
+      if ( i >= 8 )
+      {
+        if ( b != 0 )
+        {
+          throw new IOException( "Invalid bit-string: more than 64 bits!" );
+        }
+        continue;
+      }
+      // The first bit of each octet is its most significant bit...
+      result |= ( ( long )( Integer.reverse( b ) >>> 24 ) ) << ( i * 8 );
+    }
+    return result;
+  }
+
+  /**
+   * Converts a given {@link BerValue} to a real value, directly from its
+   * content in case of a binary encoding.
+   * 
+   * @param aBerValue
+   *          the {@link BerValue} to convert, cannot be <code>null</code>.
+   * @return the real value.
+   * @throws IOException
+   *           in case the given value is not a valid real value.
+   */
+  private double convertToReal( final BerValue aBerValue ) throws IOException
+  {
+    if ( aBerValue.length == 0 )
+    {
+      return 0.0;
+    }
+
+    final byte[] buf = aBerValue.buffer;
+    final int end = aBerValue.offset + aBerValue.length;
+    int pos = aBerValue.offset;
+    final int first = buf[pos++] & 0xFF;
+
+    if ( ( first & 0x80 ) != 0 )
+    {
+      // Binary encoding: S x N x 2^F x B^E...
+      final int base = ( first >> 4 ) & 0x03;
+      if ( base == 3 )
+      {
+        throw new IOException( "Invalid real: reserved base!" );
+      }
+
+      int exponentLength = ( first & 0x03 ) + 1;
+      if ( ( exponentLength == 4 ) && ( pos < end ) )
+      {
+        exponentLength = buf[pos++] & 0xFF;
+      }
+      if ( ( exponentLength < 1 ) || ( exponentLength > 4 ) || ( ( pos + exponentLength ) > end ) )
+      {
+        throw new IOException( "Invalid real: invalid exponent length!" );
+      }
+
+      long exponent = buf[pos++];
+      for ( int i = 1; i < exponentLength; i++ )
+      {
+        exponent = ( exponent << 8 ) | ( buf[pos++] & 0xFF );
+      }
+
+      long mantissa = 0L;
+      long scale = ( first >> 2 ) & 0x03;
+      for ( ; pos < end; pos++ )
+      {
+        if ( ( mantissa >>> 55 ) != 0 )
+        {
+          // More bits than a double can hold; keep a sticky bit for rounding...
+          for ( int i = pos; i < end; i++ )
+          {
+            if ( buf[i] != 0 )
+            {
+              mantissa |= 1L;
+              break;
+            }
+          }
+          scale += ( end - pos ) * 8L;
+          break;
+        }
+        mantissa = ( mantissa << 8 ) | ( buf[pos] & 0xFF );
+      }
+
+      scale += exponent * ( ( base == 0 ) ? 1 : ( ( base == 1 ) ? 3 : 4 ) );
+      // Beyond these bounds, the result is either infinite or zero anyway...
+      scale = Math.max( -2200L, Math.min( 2200L, scale ) );
+
+      final double result = Math.scalb( ( double )mantissa, ( int )scale );
+      return ( ( first & 0x40 ) != 0 ) ? -result : result;
+    }
+
+    if ( ( first & 0x40 ) != 0 )
+    {
+      if ( aBerValue.length != 1 )
+      {
+        throw new IOException( "Invalid real: special value should be a single octet!" );
+      }
+      switch ( first )
+      {
+        case REAL_PLUS_INFINITY:
+          return Double.POSITIVE_INFINITY;
+        case REAL_MINUS_INFINITY:
+          return Double.NEGATIVE_INFINITY;
+        case REAL_NAN:
+          return Double.NaN;
+        case REAL_MINUS_ZERO:
+          return -0.0;
+        default:
+          throw new IOException( "Invalid real: unknown special value " + first + "!" );
+      }
+    }
+
+    // Decimal encoding, in NR1, NR2 or NR3 form...
+    if ( ( first < 1 ) || ( first > 3 ) )
+    {
+      throw new IOException( "Invalid real: unknown decimal form " + first + "!" );
     }
-    else
+    final String value = new String( buf, pos, end - pos, "ASCII" ).trim().replace( ',', '.' );
+    try
     {
-      format.append( "Z" );
+      return Double.parseDouble( value );
     }
-
-    final SimpleDateFormat parser = new SimpleDateFormat( format.toString() );
-
-    final Calendar result = Calendar.getInstance();
-
-    ParsePosition pos = new ParsePosition( 0 );
-    Date timestamp = parser.parse( timeStr, pos );
-
-    if ( ( timestamp == null ) || ( pos.getErrorIndex() >= 0 ) )
+    catch ( NumberFormatException exception )
     {
-      throw new IOException( "Invalid UTC timestamp: " + timeStr );
+      throw new IOException( "Invalid real: " + value );
     }
-
-    result.setTime( timestamp );
-
-    return result;
   }
 
   /**
@@ -775,20 +1671,7 @@ public class BerInputStream extends FilterInputStream
    */
   private String convertToString( final BerValue aBerValue, final String aEncoding ) throws IOException
   {
-    if ( aBerValue.hasByteContent )
-    {
-      return new String( aBerValue.content, aEncoding );
-    }
-    else
-    {
-      StringBuilder sb = new StringBuilder();
-      for ( BerValue tmpV : aBerValue.subValues )
-      {
-        sb.append( new String( tmpV.content, aEncoding ) );
-      }
-
-      return sb.toString();
-    }
+    return new String( aBerValue.buffer, aBerValue.offset, aBerValue.length, aEncoding );
   }
 
   /**
@@ -844,8 +1727,176 @@ public class BerInputStream extends FilterInputStream
     return result;
   }
 
+  /**
+   * Copies an indefinite length value, whose identifier and length are
+   * already read, including all its nested values, to the given output
+   * stream.
+   * 
+   * @param aOut
+   *          the output stream to copy the value to;
+   * @param aIdentifier
+   *          the identifier of the value;
+   * @param aDepth
+   *          the nesting depth of the value.
+   * @throws IOException
+   *           in case of I/O errors or invalid values.
+   */
+  private void copyIndefiniteValue( final ByteArrayOutputStream aOut, final AsnIdentifier aIdentifier,
+      final int aDepth ) throws IOException
+  {
+    if ( !aIdentifier.isConstructed() )
+    {
+      throw new IOException( "Invalid length: primitive value cannot have indefinite length!" );
+    }
+    if ( aDepth >= this.limits.getMaxDepth() )
+    {
+      throw new IOException( "Nesting limit exceeded! Only " + this.limits.getMaxDepth() + " levels are allowed!" );
+    }
+
+    aOut.write( aIdentifier.getTag() );
+    aOut.write( 0x80 );
+
+    final byte[] header = new byte[6];
+    byte[] chunk = null;
+    while ( true )
+    {
+      final int idOctet = read();
+      if ( idOctet < 0 )
+      {
+        throw new IOException( "Missing end-of-contents!" );
+      }
+      if ( idOctet == 0x00 )
+      {
+        if ( read() != 0x00 )
+        {
+          throw new IOException( "Invalid end-of-contents!" );
+        }
+        break;
+      }
+
+      final AsnIdentifier id = AsnIdentifier.valueOf( idOctet );
+      final int length = readLength();
+      if ( length == INDEFINITE_LENGTH )
+      {
+        copyIndefiniteValue( aOut, id, aDepth + 1 );
+        continue;
+      }
+
+      checkLength( length );
+      allocate( length );
+
+      aOut.write( header, 0, encodeHeader( header, 0, idOctet, length ) );
+      if ( chunk == null )
+      {
+        chunk = new byte[4096];
+      }
+      for ( int remaining = length; remaining > 0; )
+      {
+        final int count = Math.min( remaining, chunk.length );
+        readFully( chunk, 0, count );
+        aOut.write( chunk, 0, count );
+        remaining -= count;
+      }
+    }
+
+    aOut.write( 0x00 );
+    aOut.write( 0x00 );
+  }
+
+  /**
+   * Creates a nested {@link BerInputStream} for a constructed value of the
+   * given length.
+   * 
+   * @param aLength
+   *          the content length of the constructed value, >= 0, or
+   *          {@link #INDEFINITE_LENGTH}.
+   * @return a new {@link BerInputStream}, never <code>null</code>.
+   * @throws IOException
+   *           in case the nesting depth or length is not acceptable.
+   */
+  private BerInputStream createNestedStream( final int aLength ) throws IOException
+  {
+    if ( this.depth >= this.limits.getMaxDepth() )
+    {
+      throw new IOException( "Nesting limit exceeded! Only " + this.limits.getMaxDepth() + " levels are allowed!" );
+    }
+    if ( aLength == INDEFINITE_LENGTH )
+    {
+      // Read until the end-of-contents is found...
+      return new BerInputStream( this, this.limits, this.arena, this.depth + 1, this.counter, true );
+    }
+    if ( ( this.in instanceof BoundInputStream ) && ( aLength > this.in.available() ) )
+    {
+      throw new IOException( "Invalid length: " + aLength + " bytes exceeds enclosing value!" );
+    }
+    return new BerInputStream( new BoundInputStream( this, aLength ), this.limits, this.arena, this.depth + 1,
+        this.counter, false );
+  }
+
+  /**
+   * Returns the number of unused bits of a given bit string value.
+   * 
+   * @param aBerValue
+   *          the {@link BerValue} to get the unused bits for, cannot be
+   *          <code>null</code>.
+   * @return the number of unused bits in the last content octet, 0..7.
+   * @throws IOException
+   *           in case the given value has no content or an invalid number of
+   *           ignored bits.
+   */
+  private int getUnusedBits( final BerValue aBerValue ) throws IOException
+  {
+    if ( aBerValue.length < 1 )
+    {
+      throw new IOException( "Invalid bit-string: no content!" );
+    }
+
+    // byte 0 == ignoredBits for this part...
+    final int ignoredBits = ( aBerValue.buffer[aBerValue.offset] & 0xFF );
+    if ( ignoredBits >= 8 )
+    {
+      throw new IOException( "Invalid bit-string: ignored bits should be less than 8!" );
+    }
+    return ignoredBits;
+  }
+
+  /**
+   * Peeks the octet at the given position, relative to the current read
+   * position, without consuming it.
+   * 
+   * @param aIndex
+   *          the position of the octet to peek, 0..7.
+   * @return the peeked octet, or -1 in case the end of the stream is reached.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private int peekOctet( final int aIndex ) throws IOException
+  {
+    if ( this.lookaheadPos > 0 )
+    {
+      // Discard the octets that are read already...
+      this.lookahead = ( this.lookaheadPos < 8 ) ? ( this.lookahead >>> ( 8 * this.lookaheadPos ) ) : 0L;
+      this.lookaheadCount -= this.lookaheadPos;
+      this.lookaheadPos = 0;
+    }
+    while ( this.lookaheadCount <= aIndex )
+    {
+      final int octet = super.read();
+      if ( octet < 0 )
+      {
+        return -1;
+      }
+      this.lookahead |= ( ( long )octet << ( 8 * this.lookaheadCount++ ) );
+    }
+    return ( int )( this.lookahead >>> ( 8 * aIndex ) ) & 0xFF;
+  }
+
   /**
    * Reads the next bytes and interprets it as an {@link BerValue}.
+   * <p>
+   * The content of the returned value is only valid until the next value is
+   * read, as the arena is reset for each value.
+   * </p>
    * 
    * @return the read {@link BerValue}, never <code>null</code>.
    * @throws IOException
@@ -861,131 +1912,152 @@ public class BerInputStream extends FilterInputStream
     }
 
     final int length = readLength();
-
-    if ( id.isConstructed() )
+    if ( ( length == INDEFINITE_LENGTH ) && !id.isConstructed() )
     {
-      // Constructed form; either definite-length or indefinite-length...
-      if ( length != 0x80 )
-      {
-        // Definite-length...
-        return new BerValue( id, length, readContentAsBerValues( length ) );
-      }
-
-      // Indefinite length value...
-      return new BerValue( id, -1 );
+      throw new IOException( "Invalid length: primitive value cannot have indefinite length!" );
     }
 
-    // Primitive form...
-    return new BerValue( id, length, readContentData( length ) );
+    this.arena.reset();
+
+    final BerValue result = this.value;
+    result.id = id;
+    if ( length == INDEFINITE_LENGTH )
+    {
+      // Constructed form; read all segments up to the end-of-contents...
+      result.offset = readSegments( id.getType() == BIT_STRING );
+      result.length = this.arena.getSize() - result.offset;
+    }
+    else if ( id.isConstructed() )
+    {
+      // Constructed form; merge all segments into a single one...
+      result.offset = readContent( length );
+      result.length = readSegments( result.offset, length, id.getType() == BIT_STRING );
+    }
+    else
+    {
+      // Primitive form...
+      result.offset = readContent( length );
+      result.length = length;
+    }
+    result.buffer = this.arena.getBuffer();
+    return result;
   }
 
   /**
    * Reads the next bytes and interprets it as an {@link BerValue}.
    * 
-   * @param aExpectedType
-   *          the expected type, cannot be <code>null</code>.
+   * @param aExpectedTag
+   *          the expected tag, cannot be <code>null</code>.
    * @return the read {@link BerValue}, never <code>null</code>.
    * @throws IOException
    *           in case of I/O errors.
    */
-  private BerValue readBerValue( final AsnType aExpectedType ) throws IOException
+  private BerValue readBerValue( final AsnIdentifier aExpectedTag ) throws IOException
   {
+    if ( aExpectedTag == null )
+    {
+      throw new IllegalArgumentException( "Tag cannot be null!" );
+    }
+
     final BerValue result = readBerValue();
     if ( result != null )
     {
-      validateType( result.id, aExpectedType );
+      validateTag( result.id, aExpectedTag );
     }
     return result;
   }
 
   /**
-   * Reads the next N bytes from the input stream and before returning it,
-   * breaks it apart on all found {@link BerValue}s in those bytes.
+   * Reads the next N bytes from the input stream into the arena.
    * 
    * @param aLength
    *          the number of bytes to read, >= 0.
+   * @return the offset of the read bytes in the arena.
    * @throws IOException
    *           in case of I/O problems, such as end of stream.
    */
-  private List<BerValue> readContentAsBerValues( final int aLength ) throws IOException
+  private int readContent( final int aLength ) throws IOException
   {
-    byte[] scratch = new byte[aLength];
-    final int readCount = read( scratch );
-    if ( readCount != aLength )
-    {
-      throw new IOException( "Insufficient data! Expected " + aLength + " bytes, got only " + readCount + " bytes!" );
-    }
-
-    List<BerValue> result = new ArrayList<BerValue>();
-    for ( int i = 0; i < scratch.length; )
-    {
-      AsnIdentifier id = new AsnIdentifier( scratch[i++] );
-
-      int length = scratch[i++];
-      if ( length > 127 )
-      {
-        // long form length...
-        final int count = ( length & 0x7F );
-        final byte[] buf = new byte[count];
-        System.arraycopy( scratch, i, buf, 0, count );
-        length = convertToInteger( buf );
-      }
-
-      byte[] content = new byte[length];
-      System.arraycopy( scratch, i, content, 0, content.length );
-      i += length;
-
-      result.add( new BerValue( id, length, content ) );
-    }
+    checkLength( aLength );
+    allocate( aLength );
 
+    final int result = this.arena.allocate( aLength );
+    readFully( this.arena.getBuffer(), result, aLength );
     return result;
   }
 
   /**
-   * Reads the next N bytes from the input stream and returns it as byte array.
+   * Reads exactly N bytes from the input stream into the given buffer.
    * 
+   * @param aBuffer
+   *          the buffer to read into;
+   * @param aOffset
+   *          the offset in the buffer to start reading into;
    * @param aLength
    *          the number of bytes to read, >= 0.
    * @throws IOException
    *           in case of I/O problems, such as end of stream.
    */
-  private byte[] readContentData( final int aLength ) throws IOException
+  private void readFully( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
   {
-    byte[] result = new byte[aLength];
-    if ( aLength > 0 )
+    int offset = 0;
+    while ( offset < aLength )
     {
-      final int readCount = read( result );
-      if ( readCount != aLength )
+      final int readCount = read( aBuffer, aOffset + offset, aLength - offset );
+      if ( readCount < 0 )
       {
-        throw new IOException( "Insufficient data! Expected " + aLength + " bytes, got only " + readCount + " bytes!" );
+        throw new IOException( "Insufficient data! Expected " + aLength + " bytes, got only " + offset + " bytes!" );
       }
+      offset += readCount;
     }
-    return result;
   }
 
   /**
    * Reads the next byte from the input stream and returns it
    * {@link AsnIdentifier}.
    * 
-   * @return the ASN.1 identifier, never <code>null</code>.
+   * @return the ASN.1 identifier, or <code>null</code> in case the end of the
+   *         stream, or the end-of-contents of an indefinite length value, is
+   *         reached.
    * @throws IOException
-   *           in case of I/O problems, such as end of stream.
+   *           in case of I/O problems.
    */
   private AsnIdentifier readIdentifier() throws IOException
   {
+    if ( this.endOfContents )
+    {
+      return null;
+    }
+
     final int idOctet = read();
     if ( idOctet < 0 )
     {
       return null;
     }
-    return new AsnIdentifier( idOctet );
+    if ( this.indefinite && ( idOctet == 0x00 ) )
+    {
+      // End-of-contents; should be followed by a zero length...
+      if ( read() != 0x00 )
+      {
+        throw new IOException( "Invalid end-of-contents!" );
+      }
+      this.endOfContents = true;
+      return null;
+    }
+    if ( this.depth == 0 )
+    {
+      // Start of a new top-level value...
+      this.counter.allocated = 0L;
+    }
+    return AsnIdentifier.valueOf( idOctet );
   }
 
   /**
    * Reads the next (and possible more) byte(s) from the input stream and
    * returns it as content length.
    * 
-   * @return the length of the succeeding content, >= 0.
+   * @return the length of the succeeding content, >= 0, or
+   *         {@link #INDEFINITE_LENGTH} in case of an indefinite length.
    * @throws IOException
    *           in case of I/O errors.
    */
@@ -1000,14 +2072,229 @@ public class BerInputStream extends FilterInputStream
     {
       // long form length...
       final int count = ( length & 0x7F );
-      final byte[] buf = new byte[count];
-      read( buf );
-      return convertToInteger( buf );
+      if ( count == 0 )
+      {
+        return INDEFINITE_LENGTH;
+      }
+      if ( count > 4 )
+      {
+        throw new IOException( "Invalid length: too many length octets (" + count + ")!" );
+      }
+
+      length = 0;
+      for ( int i = 0; i < count; i++ )
+      {
+        final int b = read();
+        if ( b < 0 )
+        {
+          throw new EOFException();
+        }
+        length = ( length << 8 ) | b;
+      }
+      if ( length < 0 )
+      {
+        throw new IOException( "Invalid length: " + ( length & 0xFFFFFFFFL ) + " bytes!" );
+      }
     }
     // Default: short form length...
     return length;
   }
 
+  /**
+   * Reads the segments of an indefinite length constructed string, up to its
+   * end-of-contents, into a single contiguous value in the arena.
+   * 
+   * @param aBitString
+   *          <code>true</code> if the segments are bit-string segments, each
+   *          starting with its number of ignored bits, <code>false</code>
+   *          otherwise.
+   * @return the offset of the merged content in the arena; its length is the
+   *         remainder of the arena.
+   * @throws IOException
+   *           in case of invalid segments or I/O problems.
+   */
+  private int readSegments( final boolean aBitString ) throws IOException
+  {
+    final int maxSegmentCount = this.limits.getMaxSegmentCount();
+    final int maxLength = this.limits.getMaxLength();
+
+    final int result = this.arena.allocate( aBitString ? 1 : 0 );
+    int ignoredBits = 0;
+    int segmentCount = 0;
+
+    for ( ;; )
+    {
+      final int idOctet = read();
+      if ( idOctet < 0 )
+      {
+        throw new EOFException();
+      }
+      final int length = readLength();
+      if ( idOctet == 0x00 )
+      {
+        if ( length != 0 )
+        {
+          throw new IOException( "Invalid end-of-contents!" );
+        }
+        break;
+      }
+
+      if ( segmentCount++ >= maxSegmentCount )
+      {
+        throw new IOException( "Too many segments! Only " + maxSegmentCount + " segments are allowed!" );
+      }
+      if ( ( ( idOctet & 0x20 ) != 0 ) || ( length == INDEFINITE_LENGTH ) )
+      {
+        throw new IOException( "Invalid segment: nested constructed segments not supported!" );
+      }
+
+      int contentLength = length;
+      if ( aBitString )
+      {
+        // non-last segment; all ignoredBits should be zero!
+        if ( ( contentLength < 1 ) || ( ignoredBits != 0 ) )
+        {
+          throw new IOException( "Invalid bit-string!" );
+        }
+        ignoredBits = read();
+        if ( ignoredBits < 0 )
+        {
+          throw new EOFException();
+        }
+        contentLength--;
+      }
+
+      if ( ( ( long )this.arena.getSize() - result + contentLength ) > maxLength )
+      {
+        throw new IOException( "Length limit exceeded! Only " + maxLength + " bytes are allowed!" );
+      }
+      readContent( contentLength );
+    }
+
+    if ( aBitString )
+    {
+      this.arena.getBuffer()[result] = ( byte )ignoredBits;
+    }
+    return result;
+  }
+
+  /**
+   * Merges the segments of a constructed string, found in the arena, in place
+   * into a single contiguous value.
+   * 
+   * @param aOffset
+   *          the offset of the segments in the arena;
+   * @param aLength
+   *          the total length of all segments, >= 0;
+   * @param aBitString
+   *          <code>true</code> if the segments are bit-string segments, each
+   *          starting with its number of ignored bits, <code>false</code>
+   *          otherwise.
+   * @return the length of the merged content, >= 0.
+   * @throws IOException
+   *           in case of invalid segments.
+   */
+  private int readSegments( final int aOffset, final int aLength, final boolean aBitString ) throws IOException
+  {
+    if ( aBitString && ( aLength == 0 ) )
+    {
+      // Without segments, there is no room for the ignored bits; as the
+      // segments are the last slice allocated, it can simply be extended...
+      this.arena.allocate( 1 );
+    }
+
+    final byte[] buffer = this.arena.getBuffer();
+    final int maxSegmentCount = this.limits.getMaxSegmentCount();
+    final int end = aOffset + aLength;
+
+    // Bit-strings start with the ignored bits of the last segment...
+    int write = aBitString ? aOffset + 1 : aOffset;
+    int ignoredBits = 0;
+    int segmentCount = 0;
+
+    for ( int i = aOffset; i < end; )
+    {
+      if ( segmentCount++ >= maxSegmentCount )
+      {
+        throw new IOException( "Too many segments! Only " + maxSegmentCount + " segments are allowed!" );
+      }
+      if ( ( i + 2 ) > end )
+      {
+        throw new IOException( "Invalid segment: insufficient data!" );
+      }
+      if ( ( buffer[i++] & 0x20 ) != 0 )
+      {
+        throw new IOException( "Invalid segment: nested constructed segments not supported!" );
+      }
+
+      int length = buffer[i++] & 0xFF;
+      if ( length > 127 )
+      {
+        // long form length...
+        final int count = ( length & 0x7F );
+        if ( ( count == 0 ) || ( count > 4 ) || ( ( i + count ) > end ) )
+        {
+          throw new IOException( "Invalid segment: invalid length!" );
+        }
+        length = 0;
+        for ( int j = 0; j < count; j++ )
+        {
+          length = ( length << 8 ) | ( buffer[i++] & 0xFF );
+        }
+      }
+      if ( ( length < 0 ) || ( length > ( end - i ) ) )
+      {
+        throw new IOException( "Invalid segment: length exceeds enclosing value!" );
+      }
+
+      if ( aBitString )
+      {
+        // non-last segment; all ignoredBits should be zero!
+        if ( ( length < 1 ) || ( ignoredBits != 0 ) )
+        {
+          throw new IOException( "Invalid bit-string!" );
+        }
+        ignoredBits = buffer[i++] & 0xFF;
+        length--;
+      }
+
+      // Segment content is never located before the write position...
+      System.arraycopy( buffer, i, buffer, write, length );
+      write += length;
+      i += length;
+    }
+
+    if ( aBitString )
+    {
+      buffer[aOffset] = ( byte )ignoredBits;
+    }
+    return write - aOffset;
+  }
+
+  /**
+   * Validates whether the given identifier has the expected tag, that is, the
+   * same class and tag number. Whether the identifier is constructed or not is
+   * not taken into account.
+   * 
+   * @param aIdentifier
+   *          the identifier to validate;
+   * @param aExpectedTag
+   *          the expected tag.
+   * @throws IOException
+   *           in case the given identifier does not have the expected tag.
+   */
+  private void validateTag( final AsnIdentifier aIdentifier, final AsnIdentifier aExpectedTag ) throws IOException
+  {
+    if ( ( aIdentifier.getType() != aExpectedTag.getType() ) || ( aIdentifier.getClazz() != aExpectedTag.getClazz() ) )
+    {
+      if ( aExpectedTag.getClazz() == AsnClass.UNIVERSAL )
+      {
+        validateType( aIdentifier, aExpectedTag.getType() );
+      }
+      throw new IOException( "Unexpected tag: " + aIdentifier + ", expected: " + aExpectedTag );
+    }
+  }
+
   /**
    * @param aIdentifier
    * @param aExpectedType
@@ -1015,6 +2302,10 @@ public class BerInputStream extends FilterInputStream
    */
   private void validateType( final AsnIdentifier aIdentifier, final AsnType aExpectedType ) throws IOException
   {
+    if ( aIdentifier.getClazz() != AsnClass.UNIVERSAL )
+    {
+      throw new IOException( "Unexpected tag: " + aIdentifier + ", expected: " + aExpectedType );
+    }
     if ( aIdentifier.getType() != aExpectedType )
     {
       throw new IOException( "Unexpected type: " + aIdentifier.getType() + ", expected: " + aExpectedType );
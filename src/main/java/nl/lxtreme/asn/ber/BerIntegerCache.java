@@ -0,0 +1,156 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
+
+import java.io.*;
+
+
+/**
+ * Provides pre-encoded integer and enumerated values for a range of values.
+ * <p>
+ * Each value in the range is encoded once, as complete value including its
+ * identifier and length, so writing it comes down to a single bulk write of
+ * a few bytes. Values outside the range are to be encoded as usual.
+ * </p>
+ * <p>
+ * Each value takes 12 bytes of memory, so a range of -1024..65535 takes about
+ * 800KB. This class is immutable and thread-safe, hence a single cache can be
+ * shared by any number of {@link BerOutputStream}s.
+ * </p>
+ * 
+ * @see BerOutputStream#setIntegerCache(BerIntegerCache)
+ */
+public final class BerIntegerCache
+{
+  // CONSTANTS
+
+  /** The default cache, used by all output streams, for -128..1023. */
+  public static final BerIntegerCache DEFAULT = new BerIntegerCache( -128, 1023 );
+
+  /** Denotes the number of bytes reserved per value. */
+  private static final int STRIDE = 6;
+  /** Denotes the maximum number of values in a cache. */
+  private static final int MAX_SIZE = 1 << 24;
+
+  // VARIABLES
+
+  private final int min;
+  private final int max;
+  private final byte[] integers;
+  private final byte[] enumerations;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerIntegerCache} instance.
+   * 
+   * @param aMin
+   *          the smallest value to cache;
+   * @param aMax
+   *          the largest value to cache, >= the smallest value.
+   */
+  public BerIntegerCache( final int aMin, final int aMax )
+  {
+    if ( aMax < aMin )
+    {
+      throw new IllegalArgumentException( "Maximum cannot be less than minimum!" );
+    }
+    if ( ( ( long )aMax - aMin ) >= MAX_SIZE )
+    {
+      throw new IllegalArgumentException( "Range too large! At most " + MAX_SIZE + " values can be cached!" );
+    }
+
+    this.min = aMin;
+    this.max = aMax;
+
+    final int size = ( aMax - aMin ) + 1;
+    this.integers = new byte[size * STRIDE];
+    this.enumerations = new byte[size * STRIDE];
+
+    for ( int i = 0; i < size; i++ )
+    {
+      encodeIntegerValue( this.integers, i * STRIDE, INTEGER.ordinal(), aMin + i );
+      encodeIntegerValue( this.enumerations, i * STRIDE, ENUMERATED.ordinal(), aMin + i );
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Returns whether the given value is cached.
+   * 
+   * @param aValue
+   *          the value to test.
+   * @return <code>true</code> if the given value lies in the range of this
+   *         cache, <code>false</code> otherwise.
+   */
+  public boolean contains( final int aValue )
+  {
+    return ( aValue >= this.min ) && ( aValue <= this.max );
+  }
+
+  /**
+   * Returns the largest cached value.
+   * 
+   * @return the maximum value.
+   */
+  public int getMax()
+  {
+    return this.max;
+  }
+
+  /**
+   * Returns the smallest cached value.
+   * 
+   * @return the minimum value.
+   */
+  public int getMin()
+  {
+    return this.min;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BerIntegerCache[" + this.min + ".." + this.max + "]";
+  }
+
+  /**
+   * Writes the pre-encoded value to the given output stream, if cached.
+   * 
+   * @param aOutStream
+   *          the output stream to write to;
+   * @param aEnumerated
+   *          <code>true</code> to write an enumerated value,
+   *          <code>false</code> to write an integer value;
+   * @param aValue
+   *          the value to write.
+   * @return <code>true</code> if the value was cached and is written,
+   *         <code>false</code> if nothing is written.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  boolean write( final OutputStream aOutStream, final boolean aEnumerated, final int aValue ) throws IOException
+  {
+    if ( !contains( aValue ) )
+    {
+      return false;
+    }
+
+    final byte[] table = aEnumerated ? this.enumerations : this.integers;
+    final int offset = ( aValue - this.min ) * STRIDE;
+    // identifier + length + content...
+    aOutStream.write( table, offset, 2 + table[offset + 1] );
+    return true;
+  }
+}
@@ -0,0 +1,512 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Provides a lazily decoded view on a BER-encoded value of any type, for
+ * consumers that do not know the structure of the values up front, such as
+ * diagnostic tools or generic routers.
+ * <p>
+ * A node only records the position of its value in a backing buffer, which is
+ * shared by all nodes of a tree. Creating a node only parses its identifier
+ * and length octets; its children are parsed when they are first accessed,
+ * and its content is decoded when {@link #getValue()} is first called. Hence,
+ * only the parts of a tree that are actually visited are paid for.
+ * </p>
+ * <p>
+ * Nodes are immutable from the outside, but as they decode lazily, they are
+ * <b>not</b> thread-safe. The backing buffer is not copied, and should not be
+ * modified as long as nodes on it are in use.
+ * </p>
+ * 
+ * @see BerInputStream#readAny()
+ */
+public final class BerNode
+{
+  // CONSTANTS
+
+  /** Denotes an indefinite length. */
+  private static final int INDEFINITE_LENGTH = -1;
+  /** Denotes the bits of the tag number in an identifier octet. */
+  private static final int TAG_MASK = 0x1F;
+
+  // VARIABLES
+
+  private final byte[] buffer;
+  private final int offset;
+  private final AsnIdentifier identifier;
+  private final int contentOffset;
+  private final int contentLength;
+  private final int end;
+
+  private BerNode[] children;
+  private Object value;
+  private boolean decoded;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerNode} instance, parsing only the header of the
+   * value at the given offset.
+   * 
+   * @param aBuffer
+   *          the backing buffer;
+   * @param aOffset
+   *          the offset of the value in the backing buffer;
+   * @param aLimit
+   *          the offset up to which the value should fit.
+   * @throws IOException
+   *           in case the header is invalid or the value does not fit.
+   */
+  private BerNode( final byte[] aBuffer, final int aOffset, final int aLimit ) throws IOException
+  {
+    this.buffer = aBuffer;
+    this.offset = aOffset;
+
+    if ( aOffset >= aLimit )
+    {
+      throw new EOFException();
+    }
+
+    final int idOctet = aBuffer[aOffset] & 0xFF;
+    if ( ( idOctet & TAG_MASK ) == TAG_MASK )
+    {
+      throw new IOException( "Invalid identifier: long form tag numbers are not supported!" );
+    }
+    this.identifier = AsnIdentifier.valueOf( idOctet );
+    this.contentOffset = aOffset + 1 + getLengthOctetCount( aBuffer, aOffset + 1, aLimit );
+
+    final int length = decodeLength( aBuffer, aOffset + 1 );
+    if ( length == INDEFINITE_LENGTH )
+    {
+      if ( !this.identifier.isConstructed() )
+      {
+        throw new IOException( "Invalid length: primitive value cannot have indefinite length!" );
+      }
+      // The content ends right before the end-of-contents...
+      this.end = findEndOfContents( aBuffer, this.contentOffset, aLimit );
+      this.contentLength = ( this.end - 2 ) - this.contentOffset;
+    }
+    else
+    {
+      if ( length > ( aLimit - this.contentOffset ) )
+      {
+        throw new IOException( "Invalid length: " + length + " bytes exceeds enclosing value!" );
+      }
+      this.contentLength = length;
+      this.end = this.contentOffset + length;
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Creates a node for the BER-encoded value in the given buffer.
+   * 
+   * @param aBuffer
+   *          the buffer with the BER-encoded value, cannot be
+   *          <code>null</code>.
+   * @return a new {@link BerNode}, never <code>null</code>.
+   * @throws IOException
+   *           in case the header of the value is invalid or the value does not
+   *           fit in the given buffer.
+   */
+  public static BerNode parse( final byte[] aBuffer ) throws IOException
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    return parse( aBuffer, 0, aBuffer.length );
+  }
+
+  /**
+   * Creates a node for the BER-encoded value in the given part of a buffer.
+   * 
+   * @param aBuffer
+   *          the buffer with the BER-encoded value, cannot be
+   *          <code>null</code>;
+   * @param aOffset
+   *          the offset of the value in the buffer;
+   * @param aLength
+   *          the number of bytes the value may occupy.
+   * @return a new {@link BerNode}, never <code>null</code>.
+   * @throws IOException
+   *           in case the header of the value is invalid or the value does not
+   *           fit in the given part of the buffer.
+   */
+  public static BerNode parse( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    if ( ( aOffset < 0 ) || ( aLength < 0 ) || ( aOffset > ( aBuffer.length - aLength ) ) )
+    {
+      throw new IllegalArgumentException( "Invalid offset and/or length!" );
+    }
+    return new BerNode( aBuffer, aOffset, aOffset + aLength );
+  }
+
+  /**
+   * Decodes the length octets at the given offset.
+   * 
+   * @return the length, >= 0, or {@link #INDEFINITE_LENGTH}.
+   */
+  private static int decodeLength( final byte[] aBuffer, final int aOffset )
+  {
+    final int first = aBuffer[aOffset] & 0xFF;
+    if ( first < 128 )
+    {
+      return first;
+    }
+    final int count = first & 0x7F;
+    if ( count == 0 )
+    {
+      return INDEFINITE_LENGTH;
+    }
+    int length = 0;
+    for ( int i = 1; i <= count; i++ )
+    {
+      length = ( length << 8 ) | ( aBuffer[aOffset + i] & 0xFF );
+    }
+    return length;
+  }
+
+  /**
+   * Finds the end of an indefinite length value, by walking the headers of
+   * all values nested in it, up to the matching end-of-contents.
+   * <p>
+   * Definite length values are skipped as a whole, so only the headers of
+   * (nested) indefinite length values are visited. This is done iteratively,
+   * hence deeply nested values cannot exhaust the stack.
+   * </p>
+   * 
+   * @return the offset right after the end-of-contents.
+   */
+  private static int findEndOfContents( final byte[] aBuffer, final int aOffset, final int aLimit )
+      throws IOException
+  {
+    int pos = aOffset;
+    int open = 1;
+    while ( open > 0 )
+    {
+      if ( pos >= aLimit )
+      {
+        throw new IOException( "Missing end-of-contents!" );
+      }
+      if ( aBuffer[pos] == 0x00 )
+      {
+        if ( ( pos + 1 >= aLimit ) || ( aBuffer[pos + 1] != 0x00 ) )
+        {
+          throw new IOException( "Invalid end-of-contents!" );
+        }
+        pos += 2;
+        open--;
+        continue;
+      }
+
+      final int lengthOctets = getLengthOctetCount( aBuffer, pos + 1, aLimit );
+      final int length = decodeLength( aBuffer, pos + 1 );
+      if ( length == INDEFINITE_LENGTH )
+      {
+        if ( ( aBuffer[pos] & 0x20 ) == 0 )
+        {
+          throw new IOException( "Invalid length: primitive value cannot have indefinite length!" );
+        }
+        pos += 1 + lengthOctets;
+        open++;
+      }
+      else
+      {
+        pos += 1 + lengthOctets;
+        if ( length > ( aLimit - pos ) )
+        {
+          throw new IOException( "Invalid length: " + length + " bytes exceeds enclosing value!" );
+        }
+        pos += length;
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Returns the number of length octets at the given offset, and verifies
+   * that they are valid.
+   * 
+   * @return the number of length octets, 1..5.
+   */
+  private static int getLengthOctetCount( final byte[] aBuffer, final int aOffset, final int aLimit )
+      throws IOException
+  {
+    if ( aOffset >= aLimit )
+    {
+      throw new EOFException();
+    }
+    final int first = aBuffer[aOffset] & 0xFF;
+    if ( first < 128 )
+    {
+      return 1;
+    }
+    final int count = first & 0x7F;
+    if ( count > 4 )
+    {
+      throw new IOException( "Invalid length: too many length octets (" + count + ")!" );
+    }
+    if ( count >= ( aLimit - aOffset ) )
+    {
+      throw new EOFException();
+    }
+    if ( ( count == 4 ) && ( ( aBuffer[aOffset + 1] & 0x80 ) != 0 ) )
+    {
+      throw new IOException( "Invalid length: too large!" );
+    }
+    return 1 + count;
+  }
+
+  /**
+   * Returns the child at the given index.
+   * 
+   * @param aIndex
+   *          the index of the child to return, >= 0 and less than
+   *          {@link #getChildCount()}.
+   * @return the child node, never <code>null</code>.
+   * @throws IOException
+   *           in case the children of this node cannot be parsed.
+   */
+  public BerNode getChild( final int aIndex ) throws IOException
+  {
+    return parseChildren()[aIndex];
+  }
+
+  /**
+   * Returns the number of children of this node.
+   * 
+   * @return the number of children, >= 0. Always 0 for primitive nodes.
+   * @throws IOException
+   *           in case the children of this node cannot be parsed.
+   */
+  public int getChildCount() throws IOException
+  {
+    return parseChildren().length;
+  }
+
+  /**
+   * Returns the children of this node.
+   * 
+   * @return an unmodifiable list with the child nodes, never <code>null</code>.
+   *         Always empty for primitive nodes.
+   * @throws IOException
+   *           in case the children of this node cannot be parsed.
+   */
+  public List<BerNode> getChildren() throws IOException
+  {
+    return Collections.unmodifiableList( Arrays.asList( parseChildren() ) );
+  }
+
+  /**
+   * Returns a copy of the content octets of this node.
+   * 
+   * @return the content octets, never <code>null</code>. For constructed nodes
+   *         these are the encoded children, without end-of-contents.
+   */
+  public byte[] getContent()
+  {
+    final byte[] result = new byte[this.contentLength];
+    System.arraycopy( this.buffer, this.contentOffset, result, 0, this.contentLength );
+    return result;
+  }
+
+  /**
+   * Returns a read-only view on the content octets of this node, without
+   * copying them.
+   * 
+   * @return a read-only {@link ByteBuffer}, never <code>null</code>.
+   */
+  public ByteBuffer getContentAsByteBuffer()
+  {
+    return ByteBuffer.wrap( this.buffer, this.contentOffset, this.contentLength ).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns the length of the content of this node.
+   * 
+   * @return a content length, in bytes, >= 0.
+   */
+  public int getContentLength()
+  {
+    return this.contentLength;
+  }
+
+  /**
+   * Returns the encoded length of this node, including its identifier and
+   * length octets and, if any, its end-of-contents.
+   * 
+   * @return an encoded length, in bytes, > 0.
+   */
+  public int getEncodedLength()
+  {
+    return this.end - this.offset;
+  }
+
+  /**
+   * Returns the identifier of this node.
+   * 
+   * @return the identifier, never <code>null</code>.
+   */
+  public AsnIdentifier getIdentifier()
+  {
+    return this.identifier;
+  }
+
+  /**
+   * Returns a {@link BerInputStream} that reads the value of this node, which
+   * allows one to read it with a specific (tagged) reader.
+   * 
+   * @return a new {@link BerInputStream}, never <code>null</code>.
+   */
+  public BerInputStream getInputStream()
+  {
+    return new BerInputStream( new ByteArrayInputStream( this.buffer, this.offset, getEncodedLength() ) );
+  }
+
+  /**
+   * Returns the offset of this node in its backing buffer.
+   * 
+   * @return an offset, >= 0.
+   */
+  public int getOffset()
+  {
+    return this.offset;
+  }
+
+  /**
+   * Returns the decoded value of this node, which is decoded when first
+   * requested.
+   * <p>
+   * Universal primitive values are decoded to the same Java types as returned
+   * by the corresponding readers of {@link BerInputStream}, e.g., an
+   * {@link Integer} for an INTEGER and a {@link String} for a UTF8String; a
+   * NULL is decoded to <code>null</code>. Constructed values, such as
+   * SEQUENCE and SET, are decoded to their list of children. Values with a
+   * non-universal tag are decoded to their content octets, as their type is
+   * unknown.
+   * </p>
+   * 
+   * @return the decoded value, can be <code>null</code>.
+   * @throws IOException
+   *           in case the content of this node is invalid.
+   */
+  public Object getValue() throws IOException
+  {
+    if ( !this.decoded )
+    {
+      this.value = decodeValue();
+      this.decoded = true;
+    }
+    return this.value;
+  }
+
+  /**
+   * Returns whether this node is a constructed node.
+   * 
+   * @return <code>true</code> if this node is constructed, <code>false</code>
+   *         if it is primitive.
+   */
+  public boolean isConstructed()
+  {
+    return this.identifier.isConstructed();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BerNode[" + this.identifier + ", length = " + this.contentLength + "]";
+  }
+
+  /**
+   * Decodes the value of this node.
+   */
+  private Object decodeValue() throws IOException
+  {
+    if ( this.identifier.getClazz() != AsnClass.UNIVERSAL )
+    {
+      return isConstructed() ? getChildren() : getContent();
+    }
+
+    final BerInputStream bis = getInputStream();
+    switch ( this.identifier.getType() )
+    {
+      case BOOLEAN:
+        return bis.readBoolean();
+      case INTEGER:
+        return bis.readInt();
+      case BIT_STRING:
+        return bis.readBitString();
+      case OCTET_STRING:
+        return bis.readOctetString();
+      case NULL:
+        return bis.readNull();
+      case OBJECT_ID:
+        return bis.readObjectIdentifier();
+      case REAL:
+        return bis.readReal();
+      case ENUMERATED:
+        return bis.readEnumeratedValue();
+      case UTF8_STRING:
+        return bis.readUTF8String();
+      case RELATIVE_OID:
+        return bis.readRelativeObjectIdentifier();
+      case PRINTABLE_STRING:
+        return bis.readPrintableString();
+      case IA5_STRING:
+        return bis.readIA5String();
+      case UTC_TIME:
+        return bis.readUtcTime();
+      case GENERALIZED_TIME:
+        return bis.readGeneralizedTime();
+      default:
+        return isConstructed() ? getChildren() : getContent();
+    }
+  }
+
+  /**
+   * Parses the children of this node, if not already done.
+   * 
+   * @return the children, never <code>null</code>.
+   */
+  private BerNode[] parseChildren() throws IOException
+  {
+    if ( this.children == null )
+    {
+      final List<BerNode> result = new ArrayList<BerNode>();
+      if ( isConstructed() )
+      {
+        final int limit = this.contentOffset + this.contentLength;
+        int pos = this.contentOffset;
+        while ( pos < limit )
+        {
+          final BerNode child = new BerNode( this.buffer, pos, limit );
+          result.add( child );
+          pos = child.end;
+        }
+      }
+      this.children = result.toArray( new BerNode[result.size()] );
+    }
+    return this.children;
+  }
+}
@@ -7,10 +7,12 @@ package nl.lxtreme.asn.ber;
 
 
 import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
 
 import java.io.*;
 import java.math.*;
-import java.text.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 
 import nl.lxtreme.asn.*;
@@ -19,11 +21,217 @@ import nl.lxtreme.asn.*;
 /**
  * Provides a {@link OutputStream} for writing BER-encoded values in a
  * stream-like fashion.
+ * <p>
+ * By default, constructed values are written with a definite length. In case
+ * {@link #setCerEncoding(boolean) CER encoding} is enabled, sequences and sets
+ * written as stream are written with an indefinite length instead, and large
+ * strings are split into segments of at most 1000 octets, as defined by the
+ * Canonical Encoding Rules. This allows values of arbitrary size to be written
+ * with a constant amount of memory.
+ * </p>
+ * <p>
+ * In case this stream writes to a {@link ByteBuffer} or {@link FileChannel},
+ * {@link #setBackPatching(boolean) back-patching} can be enabled instead, in
+ * which case sequences and sets written as stream are written directly with a
+ * definite length that is filled in when their stream is closed.
+ * </p>
  */
 public class BerOutputStream extends FilterOutputStream
 {
   // INNER TYPES
 
+  /**
+   * Keeps a reusable stream, along with its buffer, per nesting depth for
+   * sequences and sets written as stream, and a running estimate of their
+   * content size.
+   * <p>
+   * Streams are retained across consecutive values, so in steady state no new
+   * streams or buffers are allocated and no buffers need to grow. A stream
+   * whose buffer has grown far beyond the estimate for its depth, for example
+   * due to a single large value, is released and replaced by one with a buffer
+   * sized after the estimate.
+   * </p>
+   */
+  private static class BufferStack
+  {
+    // VARIABLES
+
+    private BufferedStream[] streams = new BufferedStream[4];
+    private int[] estimates = new int[4];
+    private boolean[] inUse = new boolean[4];
+
+    // METHODS
+
+    /**
+     * Returns a stream with an empty buffer for the given nesting depth.
+     * 
+     * @param aDepth
+     *          the nesting depth, >= 0.
+     * @return a stream, never <code>null</code>.
+     */
+    BufferedStream acquire( final int aDepth )
+    {
+      if ( aDepth >= this.streams.length )
+      {
+        final int size = Math.max( aDepth + 1, this.streams.length * 2 );
+        this.streams = Arrays.copyOf( this.streams, size );
+        this.estimates = Arrays.copyOf( this.estimates, size );
+        this.inUse = Arrays.copyOf( this.inUse, size );
+      }
+      if ( this.inUse[aDepth] )
+      {
+        // Two sibling streams are open at once; do not share the stream...
+        return new BufferedStream( this, aDepth, getInitialSize( aDepth ) );
+      }
+
+      BufferedStream result = this.streams[aDepth];
+      if ( result == null )
+      {
+        result = new BufferedStream( this, aDepth, getInitialSize( aDepth ) );
+        this.streams[aDepth] = result;
+      }
+      else
+      {
+        result.buffer.reset();
+      }
+      this.inUse[aDepth] = true;
+      return result;
+    }
+
+    /**
+     * Returns the given stream for reuse, and updates the size estimate for
+     * the given nesting depth.
+     * 
+     * @param aDepth
+     *          the nesting depth, >= 0;
+     * @param aStream
+     *          the stream to return, as obtained by {@link #acquire(int)}.
+     */
+    void release( final int aDepth, final BufferedStream aStream )
+    {
+      if ( this.streams[aDepth] != aStream )
+      {
+        // Not a pooled stream...
+        return;
+      }
+
+      final int size = aStream.buffer.size();
+      final int estimate = this.estimates[aDepth];
+      // Follow increases directly, and decreases slowly...
+      this.estimates[aDepth] = ( size >= estimate ) ? size : estimate - ( ( estimate - size ) >> 3 );
+      this.inUse[aDepth] = false;
+
+      if ( aStream.buffer.getCapacity() > Math.max( BUFFER_SIZE, 4 * this.estimates[aDepth] ) )
+      {
+        // Do not retain a buffer that only an occasional large value needed...
+        this.streams[aDepth] = null;
+      }
+    }
+
+    /**
+     * Returns the initial size of a new buffer for the given nesting depth.
+     * 
+     * @param aDepth
+     *          the nesting depth, >= 0.
+     * @return a buffer size, >= {@value BerOutputStream#BUFFER_SIZE}.
+     */
+    private int getInitialSize( final int aDepth )
+    {
+      final int estimate = this.estimates[aDepth];
+      return Math.max( BUFFER_SIZE, estimate + ( estimate >> 2 ) );
+    }
+  }
+
+  /**
+   * Provides a stream for the content of a sequence or set, that collects the
+   * content in a buffer and writes it as a whole to its parent stream upon
+   * closing. Instances are reused by their {@link BufferStack}.
+   */
+  private static final class BufferedStream extends BerOutputStream
+  {
+    // VARIABLES
+
+    final DirectByteArrayOutputStream buffer;
+
+    private final BufferStack stack;
+    private final int level;
+
+    private BerOutputStream parent;
+    private int identifier;
+    private boolean closed;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link BufferedStream} instance.
+     * 
+     * @param aStack
+     *          the stack this stream belongs to;
+     * @param aDepth
+     *          the nesting depth of this stream, >= 0;
+     * @param aBufferSize
+     *          the initial buffer size to use.
+     */
+    BufferedStream( final BufferStack aStack, final int aDepth, final int aBufferSize )
+    {
+      this( aStack, aDepth, new DirectByteArrayOutputStream( aBufferSize ) );
+    }
+
+    /**
+     * Creates a new {@link BufferedStream} instance.
+     */
+    private BufferedStream( final BufferStack aStack, final int aDepth, final DirectByteArrayOutputStream aBuffer )
+    {
+      // Nested values are buffered one level deeper...
+      super( aBuffer, aStack, aDepth + 1 );
+
+      this.buffer = aBuffer;
+      this.stack = aStack;
+      this.level = aDepth;
+    }
+
+    // METHODS
+
+    /**
+     * Writes the buffered content as a whole to the parent stream.
+     */
+    @Override
+    public void close() throws IOException
+    {
+      if ( !this.closed )
+      {
+        this.closed = true;
+
+        try
+        {
+          this.parent.writeTLV( this.identifier, this.buffer.getDirectBuffer(), 0, this.buffer.size() );
+        }
+        finally
+        {
+          this.stack.release( this.level, this );
+        }
+      }
+    }
+
+    /**
+     * Prepares this stream for writing the content of a new value.
+     * 
+     * @param aParent
+     *          the stream to write the value to upon closing;
+     * @param aIdentifier
+     *          the identifier octet of the value.
+     */
+    void open( final BerOutputStream aParent, final int aIdentifier )
+    {
+      this.parent = aParent;
+      this.identifier = aIdentifier;
+      this.closed = false;
+      // Undo any settings made while writing the previous value...
+      setCerEncoding( false );
+      setIntegerCache( aParent.getIntegerCache() );
+    }
+  }
+
   /**
    * Provides a {@link ByteArrayOutputStream} that allows us to directly access
    * its internal buffer, without creating a copy of it.
@@ -45,6 +253,16 @@ public class BerOutputStream extends FilterOutputStream
 
     // METHODS
 
+    /**
+     * Returns the current capacity of the internal buffer of this stream.
+     * 
+     * @return the capacity, in bytes.
+     */
+    int getCapacity()
+    {
+      return this.buf.length;
+    }
+
     /**
      * Provides direct access to the internal buffer of this stream.
      * 
@@ -60,11 +278,79 @@ public class BerOutputStream extends FilterOutputStream
 
   /** Denotes the constructed value bit; used for sequences and sets. */
   private static final int CONSTRUCTED = 0x20;
-  /** Denotes the initial buffer size for the sequence/set output stream. */
+  /** Denotes the minimal buffer size for the sequence/set output stream. */
   private static final int BUFFER_SIZE = 256;
+  /** Denotes the size of the buffer in which small values are assembled. */
+  private static final int SCRATCH_SIZE = 64;
+  /** Denotes the maximum size of a string segment, as defined by CER. */
+  private static final int SEGMENT_SIZE = 1000;
+  /** Denotes the length octet of an indefinite length value. */
+  private static final int INDEFINITE_LENGTH = 0x80;
+  /** Denotes the end-of-contents marker of an indefinite length value. */
+  private static final byte[] END_OF_CONTENTS = { 0x00, 0x00 };
+  /** Denotes the size of the buffer used to copy streamed content. */
+  private static final int TRANSFER_SIZE = 8192;
+  /** Denotes the pre-encoded boolean true value. */
+  private static final byte[] TRUE_VALUE = { ( byte )BOOLEAN.ordinal(), 0x01, ( byte )0xFF };
+  /** Denotes the pre-encoded boolean false value. */
+  private static final byte[] FALSE_VALUE = { ( byte )BOOLEAN.ordinal(), 0x01, 0x00 };
+  /** Denotes the pre-encoded null value. */
+  private static final byte[] NULL_VALUE = { ( byte )NULL.ordinal(), 0x00 };
+  /** Denotes the length octet of a length reserved for back-patching. */
+  private static final int RESERVED_LENGTH = 0x84;
+
+  // VARIABLES
+
+  private final byte[] scratch;
+  private final WritableByteChannel channel;
+  private final SeekableOutput seekable;
+
+  private byte[] transferBuffer;
+  private boolean cerEncoding;
+  private BerIntegerCache integerCache;
+  private boolean backPatching;
+  private BufferStack bufferStack;
+  private int depth;
 
   // CONSTRUCTORS
 
+  /**
+   * Creates a new {@link BerOutputStream} instance that writes directly into
+   * the given buffer.
+   * <p>
+   * Values are written starting at the current position of the given buffer.
+   * In case the buffer has insufficient space remaining, an
+   * {@link IOException} is thrown.
+   * </p>
+   * 
+   * @param aBuffer
+   *          the buffer to write the BER-encoded bytes to, cannot be
+   *          <code>null</code>.
+   */
+  public BerOutputStream( final ByteBuffer aBuffer )
+  {
+    this( new ByteBufferOutputStream( aBuffer ) );
+  }
+
+  /**
+   * Creates a new {@link BerOutputStream} instance that writes directly to the
+   * given file channel, starting at its current position.
+   * <p>
+   * As the written bytes can be overwritten, this stream supports
+   * {@link #setBackPatching(boolean) back-patching}. Written bytes are
+   * buffered, so this stream should be flushed or closed before the channel is
+   * used otherwise. Closing this stream does not close the channel.
+   * </p>
+   * 
+   * @param aChannel
+   *          the file channel to write the BER-encoded bytes to, cannot be
+   *          <code>null</code>.
+   */
+  public BerOutputStream( final FileChannel aChannel )
+  {
+    this( new FileChannelOutputStream( aChannel ), aChannel );
+  }
+
   /**
    * Creates a new {@link BerOutputStream} instance.
    * 
@@ -73,12 +359,203 @@ public class BerOutputStream extends FilterOutputStream
    *          <code>null</code>.
    */
   public BerOutputStream( final OutputStream aOutStream )
+  {
+    this( aOutStream, null );
+  }
+
+  /**
+   * Creates a new {@link BerOutputStream} instance that writes directly to the
+   * given file, starting at its current file pointer.
+   * 
+   * @param aFile
+   *          the file to write the BER-encoded bytes to, cannot be
+   *          <code>null</code>.
+   * @see #BerOutputStream(FileChannel)
+   */
+  public BerOutputStream( final RandomAccessFile aFile )
+  {
+    this( aFile.getChannel() );
+  }
+
+  /**
+   * Creates a new {@link BerOutputStream} instance that writes to the given
+   * channel.
+   * <p>
+   * Content written from a {@link FileChannel} is transferred directly to the
+   * given channel, without being copied into the Java heap.
+   * </p>
+   * 
+   * @param aChannel
+   *          the channel to write the BER-encoded bytes to, cannot be
+   *          <code>null</code>.
+   * @see #writeOctetString(FileChannel, long, int)
+   */
+  public BerOutputStream( final WritableByteChannel aChannel )
+  {
+    this( Channels.newOutputStream( aChannel ), aChannel );
+  }
+
+  /**
+   * Creates a new {@link BerOutputStream} instance.
+   * 
+   * @param aOutStream
+   *          the output stream to write the BER-encoded bytes to, cannot be
+   *          <code>null</code>;
+   * @param aChannel
+   *          the channel underlying the given output stream, can be
+   *          <code>null</code>.
+   */
+  private BerOutputStream( final OutputStream aOutStream, final WritableByteChannel aChannel )
   {
     super( aOutStream );
+
+    this.channel = aChannel;
+    this.seekable = ( aOutStream instanceof SeekableOutput ) ? ( SeekableOutput )aOutStream : null;
+    this.scratch = new byte[SCRATCH_SIZE];
+    this.integerCache = BerIntegerCache.DEFAULT;
+  }
+
+  /**
+   * Creates a new {@link BerOutputStream} instance for the content of a
+   * buffered sequence or set.
+   * 
+   * @param aOutStream
+   *          the buffer to write the BER-encoded bytes to, cannot be
+   *          <code>null</code>;
+   * @param aStack
+   *          the stack of reusable streams for nested values, cannot be
+   *          <code>null</code>;
+   * @param aDepth
+   *          the nesting depth of nested values, >= 0.
+   */
+  private BerOutputStream( final OutputStream aOutStream, final BufferStack aStack, final int aDepth )
+  {
+    this( aOutStream, null );
+
+    this.bufferStack = aStack;
+    this.depth = aDepth;
   }
 
   // METHODS
 
+  /**
+   * Returns the cache of pre-encoded integer and enumerated values used by
+   * this stream.
+   * 
+   * @return the integer cache, or <code>null</code> if no cache is used.
+   */
+  public BerIntegerCache getIntegerCache()
+  {
+    return this.integerCache;
+  }
+
+  /**
+   * Returns whether sequences and sets written as stream are written directly,
+   * with a back-patched length.
+   * 
+   * @return <code>true</code> if back-patching is enabled, <code>false</code>
+   *         (the default) otherwise.
+   */
+  public boolean isBackPatching()
+  {
+    return this.backPatching;
+  }
+
+  /**
+   * Returns whether constructed values and large strings are written as
+   * defined by the Canonical Encoding Rules (CER).
+   * 
+   * @return <code>true</code> if CER encoding is enabled, <code>false</code>
+   *         (the default) otherwise.
+   */
+  public boolean isCerEncoding()
+  {
+    return this.cerEncoding;
+  }
+
+  /**
+   * Sets whether sequences and sets written as stream are to be written
+   * directly, with a back-patched length.
+   * <p>
+   * When enabled, {@link #writeSequenceAsStream()} and
+   * {@link #writeSetAsStream()} write their header with a four-octet length
+   * that is reserved up front, and write all values directly to the
+   * underlying buffer or file. Upon closing the returned stream, the actual
+   * length is written in the reserved octets. Hence, no intermediary buffers
+   * are needed, regardless of the size or nesting of sequences and sets.
+   * Streams returned by these methods inherit this setting.
+   * </p>
+   * <p>
+   * NOTE: the reserved lengths are not minimal, which is valid BER, but not
+   * valid DER. In case CER encoding is enabled as well, CER encoding takes
+   * precedence.
+   * </p>
+   * 
+   * @param aBackPatching
+   *          <code>true</code> to enable back-patching, <code>false</code> to
+   *          disable it.
+   * @throws IllegalStateException
+   *           in case back-patching is to be enabled, while this stream does
+   *           not write to a {@link ByteBuffer} or {@link FileChannel}.
+   */
+  public void setBackPatching( final boolean aBackPatching )
+  {
+    if ( aBackPatching && ( this.seekable == null ) )
+    {
+      throw new IllegalStateException( "Back-patching needs a buffer or file channel as output!" );
+    }
+    this.backPatching = aBackPatching;
+  }
+
+  /**
+   * Sets whether constructed values and large strings are to be written as
+   * defined by the Canonical Encoding Rules (CER).
+   * <p>
+   * When enabled, {@link #writeSequenceAsStream()} and
+   * {@link #writeSetAsStream()} write their values with an indefinite length,
+   * directly to the underlying stream, and strings larger than 1000 octets are
+   * written as constructed value with segments of 1000 octets. Streams
+   * returned by these methods inherit this setting.
+   * </p>
+   * 
+   * @param aCerEncoding
+   *          <code>true</code> to enable CER encoding, <code>false</code> to
+   *          disable it.
+   */
+  public void setCerEncoding( final boolean aCerEncoding )
+  {
+    this.cerEncoding = aCerEncoding;
+  }
+
+  /**
+   * Sets the cache of pre-encoded integer and enumerated values to use. By
+   * default, {@link BerIntegerCache#DEFAULT} is used. Values outside the
+   * cached range are encoded directly, without any intermediary allocations.
+   * 
+   * @param aCache
+   *          the integer cache to use, or <code>null</code> to use no cache at
+   *          all.
+   */
+  public void setIntegerCache( final BerIntegerCache aCache )
+  {
+    this.integerCache = aCache;
+  }
+
+  /**
+   * Writes the given bytes in bulk to the underlying output stream.
+   * 
+   * @see java.io.FilterOutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( ( aOffset | aLength | ( aOffset + aLength ) | ( aBuffer.length - ( aOffset + aLength ) ) ) < 0 )
+    {
+      throw new IndexOutOfBoundsException();
+    }
+    this.out.write( aBuffer, aOffset, aLength );
+  }
+
   /**
    * Writes a primitive bit string value.
    * 
@@ -89,15 +566,133 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeBitString( final BigInteger aBitString ) throws IOException
   {
-    int bitLength = aBitString.bitLength();
-    final int stuffBits = ( int )( ( Math.ceil( bitLength / 8.0 ) * 8.0 ) - bitLength );
+    final byte[] content = encodeBitString( aBitString );
+    writeTLV( BIT_STRING, content );
+  }
 
-    final byte[] bytes = aBitString.shiftLeft( stuffBits ).toByteArray();
-    final byte[] values = new byte[bytes.length + 1];
-    values[0] = ( byte )stuffBits;
-    System.arraycopy( bytes, 0, values, 1, bytes.length );
+  /**
+   * Writes a primitive bit string value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aBitString
+   *          the bit string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final AsnIdentifier aTag, final BigInteger aBitString ) throws IOException
+  {
+    writeTLV( getIdentifier( aTag ), BIT_STRING, encodeBitString( aBitString ) );
+  }
 
-    writeTLV( BIT_STRING, values );
+  /**
+   * Writes a primitive bit string value with the given tag, in which bit
+   * <em>n</em> of the given bit set denotes bit <em>n</em> of the bit string.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aBits
+   *          the bits to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final AsnIdentifier aTag, final BitSet aBits ) throws IOException
+  {
+    writeTLV( getIdentifier( aTag ), BIT_STRING, encodeBitString( aBits ) );
+  }
+
+  /**
+   * Writes a primitive bit string value with the given tag from its raw
+   * content.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aBits
+   *          the bits to write, cannot be <code>null</code>;
+   * @param aUnusedBits
+   *          the number of unused bits in the last element, 0..7.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final AsnIdentifier aTag, final byte[] aBits, final int aUnusedBits ) throws IOException
+  {
+    writeBitString( getIdentifier( aTag ), aBits, aUnusedBits );
+  }
+
+  /**
+   * Writes a primitive bit string value of at most 64 bits with the given tag,
+   * in which bit <em>n</em> of the given mask denotes bit <em>n</em> of the
+   * bit string.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aMask
+   *          the bits to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final AsnIdentifier aTag, final long aMask ) throws IOException
+  {
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )getIdentifier( aTag );
+    final int length = encodeBitString( aMask, buf, 2 );
+    buf[1] = ( byte )length;
+    this.out.write( buf, 0, length + 2 );
+  }
+
+  /**
+   * Writes a primitive bit string value, in which bit <em>n</em> of the given
+   * bit set denotes bit <em>n</em> of the bit string, as is used for named
+   * bits. Trailing zero bits are not written.
+   * 
+   * @param aBits
+   *          the bits to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final BitSet aBits ) throws IOException
+  {
+    writeTLV( BIT_STRING, encodeBitString( aBits ) );
+  }
+
+  /**
+   * Writes a primitive bit string value from its raw content.
+   * 
+   * @param aBits
+   *          the bits to write, the most significant bit of the first element
+   *          being the first bit, cannot be <code>null</code>;
+   * @param aUnusedBits
+   *          the number of unused (least significant) bits in the last
+   *          element, 0..7, and 0 if no bits are given.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final byte[] aBits, final int aUnusedBits ) throws IOException
+  {
+    writeBitString( BIT_STRING.ordinal(), aBits, aUnusedBits );
+  }
+
+  /**
+   * Writes a primitive bit string value of at most 64 bits, in which bit
+   * <em>n</em> of the given mask denotes bit <em>n</em> of the bit string, as
+   * is used for named bits. Trailing zero bits are not written.
+   * 
+   * @param aMask
+   *          the bits to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBitString( final long aMask ) throws IOException
+  {
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )BIT_STRING.ordinal();
+    final int length = encodeBitString( aMask, buf, 2 );
+    buf[1] = ( byte )length;
+    this.out.write( buf, 0, length + 2 );
   }
 
   /**
@@ -110,7 +705,79 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeBoolean( final boolean aValue ) throws IOException
   {
-    writeTLV( BOOLEAN, ( byte )( aValue ? 0xFF : 0x00 ) );
+    this.out.write( aValue ? TRUE_VALUE : FALSE_VALUE );
+  }
+
+  /**
+   * Writes a primitive boolean value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aValue
+   *          the boolean value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeBoolean( final AsnIdentifier aTag, final boolean aValue ) throws IOException
+  {
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )getIdentifier( aTag );
+    buf[1] = 0x01;
+    buf[2] = ( byte )( aValue ? 0xFF : 0x00 );
+    this.out.write( buf, 0, 3 );
+  }
+
+  /**
+   * Allows one to write a constructed value with the given tag in a
+   * stream-like fashion.
+   * <p>
+   * This method can be used to write explicitly tagged values, for example
+   * <tt>[0] EXPLICIT INTEGER</tt>, in which case the integer value is to be
+   * written to the returned stream, or implicitly tagged sequences and sets,
+   * for example <tt>[APPLICATION 1] IMPLICIT SEQUENCE</tt>. The constructed
+   * value is written like {@link #writeSequenceAsStream()} does, including its
+   * CER encoding and back-patching behaviour.
+   * </p>
+   * 
+   * @param aTag
+   *          the tag of the constructed value, cannot be <code>null</code>.
+   * @return a {@link BerOutputStream} instance, never <code>null</code>. When
+   *         {@link BerOutputStream#close()} is called, the constructed value is
+   *         completed.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public BerOutputStream writeConstructedAsStream( final AsnIdentifier aTag ) throws IOException
+  {
+    final int identifier = getIdentifier( aTag ) | CONSTRUCTED;
+    if ( this.cerEncoding )
+    {
+      return writeIndefiniteAsStream( identifier );
+    }
+    if ( this.backPatching )
+    {
+      return writeBackPatchedAsStream( identifier );
+    }
+    return writeBufferedAsStream( identifier );
+  }
+
+  /**
+   * Writes the given element, including all of its children.
+   * <p>
+   * As the lengths of all (nested) elements are known up front, the element is
+   * written directly to the underlying stream, without any intermediary
+   * buffers.
+   * </p>
+   * 
+   * @param aElement
+   *          the element to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeElement( final BerElement aElement ) throws IOException
+  {
+    aElement.writeTo( this );
   }
 
   /**
@@ -123,8 +790,23 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeEnumeratedValue( final int aValue ) throws IOException
   {
-    final byte[] content = encodeInteger( aValue );
-    writeTLV( ENUMERATED, content );
+    writeInteger( true, aValue );
+  }
+
+  /**
+   * Writes a primitive enumerated value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aValue
+   *          the enumerated value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeEnumeratedValue( final AsnIdentifier aTag, final int aValue ) throws IOException
+  {
+    this.out.write( this.scratch, 0, encodeIntegerValue( this.scratch, 0, getIdentifier( aTag ), aValue ) );
   }
 
   /**
@@ -141,6 +823,22 @@ public class BerOutputStream extends FilterOutputStream
     writeTLV( GENERALIZED_TIME, content );
   }
 
+  /**
+   * Writes a primitive generalized timestamp with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aTimestamp
+   *          the generalized timestamp to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeGeneralizedTime( final AsnIdentifier aTag, final Calendar aTimestamp ) throws IOException
+  {
+    writeTLV( getIdentifier( aTag ), GENERALIZED_TIME, encodeISO8601Time( aTimestamp ) );
+  }
+
   /**
    * Writes an IA5 (ASCII) encoded string value.
    * 
@@ -151,8 +849,23 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeIA5String( final String aString ) throws IOException
   {
-    final byte[] content = encodeString( aString, "ASCII" );
-    writeTLV( IA5_STRING, content );
+    writeCharacters( IA5_STRING.ordinal(), IA5_STRING, aString, CHARSET_ASCII );
+  }
+
+  /**
+   * Writes an IA5 (ASCII) encoded string value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aString
+   *          the IA5 (ASCII) string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeIA5String( final AsnIdentifier aTag, final String aString ) throws IOException
+  {
+    writeCharacters( getIdentifier( aTag ), IA5_STRING, aString, CHARSET_ASCII );
   }
 
   /**
@@ -165,8 +878,23 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeInt( final int aValue ) throws IOException
   {
-    final byte[] content = encodeInteger( aValue );
-    writeTLV( INTEGER, content );
+    writeInteger( false, aValue );
+  }
+
+  /**
+   * Writes a primitive integer value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aValue
+   *          the integer value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeInt( final AsnIdentifier aTag, final int aValue ) throws IOException
+  {
+    this.out.write( this.scratch, 0, encodeIntegerValue( this.scratch, 0, getIdentifier( aTag ), aValue ) );
   }
 
   /**
@@ -177,7 +905,23 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeNull() throws IOException
   {
-    writeTLV( NULL );
+    this.out.write( NULL_VALUE );
+  }
+
+  /**
+   * Writes a primitive null value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeNull( final AsnIdentifier aTag ) throws IOException
+  {
+    this.scratch[0] = ( byte )getIdentifier( aTag );
+    this.scratch[1] = 0x00;
+    this.out.write( this.scratch, 0, 2 );
   }
 
   /**
@@ -191,16 +935,27 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeObjectIdentifier( final int[] aSubIDs ) throws IOException
   {
-    // Create an encoded version of the sub IDs, in which element 0 + 1 are
-    // packed into a single value...
-    int[] subIDs = new int[aSubIDs.length - 1];
-    subIDs[0] = ( aSubIDs[0] * 40 ) + aSubIDs[1];
-    System.arraycopy( aSubIDs, 2, subIDs, 1, aSubIDs.length - 2 );
-
-    final byte[] content = encodeObjectIdentifier( subIDs );
+    final byte[] content = encodeObjectIdentifier( aSubIDs );
     writeTLV( OBJECT_ID, content );
   }
 
+  /**
+   * Writes a object identifier with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aSubIDs
+   *          the integer parts of the object identifier, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeObjectIdentifier( final AsnIdentifier aTag, final int[] aSubIDs ) throws IOException
+  {
+    writeTLV( getIdentifier( aTag ), OBJECT_ID, encodeObjectIdentifier( aSubIDs ) );
+  }
+
   /**
    * Writes a primitive octet-string value.
    * 
@@ -214,6 +969,97 @@ public class BerOutputStream extends FilterOutputStream
     writeTLV( OCTET_STRING, aString );
   }
 
+  /**
+   * Writes a primitive octet-string value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aString
+   *          the octet-string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeOctetString( final AsnIdentifier aTag, final byte[] aString ) throws IOException
+  {
+    writeTLV( getIdentifier( aTag ), OCTET_STRING, aString );
+  }
+
+  /**
+   * Writes a primitive octet-string value whose content is read from a region
+   * of the given file channel.
+   * <p>
+   * In case this stream writes to a {@link WritableByteChannel}, the content
+   * is transferred directly from the file to that channel using
+   * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The
+   * position of the given file channel is not changed.
+   * </p>
+   * 
+   * @param aChannel
+   *          the file channel to read the content from, cannot be
+   *          <code>null</code>;
+   * @param aPosition
+   *          the position in the file of the first content byte, >= 0;
+   * @param aLength
+   *          the number of content bytes, >= 0.
+   * @throws IOException
+   *           in case the file has less than the given number of bytes or in
+   *           case of I/O problems.
+   */
+  public void writeOctetString( final FileChannel aChannel, final long aPosition, final int aLength )
+      throws IOException
+  {
+    if ( aPosition < 0 )
+    {
+      throw new IllegalArgumentException( "Position cannot be negative!" );
+    }
+    writeStreamedOctetString( aChannel, aPosition, aLength );
+  }
+
+  /**
+   * Writes a primitive octet-string value whose content is read from the given
+   * input stream.
+   * <p>
+   * The content is copied in small chunks, so it never needs to be in memory
+   * as a whole.
+   * </p>
+   * 
+   * @param aStream
+   *          the input stream to read exactly the given number of content bytes
+   *          from, cannot be <code>null</code>;
+   * @param aLength
+   *          the number of content bytes, >= 0.
+   * @throws IOException
+   *           in case the given stream has less than the given number of bytes
+   *           or in case of I/O problems.
+   */
+  public void writeOctetString( final InputStream aStream, final int aLength ) throws IOException
+  {
+    writeStreamedOctetString( aStream, 0L, aLength );
+  }
+
+  /**
+   * Writes a primitive octet-string value whose content is read from the given
+   * channel.
+   * <p>
+   * The content is copied in small chunks, so it never needs to be in memory
+   * as a whole.
+   * </p>
+   * 
+   * @param aChannel
+   *          the channel to read exactly the given number of content bytes
+   *          from, cannot be <code>null</code>;
+   * @param aLength
+   *          the number of content bytes, >= 0.
+   * @throws IOException
+   *           in case the given channel has less than the given number of
+   *           bytes or in case of I/O problems.
+   */
+  public void writeOctetString( final ReadableByteChannel aChannel, final int aLength ) throws IOException
+  {
+    writeStreamedOctetString( aChannel, 0L, aLength );
+  }
+
   /**
    * Writes a printable string.
    * <p>
@@ -232,25 +1078,118 @@ public class BerOutputStream extends FilterOutputStream
    * @throws IOException
    *           in case of I/O errors.
    */
-  public void writePrintableString( final String aValue ) throws IOException
+  public void writePrintableString( final String aValue ) throws IOException
+  {
+    writeCharacters( PRINTABLE_STRING.ordinal(), PRINTABLE_STRING, aValue, CHARSET_PRINTABLE );
+  }
+
+  /**
+   * Writes a printable string value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aValue
+   *          the printable string value to write, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writePrintableString( final AsnIdentifier aTag, final String aValue ) throws IOException
+  {
+    writeCharacters( getIdentifier( aTag ), PRINTABLE_STRING, aValue, CHARSET_PRINTABLE );
+  }
+
+  /**
+   * Writes a primitive real value, using the binary encoding. This encoding is
+   * exact for all double values, and needs at most 12 bytes.
+   * 
+   * @param aValue
+   *          the real value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeReal( final double aValue ) throws IOException
+  {
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )REAL.ordinal();
+    final int length = encodeReal( aValue, buf, 2 );
+    buf[1] = ( byte )length;
+    this.out.write( buf, 0, length + 2 );
+  }
+
+  /**
+   * Writes a primitive real value with the given tag, using the binary
+   * encoding.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aValue
+   *          the real value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeReal( final AsnIdentifier aTag, final double aValue ) throws IOException
+  {
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )getIdentifier( aTag );
+    final int length = encodeReal( aValue, buf, 2 );
+    buf[1] = ( byte )length;
+    this.out.write( buf, 0, length + 2 );
+  }
+
+  /**
+   * Writes a object identifier.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the object identifier, cannot be
+   *          <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeRelativeObjectIdentifier( final int[] aSubIDs ) throws IOException
   {
-    final byte[] content = encodeString( aValue.replaceAll( "[^a-zA-Z0-9 '()+,./:=?-]", "" ), "ASCII" );
-    writeTLV( PRINTABLE_STRING, content );
+    final byte[] content = encodeSubIdentifiers( aSubIDs );
+    writeTLV( RELATIVE_OID, content );
   }
 
   /**
-   * Writes a object identifier.
+   * Writes a relative object identifier with the given tag.
    * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
    * @param aSubIDs
-   *          the integer parts of the object identifier, cannot be
+   *          the integer parts of the relative object identifier, cannot be
    *          <code>null</code>.
    * @throws IOException
    *           in case of I/O problems.
    */
-  public void writeRelativeObjectIdentifier( final int[] aSubIDs ) throws IOException
+  public void writeRelativeObjectIdentifier( final AsnIdentifier aTag, final int[] aSubIDs ) throws IOException
   {
-    final byte[] content = encodeObjectIdentifier( aSubIDs );
-    writeTLV( RELATIVE_OID, content );
+    writeTLV( getIdentifier( aTag ), RELATIVE_OID, encodeSubIdentifiers( aSubIDs ) );
+  }
+
+  /**
+   * Allows one to write a ASN.1 sequence with an indefinite length in a
+   * stream-like fashion.
+   * <p>
+   * The header of the sequence is written directly, and all values written to the
+   * returned output stream are directly written to the main output stream.
+   * Hence, no intermediary buffers are needed, regardless of the size of the
+   * sequence. As long as the returned stream is not closed, no other values
+   * should be written to the main output stream!
+   * </p>
+   * 
+   * @return a {@link BerOutputStream} instance, never <code>null</code>. When
+   *         {@link BerOutputStream#close()} is called, the end-of-contents of
+   *         the sequence is written to the main output stream.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public BerOutputStream writeSequenceAsIndefiniteStream() throws IOException
+  {
+    return writeIndefiniteAsStream( SEQUENCE.ordinal() | CONSTRUCTED );
   }
 
   /**
@@ -259,7 +1198,10 @@ public class BerOutputStream extends FilterOutputStream
    * NOTE: the pointer in the underlying output stream will not change directly
    * by calls to the various write methods on the returned output stream. Hence,
    * you first need to write your entire sequence before continuing on the main
-   * output stream!
+   * output stream! In case CER encoding is enabled, the sequence is written as by
+   * {@link #writeSequenceAsIndefiniteStream()}. In case
+   * {@link #setBackPatching(boolean) back-patching} is enabled, the sequence is
+   * written directly, and its length is filled in upon closing.
    * </p>
    * 
    * @return a {@link BerOutputStream} instance, never <code>null</code>. When
@@ -270,22 +1212,57 @@ public class BerOutputStream extends FilterOutputStream
    */
   public BerOutputStream writeSequenceAsStream() throws IOException
   {
-    final DirectByteArrayOutputStream baos = new DirectByteArrayOutputStream( BUFFER_SIZE );
-    final BerOutputStream bos = new BerOutputStream( baos )
+    if ( this.cerEncoding )
     {
-      @Override
-      public void close() throws IOException
-      {
-        super.close();
+      return writeSequenceAsIndefiniteStream();
+    }
+    if ( this.backPatching )
+    {
+      return writeBackPatchedAsStream( SEQUENCE.ordinal() | CONSTRUCTED );
+    }
 
-        final int length = baos.size();
+    return writeBufferedAsStream( SEQUENCE.ordinal() | CONSTRUCTED );
+  }
 
-        BerOutputStream.this.write( SEQUENCE.ordinal() | CONSTRUCTED );
-        BerOutputStream.this.writeLength( length );
-        BerOutputStream.this.write( baos.getDirectBuffer(), 0, length );
-      }
-    };
-    return bos;
+  /**
+   * Writes the header of a ASN.1 sequence with the given content length.
+   * <p>
+   * The content of the sequence, which should be exactly the given number of
+   * bytes, is to be written directly after calling this method. Use
+   * {@link BerElement#getEncodedLength(int)} to determine the length of
+   * nested values.
+   * </p>
+   * 
+   * @param aContentLength
+   *          the length of the content of the sequence, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeSequenceHeader( final int aContentLength ) throws IOException
+  {
+    writeHeader( SEQUENCE.ordinal() | CONSTRUCTED, aContentLength );
+  }
+
+  /**
+   * Allows one to write a ASN.1 set with an indefinite length in a
+   * stream-like fashion.
+   * <p>
+   * The header of the set is written directly, and all values written to the
+   * returned output stream are directly written to the main output stream.
+   * Hence, no intermediary buffers are needed, regardless of the size of the
+   * set. As long as the returned stream is not closed, no other values
+   * should be written to the main output stream!
+   * </p>
+   * 
+   * @return a {@link BerOutputStream} instance, never <code>null</code>. When
+   *         {@link BerOutputStream#close()} is called, the end-of-contents of
+   *         the set is written to the main output stream.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public BerOutputStream writeSetAsIndefiniteStream() throws IOException
+  {
+    return writeIndefiniteAsStream( SET.ordinal() | CONSTRUCTED );
   }
 
   /**
@@ -294,7 +1271,10 @@ public class BerOutputStream extends FilterOutputStream
    * NOTE: the pointer in the underlying output stream will not change directly
    * by calls to the various write methods on the returned output stream. Hence,
    * you first need to write your entire set before continuing on the main
-   * output stream!
+   * output stream! In case CER encoding is enabled, the set is written as by
+   * {@link #writeSetAsIndefiniteStream()}. In case
+   * {@link #setBackPatching(boolean) back-patching} is enabled, the set is
+   * written directly, and its length is filled in upon closing.
    * </p>
    * 
    * @return a {@link BerOutputStream} instance, never <code>null</code>. When
@@ -305,22 +1285,34 @@ public class BerOutputStream extends FilterOutputStream
    */
   public BerOutputStream writeSetAsStream() throws IOException
   {
-    final DirectByteArrayOutputStream baos = new DirectByteArrayOutputStream( BUFFER_SIZE );
-    final BerOutputStream bos = new BerOutputStream( baos )
+    if ( this.cerEncoding )
     {
-      @Override
-      public void close() throws IOException
-      {
-        super.close();
+      return writeSetAsIndefiniteStream();
+    }
+    if ( this.backPatching )
+    {
+      return writeBackPatchedAsStream( SET.ordinal() | CONSTRUCTED );
+    }
 
-        final int length = baos.size();
+    return writeBufferedAsStream( SET.ordinal() | CONSTRUCTED );
+  }
 
-        BerOutputStream.this.write( SET.ordinal() | CONSTRUCTED );
-        BerOutputStream.this.writeLength( length );
-        BerOutputStream.this.write( baos.getDirectBuffer(), 0, length );
-      }
-    };
-    return bos;
+  /**
+   * Writes the header of a ASN.1 set with the given content length.
+   * <p>
+   * The content of the set, which should be exactly the given number of bytes,
+   * is to be written directly after calling this method.
+   * </p>
+   * 
+   * @param aContentLength
+   *          the length of the content of the set, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   * @see #writeSequenceHeader(int)
+   */
+  public void writeSetHeader( final int aContentLength ) throws IOException
+  {
+    writeHeader( SET.ordinal() | CONSTRUCTED, aContentLength );
   }
 
   /**
@@ -333,8 +1325,23 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeString( final String aString ) throws IOException
   {
-    final byte[] content = aString.getBytes( "8859_1" );
-    writeTLV( OCTET_STRING, content );
+    writeCharacters( OCTET_STRING.ordinal(), OCTET_STRING, aString, CHARSET_ISO8859_1 );
+  }
+
+  /**
+   * Writes a primitive ISO8859-1 encoded string value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aString
+   *          the string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeString( final AsnIdentifier aTag, final String aString ) throws IOException
+  {
+    writeCharacters( getIdentifier( aTag ), OCTET_STRING, aString, CHARSET_ISO8859_1 );
   }
 
   /**
@@ -368,6 +1375,22 @@ public class BerOutputStream extends FilterOutputStream
     writeUtcTime( cal );
   }
 
+  /**
+   * Writes a primitive timestamp as UTC string value with the given tag.
+   * 
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aTimestamp
+   *          the timestamp to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeUtcTime( final AsnIdentifier aTag, final Calendar aTimestamp ) throws IOException
+  {
+    writeTLV( getIdentifier( aTag ), UTC_TIME, encodeUTCTime( aTimestamp ) );
+  }
+
   /**
    * Writes a primitive UTF-8 encoded string value.
    * 
@@ -378,212 +1401,542 @@ public class BerOutputStream extends FilterOutputStream
    */
   public void writeUTF8String( final String aString ) throws IOException
   {
-    final byte[] content = encodeString( aString, "UTF8" );
-    writeTLV( UTF8_STRING, content );
+    writeCharacters( UTF8_STRING.ordinal(), UTF8_STRING, aString, CHARSET_UTF8 );
   }
 
   /**
-   * Encodes the given integer value into a series of bytes.
+   * Writes a primitive UTF-8 encoded string value with the given tag.
    * 
-   * @param aValue
-   *          the integer value to encode.
-   * @return a int-array denoting the individual bytes of the encoded integer,
-   *         never <code>null</code>.
+   * @param aTag
+   *          the tag of the value, which replaces its universal tag, cannot
+   *          be <code>null</code>;
+   * @param aString
+   *          the string value to write.
+   * @throws IOException
+   *           in case of I/O problems.
    */
-  private byte[] encodeInteger( final int aValue )
+  public void writeUTF8String( final AsnIdentifier aTag, final String aString ) throws IOException
   {
-    int intsize = getIntegerLength( aValue );
-
-    final int mask = 0xff800000;
-    int value = ( aValue << ( ( 4 - intsize ) * 8 ) );
+    writeCharacters( getIdentifier( aTag ), UTF8_STRING, aString, CHARSET_UTF8 );
+  }
 
-    byte[] result = new byte[intsize];
-    int i = 0;
-    while ( intsize-- > 0 )
+  /**
+   * Writes the header of a value, consisting of an identifier and length.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the value;
+   * @param aLength
+   *          the length of the content, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  void writeHeader( final int aIdentifier, final int aLength ) throws IOException
+  {
+    if ( aLength < 0 )
     {
-      result[i++] = ( byte )( ( ( value & mask ) >> 24 ) & 0xFF );
-      value <<= 8;
+      throw new IllegalArgumentException( "Length cannot be negative!" );
     }
-
-    return result;
+    final int headerLength = encodeHeader( this.scratch, 0, aIdentifier, aLength );
+    this.out.write( this.scratch, 0, headerLength );
   }
 
   /**
-   * Encodes a given timestamp as a series of bytes representing a ISO8601
-   * timestamp.
+   * Writes a complete value, consisting of an identifier, length and content.
+   * <p>
+   * Small values are assembled in a scratch buffer and written with a single
+   * bulk write, larger values are written with one bulk write for the header
+   * and one for the content.
+   * </p>
    * 
-   * @param aTimestamp
-   *          the timestamp to encode, cannot be <code>null</code>.
-   * @return the encoded timestamp, never <code>null</code>.
+   * @param aIdentifier
+   *          the identifier octet of the value;
+   * @param aContent
+   *          the buffer containing the content of the value;
+   * @param aOffset
+   *          the offset of the content in the given buffer;
+   * @param aLength
+   *          the length of the content, >= 0.
    * @throws IOException
    *           in case of I/O problems.
    */
-  private byte[] encodeISO8601Time( final Calendar aTimestamp ) throws IOException
+  void writeTLV( final int aIdentifier, final byte[] aContent, final int aOffset, final int aLength )
+      throws IOException
   {
-    final TimeZone utcTZ = TimeZone.getTimeZone( "UTC" );
-
-    String format = "yyyyMMddHHmmss";
-    if ( aTimestamp.get( Calendar.MILLISECOND ) > 0 )
-    {
-      format = format.concat( ".S" );
-    }
-    if ( utcTZ.equals( aTimestamp.getTimeZone() ) )
+    final byte[] buf = this.scratch;
+    final int headerLength = encodeHeader( buf, 0, aIdentifier, aLength );
+    if ( ( headerLength + aLength ) <= buf.length )
     {
-      format = format.concat( "'Z'" );
+      System.arraycopy( aContent, aOffset, buf, headerLength, aLength );
+      this.out.write( buf, 0, headerLength + aLength );
     }
     else
     {
-      format = format.concat( "Z" );
+      this.out.write( buf, 0, headerLength );
+      this.out.write( aContent, aOffset, aLength );
     }
+  }
 
-    final SimpleDateFormat formatter = new SimpleDateFormat( format );
-    formatter.setTimeZone( aTimestamp.getTimeZone() );
-
-    String result = formatter.format( aTimestamp.getTime() );
-    return encodeString( result, "ASCII" );
+  /**
+   * Returns the identifier octet of a primitive value with the given tag.
+   * 
+   * @param aTag
+   *          the tag to get the identifier octet for, cannot be
+   *          <code>null</code>.
+   * @return the identifier octet.
+   */
+  private static int getIdentifier( final AsnIdentifier aTag )
+  {
+    if ( aTag == null )
+    {
+      throw new IllegalArgumentException( "Tag cannot be null!" );
+    }
+    return aTag.getTag() & ~CONSTRUCTED;
   }
 
   /**
-   * Encodes the given array of sub identifiers into a series of bytes.
+   * Returns whether the given type is a string type, which can be written in
+   * segments.
    * 
-   * @param aSubIDs
-   *          the sub identifiers to encode, cannot be <code>null</code>.
-   * @return the encoded object identifiers, as int-array with byte values.
+   * @param aType
+   *          the type to test.
+   * @return <code>true</code> if the given type is a string type,
+   *         <code>false</code> otherwise.
    */
-  private byte[] encodeObjectIdentifier( final int[] aSubIDs )
+  private static boolean isStringType( final AsnType aType )
   {
-    byte[] content = new byte[aSubIDs.length * 4];
-    int offset = 0;
+    return ( aType == BIT_STRING ) || ( aType == OCTET_STRING ) || ( aType == IA5_STRING )
+        || ( aType == PRINTABLE_STRING ) || ( aType == UTF8_STRING );
+  }
 
-    for ( final int value : aSubIDs )
+  /**
+   * Copies the given number of content bytes from the given source to the
+   * underlying output stream.
+   * 
+   * @param aSource
+   *          the source to copy from, either a {@link FileChannel},
+   *          {@link ReadableByteChannel} or {@link InputStream};
+   * @param aPosition
+   *          the position to read from, only used for file channels;
+   * @param aLength
+   *          the number of bytes to copy, >= 0.
+   * @throws IOException
+   *           in case the source has insufficient bytes or in case of I/O
+   *           problems.
+   */
+  private void transferContent( final Object aSource, final long aPosition, final int aLength ) throws IOException
+  {
+    if ( ( aSource instanceof FileChannel ) && ( this.channel != null ) )
     {
-      final int size = getIntegerLength( value );
-      int j = size;
-      while ( j > 0 )
+      // Zero-copy transfer from the file to the target channel, after any
+      // bytes buffered by the underlying output stream...
+      this.out.flush();
+
+      final FileChannel source = ( FileChannel )aSource;
+      long position = aPosition;
+      long remaining = aLength;
+      while ( remaining > 0 )
       {
-        int s = ( size - j );
-        int v = ( ( value >> ( 7 * s ) ) & 0xFF );
-        if ( v >= 0x80 )
+        final long count = source.transferTo( position, remaining, this.channel );
+        if ( ( count <= 0 ) && ( position >= source.size() ) )
         {
-          v &= 0x7f;
+          throw new EOFException( "Unexpected end of file: " + remaining + " bytes missing!" );
         }
-        if ( j < size )
+        position += count;
+        remaining -= count;
+      }
+      return;
+    }
+
+    if ( this.transferBuffer == null )
+    {
+      this.transferBuffer = new byte[TRANSFER_SIZE];
+    }
+    final byte[] buf = this.transferBuffer;
+    final ByteBuffer bb = ( aSource instanceof ReadableByteChannel ) ? ByteBuffer.wrap( buf ) : null;
+
+    long position = aPosition;
+    int remaining = aLength;
+    while ( remaining > 0 )
+    {
+      final int chunk = Math.min( buf.length, remaining );
+      final int count;
+      if ( aSource instanceof FileChannel )
+      {
+        bb.clear().limit( chunk );
+        count = ( ( FileChannel )aSource ).read( bb, position );
+      }
+      else if ( bb != null )
+      {
+        bb.clear().limit( chunk );
+        count = ( ( ReadableByteChannel )aSource ).read( bb );
+      }
+      else
+      {
+        count = ( ( InputStream )aSource ).read( buf, 0, chunk );
+      }
+      if ( count < 0 )
+      {
+        throw new EOFException( "Unexpected end of stream: " + remaining + " bytes missing!" );
+      }
+      this.out.write( buf, 0, count );
+      position += count;
+      remaining -= count;
+    }
+  }
+
+  /**
+   * Writes the header of a constructed value with a reserved length and
+   * returns a stream for writing its content directly to the underlying
+   * output.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the constructed value.
+   * @return a {@link BerOutputStream} instance that back-patches the length
+   *         upon closing, never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private BerOutputStream writeBackPatchedAsStream( final int aIdentifier ) throws IOException
+  {
+    final long lengthPosition = this.seekable.getPosition() + 1;
+
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )aIdentifier;
+    buf[1] = ( byte )RESERVED_LENGTH;
+    buf[2] = buf[3] = buf[4] = buf[5] = 0;
+    this.out.write( buf, 0, 6 );
+
+    final BerOutputStream bos = new BerOutputStream( this.out, this.channel )
+    {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException
+      {
+        // Do not close the main output stream...
+        if ( !this.closed )
         {
-          v |= 0x80;
+          this.closed = true;
+
+          final long length = BerOutputStream.this.seekable.getPosition() - ( lengthPosition + 5 );
+          if ( length > Integer.MAX_VALUE )
+          {
+            throw new IOException( "Content too large! Length " + length + " cannot be back-patched!" );
+          }
+
+          final byte[] lengthBuf = BerOutputStream.this.scratch;
+          lengthBuf[0] = ( byte )RESERVED_LENGTH;
+          lengthBuf[1] = ( byte )( length >> 24 );
+          lengthBuf[2] = ( byte )( length >> 16 );
+          lengthBuf[3] = ( byte )( length >> 8 );
+          lengthBuf[4] = ( byte )length;
+          BerOutputStream.this.seekable.patch( lengthPosition, lengthBuf, 0, 5 );
         }
-        content[offset + --j] = ( byte )v;
       }
-      offset += size;
+    };
+    bos.backPatching = true;
+    bos.cerEncoding = this.cerEncoding;
+    bos.integerCache = this.integerCache;
+    return bos;
+  }
+
+  /**
+   * Writes a primitive bit string value from its raw content.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the value;
+   * @param aBits
+   *          the bits to write, cannot be <code>null</code>;
+   * @param aUnusedBits
+   *          the number of unused bits in the last element, 0..7.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void writeBitString( final int aIdentifier, final byte[] aBits, final int aUnusedBits ) throws IOException
+  {
+    if ( ( aUnusedBits < 0 ) || ( aUnusedBits > 7 ) || ( ( aBits.length == 0 ) && ( aUnusedBits != 0 ) ) )
+    {
+      throw new IllegalArgumentException( "Invalid number of unused bits: " + aUnusedBits + "!" );
+    }
+
+    final int length = aBits.length + 1;
+    if ( this.cerEncoding && ( length > SEGMENT_SIZE ) )
+    {
+      final byte[] content = new byte[length];
+      content[0] = ( byte )aUnusedBits;
+      System.arraycopy( aBits, 0, content, 1, aBits.length );
+      writeSegmented( aIdentifier, BIT_STRING, content );
+      return;
+    }
+
+    final byte[] buf = this.scratch;
+    final int headerLength = encodeHeader( buf, 0, aIdentifier, length );
+    buf[headerLength] = ( byte )aUnusedBits;
+    if ( ( headerLength + length ) <= buf.length )
+    {
+      System.arraycopy( aBits, 0, buf, headerLength + 1, aBits.length );
+      this.out.write( buf, 0, headerLength + length );
+    }
+    else
+    {
+      this.out.write( buf, 0, headerLength + 1 );
+      this.out.write( aBits, 0, aBits.length );
+    }
+  }
+
+  /**
+   * Returns a (reused) stream for writing the content of a constructed value
+   * into a (reused) buffer, which is written as a whole upon closing.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the constructed value.
+   * @return a {@link BerOutputStream} instance that writes the constructed
+   *         value upon closing, never <code>null</code>.
+   */
+  private BerOutputStream writeBufferedAsStream( final int aIdentifier )
+  {
+    if ( this.bufferStack == null )
+    {
+      this.bufferStack = new BufferStack();
     }
 
-    return Arrays.copyOf( content, offset );
+    final BufferedStream bos = this.bufferStack.acquire( this.depth );
+    bos.open( this, aIdentifier );
+    return bos;
   }
 
   /**
-   * Encodes a given string into bytes, using the given encoding.
+   * Writes a string value, encoding its characters directly into the scratch
+   * buffer, without any intermediary allocations.
    * 
+   * @param aIdentifier
+   *          the identifier octet of the string value;
+   * @param aType
+   *          the type of the string value;
    * @param aValue
-   *          the string value to encode, may be <code>null</code>;
-   * @param aEncoding
-   *          the encoding to use for the resulting bytes.
-   * @return a byte array, never <code>null</code>.
+   *          the string value to write, may be <code>null</code>;
+   * @param aCharset
+   *          the character set to encode the string with.
    * @throws IOException
-   *           in case of an unsupported encoding.
+   *           in case of I/O problems.
    */
-  private byte[] encodeString( final String aValue, final String aEncoding ) throws IOException
+  private void writeCharacters( final int aIdentifier, final AsnType aType, final String aValue, final int aCharset )
+      throws IOException
   {
-    if ( aValue == null )
+    final int length = getStringLength( aValue, aCharset );
+    if ( this.cerEncoding && ( length > SEGMENT_SIZE ) )
     {
-      return new byte[0];
+      writeSegmented( aIdentifier, aType, encodeString( aValue, aCharset ) );
+      return;
     }
-    return aValue.getBytes( aEncoding );
+
+    final byte[] buf = this.scratch;
+    int pos = encodeHeader( buf, 0, aIdentifier, length );
+    for ( int i = 0, cp, n = ( aValue == null ) ? 0 : aValue.length(); i < n; i += Character.charCount( cp ) )
+    {
+      if ( pos > ( buf.length - 4 ) )
+      {
+        this.out.write( buf, 0, pos );
+        pos = 0;
+      }
+      cp = aValue.codePointAt( i );
+      pos = encodeCodePoint( cp, aCharset, buf, pos );
+    }
+    this.out.write( buf, 0, pos );
   }
 
   /**
-   * Encodes a given timestamp as a series of bytes represting a UTC timestamp.
+   * Writes the header of a constructed value with an indefinite length and
+   * returns a stream for writing its content.
    * 
-   * @param aTimestamp
-   *          the timestamp to encode, cannot be <code>null</code>.
-   * @return the encoded timestamp, never <code>null</code>.
+   * @param aIdentifier
+   *          the identifier octet of the constructed value.
+   * @return a {@link BerOutputStream} instance that writes the end-of-contents
+   *         upon closing, never <code>null</code>.
    * @throws IOException
    *           in case of I/O problems.
    */
-  private byte[] encodeUTCTime( final Calendar aTimestamp ) throws IOException
+  private BerOutputStream writeIndefiniteAsStream( final int aIdentifier ) throws IOException
   {
-    String format = "yyMMddHHmmss'Z'";
+    this.scratch[0] = ( byte )aIdentifier;
+    this.scratch[1] = ( byte )INDEFINITE_LENGTH;
+    this.out.write( this.scratch, 0, 2 );
+
+    final BerOutputStream bos = new BerOutputStream( this.out, this.channel )
+    {
+      private boolean closed;
 
-    SimpleDateFormat formatter = new SimpleDateFormat( format );
-    formatter.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+      @Override
+      public void close() throws IOException
+      {
+        // Do not close the main output stream...
+        if ( !this.closed )
+        {
+          this.closed = true;
 
-    String result = formatter.format( aTimestamp.getTime() );
-    return encodeString( result, "ASCII" );
+          this.out.write( END_OF_CONTENTS );
+          this.out.flush();
+        }
+      }
+    };
+    bos.cerEncoding = this.cerEncoding;
+    bos.integerCache = this.integerCache;
+    return bos;
   }
 
   /**
-   * Uses a fast way to determine the length of a given integer when it should
-   * be encoded in bytes.
+   * Writes a primitive integer or enumerated value, either from the integer
+   * cache, or by encoding it directly into the scratch buffer.
    * 
+   * @param aEnumerated
+   *          <code>true</code> to write an enumerated value,
+   *          <code>false</code> to write an integer value;
    * @param aValue
-   *          the value to return its length for.
-   * @return the length of the given value; 1..10.
+   *          the value to write.
+   * @throws IOException
+   *           in case of I/O problems.
    */
-  private int getIntegerLength( final int aValue )
+  private void writeInteger( final boolean aEnumerated, final int aValue ) throws IOException
   {
-    final int mask = 0xff800000;
-    int intsize = 4;
-    int value = ( ( Integer )aValue ).intValue();
-
-    while ( ( ( ( value & mask ) == 0 ) || ( ( value & mask ) == mask ) ) && ( intsize > 1 ) )
+    final BerIntegerCache cache = this.integerCache;
+    if ( ( cache == null ) || !cache.write( this.out, aEnumerated, aValue ) )
     {
-      intsize--;
-      value <<= 8;
+      final int identifier = aEnumerated ? ENUMERATED.ordinal() : INTEGER.ordinal();
+      this.out.write( this.scratch, 0, encodeIntegerValue( this.scratch, 0, identifier, aValue ) );
     }
-    return intsize;
   }
 
   /**
-   * @param aLength
+   * Writes a string value as constructed value with an indefinite length,
+   * consisting of segments of at most 1000 octets.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the (primitive) string value;
+   * @param aType
+   *          the type of the string value;
+   * @param aContent
+   *          the content of the string value, in case of a bit string, its
+   *          first octet denotes the number of unused bits.
    * @throws IOException
+   *           in case of I/O problems.
    */
-  private void writeLength( final int aLength ) throws IOException
+  private void writeSegmented( final int aIdentifier, final AsnType aType, final byte[] aContent ) throws IOException
   {
-    if ( aLength < 128 )
+    final byte[] buf = this.scratch;
+    buf[0] = ( byte )( aIdentifier | CONSTRUCTED );
+    buf[1] = ( byte )INDEFINITE_LENGTH;
+    this.out.write( buf, 0, 2 );
+
+    if ( aType == BIT_STRING )
+    {
+      // Only the last segment can have unused bits...
+      for ( int offset = 1, length; offset < aContent.length; offset += length )
+      {
+        length = Math.min( SEGMENT_SIZE - 1, aContent.length - offset );
+
+        final int headerLength = encodeHeader( buf, 0, BIT_STRING.ordinal(), length + 1 );
+        buf[headerLength] = ( ( offset + length ) < aContent.length ) ? 0 : aContent[0];
+        this.out.write( buf, 0, headerLength + 1 );
+        this.out.write( aContent, offset, length );
+      }
+    }
+    else
     {
-      write( ( byte )aLength );
+      // Segments of character strings are octet strings...
+      for ( int offset = 0, length; offset < aContent.length; offset += length )
+      {
+        length = Math.min( SEGMENT_SIZE, aContent.length - offset );
+
+        writeTLV( OCTET_STRING.ordinal(), aContent, offset, length );
+      }
     }
-    else if ( aLength <= 0xff )
+
+    this.out.write( END_OF_CONTENTS );
+  }
+
+  /**
+   * Writes an octet-string value whose content is copied from the given
+   * source. In case CER encoding is enabled, large values are written in
+   * segments.
+   * 
+   * @param aSource
+   *          the source of the content, cannot be <code>null</code>;
+   * @param aPosition
+   *          the position of the content, only used for file channels;
+   * @param aLength
+   *          the number of content bytes, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   * @see #transferContent(Object, long, int)
+   */
+  private void writeStreamedOctetString( final Object aSource, final long aPosition, final int aLength )
+      throws IOException
+  {
+    if ( aSource == null )
     {
-      write( ( byte )0x81 );
-      write( ( byte )aLength );
+      throw new IllegalArgumentException( "Source cannot be null!" );
     }
-    else if ( aLength <= 0xffff )
+
+    if ( this.cerEncoding && ( aLength > SEGMENT_SIZE ) )
     {
-      write( ( byte )0x82 );
-      write( ( byte )( aLength >> 8 ) );
-      write( ( byte )( aLength & 0xff ) );
+      this.scratch[0] = ( byte )( OCTET_STRING.ordinal() | CONSTRUCTED );
+      this.scratch[1] = ( byte )INDEFINITE_LENGTH;
+      this.out.write( this.scratch, 0, 2 );
+
+      for ( int offset = 0, length; offset < aLength; offset += length )
+      {
+        length = Math.min( SEGMENT_SIZE, aLength - offset );
+
+        writeHeader( OCTET_STRING.ordinal(), length );
+        transferContent( aSource, aPosition + offset, length );
+      }
+
+      this.out.write( END_OF_CONTENTS );
     }
-    else if ( aLength <= 0xffffff )
+    else
     {
-      write( ( byte )0x83 );
-      write( ( byte )( aLength >> 16 ) );
-      write( ( byte )( aLength >> 8 ) );
-      write( ( byte )( aLength & 0xff ) );
+      writeHeader( OCTET_STRING.ordinal(), aLength );
+      transferContent( aSource, aPosition, aLength );
     }
   }
 
   /**
+   * Writes a complete primitive value, consisting of an identifier, length
+   * and content.
+   * 
    * @param aType
-   * @param aLength
+   *          the type of the value;
    * @param aContent
+   *          the content of the value.
    * @throws IOException
+   *           in case of I/O problems.
    */
   private void writeTLV( final AsnType aType, final byte... aContent ) throws IOException
   {
-    write( ( byte )aType.ordinal() );
-    writeLength( aContent.length );
-    for ( byte c : aContent )
+    writeTLV( aType.ordinal(), aType, aContent );
+  }
+
+  /**
+   * Writes a complete primitive value, consisting of the given identifier,
+   * length and content. In case CER encoding is enabled, large strings are
+   * written in segments.
+   * 
+   * @param aIdentifier
+   *          the identifier octet of the value;
+   * @param aType
+   *          the (universal) type of the value;
+   * @param aContent
+   *          the content of the value.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void writeTLV( final int aIdentifier, final AsnType aType, final byte[] aContent ) throws IOException
+  {
+    if ( this.cerEncoding && ( aContent.length > SEGMENT_SIZE ) && isStringType( aType ) )
     {
-      write( c );
+      writeSegmented( aIdentifier, aType, aContent );
+      return;
     }
+    writeTLV( aIdentifier, aContent, 0, aContent.length );
   }
 }
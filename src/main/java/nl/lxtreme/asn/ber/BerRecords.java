@@ -0,0 +1,463 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+
+/**
+ * Provides {@link Stream}s of the top-level values, or records, in a
+ * BER-encoded file or buffer.
+ * <p>
+ * Streams over a buffer, or a memory-mapped file, can be split at record
+ * boundaries, which are found by only walking the headers of the records, so
+ * a {@link Stream#parallel() parallel} stream decodes its records on multiple
+ * cores. Each record is decoded from its own {@link BerInputStream}, hence the
+ * decoder should be stateless or thread-safe when used in parallel. Streams
+ * over an input stream cannot be split and read their records lazily, one at
+ * a time.
+ * </p>
+ * <p>
+ * As streams cannot throw checked exceptions, I/O problems, including
+ * malformed records, are thrown as {@link UncheckedIOException}s.
+ * </p>
+ */
+public final class BerRecords
+{
+  // INNER TYPES
+
+  /**
+   * Decodes a single record.
+   * 
+   * @param <T>
+   *          the type of the decoded records.
+   */
+  @FunctionalInterface
+  public static interface Decoder<T>
+  {
+    /**
+     * Decodes the next record from the given input stream.
+     * 
+     * @param aInput
+     *          the input stream to read the record from, never
+     *          <code>null</code>.
+     * @return the decoded record.
+     * @throws IOException
+     *           in case the record could not be decoded.
+     */
+    T decode( BerInputStream aInput ) throws IOException;
+  }
+
+  /**
+   * Provides a {@link Spliterator} over the records in (a part of) a buffer.
+   */
+  static final class BufferSpliterator<T> implements Spliterator<T>
+  {
+    // VARIABLES
+
+    private final ByteBuffer buffer;
+    private final Decoder<T> decoder;
+    private final BerDecoderLimits limits;
+    private final int end;
+
+    private int position;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link BufferSpliterator} instance.
+     */
+    BufferSpliterator( final ByteBuffer aBuffer, final int aPosition, final int aEnd, final Decoder<T> aDecoder,
+        final BerDecoderLimits aLimits )
+    {
+      this.buffer = aBuffer;
+      this.position = aPosition;
+      this.end = aEnd;
+      this.decoder = aDecoder;
+      this.limits = aLimits;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int characteristics()
+    {
+      return ORDERED | IMMUTABLE;
+    }
+
+    /**
+     * Returns the number of remaining bytes, as the number of records is not
+     * known without scanning them.
+     */
+    @Override
+    public long estimateSize()
+    {
+      return this.end - this.position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean tryAdvance( final Consumer<? super T> aAction )
+    {
+      if ( this.position >= this.end )
+      {
+        return false;
+      }
+
+      try
+      {
+        final int recordEnd = findEndOfRecord( this.buffer, this.position, this.end );
+
+        final ByteBuffer record = this.buffer.duplicate();
+        record.limit( recordEnd ).position( this.position );
+        this.position = recordEnd;
+
+        aAction.accept( this.decoder.decode( new BerInputStream( new ByteBufferInputStream( record ),
+            this.limits ) ) );
+        return true;
+      }
+      catch ( IOException exception )
+      {
+        // Do not try to decode anything after a malformed record...
+        this.position = this.end;
+        throw new UncheckedIOException( exception );
+      }
+    }
+
+    /**
+     * Splits off the records before the first record boundary at or after the
+     * middle of the remaining bytes.
+     */
+    @Override
+    public Spliterator<T> trySplit()
+    {
+      final int middle = this.position + ( ( this.end - this.position ) / 2 );
+
+      int boundary = this.position;
+      try
+      {
+        while ( ( boundary < middle ) && ( boundary < this.end ) )
+        {
+          boundary = findEndOfRecord( this.buffer, boundary, this.end );
+        }
+      }
+      catch ( IOException exception )
+      {
+        // Leave it to tryAdvance() to report the malformed record...
+        return null;
+      }
+
+      if ( ( boundary <= this.position ) || ( boundary >= this.end ) )
+      {
+        return null;
+      }
+
+      final Spliterator<T> prefix = new BufferSpliterator<T>( this.buffer, this.position, boundary, this.decoder,
+          this.limits );
+      this.position = boundary;
+      return prefix;
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes an indefinite length. */
+  private static final int INDEFINITE_LENGTH = -1;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerRecords} instance, never used.
+   */
+  private BerRecords()
+  {
+    // Nop
+  }
+
+  // METHODS
+
+  /**
+   * Returns a stream of the records in the given buffer.
+   * 
+   * @param aBuffer
+   *          the buffer with the records, cannot be <code>null</code>;
+   * @param aDecoder
+   *          the decoder for the records, cannot be <code>null</code>.
+   * @return a new, splittable, stream of decoded records, never
+   *         <code>null</code>.
+   */
+  public static <T> Stream<T> stream( final byte[] aBuffer, final Decoder<T> aDecoder )
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    return stream( ByteBuffer.wrap( aBuffer ), aDecoder, BerDecoderLimits.UNLIMITED );
+  }
+
+  /**
+   * Returns a stream of the records between the position and limit of the
+   * given buffer.
+   * <p>
+   * The position of the given buffer is not changed, and its content should
+   * not be modified as long as the stream is in use.
+   * </p>
+   * 
+   * @param aBuffer
+   *          the buffer with the records, cannot be <code>null</code>;
+   * @param aDecoder
+   *          the decoder for the records, cannot be <code>null</code>;
+   * @param aLimits
+   *          the limits to enforce while decoding each record, cannot be
+   *          <code>null</code>.
+   * @return a new, splittable, stream of decoded records, never
+   *         <code>null</code>.
+   */
+  public static <T> Stream<T> stream( final ByteBuffer aBuffer, final Decoder<T> aDecoder,
+      final BerDecoderLimits aLimits )
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    validate( aDecoder, aLimits );
+
+    final ByteBuffer buffer = aBuffer.duplicate();
+    return StreamSupport.stream( new BufferSpliterator<T>( buffer, buffer.position(), buffer.limit(), aDecoder,
+        aLimits ), false );
+  }
+
+  /**
+   * Returns a stream of the records read from the given input stream.
+   * <p>
+   * The records are read lazily, as the stream is consumed. The returned
+   * stream cannot be split, and closing it closes the given input stream.
+   * </p>
+   * 
+   * @param aInputStream
+   *          the input stream to read the records from, cannot be
+   *          <code>null</code>;
+   * @param aDecoder
+   *          the decoder for the records, cannot be <code>null</code>.
+   * @return a new, sequential, stream of decoded records, never
+   *         <code>null</code>.
+   */
+  public static <T> Stream<T> stream( final InputStream aInputStream, final Decoder<T> aDecoder )
+  {
+    if ( aInputStream == null )
+    {
+      throw new IllegalArgumentException( "InputStream cannot be null!" );
+    }
+    validate( aDecoder, BerDecoderLimits.UNLIMITED );
+
+    final BerInputStream input = ( aInputStream instanceof BerInputStream ) ? ( BerInputStream )aInputStream
+        : new BerInputStream( aInputStream );
+
+    final Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>( Long.MAX_VALUE,
+        Spliterator.ORDERED )
+    {
+      @Override
+      public boolean tryAdvance( final Consumer<? super T> aAction )
+      {
+        try
+        {
+          if ( input.peekIdentifier() == null )
+          {
+            return false;
+          }
+          aAction.accept( aDecoder.decode( input ) );
+          return true;
+        }
+        catch ( IOException exception )
+        {
+          throw new UncheckedIOException( exception );
+        }
+      }
+    };
+
+    return StreamSupport.stream( spliterator, false ).onClose( new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          input.close();
+        }
+        catch ( IOException exception )
+        {
+          throw new UncheckedIOException( exception );
+        }
+      }
+    } );
+  }
+
+  /**
+   * Returns a stream of the records in the given file, which is mapped into
+   * memory.
+   * <p>
+   * Only the headers of the records are walked to split the stream, so the
+   * pages of a record are only touched by the thread decoding it.
+   * </p>
+   * 
+   * @param aPath
+   *          the path of the file with the records, cannot be
+   *          <code>null</code>;
+   * @param aDecoder
+   *          the decoder for the records, cannot be <code>null</code>.
+   * @return a new, splittable, stream of decoded records, never
+   *         <code>null</code>.
+   * @throws IOException
+   *           in case the file could not be mapped, or is larger than 2GB.
+   */
+  public static <T> Stream<T> stream( final Path aPath, final Decoder<T> aDecoder ) throws IOException
+  {
+    if ( aPath == null )
+    {
+      throw new IllegalArgumentException( "Path cannot be null!" );
+    }
+    validate( aDecoder, BerDecoderLimits.UNLIMITED );
+
+    final FileChannel channel = FileChannel.open( aPath, StandardOpenOption.READ );
+    try
+    {
+      final long size = channel.size();
+      if ( size > Integer.MAX_VALUE )
+      {
+        throw new IOException( "File too large! Cannot map " + size + " bytes!" );
+      }
+      // The mapping remains valid after the channel is closed...
+      return stream( channel.map( MapMode.READ_ONLY, 0, size ), aDecoder, BerDecoderLimits.UNLIMITED );
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  /**
+   * Finds the end of the record at the given position, by only walking the
+   * headers of the record and of any nested indefinite length values.
+   * 
+   * @return the position right after the record.
+   * @throws EOFException
+   *           in case the record does not end before the given limit;
+   * @throws IOException
+   *           in case the record is malformed.
+   */
+  static int findEndOfRecord( final ByteBuffer aBuffer, final int aPosition, final int aLimit ) throws IOException
+  {
+    int pos = aPosition;
+    int open = 0;
+    do
+    {
+      if ( pos >= aLimit )
+      {
+        throw new EOFException();
+      }
+      if ( ( open > 0 ) && ( aBuffer.get( pos ) == 0x00 ) )
+      {
+        if ( pos + 1 >= aLimit )
+        {
+          throw new EOFException();
+        }
+        if ( aBuffer.get( pos + 1 ) != 0x00 )
+        {
+          throw new IOException( "Invalid end-of-contents!" );
+        }
+        pos += 2;
+        open--;
+        continue;
+      }
+
+      final int idOctet = aBuffer.get( pos++ ) & 0xFF;
+      if ( ( idOctet & 0x1F ) == 0x1F )
+      {
+        throw new IOException( "Invalid identifier: long form tag numbers are not supported!" );
+      }
+
+      if ( pos >= aLimit )
+      {
+        throw new EOFException();
+      }
+      final int first = aBuffer.get( pos++ ) & 0xFF;
+      int length = first;
+      if ( first == 0x80 )
+      {
+        length = INDEFINITE_LENGTH;
+      }
+      else if ( first > 0x80 )
+      {
+        final int count = first & 0x7F;
+        if ( count > 4 )
+        {
+          throw new IOException( "Invalid length: too many length octets (" + count + ")!" );
+        }
+        if ( count > ( aLimit - pos ) )
+        {
+          throw new EOFException();
+        }
+        length = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+          length = ( length << 8 ) | ( aBuffer.get( pos++ ) & 0xFF );
+        }
+        if ( length < 0 )
+        {
+          throw new IOException( "Invalid length: too large!" );
+        }
+      }
+
+      if ( length == INDEFINITE_LENGTH )
+      {
+        if ( ( idOctet & 0x20 ) == 0 )
+        {
+          throw new IOException( "Invalid length: primitive value cannot have indefinite length!" );
+        }
+        open++;
+      }
+      else
+      {
+        if ( length > ( aLimit - pos ) )
+        {
+          throw new EOFException();
+        }
+        pos += length;
+      }
+    }
+    while ( open > 0 );
+
+    return pos;
+  }
+
+  /**
+   * Verifies the given decoder and limits are not <code>null</code>.
+   */
+  private static void validate( final Decoder<?> aDecoder, final BerDecoderLimits aLimits )
+  {
+    if ( aDecoder == null )
+    {
+      throw new IllegalArgumentException( "Decoder cannot be null!" );
+    }
+    if ( aLimits == null )
+    {
+      throw new IllegalArgumentException( "Limits cannot be null!" );
+    }
+  }
+}
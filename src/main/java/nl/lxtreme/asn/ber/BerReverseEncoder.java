@@ -0,0 +1,442 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
+
+import java.io.*;
+import java.math.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Provides a BER encoder that writes its values from back to front into a
+ * single buffer.
+ * <p>
+ * As the content of a constructed value is written <em>before</em> its
+ * header, the length of the constructed value is known by the time its header
+ * is written. Hence, no intermediary buffers are needed for sequences and sets,
+ * and every byte is written exactly once, regardless of how deeply the values
+ * are nested.
+ * </p>
+ * <p>
+ * The consequence is that all values must be written in <b>reverse</b> order:
+ * the last value of a sequence is written first. A sequence or set is written
+ * by taking a {@link #mark()} before writing its content and calling
+ * {@link #endSequence(int)} or {@link #endSet(int)} with that mark afterwards,
+ * for example:
+ * </p>
+ * 
+ * <pre>
+ * BerReverseEncoder encoder = new BerReverseEncoder();
+ * int mark = encoder.mark();
+ * encoder.writeString( &quot;last&quot; );
+ * encoder.writeInt( 1 ); // first
+ * encoder.endSequence( mark );
+ * encoder.writeTo( out );
+ * </pre>
+ * <p>
+ * This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public final class BerReverseEncoder
+{
+  // CONSTANTS
+
+  /** Denotes the constructed value bit; used for sequences and sets. */
+  private static final int CONSTRUCTED = 0x20;
+  /** Denotes the default initial buffer size. */
+  private static final int BUFFER_SIZE = 256;
+
+  // VARIABLES
+
+  private byte[] buffer;
+  private int position;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerReverseEncoder} with a default initial capacity.
+   */
+  public BerReverseEncoder()
+  {
+    this( BUFFER_SIZE );
+  }
+
+  /**
+   * Creates a new {@link BerReverseEncoder} instance.
+   * 
+   * @param aInitialCapacity
+   *          the initial capacity, in bytes, > 0.
+   */
+  public BerReverseEncoder( final int aInitialCapacity )
+  {
+    if ( aInitialCapacity <= 0 )
+    {
+      throw new IllegalArgumentException( "Initial capacity should be positive!" );
+    }
+    this.buffer = new byte[aInitialCapacity];
+    this.position = aInitialCapacity;
+  }
+
+  // METHODS
+
+  /**
+   * Ends a sequence whose content is written since the given mark, by writing
+   * its header.
+   * 
+   * @param aMark
+   *          the mark taken before the content of the sequence was written.
+   * @see #mark()
+   */
+  public void endSequence( final int aMark )
+  {
+    writeHeader( SEQUENCE.ordinal() | CONSTRUCTED, getContentLength( aMark ) );
+  }
+
+  /**
+   * Ends a set whose content is written since the given mark, by writing its
+   * header.
+   * 
+   * @param aMark
+   *          the mark taken before the content of the set was written.
+   * @see #mark()
+   */
+  public void endSet( final int aMark )
+  {
+    writeHeader( SET.ordinal() | CONSTRUCTED, getContentLength( aMark ) );
+  }
+
+  /**
+   * Marks the current position, to be used as start of the content of a
+   * constructed value.
+   * 
+   * @return a mark, >= 0.
+   */
+  public int mark()
+  {
+    return size();
+  }
+
+  /**
+   * Discards all written values, allowing this encoder to be reused.
+   */
+  public void reset()
+  {
+    this.position = this.buffer.length;
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   * 
+   * @return a number of bytes, >= 0.
+   */
+  public int size()
+  {
+    return this.buffer.length - this.position;
+  }
+
+  /**
+   * Returns a copy of all bytes written so far.
+   * 
+   * @return a byte array, never <code>null</code>.
+   */
+  public byte[] toByteArray()
+  {
+    return Arrays.copyOfRange( this.buffer, this.position, this.buffer.length );
+  }
+
+  /**
+   * Writes a primitive bit string value.
+   * 
+   * @param aBitString
+   *          the bit string value to write.
+   */
+  public void writeBitString( final BigInteger aBitString )
+  {
+    writeTLV( BIT_STRING, encodeBitString( aBitString ) );
+  }
+
+  /**
+   * Writes a primitive boolean value.
+   * 
+   * @param aValue
+   *          the boolean value to write.
+   */
+  public void writeBoolean( final boolean aValue )
+  {
+    ensureCapacity( 3 );
+    this.buffer[--this.position] = ( byte )( aValue ? 0xFF : 0x00 );
+    this.buffer[--this.position] = 0x01;
+    this.buffer[--this.position] = ( byte )BOOLEAN.ordinal();
+  }
+
+  /**
+   * Writes a primitive enumerated value.
+   * 
+   * @param aValue
+   *          the enumerated value to write.
+   */
+  public void writeEnumeratedValue( final int aValue )
+  {
+    writeInteger( ENUMERATED, aValue );
+  }
+
+  /**
+   * Writes a primitive generalized timestamp as UTC string value.
+   * 
+   * @param aTimestamp
+   *          the generalized timestamp to write.
+   */
+  public void writeGeneralizedTime( final Calendar aTimestamp )
+  {
+    writeTLV( GENERALIZED_TIME, encodeISO8601Time( aTimestamp ) );
+  }
+
+  /**
+   * Writes an IA5 (ASCII) encoded string value.
+   * 
+   * @param aString
+   *          the IA5 (ASCII) string value to write.
+   */
+  public void writeIA5String( final String aString )
+  {
+    writeTLV( IA5_STRING, encodeString( aString, CHARSET_ASCII ) );
+  }
+
+  /**
+   * Writes a primitive integer value.
+   * 
+   * @param aValue
+   *          the integer value to write.
+   */
+  public void writeInt( final int aValue )
+  {
+    writeInteger( INTEGER, aValue );
+  }
+
+  /**
+   * Writes a primitive null value.
+   */
+  public void writeNull()
+  {
+    ensureCapacity( 2 );
+    this.buffer[--this.position] = 0x00;
+    this.buffer[--this.position] = ( byte )NULL.ordinal();
+  }
+
+  /**
+   * Writes a object identifier.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the object identifier, cannot be
+   *          <code>null</code>.
+   */
+  public void writeObjectIdentifier( final int[] aSubIDs )
+  {
+    writeTLV( OBJECT_ID, encodeObjectIdentifier( aSubIDs ) );
+  }
+
+  /**
+   * Writes a primitive octet-string value.
+   * 
+   * @param aString
+   *          the octet-string value to write.
+   */
+  public void writeOctetString( final byte[] aString )
+  {
+    writeTLV( OCTET_STRING, aString );
+  }
+
+  /**
+   * Writes a printable string, leaving out all non-printable characters.
+   * 
+   * @param aValue
+   *          the printable string value to write, cannot be <code>null</code>.
+   */
+  public void writePrintableString( final String aValue )
+  {
+    writeTLV( PRINTABLE_STRING, encodePrintableString( aValue ) );
+  }
+
+  /**
+   * Writes a relative object identifier.
+   * 
+   * @param aSubIDs
+   *          the integer parts of the relative object identifier, cannot be
+   *          <code>null</code>.
+   */
+  public void writeRelativeObjectIdentifier( final int[] aSubIDs )
+  {
+    writeTLV( RELATIVE_OID, encodeSubIdentifiers( aSubIDs ) );
+  }
+
+  /**
+   * Writes a primitive ISO8859-1 encoded string value.
+   * 
+   * @param aString
+   *          the string value to write.
+   */
+  public void writeString( final String aString )
+  {
+    writeTLV( OCTET_STRING, encodeString( aString, CHARSET_ISO8859_1 ) );
+  }
+
+  /**
+   * Writes all bytes written so far to the given output stream.
+   * 
+   * @param aOutStream
+   *          the output stream to write to, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  public void writeTo( final OutputStream aOutStream ) throws IOException
+  {
+    aOutStream.write( this.buffer, this.position, size() );
+  }
+
+  /**
+   * Writes a primitive timestamp as UTC string value.
+   * 
+   * @param aTimestamp
+   *          the timestamp to write.
+   */
+  public void writeUtcTime( final Calendar aTimestamp )
+  {
+    writeTLV( UTC_TIME, encodeUTCTime( aTimestamp ) );
+  }
+
+  /**
+   * Writes a primitive UTF-8 encoded string value.
+   * 
+   * @param aString
+   *          the string value to write.
+   */
+  public void writeUTF8String( final String aString )
+  {
+    writeTLV( UTF8_STRING, encodeString( aString, CHARSET_UTF8 ) );
+  }
+
+  /**
+   * Ensures at least the given number of bytes can be written in front of the
+   * current position.
+   * 
+   * @param aLength
+   *          the number of bytes needed, >= 0.
+   */
+  private void ensureCapacity( final int aLength )
+  {
+    if ( aLength > this.position )
+    {
+      final int size = size();
+      final long required = ( long )size + aLength;
+      if ( required > Integer.MAX_VALUE )
+      {
+        throw new OutOfMemoryError( "Encoder capacity exceeded!" );
+      }
+
+      final int capacity = ( int )Math.min( Integer.MAX_VALUE, Math.max( required, 2L * this.buffer.length ) );
+      final byte[] newBuffer = new byte[capacity];
+      // Data is kept at the end of the buffer...
+      System.arraycopy( this.buffer, this.position, newBuffer, capacity - size, size );
+
+      this.buffer = newBuffer;
+      this.position = capacity - size;
+    }
+  }
+
+  /**
+   * Returns the length of the content written since the given mark.
+   * 
+   * @param aMark
+   *          the mark to return the content length for.
+   * @return a content length, >= 0.
+   */
+  private int getContentLength( final int aMark )
+  {
+    final int size = size();
+    if ( ( aMark < 0 ) || ( aMark > size ) )
+    {
+      throw new IllegalArgumentException( "Invalid mark!" );
+    }
+    return size - aMark;
+  }
+
+  /**
+   * Writes the header of a value, consisting of the identifier and length.
+   * 
+   * @param aIdentifier
+   *          the identifier octet;
+   * @param aLength
+   *          the content length, >= 0.
+   */
+  private void writeHeader( final int aIdentifier, final int aLength )
+  {
+    final int lengthLength = getLengthLength( aLength );
+    ensureCapacity( lengthLength + 1 );
+
+    final byte[] buf = this.buffer;
+    int pos = this.position;
+    if ( lengthLength == 1 )
+    {
+      buf[--pos] = ( byte )aLength;
+    }
+    else
+    {
+      // long form length; least significant byte first...
+      for ( int i = 1, value = aLength; i < lengthLength; i++, value >>>= 8 )
+      {
+        buf[--pos] = ( byte )value;
+      }
+      buf[--pos] = ( byte )( 0x80 | ( lengthLength - 1 ) );
+    }
+    buf[--pos] = ( byte )aIdentifier;
+    this.position = pos;
+  }
+
+  /**
+   * Writes a primitive integer value without any intermediary allocations.
+   * 
+   * @param aType
+   *          the type of the value;
+   * @param aValue
+   *          the integer value to write.
+   */
+  private void writeInteger( final AsnType aType, final int aValue )
+  {
+    final int length = getIntegerLength( aValue );
+    ensureCapacity( length );
+
+    int value = aValue;
+    for ( int i = 0; i < length; i++, value >>= 8 )
+    {
+      this.buffer[--this.position] = ( byte )value;
+    }
+    writeHeader( aType.ordinal(), length );
+  }
+
+  /**
+   * Writes a complete primitive value, consisting of an identifier, length
+   * and content.
+   * 
+   * @param aType
+   *          the type of the value;
+   * @param aContent
+   *          the content of the value.
+   */
+  private void writeTLV( final AsnType aType, final byte[] aContent )
+  {
+    ensureCapacity( aContent.length );
+    this.position -= aContent.length;
+    System.arraycopy( aContent, 0, this.buffer, this.position, aContent.length );
+
+    writeHeader( aType.ordinal(), aContent.length );
+  }
+}
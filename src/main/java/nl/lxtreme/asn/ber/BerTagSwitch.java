@@ -0,0 +1,146 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Provides a precompiled dispatch table for a fixed set of tags, for example
+ * the alternatives of a CHOICE or the optional components of a SEQUENCE.
+ * <p>
+ * Rather than comparing an identifier with each of the alternatives in turn,
+ * the identifier octet is used to look up the index of the matching
+ * alternative in a dense table of 256 entries. A tag matches both its
+ * primitive and constructed form, as some types, such as strings, can be
+ * encoded in either form. This class is immutable and thread-safe, hence a
+ * single instance can be shared by any number of decoders.
+ * </p>
+ */
+public final class BerTagSwitch
+{
+  // CONSTANTS
+
+  /** Denotes that an identifier does not match any of the tags. */
+  public static final int NO_MATCH = -1;
+
+  private static final int CONSTRUCTED = 0x20;
+
+  // VARIABLES
+
+  private final AsnIdentifier[] tags;
+  private final int[] indices;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerTagSwitch} instance.
+   * 
+   * @param aTags
+   *          the tags to dispatch on, the index of each tag in this array is
+   *          returned when it is matched. Cannot be <code>null</code> nor
+   *          contain duplicate tags.
+   */
+  public BerTagSwitch( final AsnIdentifier... aTags )
+  {
+    if ( aTags == null )
+    {
+      throw new IllegalArgumentException( "Tags cannot be null!" );
+    }
+
+    this.tags = aTags.clone();
+    this.indices = new int[256];
+    Arrays.fill( this.indices, NO_MATCH );
+
+    for ( int i = 0; i < this.tags.length; i++ )
+    {
+      final AsnIdentifier tag = this.tags[i];
+      if ( tag == null )
+      {
+        throw new IllegalArgumentException( "Tag cannot be null!" );
+      }
+
+      final int primitive = tag.getTag() & ~CONSTRUCTED;
+      if ( this.indices[primitive] != NO_MATCH )
+      {
+        throw new IllegalArgumentException( "Duplicate tag: " + tag + "!" );
+      }
+      this.indices[primitive] = i;
+      this.indices[primitive | CONSTRUCTED] = i;
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Returns the number of tags in this switch.
+   * 
+   * @return the number of tags, >= 0.
+   */
+  public int getSize()
+  {
+    return this.tags.length;
+  }
+
+  /**
+   * Returns the tag at the given index.
+   * 
+   * @param aIndex
+   *          the index of the tag to return.
+   * @return the tag, never <code>null</code>.
+   */
+  public AsnIdentifier getTag( final int aIndex )
+  {
+    return this.tags[aIndex];
+  }
+
+  /**
+   * Returns the index of the tag matching the given identifier.
+   * 
+   * @param aIdentifier
+   *          the identifier to look up, may be <code>null</code>.
+   * @return the index of the matching tag, or {@link #NO_MATCH} if the given
+   *         identifier does not match any tag.
+   */
+  public int indexOf( final AsnIdentifier aIdentifier )
+  {
+    if ( aIdentifier == null )
+    {
+      return NO_MATCH;
+    }
+    return this.indices[aIdentifier.getTag() & 0xFF];
+  }
+
+  /**
+   * Returns the index of the tag matching the given identifier octet.
+   * 
+   * @param aOctet
+   *          the identifier octet to look up, 0..255, any other value never
+   *          matches.
+   * @return the index of the matching tag, or {@link #NO_MATCH} if the given
+   *         identifier octet does not match any tag.
+   */
+  public int indexOf( final int aOctet )
+  {
+    if ( ( aOctet & ~0xFF ) != 0 )
+    {
+      return NO_MATCH;
+    }
+    return this.indices[aOctet];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BerTagSwitch" + Arrays.toString( this.tags );
+  }
+}
@@ -0,0 +1,654 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Provides a columnar representation of all BER-encoded values in a buffer,
+ * meant for bulk processing of many small values.
+ * <p>
+ * A tape is built in a single pass over the buffer, without decoding any
+ * content. Rather than creating an object per value, the identifier, content
+ * offset, content length, parent and next sibling of each value are stored in
+ * parallel primitive arrays, indexed by the position of the value in the
+ * buffer (pre-order). This takes 17 bytes per value, regardless of its type.
+ * The values can be navigated by index, or with a {@link Cursor}, which does
+ * not allocate anything once created.
+ * </p>
+ * <p>
+ * A tape is immutable once built, hence it can be shared between threads, as
+ * long as the buffer is not modified. Cursors are <b>not</b> thread-safe.
+ * </p>
+ */
+public final class BerTape
+{
+  // INNER TYPES
+
+  /**
+   * Provides a cursor for navigating the values of a tape, without any
+   * allocations.
+   */
+  public final class Cursor
+  {
+    // VARIABLES
+
+    private int index;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Cursor} instance, positioned at the first value.
+     */
+    Cursor()
+    {
+      this.index = ( BerTape.this.count > 0 ) ? 0 : NONE;
+    }
+
+    // METHODS
+
+    /**
+     * Decodes the content of the current value as boolean.
+     * 
+     * @return <code>true</code> if the content is non-zero, <code>false</code>
+     *         otherwise.
+     * @throws IOException
+     *           in case the content is not a single octet.
+     */
+    public boolean getBoolean() throws IOException
+    {
+      if ( getContentLength() != 1 )
+      {
+        throw new IOException( "Invalid boolean: expected a single content octet!" );
+      }
+      return BerTape.this.buffer[getContentOffset()] != 0;
+    }
+
+    /**
+     * @return the content length of the current value, >= 0.
+     * @see BerTape#getContentLength(int)
+     */
+    public int getContentLength()
+    {
+      return BerTape.this.lengths[this.index];
+    }
+
+    /**
+     * @return the content offset of the current value, >= 0.
+     * @see BerTape#getContentOffset(int)
+     */
+    public int getContentOffset()
+    {
+      return BerTape.this.offsets[this.index];
+    }
+
+    /**
+     * @return the identifier of the current value, never <code>null</code>.
+     */
+    public AsnIdentifier getIdentifier()
+    {
+      return AsnIdentifier.valueOf( getTag() );
+    }
+
+    /**
+     * @return the index of the current value, >= 0, or -1 if this cursor is
+     *         not positioned at any value.
+     */
+    public int getIndex()
+    {
+      return this.index;
+    }
+
+    /**
+     * Decodes the content of the current value as (two's complement) integer,
+     * as used by INTEGER and ENUMERATED values.
+     * 
+     * @return the integer value.
+     * @throws IOException
+     *           in case the content is empty or does not fit in an integer.
+     */
+    public int getInt() throws IOException
+    {
+      final long value = getLong();
+      if ( ( value < Integer.MIN_VALUE ) || ( value > Integer.MAX_VALUE ) )
+      {
+        throw new IOException( "Invalid integer: value does not fit in 32 bits!" );
+      }
+      return ( int )value;
+    }
+
+    /**
+     * Decodes the content of the current value as (two's complement) long.
+     * 
+     * @return the long value.
+     * @throws IOException
+     *           in case the content is empty or does not fit in a long.
+     */
+    public long getLong() throws IOException
+    {
+      final int length = getContentLength();
+      if ( ( length < 1 ) || ( length > 8 ) )
+      {
+        throw new IOException( "Invalid integer: expected 1..8 content octets, got " + length + "!" );
+      }
+      final byte[] buf = BerTape.this.buffer;
+      final int offset = getContentOffset();
+      long value = buf[offset]; // sign extended...
+      for ( int i = 1; i < length; i++ )
+      {
+        value = ( value << 8 ) | ( buf[offset + i] & 0xFF );
+      }
+      return value;
+    }
+
+    /**
+     * @return the identifier octet of the current value, 0..255.
+     */
+    public int getTag()
+    {
+      return BerTape.this.tags[this.index] & 0xFF;
+    }
+
+    /**
+     * @return <code>true</code> if the current value is constructed,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isConstructed()
+    {
+      return ( getTag() & CONSTRUCTED ) != 0;
+    }
+
+    /**
+     * @return <code>true</code> if this cursor is positioned at a value,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isValid()
+    {
+      return this.index != NONE;
+    }
+
+    /**
+     * Positions this cursor at the value with the given index.
+     * 
+     * @param aIndex
+     *          the index of the value, >= 0 and less than
+     *          {@link BerTape#getCount()}.
+     * @return this cursor.
+     */
+    public Cursor moveTo( final int aIndex )
+    {
+      if ( ( aIndex < 0 ) || ( aIndex >= BerTape.this.count ) )
+      {
+        throw new IndexOutOfBoundsException( "Invalid index: " + aIndex + "!" );
+      }
+      this.index = aIndex;
+      return this;
+    }
+
+    /**
+     * Moves this cursor to the first child of the current value.
+     * 
+     * @return <code>true</code> if the current value has children and the
+     *         cursor is moved, <code>false</code> otherwise.
+     */
+    public boolean toFirstChild()
+    {
+      final int child = getFirstChild( this.index );
+      if ( child == NONE )
+      {
+        return false;
+      }
+      this.index = child;
+      return true;
+    }
+
+    /**
+     * Moves this cursor to the next sibling of the current value.
+     * 
+     * @return <code>true</code> if the current value has a next sibling and the
+     *         cursor is moved, <code>false</code> otherwise.
+     */
+    public boolean toNextSibling()
+    {
+      final int sibling = BerTape.this.nextSiblings[this.index];
+      if ( sibling == NONE )
+      {
+        return false;
+      }
+      this.index = sibling;
+      return true;
+    }
+
+    /**
+     * Moves this cursor to the parent of the current value.
+     * 
+     * @return <code>true</code> if the current value has a parent and the
+     *         cursor is moved, <code>false</code> otherwise.
+     */
+    public boolean toParent()
+    {
+      final int parent = BerTape.this.parents[this.index];
+      if ( parent == NONE )
+      {
+        return false;
+      }
+      this.index = parent;
+      return true;
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes the absence of a parent, sibling or child. */
+  public static final int NONE = -1;
+
+  /** Denotes the constructed bit of an identifier octet. */
+  private static final int CONSTRUCTED = 0x20;
+  /** Denotes the bits of the tag number in an identifier octet. */
+  private static final int TAG_MASK = 0x1F;
+  /** Denotes the end of an indefinite length value, which is not yet known. */
+  private static final int INDEFINITE = -1;
+  /** Denotes the initial capacity of a tape, in values. */
+  private static final int INITIAL_CAPACITY = 64;
+
+  // VARIABLES
+
+  private final byte[] buffer;
+
+  private byte[] tags;
+  private int[] offsets;
+  private int[] lengths;
+  private int[] parents;
+  private int[] nextSiblings;
+  private int count;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerTape} instance.
+   * 
+   * @param aBuffer
+   *          the buffer with the BER-encoded values.
+   */
+  private BerTape( final byte[] aBuffer )
+  {
+    this.buffer = aBuffer;
+    this.tags = new byte[INITIAL_CAPACITY];
+    this.offsets = new int[INITIAL_CAPACITY];
+    this.lengths = new int[INITIAL_CAPACITY];
+    this.parents = new int[INITIAL_CAPACITY];
+    this.nextSiblings = new int[INITIAL_CAPACITY];
+  }
+
+  // METHODS
+
+  /**
+   * Builds a tape of all BER-encoded values in the given buffer, without any
+   * decoding limits.
+   * 
+   * @param aBuffer
+   *          the buffer with zero or more BER-encoded values, cannot be
+   *          <code>null</code>.
+   * @return a new {@link BerTape}, never <code>null</code>.
+   * @throws IOException
+   *           in case the buffer contains invalid values.
+   */
+  public static BerTape parse( final byte[] aBuffer ) throws IOException
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    return parse( aBuffer, 0, aBuffer.length, BerDecoderLimits.UNLIMITED );
+  }
+
+  /**
+   * Builds a tape of all BER-encoded values in the given part of a buffer.
+   * 
+   * @param aBuffer
+   *          the buffer with zero or more BER-encoded values, cannot be
+   *          <code>null</code>;
+   * @param aOffset
+   *          the offset of the first value in the buffer;
+   * @param aLength
+   *          the number of bytes to parse;
+   * @param aLimits
+   *          the decoding limits to enforce, of which the maximum length and
+   *          depth apply, cannot be <code>null</code>.
+   * @return a new {@link BerTape}, never <code>null</code>.
+   * @throws IOException
+   *           in case the buffer contains invalid values, or the limits are
+   *           exceeded.
+   */
+  public static BerTape parse( final byte[] aBuffer, final int aOffset, final int aLength,
+      final BerDecoderLimits aLimits ) throws IOException
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    if ( aLimits == null )
+    {
+      throw new IllegalArgumentException( "Limits cannot be null!" );
+    }
+    if ( ( aOffset < 0 ) || ( aLength < 0 ) || ( aOffset > ( aBuffer.length - aLength ) ) )
+    {
+      throw new IllegalArgumentException( "Invalid offset and/or length!" );
+    }
+
+    final BerTape tape = new BerTape( aBuffer );
+    tape.build( aOffset, aOffset + aLength, aLimits );
+    return tape;
+  }
+
+  /**
+   * Returns the buffer this tape is built from.
+   * 
+   * @return the buffer, never <code>null</code>.
+   */
+  public byte[] getBuffer()
+  {
+    return this.buffer;
+  }
+
+  /**
+   * Returns the length of the content of the value with the given index.
+   * 
+   * @param aIndex
+   *          the index of the value.
+   * @return a content length, in bytes, >= 0. For indefinite length values,
+   *         the end-of-contents is not included.
+   */
+  public int getContentLength( final int aIndex )
+  {
+    checkIndex( aIndex );
+    return this.lengths[aIndex];
+  }
+
+  /**
+   * Returns the offset of the content of the value with the given index.
+   * 
+   * @param aIndex
+   *          the index of the value.
+   * @return an offset in the buffer, >= 0.
+   */
+  public int getContentOffset( final int aIndex )
+  {
+    checkIndex( aIndex );
+    return this.offsets[aIndex];
+  }
+
+  /**
+   * Returns the number of values in this tape, including nested values.
+   * 
+   * @return a number of values, >= 0.
+   */
+  public int getCount()
+  {
+    return this.count;
+  }
+
+  /**
+   * Returns the index of the first child of the value with the given index.
+   * 
+   * @param aIndex
+   *          the index of the value.
+   * @return the index of its first child, or {@link #NONE}.
+   */
+  public int getFirstChild( final int aIndex )
+  {
+    checkIndex( aIndex );
+    // Values are stored in pre-order, so a first child directly follows...
+    final int child = aIndex + 1;
+    return ( ( child < this.count ) && ( this.parents[child] == aIndex ) ) ? child : NONE;
+  }
+
+  /**
+   * Returns the index of the next sibling of the value with the given index.
+   * 
+   * @param aIndex
+   *          the index of the value.
+   * @return the index of its next sibling, or {@link #NONE}.
+   */
+  public int getNextSibling( final int aIndex )
+  {
+    checkIndex( aIndex );
+    return this.nextSiblings[aIndex];
+  }
+
+  /**
+   * Returns the index of the parent of the value with the given index.
+   * 
+   * @param aIndex
+   *          the index of the value.
+   * @return the index of its parent, or {@link #NONE} for top-level values.
+   */
+  public int getParent( final int aIndex )
+  {
+    checkIndex( aIndex );
+    return this.parents[aIndex];
+  }
+
+  /**
+   * Returns the identifier octet of the value with the given index.
+   * 
+   * @param aIndex
+   *          the index of the value.
+   * @return an identifier octet, 0..255.
+   */
+  public int getTag( final int aIndex )
+  {
+    checkIndex( aIndex );
+    return this.tags[aIndex] & 0xFF;
+  }
+
+  /**
+   * Creates a new cursor for this tape, positioned at its first value, if
+   * any.
+   * 
+   * @return a new {@link Cursor}, never <code>null</code>.
+   */
+  public Cursor newCursor()
+  {
+    return new Cursor();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "BerTape[count = " + this.count + "]";
+  }
+
+  /**
+   * Adds a value to this tape.
+   * 
+   * @return the index of the added value.
+   */
+  private int add( final int aTag, final int aOffset, final int aLength, final int aParent )
+  {
+    if ( this.count == this.tags.length )
+    {
+      final int capacity = this.count * 2;
+      this.tags = Arrays.copyOf( this.tags, capacity );
+      this.offsets = Arrays.copyOf( this.offsets, capacity );
+      this.lengths = Arrays.copyOf( this.lengths, capacity );
+      this.parents = Arrays.copyOf( this.parents, capacity );
+      this.nextSiblings = Arrays.copyOf( this.nextSiblings, capacity );
+    }
+
+    final int index = this.count++;
+    this.tags[index] = ( byte )aTag;
+    this.offsets[index] = aOffset;
+    this.lengths[index] = aLength;
+    this.parents[index] = aParent;
+    this.nextSiblings[index] = NONE;
+    return index;
+  }
+
+  /**
+   * Builds this tape in a single pass over the given part of the buffer.
+   * <p>
+   * The constructed values that are not yet completed are kept on an explicit
+   * stack, along with their end offset, or {@link #INDEFINITE}, the offset up
+   * to which their content should fit, and the last child added to them, to
+   * link its next sibling.
+   * </p>
+   */
+  private void build( final int aStart, final int aLimit, final BerDecoderLimits aLimits ) throws IOException
+  {
+    final byte[] buf = this.buffer;
+
+    int[] openValues = new int[16];
+    int[] openEnds = new int[16];
+    int[] openLimits = new int[16];
+    int[] lastChildren = new int[17];
+    int depth = 0;
+    lastChildren[0] = NONE;
+
+    int pos = aStart;
+    while ( true )
+    {
+      // Complete all definite length values that end here...
+      while ( ( depth > 0 ) && ( openEnds[depth - 1] == pos ) )
+      {
+        depth--;
+      }
+      final int limit = ( depth > 0 ) ? openLimits[depth - 1] : aLimit;
+      if ( pos >= limit )
+      {
+        if ( depth > 0 )
+        {
+          throw new IOException( "Missing end-of-contents at offset " + pos + "!" );
+        }
+        break;
+      }
+
+      final int idOctet = buf[pos] & 0xFF;
+      if ( idOctet == 0x00 )
+      {
+        if ( ( depth == 0 ) || ( openEnds[depth - 1] != INDEFINITE ) )
+        {
+          throw new IOException( "Unexpected end-of-contents at offset " + pos + "!" );
+        }
+        if ( ( pos + 1 >= limit ) || ( buf[pos + 1] != 0x00 ) )
+        {
+          throw new IOException( "Invalid end-of-contents at offset " + pos + "!" );
+        }
+        depth--;
+        final int value = openValues[depth];
+        this.lengths[value] = pos - this.offsets[value];
+        pos += 2;
+        continue;
+      }
+      if ( ( idOctet & TAG_MASK ) == TAG_MASK )
+      {
+        throw new IOException( "Invalid identifier at offset " + pos + ": long form tag numbers are not supported!" );
+      }
+
+      // Length octets...
+      if ( pos + 1 >= limit )
+      {
+        throw new IOException( "Missing length at offset " + pos + "!" );
+      }
+      int length = buf[pos + 1] & 0xFF;
+      int contentOffset = pos + 2;
+      if ( length > 127 )
+      {
+        final int octets = length & 0x7F;
+        if ( octets > 4 )
+        {
+          throw new IOException( "Invalid length at offset " + pos + ": too many length octets (" + octets + ")!" );
+        }
+        if ( octets > ( limit - contentOffset ) )
+        {
+          throw new IOException( "Missing length at offset " + pos + "!" );
+        }
+        length = ( octets == 0 ) ? INDEFINITE : 0;
+        for ( int i = 0; i < octets; i++ )
+        {
+          length = ( length << 8 ) | ( buf[contentOffset++] & 0xFF );
+        }
+        if ( ( octets > 0 ) && ( length < 0 ) )
+        {
+          throw new IOException( "Invalid length at offset " + pos + ": too large!" );
+        }
+      }
+      if ( length == INDEFINITE )
+      {
+        if ( ( idOctet & CONSTRUCTED ) == 0 )
+        {
+          throw new IOException( "Invalid length at offset " + pos + ": primitive value cannot be indefinite!" );
+        }
+      }
+      else
+      {
+        if ( length > ( limit - contentOffset ) )
+        {
+          throw new IOException( "Invalid length at offset " + pos + ": " + length
+              + " bytes exceeds enclosing value!" );
+        }
+        if ( ( length > aLimits.getMaxLength() ) && ( ( idOctet & CONSTRUCTED ) == 0 ) )
+        {
+          throw new IOException( "Length limit exceeded at offset " + pos + "! Got " + length + " bytes, only "
+              + aLimits.getMaxLength() + " bytes are allowed!" );
+        }
+      }
+
+      final int parent = ( depth > 0 ) ? openValues[depth - 1] : NONE;
+      final int index = add( idOctet, contentOffset, ( length == INDEFINITE ) ? 0 : length, parent );
+      if ( lastChildren[depth] != NONE )
+      {
+        this.nextSiblings[lastChildren[depth]] = index;
+      }
+      lastChildren[depth] = index;
+
+      if ( ( idOctet & CONSTRUCTED ) == 0 )
+      {
+        pos = contentOffset + length;
+        continue;
+      }
+
+      // Constructed value; descend into its content...
+      if ( depth >= aLimits.getMaxDepth() )
+      {
+        throw new IOException( "Nesting limit exceeded at offset " + pos + "! Only " + aLimits.getMaxDepth()
+            + " levels are allowed!" );
+      }
+      if ( depth == openValues.length )
+      {
+        openValues = Arrays.copyOf( openValues, depth * 2 );
+        openEnds = Arrays.copyOf( openEnds, depth * 2 );
+        openLimits = Arrays.copyOf( openLimits, depth * 2 );
+        lastChildren = Arrays.copyOf( lastChildren, ( depth * 2 ) + 1 );
+      }
+      openValues[depth] = index;
+      openEnds[depth] = ( length == INDEFINITE ) ? INDEFINITE : ( contentOffset + length );
+      openLimits[depth] = ( length == INDEFINITE ) ? limit : ( contentOffset + length );
+      depth++;
+      lastChildren[depth] = NONE;
+      pos = contentOffset;
+    }
+  }
+
+  /**
+   * Verifies the given index.
+   */
+  private void checkIndex( final int aIndex )
+  {
+    if ( ( aIndex < 0 ) || ( aIndex >= this.count ) )
+    {
+      throw new IndexOutOfBoundsException( "Invalid index: " + aIndex + "!" );
+    }
+  }
+}
@@ -0,0 +1,835 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static nl.lxtreme.asn.ber.BerEncoding.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Provides a pre-encoded message skeleton, in which only a number of variable
+ * slots need to be encoded for each message.
+ * <p>
+ * A template is created once, using a {@link Builder}. All constant values are
+ * encoded while building the template, and constructed values that contain no
+ * slots at all are folded into a single run of constant bytes. Messages are
+ * then produced by creating a {@link Message} from the template, setting its
+ * slots and writing it. Only the slots, and the headers of the constructed
+ * values enclosing them, are encoded for each message; everything else is
+ * copied as-is. For example:
+ * </p>
+ * 
+ * <pre>
+ * BerTemplate.Builder builder = new BerTemplate.Builder();
+ * builder.beginSequence();
+ * builder.writeInt( 1 ); // version
+ * builder.writeObjectIdentifier( new int[] { 1, 3, 6, 1, 4, 1 } );
+ * int value = builder.addSlot( INTEGER );
+ * builder.end();
+ * BerTemplate template = builder.build();
+ * 
+ * BerTemplate.Message message = template.createMessage();
+ * message.setInt( value, 42 );
+ * message.writeTo( out );
+ * </pre>
+ * <p>
+ * Templates are immutable and can be shared between threads, messages are
+ * <b>not</b> thread-safe, but can be reused for multiple messages.
+ * </p>
+ */
+public final class BerTemplate
+{
+  // INNER TYPES
+
+  /**
+   * Provides a builder for {@link BerTemplate}s.
+   * <p>
+   * Values are added in the order in which they appear in the message.
+   * Constructed values are started with {@link #beginSequence()} or
+   * {@link #beginSet()}, and ended with {@link #end()}.
+   * </p>
+   */
+  public static final class Builder
+  {
+    // VARIABLES
+
+    private final List<Node> nodes;
+    private final List<AsnType> slotTypes;
+    private final Deque<Integer> openNodes;
+    private final ByteArrayOutputStream pending;
+    private final BerOutputStream pendingOut;
+
+    private int barrier;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Builder} instance.
+     */
+    public Builder()
+    {
+      this.nodes = new ArrayList<Node>();
+      this.slotTypes = new ArrayList<AsnType>();
+      this.openNodes = new ArrayDeque<Integer>();
+      this.pending = new ByteArrayOutputStream();
+      this.pendingOut = new BerOutputStream( this.pending );
+    }
+
+    // METHODS
+
+    /**
+     * Adds a variable slot of the given type.
+     * 
+     * @param aType
+     *          the type of the slot, cannot be <code>null</code>.
+     * @return the index of the slot, to be used to set its value in a
+     *         {@link Message}.
+     */
+    public int addSlot( final AsnType aType )
+    {
+      if ( aType == null )
+      {
+        throw new IllegalArgumentException( "Type cannot be null!" );
+      }
+      if ( ( aType == SEQUENCE ) || ( aType == SET ) )
+      {
+        throw new IllegalArgumentException( "Slot cannot be a constructed type!" );
+      }
+      closeConstant();
+
+      final int slot = this.slotTypes.size();
+      this.slotTypes.add( aType );
+      this.nodes.add( new Node( SLOT, aType.ordinal(), null, slot ) );
+      return slot;
+    }
+
+    /**
+     * Begins a sequence; all values added up to the matching {@link #end()}
+     * are part of this sequence.
+     */
+    public void beginSequence()
+    {
+      begin( SEQUENCE.ordinal() | CONSTRUCTED );
+    }
+
+    /**
+     * Begins a set; all values added up to the matching {@link #end()} are
+     * part of this set.
+     */
+    public void beginSet()
+    {
+      begin( SET.ordinal() | CONSTRUCTED );
+    }
+
+    /**
+     * Builds the template.
+     * 
+     * @return a new {@link BerTemplate}, never <code>null</code>.
+     * @throws IllegalStateException
+     *           in case not all constructed values are ended.
+     */
+    public BerTemplate build()
+    {
+      if ( !this.openNodes.isEmpty() )
+      {
+        throw new IllegalStateException( "Not all constructed values are ended!" );
+      }
+      closeConstant();
+
+      return new BerTemplate( this.nodes, this.slotTypes );
+    }
+
+    /**
+     * Ends the most recently begun sequence or set.
+     * 
+     * @throws IllegalStateException
+     *           in case no constructed value is begun.
+     */
+    public void end()
+    {
+      if ( this.openNodes.isEmpty() )
+      {
+        throw new IllegalStateException( "No constructed value to end!" );
+      }
+      closeConstant();
+
+      final int index = this.openNodes.pop().intValue();
+      final Node node = this.nodes.get( index );
+      node.end = this.nodes.size();
+
+      final int childCount = this.nodes.size() - index - 1;
+      if ( ( childCount == 0 ) || ( ( childCount == 1 ) && ( this.nodes.get( index + 1 ).kind == CONSTANT ) ) )
+      {
+        // No slots at all; fold it into a constant...
+        final byte[] content = ( childCount == 0 ) ? new byte[0] : this.nodes.get( index + 1 ).content;
+        this.nodes.subList( index, this.nodes.size() ).clear();
+
+        reopenConstant();
+
+        final byte[] header = new byte[6];
+        this.pending.write( header, 0, encodeHeader( header, 0, node.identifier, content.length ) );
+        this.pending.write( content, 0, content.length );
+      }
+      else
+      {
+        // Constants after this value should not be merged into it...
+        this.barrier = this.nodes.size();
+      }
+    }
+
+    /**
+     * Adds a constant boolean value.
+     * 
+     * @param aValue
+     *          the boolean value to add.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeBoolean( final boolean aValue ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeBoolean( aValue );
+    }
+
+    /**
+     * Adds a constant element, including all of its children.
+     * 
+     * @param aElement
+     *          the element to add, cannot be <code>null</code>.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeElement( final BerElement aElement ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeElement( aElement );
+    }
+
+    /**
+     * Adds a constant enumerated value.
+     * 
+     * @param aValue
+     *          the enumerated value to add.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeEnumeratedValue( final int aValue ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeEnumeratedValue( aValue );
+    }
+
+    /**
+     * Adds a constant integer value.
+     * 
+     * @param aValue
+     *          the integer value to add.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeInt( final int aValue ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeInt( aValue );
+    }
+
+    /**
+     * Adds a constant null value.
+     * 
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeNull() throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeNull();
+    }
+
+    /**
+     * Adds a constant object identifier.
+     * 
+     * @param aSubIDs
+     *          the integer parts of the object identifier, cannot be
+     *          <code>null</code>.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeObjectIdentifier( final int[] aSubIDs ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeObjectIdentifier( aSubIDs );
+    }
+
+    /**
+     * Adds a constant octet-string value.
+     * 
+     * @param aString
+     *          the octet-string value to add, cannot be <code>null</code>.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeOctetString( final byte[] aString ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeOctetString( aString );
+    }
+
+    /**
+     * Adds a constant ISO8859-1 encoded string value.
+     * 
+     * @param aString
+     *          the string value to add, cannot be <code>null</code>.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeString( final String aString ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeString( aString );
+    }
+
+    /**
+     * Adds a constant UTF-8 encoded string value.
+     * 
+     * @param aString
+     *          the string value to add.
+     * @throws IOException
+     *           in case of encoding problems.
+     */
+    public void writeUTF8String( final String aString ) throws IOException
+    {
+      reopenConstant();
+      this.pendingOut.writeUTF8String( aString );
+    }
+
+    /**
+     * Begins a constructed value with the given identifier.
+     * 
+     * @param aIdentifier
+     *          the identifier octet of the constructed value.
+     */
+    private void begin( final int aIdentifier )
+    {
+      closeConstant();
+
+      this.openNodes.push( Integer.valueOf( this.nodes.size() ) );
+      this.nodes.add( new Node( CONSTRUCTED_VALUE, aIdentifier, null, -1 ) );
+    }
+
+    /**
+     * Adds all pending constant bytes as a single constant node.
+     */
+    private void closeConstant()
+    {
+      if ( this.pending.size() > 0 )
+      {
+        this.nodes.add( new Node( CONSTANT, 0, this.pending.toByteArray(), -1 ) );
+        this.pending.reset();
+      }
+    }
+
+    /**
+     * Ensures that constant bytes are appended to the last node, in case it is
+     * a constant node of the same constructed value, so adjacent constants are
+     * kept together.
+     */
+    private void reopenConstant()
+    {
+      final int last = this.nodes.size() - 1;
+      if ( ( this.pending.size() == 0 ) && ( last >= this.barrier ) && ( this.nodes.get( last ).kind == CONSTANT ) )
+      {
+        final byte[] content = this.nodes.remove( last ).content;
+        this.pending.write( content, 0, content.length );
+      }
+    }
+  }
+
+  /**
+   * Represents a single message, created from a {@link BerTemplate}, whose
+   * slots can be set and which can be written multiple times.
+   */
+  public static final class Message
+  {
+    // VARIABLES
+
+    private final BerTemplate template;
+    private final byte[][] slotContent;
+    private final byte[][] slotBuffers;
+    private final int[] slotLength;
+    private final int[] lengths;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Message} instance.
+     * 
+     * @param aTemplate
+     *          the template to create the message for.
+     */
+    Message( final BerTemplate aTemplate )
+    {
+      this.template = aTemplate;
+
+      final int slotCount = aTemplate.slotTypes.length;
+      this.slotContent = new byte[slotCount][];
+      this.slotBuffers = new byte[slotCount][];
+      this.slotLength = new int[slotCount];
+      this.lengths = new int[aTemplate.kinds.length];
+      Arrays.fill( this.slotLength, -1 );
+    }
+
+    // METHODS
+
+    /**
+     * Clears all slots of this message.
+     */
+    public void clear()
+    {
+      Arrays.fill( this.slotLength, -1 );
+    }
+
+    /**
+     * Encodes this message into a new array of exactly the right size.
+     * 
+     * @return the encoded message, never <code>null</code>.
+     * @throws IllegalStateException
+     *           in case not all slots are set.
+     */
+    public byte[] encode()
+    {
+      final byte[] result = new byte[computeLengths()];
+      try
+      {
+        writeTo( new BerOutputStream( ByteBuffer.wrap( result ) ) );
+      }
+      catch ( IOException exception )
+      {
+        // Cannot occur, as the array has exactly the right size...
+        throw new RuntimeException( exception );
+      }
+      return result;
+    }
+
+    /**
+     * Returns the total encoded length of this message.
+     * 
+     * @return a length in bytes, >= 0.
+     * @throws IllegalStateException
+     *           in case not all slots are set.
+     */
+    public int getEncodedLength()
+    {
+      return computeLengths();
+    }
+
+    /**
+     * Sets a boolean slot.
+     * 
+     * @param aSlot
+     *          the index of the slot;
+     * @param aValue
+     *          the value to set.
+     */
+    public void setBoolean( final int aSlot, final boolean aValue )
+    {
+      checkSlot( aSlot, BOOLEAN, BOOLEAN );
+
+      final byte[] content = getSlotBuffer( aSlot, 1 );
+      content[0] = ( byte )( aValue ? 0xFF : 0x00 );
+      this.slotLength[aSlot] = 1;
+    }
+
+    /**
+     * Sets the raw content of a slot, regardless of its type.
+     * 
+     * @param aSlot
+     *          the index of the slot;
+     * @param aContent
+     *          the encoded content of the slot, cannot be <code>null</code>.
+     *          The array is not copied, and should not be modified while this
+     *          message is in use.
+     */
+    public void setContent( final int aSlot, final byte[] aContent )
+    {
+      checkSlot( aSlot, null, null );
+
+      this.slotContent[aSlot] = aContent;
+      this.slotLength[aSlot] = aContent.length;
+    }
+
+    /**
+     * Sets an integer or enumerated slot.
+     * 
+     * @param aSlot
+     *          the index of the slot;
+     * @param aValue
+     *          the value to set.
+     */
+    public void setInt( final int aSlot, final int aValue )
+    {
+      checkSlot( aSlot, INTEGER, ENUMERATED );
+
+      final int length = getIntegerLength( aValue );
+      final byte[] content = getSlotBuffer( aSlot, 4 );
+      for ( int i = 0, shift = 8 * ( length - 1 ); i < length; i++, shift -= 8 )
+      {
+        content[i] = ( byte )( aValue >> shift );
+      }
+      this.slotLength[aSlot] = length;
+    }
+
+    /**
+     * Sets an object identifier or relative object identifier slot.
+     * 
+     * @param aSlot
+     *          the index of the slot;
+     * @param aSubIDs
+     *          the integer parts of the object identifier, cannot be
+     *          <code>null</code>.
+     */
+    public void setObjectIdentifier( final int aSlot, final int[] aSubIDs )
+    {
+      checkSlot( aSlot, OBJECT_ID, RELATIVE_OID );
+
+      final boolean relative = ( this.template.slotTypes[aSlot] == RELATIVE_OID );
+      setContent( aSlot, relative ? encodeSubIdentifiers( aSubIDs ) : encodeObjectIdentifier( aSubIDs ) );
+    }
+
+    /**
+     * Sets an octet-string slot.
+     * 
+     * @param aSlot
+     *          the index of the slot;
+     * @param aString
+     *          the value to set, cannot be <code>null</code>. The array is not
+     *          copied, and should not be modified while this message is in
+     *          use.
+     */
+    public void setOctetString( final int aSlot, final byte[] aString )
+    {
+      checkSlot( aSlot, OCTET_STRING, OCTET_STRING );
+
+      setContent( aSlot, aString );
+    }
+
+    /**
+     * Sets a string slot, using the encoding belonging to the type of the slot,
+     * that is, ISO8859-1 for octet strings, ASCII for IA5 and printable strings
+     * and UTF-8 for UTF-8 strings.
+     * 
+     * @param aSlot
+     *          the index of the slot;
+     * @param aString
+     *          the value to set.
+     */
+    public void setString( final int aSlot, final String aString )
+    {
+      checkSlot( aSlot, null, null );
+
+      final AsnType type = this.template.slotTypes[aSlot];
+      final byte[] content;
+      if ( type == OCTET_STRING )
+      {
+        content = encodeString( aString, CHARSET_ISO8859_1 );
+      }
+      else if ( type == IA5_STRING )
+      {
+        content = encodeString( aString, CHARSET_ASCII );
+      }
+      else if ( type == PRINTABLE_STRING )
+      {
+        content = encodePrintableString( aString );
+      }
+      else if ( type == UTF8_STRING )
+      {
+        content = encodeString( aString, CHARSET_UTF8 );
+      }
+      else
+      {
+        throw new IllegalArgumentException( "Slot " + aSlot + " is not a string slot!" );
+      }
+      setContent( aSlot, content );
+    }
+
+    /**
+     * Writes this message to the given output stream.
+     * 
+     * @param aOutStream
+     *          the output stream to write to, cannot be <code>null</code>.
+     * @throws IOException
+     *           in case of I/O problems.
+     * @throws IllegalStateException
+     *           in case not all slots are set.
+     */
+    public void writeTo( final BerOutputStream aOutStream ) throws IOException
+    {
+      computeLengths();
+
+      final BerTemplate t = this.template;
+      for ( int i = 0; i < t.kinds.length; i++ )
+      {
+        switch ( t.kinds[i] )
+        {
+          case CONSTANT:
+            aOutStream.write( t.constants, t.offsets[i], t.contentLengths[i] );
+            break;
+
+          case SLOT:
+            final int slot = t.slots[i];
+            aOutStream.writeTLV( t.identifiers[i], this.slotContent[slot], 0, this.slotLength[slot] );
+            break;
+
+          default:
+            aOutStream.writeHeader( t.identifiers[i], this.lengths[i] );
+            break;
+        }
+      }
+    }
+
+    /**
+     * Verifies the given slot index, and optionally its type.
+     * 
+     * @param aSlot
+     *          the slot index to verify;
+     * @param aType1
+     *          the first allowed type, or <code>null</code> if any type is
+     *          allowed;
+     * @param aType2
+     *          the second allowed type.
+     */
+    private void checkSlot( final int aSlot, final AsnType aType1, final AsnType aType2 )
+    {
+      final AsnType[] types = this.template.slotTypes;
+      if ( ( aSlot < 0 ) || ( aSlot >= types.length ) )
+      {
+        throw new IllegalArgumentException( "Invalid slot: " + aSlot + "!" );
+      }
+      if ( ( aType1 != null ) && ( types[aSlot] != aType1 ) && ( types[aSlot] != aType2 ) )
+      {
+        throw new IllegalArgumentException( "Slot " + aSlot + " is of type " + types[aSlot] + "!" );
+      }
+    }
+
+    /**
+     * Computes the content lengths of all constructed values, from the
+     * innermost to the outermost value.
+     * 
+     * @return the total encoded length of this message.
+     */
+    private int computeLengths()
+    {
+      final BerTemplate t = this.template;
+      final int[] len = this.lengths;
+      Arrays.fill( len, 0 );
+
+      int total = 0;
+      // All children have a higher index than their parent...
+      for ( int i = t.kinds.length - 1; i >= 0; i-- )
+      {
+        final int encodedLength;
+        switch ( t.kinds[i] )
+        {
+          case CONSTANT:
+            encodedLength = t.contentLengths[i];
+            break;
+
+          case SLOT:
+            final int slotLength = this.slotLength[t.slots[i]];
+            if ( slotLength < 0 )
+            {
+              throw new IllegalStateException( "Slot " + t.slots[i] + " is not set!" );
+            }
+            encodedLength = 1 + getLengthLength( slotLength ) + slotLength;
+            break;
+
+          default:
+            encodedLength = 1 + getLengthLength( len[i] ) + len[i];
+            break;
+        }
+
+        final int parent = t.parents[i];
+        if ( parent < 0 )
+        {
+          total += encodedLength;
+        }
+        else
+        {
+          len[parent] += encodedLength;
+        }
+      }
+      return total;
+    }
+
+    /**
+     * Returns the reusable content buffer of the given slot, which is only
+     * used for fixed-size values.
+     * 
+     * @param aSlot
+     *          the slot index;
+     * @param aSize
+     *          the minimal size of the buffer.
+     * @return a buffer, never <code>null</code>.
+     */
+    private byte[] getSlotBuffer( final int aSlot, final int aSize )
+    {
+      byte[] result = this.slotBuffers[aSlot];
+      if ( result == null )
+      {
+        result = new byte[aSize];
+        this.slotBuffers[aSlot] = result;
+      }
+      this.slotContent[aSlot] = result;
+      return result;
+    }
+  }
+
+  /**
+   * Represents a node of a template while it is being built.
+   */
+  private static final class Node
+  {
+    // VARIABLES
+
+    final int kind;
+    final int identifier;
+    final byte[] content;
+    final int slot;
+    int end;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Node} instance.
+     * 
+     * @param aKind
+     *          the kind of node;
+     * @param aIdentifier
+     *          the identifier octet of a slot or constructed value;
+     * @param aContent
+     *          the bytes of a constant node, or <code>null</code>;
+     * @param aSlot
+     *          the slot index of a slot node, or -1.
+     */
+    Node( final int aKind, final int aIdentifier, final byte[] aContent, final int aSlot )
+    {
+      this.kind = aKind;
+      this.identifier = aIdentifier;
+      this.content = aContent;
+      this.slot = aSlot;
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes the constructed value bit; used for sequences and sets. */
+  private static final int CONSTRUCTED = 0x20;
+
+  private static final int CONSTANT = 0;
+  private static final int SLOT = 1;
+  private static final int CONSTRUCTED_VALUE = 2;
+
+  // VARIABLES
+
+  private final byte[] constants;
+  private final AsnType[] slotTypes;
+  private final int[] kinds;
+  private final int[] identifiers;
+  private final int[] offsets;
+  private final int[] contentLengths;
+  private final int[] slots;
+  private final int[] parents;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerTemplate} instance.
+   * 
+   * @param aNodes
+   *          the nodes of the template, in the order of the message;
+   * @param aSlotTypes
+   *          the types of all slots.
+   */
+  BerTemplate( final List<Node> aNodes, final List<AsnType> aSlotTypes )
+  {
+    final int count = aNodes.size();
+
+    this.slotTypes = aSlotTypes.toArray( new AsnType[aSlotTypes.size()] );
+    this.kinds = new int[count];
+    this.identifiers = new int[count];
+    this.offsets = new int[count];
+    this.contentLengths = new int[count];
+    this.slots = new int[count];
+    this.parents = new int[count];
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final Deque<Integer> enclosing = new ArrayDeque<Integer>();
+    for ( int i = 0; i < count; i++ )
+    {
+      while ( !enclosing.isEmpty() && ( aNodes.get( enclosing.peek().intValue() ).end <= i ) )
+      {
+        enclosing.pop();
+      }
+
+      final Node node = aNodes.get( i );
+      this.kinds[i] = node.kind;
+      this.identifiers[i] = node.identifier;
+      this.slots[i] = node.slot;
+      this.parents[i] = enclosing.isEmpty() ? -1 : enclosing.peek().intValue();
+      if ( node.kind == CONSTANT )
+      {
+        this.offsets[i] = baos.size();
+        this.contentLengths[i] = node.content.length;
+        baos.write( node.content, 0, node.content.length );
+      }
+      else if ( node.kind == CONSTRUCTED_VALUE )
+      {
+        enclosing.push( Integer.valueOf( i ) );
+      }
+    }
+    this.constants = baos.toByteArray();
+  }
+
+  // METHODS
+
+  /**
+   * Creates a new message for this template, with none of its slots set.
+   * 
+   * @return a new {@link Message}, never <code>null</code>.
+   */
+  public Message createMessage()
+  {
+    return new Message( this );
+  }
+
+  /**
+   * Returns the number of slots in this template.
+   * 
+   * @return a slot count, >= 0.
+   */
+  public int getSlotCount()
+  {
+    return this.slotTypes.length;
+  }
+
+  /**
+   * Returns the type of the given slot.
+   * 
+   * @param aSlot
+   *          the index of the slot.
+   * @return the slot type, never <code>null</code>.
+   */
+  public AsnType getSlotType( final int aSlot )
+  {
+    return this.slotTypes[aSlot];
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+
+
+/**
+ * Provides a cheap structural check of BER-encoded data, meant to reject
+ * malformed or hostile input before it is handed to a {@link BerInputStream}.
+ * <p>
+ * The validator walks all TLVs in a buffer without decoding any content and
+ * without allocating memory: identifiers should be well-formed, lengths should
+ * fit in their enclosing value, nesting depth and total size should be within
+ * the configured limits, and the primitive encodings of BOOLEAN, INTEGER,
+ * ENUMERATED, NULL, OBJECT IDENTIFIER and RELATIVE-OID should be valid. Both
+ * definite and indefinite length encodings are accepted.
+ * </p>
+ * <p>
+ * Instances keep some state between calls and are therefore <b>not</b>
+ * thread-safe; use one instance per thread.
+ * </p>
+ */
+public class BerValidator
+{
+  // INNER TYPES
+
+  /**
+   * Denotes the reason why a buffer was rejected.
+   */
+  public static enum Violation
+  {
+    /** The identifier octets are incomplete or use a malformed tag number. */
+    INVALID_IDENTIFIER,
+    /** The length octets are incomplete or use a reserved/too large form. */
+    INVALID_LENGTH,
+    /** The value does not fit in its enclosing value or buffer. */
+    LENGTH_EXCEEDS_CONTAINER,
+    /** An indefinite length is used for a primitive value. */
+    INDEFINITE_PRIMITIVE,
+    /** An indefinite length value is not terminated by end-of-contents. */
+    MISSING_END_OF_CONTENTS,
+    /** An end-of-contents marker is found outside an indefinite value. */
+    UNEXPECTED_END_OF_CONTENTS,
+    /** The values are nested deeper than allowed. */
+    DEPTH_EXCEEDED,
+    /** The buffer is larger than allowed. */
+    SIZE_EXCEEDED,
+    /** A type that should be primitive is encoded as constructed. */
+    CONSTRUCTED_PRIMITIVE,
+    /** A SEQUENCE or SET is encoded as primitive. */
+    PRIMITIVE_CONSTRUCTED,
+    /** The content of a BOOLEAN, INTEGER, NULL or OID is invalid. */
+    INVALID_CONTENT;
+  }
+
+  // CONSTANTS
+
+  /** Denotes the constructed bit of an identifier octet. */
+  private static final int CONSTRUCTED = 0x20;
+  /** Denotes the bits of the tag number in an identifier octet. */
+  private static final int TAG_MASK = 0x1F;
+
+  private static final int TAG_EOC = 0;
+  private static final int TAG_BOOLEAN = 1;
+  private static final int TAG_INTEGER = 2;
+  private static final int TAG_NULL = 5;
+  private static final int TAG_OBJECT_ID = 6;
+  private static final int TAG_ENUMERATED = 10;
+  private static final int TAG_RELATIVE_OID = 13;
+  private static final int TAG_SEQUENCE = 16;
+  private static final int TAG_SET = 17;
+
+  /** Denotes an indefinite length. */
+  private static final int INDEFINITE = -1;
+
+  // VARIABLES
+
+  private final int maxDepth;
+  private final int maxSize;
+  /** The end offsets of the enclosing (definite) values. */
+  private final int[] limits;
+  /** Whether the enclosing values use an indefinite length. */
+  private final boolean[] indefinite;
+
+  private Violation violation;
+  private int violationOffset;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link BerValidator} instance.
+   * 
+   * @param aMaxDepth
+   *          the maximum number of nested constructed values, >= 0;
+   * @param aMaxSize
+   *          the maximum number of bytes to accept, >= 0.
+   */
+  public BerValidator( final int aMaxDepth, final int aMaxSize )
+  {
+    if ( aMaxDepth < 0 )
+    {
+      throw new IllegalArgumentException( "Maximum depth cannot be negative!" );
+    }
+    if ( aMaxSize < 0 )
+    {
+      throw new IllegalArgumentException( "Maximum size cannot be negative!" );
+    }
+    this.maxDepth = aMaxDepth;
+    this.maxSize = aMaxSize;
+    this.limits = new int[aMaxDepth];
+    this.indefinite = new boolean[aMaxDepth];
+  }
+
+  // METHODS
+
+  /**
+   * Returns the reason why the last validated buffer was rejected.
+   * 
+   * @return the violation, or <code>null</code> if the last validated buffer
+   *         was valid.
+   */
+  public Violation getViolation()
+  {
+    return this.violation;
+  }
+
+  /**
+   * Returns the offset at which the last validated buffer was rejected.
+   * 
+   * @return the offset in the buffer of the offending value, or -1 if the last
+   *         validated buffer was valid.
+   */
+  public int getViolationOffset()
+  {
+    return this.violationOffset;
+  }
+
+  /**
+   * Validates all BER-encoded values in the given buffer.
+   * 
+   * @param aBuffer
+   *          the buffer to validate, cannot be <code>null</code>.
+   * @return <code>true</code> if the buffer is valid, <code>false</code>
+   *         otherwise.
+   * @see #isValid(byte[], int, int)
+   */
+  public boolean isValid( final byte[] aBuffer )
+  {
+    return isValid( aBuffer, 0, aBuffer.length );
+  }
+
+  /**
+   * Validates all BER-encoded values in the given region of a buffer.
+   * <p>
+   * This method does not allocate any memory. In case the region is rejected,
+   * {@link #getViolation()} and {@link #getViolationOffset()} tell why and
+   * where.
+   * </p>
+   * 
+   * @param aBuffer
+   *          the buffer to validate, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset of the first byte to validate;
+   * @param aLength
+   *          the number of bytes to validate.
+   * @return <code>true</code> if the region consists only of valid
+   *         BER-encoded values, <code>false</code> otherwise.
+   */
+  public boolean isValid( final byte[] aBuffer, final int aOffset, final int aLength )
+  {
+    if ( ( aOffset < 0 ) || ( aLength < 0 ) || ( aOffset > aBuffer.length - aLength ) )
+    {
+      throw new IndexOutOfBoundsException();
+    }
+
+    this.violation = null;
+    this.violationOffset = -1;
+
+    if ( aLength > this.maxSize )
+    {
+      return reject( Violation.SIZE_EXCEEDED, aOffset );
+    }
+
+    final int end = aOffset + aLength;
+    int depth = 0;
+    int pos = aOffset;
+
+    while ( true )
+    {
+      final int limit = ( depth == 0 ) ? end : this.limits[depth - 1];
+      if ( pos == limit )
+      {
+        if ( depth == 0 )
+        {
+          return true;
+        }
+        if ( this.indefinite[depth - 1] )
+        {
+          return reject( Violation.MISSING_END_OF_CONTENTS, pos );
+        }
+        depth--;
+        continue;
+      }
+
+      final int start = pos;
+
+      // Identifier octet(s)...
+      final int id = aBuffer[pos++] & 0xFF;
+      if ( ( id & TAG_MASK ) == TAG_MASK )
+      {
+        // Long form tag number; base-128, no leading zero groups, at most 4
+        // groups (28 bits) to keep tag numbers within an int...
+        if ( ( pos == limit ) || ( ( aBuffer[pos] & 0xFF ) == 0x80 ) )
+        {
+          return reject( Violation.INVALID_IDENTIFIER, start );
+        }
+        int groups = 0;
+        int b;
+        do
+        {
+          if ( ( pos == limit ) || ( ++groups > 4 ) )
+          {
+            return reject( Violation.INVALID_IDENTIFIER, start );
+          }
+          b = aBuffer[pos++];
+        }
+        while ( ( b & 0x80 ) != 0 );
+      }
+
+      // Length octet(s)...
+      if ( pos == limit )
+      {
+        return reject( Violation.INVALID_LENGTH, start );
+      }
+      int length = aBuffer[pos++] & 0xFF;
+      if ( length == 0x80 )
+      {
+        length = INDEFINITE;
+      }
+      else if ( length > 0x7F )
+      {
+        final int count = length & 0x7F;
+        if ( ( count > 4 ) || ( count > limit - pos ) )
+        {
+          return reject( Violation.INVALID_LENGTH, start );
+        }
+        length = 0;
+        for ( int i = 0; i < count; i++ )
+        {
+          length = ( length << 8 ) | ( aBuffer[pos++] & 0xFF );
+        }
+        if ( length < 0 )
+        {
+          return reject( Violation.INVALID_LENGTH, start );
+        }
+      }
+
+      final boolean constructed = ( id & CONSTRUCTED ) != 0;
+
+      // End-of-contents...
+      if ( id == TAG_EOC )
+      {
+        if ( ( length != 0 ) || ( depth == 0 ) || !this.indefinite[depth - 1] )
+        {
+          return reject( Violation.UNEXPECTED_END_OF_CONTENTS, start );
+        }
+        depth--;
+        continue;
+      }
+
+      if ( length == INDEFINITE )
+      {
+        if ( !constructed )
+        {
+          return reject( Violation.INDEFINITE_PRIMITIVE, start );
+        }
+      }
+      else if ( length > limit - pos )
+      {
+        return reject( Violation.LENGTH_EXCEEDS_CONTAINER, start );
+      }
+
+      // Rules for universal types...
+      if ( ( id & 0xC0 ) == 0 )
+      {
+        final Violation v = checkUniversal( id & TAG_MASK, constructed, aBuffer, pos, length );
+        if ( v != null )
+        {
+          return reject( v, start );
+        }
+      }
+
+      if ( constructed )
+      {
+        if ( depth == this.maxDepth )
+        {
+          return reject( Violation.DEPTH_EXCEEDED, start );
+        }
+        this.indefinite[depth] = ( length == INDEFINITE );
+        this.limits[depth] = ( length == INDEFINITE ) ? limit : ( pos + length );
+        depth++;
+      }
+      else
+      {
+        pos += length;
+      }
+    }
+  }
+
+  /**
+   * Validates all BER-encoded values in the given region of a buffer.
+   * 
+   * @param aBuffer
+   *          the buffer to validate, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset of the first byte to validate;
+   * @param aLength
+   *          the number of bytes to validate.
+   * @throws IOException
+   *           in case the region does not consist of valid BER-encoded values.
+   * @see #isValid(byte[], int, int)
+   */
+  public void validate( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( !isValid( aBuffer, aOffset, aLength ) )
+    {
+      throw new IOException( "Invalid BER encoding: " + this.violation + " at offset " + this.violationOffset );
+    }
+  }
+
+  /**
+   * Checks the primitive/constructed rules and the content of a universal
+   * type.
+   * 
+   * @return the found violation, or <code>null</code> if the value is valid.
+   */
+  private Violation checkUniversal( final int aTag, final boolean aConstructed, final byte[] aBuffer,
+      final int aOffset, final int aLength )
+  {
+    switch ( aTag )
+    {
+      case TAG_BOOLEAN:
+        if ( aConstructed )
+        {
+          return Violation.CONSTRUCTED_PRIMITIVE;
+        }
+        return ( aLength == 1 ) ? null : Violation.INVALID_CONTENT;
+
+      case TAG_INTEGER:
+      case TAG_ENUMERATED:
+        if ( aConstructed )
+        {
+          return Violation.CONSTRUCTED_PRIMITIVE;
+        }
+        if ( aLength < 1 )
+        {
+          return Violation.INVALID_CONTENT;
+        }
+        if ( aLength > 1 )
+        {
+          // The first nine bits should not be all zeros or all ones...
+          final int first = ( aBuffer[aOffset] << 1 ) | ( ( aBuffer[aOffset + 1] & 0x80 ) >>> 7 );
+          if ( ( ( first & 0x1FF ) == 0 ) || ( ( first & 0x1FF ) == 0x1FF ) )
+          {
+            return Violation.INVALID_CONTENT;
+          }
+        }
+        return null;
+
+      case TAG_NULL:
+        if ( aConstructed )
+        {
+          return Violation.CONSTRUCTED_PRIMITIVE;
+        }
+        return ( aLength == 0 ) ? null : Violation.INVALID_CONTENT;
+
+      case TAG_OBJECT_ID:
+      case TAG_RELATIVE_OID:
+        if ( aConstructed )
+        {
+          return Violation.CONSTRUCTED_PRIMITIVE;
+        }
+        if ( ( aLength < 1 ) || ( ( aBuffer[aOffset + aLength - 1] & 0x80 ) != 0 ) )
+        {
+          return Violation.INVALID_CONTENT;
+        }
+        // Sub-identifiers should not start with a 0x80 octet...
+        boolean first = true;
+        for ( int i = aOffset; i < aOffset + aLength; i++ )
+        {
+          if ( first && ( ( aBuffer[i] & 0xFF ) == 0x80 ) )
+          {
+            return Violation.INVALID_CONTENT;
+          }
+          first = ( aBuffer[i] & 0x80 ) == 0;
+        }
+        return null;
+
+      case TAG_SEQUENCE:
+      case TAG_SET:
+        return aConstructed ? null : Violation.PRIMITIVE_CONSTRUCTED;
+
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Records the given violation.
+   * 
+   * @return always <code>false</code>.
+   */
+  private boolean reject( final Violation aViolation, final int aOffset )
+  {
+    this.violation = aViolation;
+    this.violationOffset = aOffset;
+    return false;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+
+
+/**
+ * Provides an {@link InputStream} that reads directly from a
+ * {@link ByteBuffer}.
+ */
+class ByteBufferInputStream extends InputStream
+{
+  // VARIABLES
+
+  private final ByteBuffer buffer;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ByteBufferInputStream} instance.
+   * 
+   * @param aBuffer
+   *          the buffer to read from, cannot be <code>null</code>. Reading
+   *          advances its position.
+   */
+  public ByteBufferInputStream( final ByteBuffer aBuffer )
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    this.buffer = aBuffer;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int available()
+  {
+    return this.buffer.remaining();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read()
+  {
+    if ( !this.buffer.hasRemaining() )
+    {
+      return -1;
+    }
+    return this.buffer.get() & 0xFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read( final byte[] aBuffer, final int aOffset, final int aLength )
+  {
+    if ( aLength == 0 )
+    {
+      return 0;
+    }
+    final int count = Math.min( aLength, this.buffer.remaining() );
+    if ( count == 0 )
+    {
+      return -1;
+    }
+    this.buffer.get( aBuffer, aOffset, count );
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long skip( final long aCount )
+  {
+    final int count = ( int )Math.max( 0L, Math.min( aCount, this.buffer.remaining() ) );
+    this.buffer.position( this.buffer.position() + count );
+    return count;
+  }
+}
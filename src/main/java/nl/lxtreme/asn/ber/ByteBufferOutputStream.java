@@ -0,0 +1,98 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+
+
+/**
+ * Provides an {@link OutputStream} that writes directly into a
+ * {@link ByteBuffer}.
+ */
+class ByteBufferOutputStream extends OutputStream implements SeekableOutput
+{
+  // VARIABLES
+
+  private final ByteBuffer buffer;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ByteBufferOutputStream} instance.
+   * 
+   * @param aBuffer
+   *          the buffer to write to, cannot be <code>null</code>.
+   */
+  public ByteBufferOutputStream( final ByteBuffer aBuffer )
+  {
+    if ( aBuffer == null )
+    {
+      throw new IllegalArgumentException( "Buffer cannot be null!" );
+    }
+    this.buffer = aBuffer;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the buffer this stream writes to.
+   * 
+   * @return the buffer, never <code>null</code>.
+   */
+  public ByteBuffer getBuffer()
+  {
+    return this.buffer;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getPosition()
+  {
+    return this.buffer.position();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void patch( final long aPosition, final byte[] aBuffer, final int aOffset, final int aLength )
+  {
+    final ByteBuffer bb = this.buffer.duplicate();
+    bb.position( ( int )aPosition );
+    bb.put( aBuffer, aOffset, aLength );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( aLength > this.buffer.remaining() )
+    {
+      throw new IOException( "Buffer overflow! Need " + aLength + " bytes, only " + this.buffer.remaining()
+          + " bytes remaining!" );
+    }
+    this.buffer.put( aBuffer, aOffset, aLength );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final int aByte ) throws IOException
+  {
+    if ( !this.buffer.hasRemaining() )
+    {
+      throw new IOException( "Buffer overflow! Need 1 byte, only 0 bytes remaining!" );
+    }
+    this.buffer.put( ( byte )aByte );
+  }
+}
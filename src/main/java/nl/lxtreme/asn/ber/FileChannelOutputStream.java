@@ -0,0 +1,166 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+
+/**
+ * Provides an {@link OutputStream} that writes to a {@link FileChannel},
+ * starting at its current position.
+ * <p>
+ * Written bytes are collected in a buffer, and written to the channel once the
+ * buffer is full, or upon flushing. Patches of bytes that are still buffered
+ * are made in the buffer itself.
+ * </p>
+ */
+class FileChannelOutputStream extends OutputStream implements SeekableOutput
+{
+  // CONSTANTS
+
+  /** Denotes the size of the write buffer, in bytes. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // VARIABLES
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link FileChannelOutputStream} instance.
+   * 
+   * @param aChannel
+   *          the file channel to write to, cannot be <code>null</code>.
+   */
+  public FileChannelOutputStream( final FileChannel aChannel )
+  {
+    if ( aChannel == null )
+    {
+      throw new IllegalArgumentException( "Channel cannot be null!" );
+    }
+    this.channel = aChannel;
+    this.buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+  }
+
+  // METHODS
+
+  /**
+   * Writes all buffered bytes to the channel, but does not close the channel.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    flush();
+  }
+
+  /**
+   * Writes all buffered bytes to the channel.
+   */
+  @Override
+  public void flush() throws IOException
+  {
+    this.buffer.flip();
+    try
+    {
+      while ( this.buffer.hasRemaining() )
+      {
+        this.channel.write( this.buffer );
+      }
+    }
+    finally
+    {
+      this.buffer.compact();
+    }
+  }
+
+  /**
+   * Returns the channel this stream writes to.
+   * 
+   * @return the channel, never <code>null</code>.
+   */
+  public FileChannel getChannel()
+  {
+    return this.channel;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long getPosition() throws IOException
+  {
+    return this.channel.position() + this.buffer.position();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void patch( final long aPosition, final byte[] aBuffer, final int aOffset, final int aLength )
+      throws IOException
+  {
+    final long buffered = aPosition - this.channel.position();
+    if ( buffered >= 0 )
+    {
+      // Still in the buffer; patch it there...
+      final ByteBuffer bb = this.buffer.duplicate();
+      bb.position( ( int )buffered );
+      bb.put( aBuffer, aOffset, aLength );
+      return;
+    }
+
+    // The patch might extend into the buffered bytes, so write those first...
+    flush();
+
+    final ByteBuffer bb = ByteBuffer.wrap( aBuffer, aOffset, aLength );
+    for ( long position = aPosition; bb.hasRemaining(); )
+    {
+      position += this.channel.write( bb, position );
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( aLength > this.buffer.remaining() )
+    {
+      flush();
+    }
+    if ( aLength < this.buffer.capacity() )
+    {
+      this.buffer.put( aBuffer, aOffset, aLength );
+      return;
+    }
+
+    // Too large to buffer; write it directly...
+    final ByteBuffer bb = ByteBuffer.wrap( aBuffer, aOffset, aLength );
+    while ( bb.hasRemaining() )
+    {
+      this.channel.write( bb );
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( final int aByte ) throws IOException
+  {
+    if ( !this.buffer.hasRemaining() )
+    {
+      flush();
+    }
+    this.buffer.put( ( byte )aByte );
+  }
+}
@@ -0,0 +1,802 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+
+/**
+ * Provides an {@link InputStream} that inflates GZIP-compressed data, inflating
+ * the members of multi-member files in parallel.
+ * <p>
+ * GZIP files can consist of multiple members, each compressed on its own, as
+ * written by parallel compressors or by appending files. As members do not
+ * record their compressed length, the start of each next member is looked up
+ * by scanning for a GZIP header. Members found this way are inflated in
+ * parallel, a bounded number at a time, while their output is returned in
+ * order. A member is only accepted when the previous member ends right where
+ * it starts, hence GZIP headers occurring by chance in compressed data are
+ * discarded.
+ * </p>
+ * <p>
+ * Of members inflating to more than a maximum size, only the first part is
+ * inflated in advance. The rest is inflated while being read, into a single
+ * reused buffer. Hence, single-member files are read without buffering more
+ * than the maximum size. Bytes following the last member that do not form a
+ * GZIP member are ignored, like {@link GZIPInputStream} does. Only
+ * <tt>java.util.zip</tt> is used, for example:
+ * </p>
+ * 
+ * <pre>
+ * BerInputStream input = new BerInputStream( new ParallelGzipInputStream( path ) );
+ * </pre>
+ * <p>
+ * This class is <b>not</b> thread-safe; only the inflating is done on other
+ * threads.
+ * </p>
+ */
+public final class ParallelGzipInputStream extends InputStream
+{
+  // INNER TYPES
+
+  /**
+   * Denotes a member inflated in advance.
+   */
+  private static final class Inflated
+  {
+    // VARIABLES
+
+    final int end;
+    final byte[] data;
+    final int length;
+    final Member rest;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Inflated} instance.
+     * 
+     * @param aEnd
+     *          the offset right after the member, or -1 in case the member was
+     *          too large to inflate in advance;
+     * @param aData
+     *          the inflated data, or its first part in case the member was too
+     *          large to inflate in advance;
+     * @param aLength
+     *          the length of the inflated data;
+     * @param aRest
+     *          the member to inflate the rest of while being read, or
+     *          <code>null</code> in case the member is completely inflated.
+     */
+    Inflated( final int aEnd, final byte[] aData, final int aLength, final Member aRest )
+    {
+      this.end = aEnd;
+      this.data = aData;
+      this.length = aLength;
+      this.rest = aRest;
+    }
+  }
+
+  /**
+   * Inflates a single member, verifying its trailer.
+   */
+  private static final class Member
+  {
+    // VARIABLES
+
+    private final ByteBuffer source;
+    private final int limit;
+    private final Inflater inflater;
+    private final CRC32 crc;
+    private final byte[] input;
+
+    private int position;
+    private long size;
+    private int end;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Member} instance, parsing the header of the member
+     * at the given offset.
+     * 
+     * @throws IOException
+     *           in case no valid GZIP header is found at the given offset.
+     */
+    Member( final ByteBuffer aSource, final int aStart, final int aLimit ) throws IOException
+    {
+      this.source = aSource;
+      this.limit = aLimit;
+      this.position = parseHeader( aSource, aStart, aLimit );
+      this.inflater = new Inflater( true /* nowrap */);
+      this.crc = new CRC32();
+      this.input = new byte[INPUT_SIZE];
+      this.end = -1;
+    }
+
+    // METHODS
+
+    /**
+     * Releases the inflater of this member.
+     */
+    void close()
+    {
+      this.inflater.end();
+    }
+
+    /**
+     * Returns the offset right after this member.
+     * 
+     * @return the end of this member, or -1 in case it is not completely
+     *         inflated yet.
+     */
+    int getEnd()
+    {
+      return this.end;
+    }
+
+    /**
+     * Inflates the next bytes of this member into the given buffer.
+     * 
+     * @return the number of bytes inflated, > 0, or -1 in case the member is
+     *         completely inflated and its trailer is verified.
+     * @throws IOException
+     *           in case the member is truncated or corrupt.
+     */
+    int inflate( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+    {
+      if ( this.end >= 0 )
+      {
+        return -1;
+      }
+
+      for ( ;; )
+      {
+        final int count;
+        try
+        {
+          count = this.inflater.inflate( aBuffer, aOffset, aLength );
+        }
+        catch ( DataFormatException exception )
+        {
+          throw new IOException( "Invalid GZIP member: " + exception.getMessage() + "!", exception );
+        }
+
+        if ( count > 0 )
+        {
+          this.crc.update( aBuffer, aOffset, count );
+          this.size += count;
+          return count;
+        }
+        if ( this.inflater.finished() )
+        {
+          readTrailer();
+          return -1;
+        }
+        if ( this.inflater.needsDictionary() )
+        {
+          throw new IOException( "Invalid GZIP member: preset dictionary not supported!" );
+        }
+        if ( this.inflater.needsInput() )
+        {
+          final int available = Math.min( this.limit - this.position, this.input.length );
+          if ( available <= 0 )
+          {
+            throw new EOFException( "Truncated GZIP member!" );
+          }
+          final ByteBuffer bb = this.source.duplicate();
+          bb.position( this.position );
+          bb.get( this.input, 0, available );
+          this.position += available;
+          this.inflater.setInput( this.input, 0, available );
+        }
+      }
+    }
+
+    /**
+     * Verifies the CRC and size in the trailer of this member.
+     */
+    private void readTrailer() throws IOException
+    {
+      final int trailer = this.position - this.inflater.getRemaining();
+      if ( ( trailer + TRAILER_LENGTH ) > this.limit )
+      {
+        throw new EOFException( "Truncated GZIP trailer!" );
+      }
+      if ( getInt( this.source, trailer ) != ( int )this.crc.getValue() )
+      {
+        throw new IOException( "Invalid GZIP member: CRC mismatch!" );
+      }
+      if ( getInt( this.source, trailer + 4 ) != ( int )this.size )
+      {
+        throw new IOException( "Invalid GZIP member: size mismatch!" );
+      }
+      this.end = trailer + TRAILER_LENGTH;
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes the default maximum size of a member inflated in advance. */
+  private static final int MAX_MEMBER_SIZE = 16 * 1024 * 1024;
+  /** Denotes the size of the buffer to inflate large members into. */
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  /** Denotes the size of the compressed input handed to an inflater. */
+  private static final int INPUT_SIZE = 64 * 1024;
+  /** Denotes the initial size of the buffer of a member inflated in advance. */
+  private static final int INITIAL_MEMBER_SIZE = 64 * 1024;
+
+  /** Denotes the minimal length of a GZIP header. */
+  private static final int HEADER_LENGTH = 10;
+  /** Denotes the length of a GZIP trailer. */
+  private static final int TRAILER_LENGTH = 8;
+
+  private static final int FHCRC = 0x02;
+  private static final int FEXTRA = 0x04;
+  private static final int FNAME = 0x08;
+  private static final int FCOMMENT = 0x10;
+  private static final int FRESERVED = 0xE0;
+
+  // VARIABLES
+
+  private final ByteBuffer source;
+  private final int limit;
+  private final Executor executor;
+  private final int maxInFlight;
+  private final int maxMemberSize;
+  private final ArrayDeque<Map.Entry<Integer, Future<Inflated>>> pending;
+  private final Queue<byte[]> spareBuffers;
+
+  private int scanPosition;
+  private int nextMember;
+  private boolean closed;
+
+  private Member streaming;
+  private byte[] streamBuffer;
+
+  private byte[] current;
+  private int position;
+  private int length;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link ParallelGzipInputStream} instance, inflating on the
+   * common fork-join pool.
+   * 
+   * @param aData
+   *          the GZIP-compressed data, cannot be <code>null</code>.
+   */
+  public ParallelGzipInputStream( final byte[] aData )
+  {
+    this( ByteBuffer.wrap( aData ), ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(),
+        MAX_MEMBER_SIZE );
+  }
+
+  /**
+   * Creates a new {@link ParallelGzipInputStream} instance.
+   * 
+   * @param aData
+   *          the GZIP-compressed data, between the position and limit of the
+   *          buffer, cannot be <code>null</code>. Its content should not be
+   *          modified as long as this stream is in use;
+   * @param aExecutor
+   *          the executor to inflate the members with, cannot be
+   *          <code>null</code>;
+   * @param aMaxInFlight
+   *          the maximum number of members inflated in advance, > 0;
+   * @param aMaxMemberSize
+   *          the maximum inflated size of a member inflated in advance, > 0.
+   */
+  public ParallelGzipInputStream( final ByteBuffer aData, final Executor aExecutor, final int aMaxInFlight,
+      final int aMaxMemberSize )
+  {
+    if ( aData == null )
+    {
+      throw new IllegalArgumentException( "Data cannot be null!" );
+    }
+    if ( aExecutor == null )
+    {
+      throw new IllegalArgumentException( "Executor cannot be null!" );
+    }
+    if ( aMaxInFlight <= 0 )
+    {
+      throw new IllegalArgumentException( "Maximum number of members in flight should be positive!" );
+    }
+    if ( aMaxMemberSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Maximum member size should be positive!" );
+    }
+
+    this.source = aData.duplicate();
+    this.limit = this.source.limit();
+    this.executor = aExecutor;
+    this.maxInFlight = aMaxInFlight;
+    this.maxMemberSize = aMaxMemberSize;
+    this.pending = new ArrayDeque<Map.Entry<Integer, Future<Inflated>>>();
+    this.spareBuffers = new ConcurrentLinkedQueue<byte[]>();
+
+    this.scanPosition = this.source.position();
+    this.nextMember = this.source.position();
+  }
+
+  /**
+   * Creates a new {@link ParallelGzipInputStream} instance for the given file,
+   * which is mapped into memory, inflating on the common fork-join pool.
+   * 
+   * @param aPath
+   *          the path of the GZIP-compressed file, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case the file could not be mapped, or is larger than 2GB.
+   */
+  public ParallelGzipInputStream( final Path aPath ) throws IOException
+  {
+    this( map( aPath ), ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(), MAX_MEMBER_SIZE );
+  }
+
+  // METHODS
+
+  /**
+   * Finds the next offset that looks like the start of a GZIP member.
+   * 
+   * @return the offset of the next candidate member, or -1 if none is found.
+   */
+  static int findCandidate( final ByteBuffer aSource, final int aOffset, final int aLimit )
+  {
+    for ( int i = aOffset; i <= ( aLimit - HEADER_LENGTH ); i++ )
+    {
+      if ( ( aSource.get( i ) == ( byte )0x1F ) && ( aSource.get( i + 1 ) == ( byte )0x8B )
+          && ( aSource.get( i + 2 ) == 0x08 ) && ( ( aSource.get( i + 3 ) & FRESERVED ) == 0 ) )
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Stops inflating a member in advance, releasing the inflater of a large
+   * member in case its first part is already inflated.
+   */
+  private static void cancel( final Future<Inflated> aFuture )
+  {
+    if ( aFuture.cancel( false ) || aFuture.isCancelled() )
+    {
+      return;
+    }
+    try
+    {
+      final Inflated inflated = aFuture.get();
+      if ( inflated.rest != null )
+      {
+        inflated.rest.close();
+      }
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+    }
+    catch ( ExecutionException exception )
+    {
+      // Nop; the member is not used anyway...
+    }
+  }
+
+  /**
+   * Returns the little-endian 32-bit value at the given offset.
+   */
+  private static int getInt( final ByteBuffer aSource, final int aOffset )
+  {
+    return ( aSource.get( aOffset ) & 0xFF ) | ( ( aSource.get( aOffset + 1 ) & 0xFF ) << 8 )
+        | ( ( aSource.get( aOffset + 2 ) & 0xFF ) << 16 ) | ( ( aSource.get( aOffset + 3 ) & 0xFF ) << 24 );
+  }
+
+  /**
+   * Maps the given file into memory.
+   */
+  private static ByteBuffer map( final Path aPath ) throws IOException
+  {
+    if ( aPath == null )
+    {
+      throw new IllegalArgumentException( "Path cannot be null!" );
+    }
+
+    final FileChannel channel = FileChannel.open( aPath, StandardOpenOption.READ );
+    try
+    {
+      final long size = channel.size();
+      if ( size > Integer.MAX_VALUE )
+      {
+        throw new IOException( "File too large! Cannot map " + size + " bytes!" );
+      }
+      // The mapping remains valid after the channel is closed...
+      return channel.map( MapMode.READ_ONLY, 0, size );
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  /**
+   * Parses the GZIP header at the given offset.
+   * 
+   * @return the offset of the compressed data.
+   * @throws IOException
+   *           in case no valid GZIP header is found.
+   */
+  private static int parseHeader( final ByteBuffer aSource, final int aOffset, final int aLimit ) throws IOException
+  {
+    if ( ( aOffset + HEADER_LENGTH ) > aLimit )
+    {
+      throw new EOFException( "Truncated GZIP header!" );
+    }
+    if ( ( aSource.get( aOffset ) != ( byte )0x1F ) || ( aSource.get( aOffset + 1 ) != ( byte )0x8B ) )
+    {
+      throw new ZipException( "Not in GZIP format!" );
+    }
+    if ( aSource.get( aOffset + 2 ) != 0x08 )
+    {
+      throw new ZipException( "Unsupported compression method!" );
+    }
+
+    final int flags = aSource.get( aOffset + 3 ) & 0xFF;
+    if ( ( flags & FRESERVED ) != 0 )
+    {
+      throw new ZipException( "Invalid GZIP header: reserved flags set!" );
+    }
+
+    // Skip MTIME, XFL and OS...
+    int pos = aOffset + HEADER_LENGTH;
+    if ( ( flags & FEXTRA ) != 0 )
+    {
+      if ( ( pos + 2 ) > aLimit )
+      {
+        throw new EOFException( "Truncated GZIP header!" );
+      }
+      pos += 2 + ( ( aSource.get( pos ) & 0xFF ) | ( ( aSource.get( pos + 1 ) & 0xFF ) << 8 ) );
+    }
+    if ( ( flags & FNAME ) != 0 )
+    {
+      pos = skipString( aSource, pos, aLimit );
+    }
+    if ( ( flags & FCOMMENT ) != 0 )
+    {
+      pos = skipString( aSource, pos, aLimit );
+    }
+    if ( ( flags & FHCRC ) != 0 )
+    {
+      pos += 2;
+    }
+    if ( pos > aLimit )
+    {
+      throw new EOFException( "Truncated GZIP header!" );
+    }
+    return pos;
+  }
+
+  /**
+   * Skips a zero-terminated string.
+   * 
+   * @return the offset right after the terminating zero.
+   */
+  private static int skipString( final ByteBuffer aSource, final int aOffset, final int aLimit ) throws IOException
+  {
+    for ( int i = aOffset; i < aLimit; i++ )
+    {
+      if ( aSource.get( i ) == 0 )
+      {
+        return i + 1;
+      }
+    }
+    throw new EOFException( "Truncated GZIP header!" );
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int available() throws IOException
+  {
+    ensureOpen();
+    return this.length - this.position;
+  }
+
+  /**
+   * Stops inflating members in advance.
+   */
+  @Override
+  public void close()
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+    this.closed = true;
+    while ( !this.pending.isEmpty() )
+    {
+      cancel( this.pending.removeFirst().getValue() );
+    }
+    if ( this.streaming != null )
+    {
+      this.streaming.close();
+      this.streaming = null;
+    }
+    this.spareBuffers.clear();
+    this.current = null;
+    this.streamBuffer = null;
+    this.position = 0;
+    this.length = 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read() throws IOException
+  {
+    if ( !fill() )
+    {
+      return -1;
+    }
+    return this.current[this.position++] & 0xFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( ( aOffset < 0 ) || ( aLength < 0 ) || ( aLength > ( aBuffer.length - aOffset ) ) )
+    {
+      throw new IndexOutOfBoundsException();
+    }
+    if ( aLength == 0 )
+    {
+      return 0;
+    }
+    if ( !fill() )
+    {
+      return -1;
+    }
+
+    final int count = Math.min( aLength, this.length - this.position );
+    System.arraycopy( this.current, this.position, aBuffer, aOffset, count );
+    this.position += count;
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long skip( final long aCount ) throws IOException
+  {
+    if ( ( aCount <= 0 ) || !fill() )
+    {
+      return 0;
+    }
+
+    final int count = ( int )Math.min( aCount, this.length - this.position );
+    this.position += count;
+    return count;
+  }
+
+  /**
+   * Verifies this stream is not closed.
+   */
+  private void ensureOpen() throws IOException
+  {
+    if ( this.closed )
+    {
+      throw new IOException( "Stream closed!" );
+    }
+  }
+
+  /**
+   * Makes sure inflated bytes are available, by inflating the next part of a
+   * large member, or by taking the next member inflated in advance.
+   * 
+   * @return <code>true</code> if inflated bytes are available,
+   *         <code>false</code> if all members are read.
+   */
+  private boolean fill() throws IOException
+  {
+    ensureOpen();
+    while ( this.position >= this.length )
+    {
+      if ( this.streaming != null )
+      {
+        final int count = this.streaming.inflate( this.streamBuffer, 0, this.streamBuffer.length );
+        if ( count > 0 )
+        {
+          this.current = this.streamBuffer;
+          this.position = 0;
+          this.length = count;
+          continue;
+        }
+        this.nextMember = this.streaming.getEnd();
+        this.streaming.close();
+        this.streaming = null;
+      }
+      else if ( this.current != null )
+      {
+        if ( this.current != this.streamBuffer )
+        {
+          releaseBuffer( this.current );
+        }
+        this.current = null;
+      }
+
+      if ( !nextMember() )
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Inflates the member at the given offset in advance.
+   */
+  private Inflated inflate( final int aStart ) throws IOException
+  {
+    final Member member = new Member( this.source, aStart, this.limit );
+    boolean handedOver = false;
+    try
+    {
+      byte[] buffer = this.spareBuffers.poll();
+      if ( buffer == null )
+      {
+        buffer = new byte[Math.min( INITIAL_MEMBER_SIZE, this.maxMemberSize )];
+      }
+
+      int size = 0;
+      int count;
+      while ( ( count = member.inflate( buffer, size, buffer.length - size ) ) >= 0 )
+      {
+        size += count;
+        if ( size == buffer.length )
+        {
+          if ( size >= this.maxMemberSize )
+          {
+            // Too large, hand over what is inflated so far and leave the rest
+            // to be inflated while being read...
+            handedOver = true;
+            return new Inflated( -1, buffer, size, member );
+          }
+          buffer = Arrays.copyOf( buffer, ( int )Math.min( this.maxMemberSize, 2L * buffer.length ) );
+        }
+      }
+      return new Inflated( member.getEnd(), buffer, size, null );
+    }
+    finally
+    {
+      if ( !handedOver )
+      {
+        member.close();
+      }
+    }
+  }
+
+  /**
+   * Moves on to the member that follows the previous one.
+   * 
+   * @return <code>true</code> if a next member is found, <code>false</code>
+   *         if all members are read.
+   */
+  private boolean nextMember() throws IOException
+  {
+    final int start = this.nextMember;
+    final boolean first = ( start == this.source.position() );
+
+    // Drop candidates that turned out to lie inside the previous member...
+    while ( !this.pending.isEmpty() && ( this.pending.peekFirst().getKey().intValue() < start ) )
+    {
+      cancel( this.pending.removeFirst().getValue() );
+    }
+    this.scanPosition = Math.max( this.scanPosition, start );
+    submitCandidates();
+
+    if ( this.pending.isEmpty() || ( this.pending.peekFirst().getKey().intValue() != start ) )
+    {
+      if ( first )
+      {
+        throw new ZipException( "Not in GZIP format!" );
+      }
+      // Trailing garbage is ignored...
+      return false;
+    }
+
+    final Inflated inflated;
+    try
+    {
+      inflated = this.pending.removeFirst().getValue().get();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted while inflating!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      final Throwable cause = exception.getCause();
+      if ( cause instanceof IOException )
+      {
+        throw ( IOException )cause;
+      }
+      throw new IOException( "Failed to inflate member!", cause );
+    }
+
+    this.current = inflated.data;
+    this.position = 0;
+    this.length = inflated.length;
+    if ( inflated.rest != null )
+    {
+      if ( this.streamBuffer == null )
+      {
+        this.streamBuffer = new byte[BUFFER_SIZE];
+      }
+      this.streaming = inflated.rest;
+    }
+    else
+    {
+      this.nextMember = inflated.end;
+    }
+    return true;
+  }
+
+  /**
+   * Keeps an inflated buffer for reuse, as long as not too many are kept. A
+   * buffer that reached the maximum member size is not kept, as it is only
+   * needed by large members, which are mostly inflated while being read.
+   */
+  private void releaseBuffer( final byte[] aBuffer )
+  {
+    if ( ( aBuffer.length < this.maxMemberSize ) && ( this.spareBuffers.size() < this.maxInFlight ) )
+    {
+      this.spareBuffers.offer( aBuffer );
+    }
+  }
+
+  /**
+   * Submits candidate members until the maximum number is in flight.
+   */
+  private void submitCandidates()
+  {
+    while ( ( this.pending.size() < this.maxInFlight ) && ( this.scanPosition < this.limit ) )
+    {
+      final int candidate = findCandidate( this.source, this.scanPosition, this.limit );
+      if ( candidate < 0 )
+      {
+        this.scanPosition = this.limit;
+        return;
+      }
+      this.scanPosition = candidate + 1;
+
+      final FutureTask<Inflated> task = new FutureTask<Inflated>( new Callable<Inflated>()
+      {
+        @Override
+        public Inflated call() throws IOException
+        {
+          return inflate( candidate );
+        }
+      } );
+      this.pending.addLast( new AbstractMap.SimpleImmutableEntry<Integer, Future<Inflated>>( Integer
+          .valueOf( candidate ), task ) );
+      this.executor.execute( task );
+    }
+  }
+}
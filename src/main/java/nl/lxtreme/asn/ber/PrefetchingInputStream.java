@@ -0,0 +1,373 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Provides an {@link InputStream} that reads ahead from a blocking source on a
+ * background thread.
+ * <p>
+ * The source is read in blocks into a fixed number of reused buffers. Each
+ * block holds the bytes returned by a single read of the source, so bytes are
+ * handed over as soon as they arrive. While the caller decodes the bytes of
+ * one block, the next blocks are read, so I/O and decoding overlap. Once all
+ * buffers are filled, reading ahead stops until the caller releases a buffer
+ * by reading past its block. Hence, at most <tt>blockSize * bufferCount</tt>
+ * bytes are read ahead. This is meant for slow blocking sources, such as
+ * network file systems or pipes, for example:
+ * </p>
+ * 
+ * <pre>
+ * BerInputStream input = new BerInputStream( new PrefetchingInputStream( source ) );
+ * </pre>
+ * <p>
+ * The reading is done by a daemon thread per stream, or by a given
+ * {@link Executor}, which runs a single, long-running, task per stream. An
+ * I/O problem of the source is thrown by the read that reaches it, and by all
+ * reads after that. Closing this stream stops reading ahead and closes the
+ * source.
+ * </p>
+ * <p>
+ * This class is <b>not</b> thread-safe; only the reading ahead is done on
+ * another thread.
+ * </p>
+ */
+public final class PrefetchingInputStream extends InputStream
+{
+  // INNER TYPES
+
+  /**
+   * Denotes a block read from the source.
+   */
+  private static final class Block
+  {
+    // VARIABLES
+
+    final byte[] data;
+    final int length;
+    final IOException error;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Block} instance.
+     */
+    Block( final byte[] aData, final int aLength, final IOException aError )
+    {
+      this.data = aData;
+      this.length = aLength;
+      this.error = aError;
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes the default size of a block, in bytes. */
+  private static final int BLOCK_SIZE = 64 * 1024;
+  /** Denotes the default number of buffers. */
+  private static final int BUFFER_COUNT = 2;
+
+  // VARIABLES
+
+  private final InputStream source;
+  private final BlockingQueue<byte[]> free;
+  private final BlockingQueue<Block> filled;
+
+  private volatile boolean closed;
+
+  private Block current;
+  private int position;
+  private boolean endOfStream;
+  private IOException error;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link PrefetchingInputStream} instance, reading ahead two
+   * blocks of 64KB on a daemon thread.
+   * 
+   * @param aSource
+   *          the source to read from, cannot be <code>null</code>.
+   */
+  public PrefetchingInputStream( final InputStream aSource )
+  {
+    this( aSource, BLOCK_SIZE, BUFFER_COUNT, null );
+  }
+
+  /**
+   * Creates a new {@link PrefetchingInputStream} instance.
+   * 
+   * @param aSource
+   *          the source to read from, cannot be <code>null</code>;
+   * @param aBlockSize
+   *          the size of a block, in bytes, > 0;
+   * @param aBufferCount
+   *          the number of buffers, >= 2, including the one being read by the
+   *          caller;
+   * @param aExecutor
+   *          the executor to read ahead with, or <code>null</code> to use a
+   *          new daemon thread. The executor should be able to run a task for
+   *          as long as the stream is in use.
+   */
+  public PrefetchingInputStream( final InputStream aSource, final int aBlockSize, final int aBufferCount,
+      final Executor aExecutor )
+  {
+    if ( aSource == null )
+    {
+      throw new IllegalArgumentException( "Source cannot be null!" );
+    }
+    if ( aBlockSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Block size should be positive!" );
+    }
+    if ( aBufferCount < 2 )
+    {
+      throw new IllegalArgumentException( "Buffer count should be at least 2!" );
+    }
+
+    this.source = aSource;
+    this.free = new ArrayBlockingQueue<byte[]>( aBufferCount );
+    // Besides a block per buffer, there is room for the end of the source...
+    this.filled = new ArrayBlockingQueue<Block>( aBufferCount + 1 );
+
+    for ( int i = 0; i < aBufferCount; i++ )
+    {
+      this.free.add( new byte[aBlockSize] );
+    }
+
+    final Runnable task = new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        readAhead();
+      }
+    };
+    if ( aExecutor != null )
+    {
+      aExecutor.execute( task );
+    }
+    else
+    {
+      final Thread thread = new Thread( task, "BER prefetch" );
+      thread.setDaemon( true );
+      thread.start();
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Returns the number of bytes left in the current block.
+   */
+  @Override
+  public int available() throws IOException
+  {
+    ensureOpen();
+    return ( this.current == null ) ? 0 : ( this.current.length - this.position );
+  }
+
+  /**
+   * Stops reading ahead, and closes the source.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    if ( this.closed )
+    {
+      return;
+    }
+    this.closed = true;
+    this.current = null;
+    try
+    {
+      this.source.close();
+    }
+    finally
+    {
+      // Wake up the reading thread, in case it is waiting for a buffer...
+      this.filled.clear();
+      this.free.offer( new byte[0] );
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read() throws IOException
+  {
+    if ( !nextBlock() )
+    {
+      return -1;
+    }
+    return this.current.data[this.position++] & 0xFF;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+  {
+    if ( ( aOffset < 0 ) || ( aLength < 0 ) || ( aLength > ( aBuffer.length - aOffset ) ) )
+    {
+      throw new IndexOutOfBoundsException();
+    }
+    if ( aLength == 0 )
+    {
+      return 0;
+    }
+    if ( !nextBlock() )
+    {
+      return -1;
+    }
+
+    final int count = Math.min( aLength, this.current.length - this.position );
+    System.arraycopy( this.current.data, this.position, aBuffer, aOffset, count );
+    this.position += count;
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public long skip( final long aCount ) throws IOException
+  {
+    if ( ( aCount <= 0 ) || !nextBlock() )
+    {
+      return 0;
+    }
+
+    final int count = ( int )Math.min( aCount, this.current.length - this.position );
+    this.position += count;
+    return count;
+  }
+
+  /**
+   * Verifies this stream is not closed.
+   */
+  private void ensureOpen() throws IOException
+  {
+    if ( this.closed )
+    {
+      throw new IOException( "Stream closed!" );
+    }
+  }
+
+  /**
+   * Makes sure the current block has bytes left, by releasing it and waiting
+   * for the next block if needed.
+   * 
+   * @return <code>true</code> if the current block has bytes left,
+   *         <code>false</code> if the end of the source is reached.
+   */
+  private boolean nextBlock() throws IOException
+  {
+    ensureOpen();
+    if ( ( this.current != null ) && ( this.position < this.current.length ) )
+    {
+      return true;
+    }
+    if ( this.error != null )
+    {
+      throw new IOException( "Failed to read ahead!", this.error );
+    }
+    if ( this.endOfStream )
+    {
+      return false;
+    }
+
+    if ( this.current != null )
+    {
+      this.free.offer( this.current.data );
+      this.current = null;
+    }
+
+    final Block block;
+    try
+    {
+      block = this.filled.take();
+    }
+    catch ( InterruptedException exception )
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException( "Interrupted while waiting for the next block!" );
+    }
+
+    if ( block.error != null )
+    {
+      this.error = block.error;
+      throw new IOException( "Failed to read ahead!", block.error );
+    }
+    if ( block.length < 0 )
+    {
+      this.endOfStream = true;
+      return false;
+    }
+
+    this.current = block;
+    this.position = 0;
+    return true;
+  }
+
+  /**
+   * Reads blocks from the source, as long as buffers are available, until
+   * the end of the source is reached or this stream is closed.
+   */
+  private void readAhead()
+  {
+    try
+    {
+      for ( ;; )
+      {
+        final byte[] buffer = this.free.take();
+        if ( this.closed )
+        {
+          return;
+        }
+
+        // Hand over whatever a single read returns, so the caller is not kept
+        // waiting for a full block when the source delivers data in bursts.
+        // Hence, the bytes read so far are always handed over before any
+        // error of a next read...
+        final int count = this.source.read( buffer, 0, buffer.length );
+        if ( count < 0 )
+        {
+          this.filled.put( new Block( null, -1, null ) );
+          return;
+        }
+        if ( count == 0 )
+        {
+          this.free.offer( buffer );
+          continue;
+        }
+        this.filled.put( new Block( buffer, count, null ) );
+      }
+    }
+    catch ( IOException exception )
+    {
+      if ( !this.closed )
+      {
+        this.filled.offer( new Block( null, -1, exception ) );
+      }
+    }
+    catch ( RuntimeException exception )
+    {
+      // Make sure the caller does not wait forever...
+      this.filled.offer( new Block( null, -1, new IOException( exception ) ) );
+    }
+    catch ( InterruptedException exception )
+    {
+      this.filled.offer( new Block( null, -1, new InterruptedIOException( "Interrupted while reading ahead!" ) ) );
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+
+
+/**
+ * Denotes an output whose already written bytes can be overwritten, allowing
+ * lengths to be back-patched once they are known.
+ */
+interface SeekableOutput
+{
+  // METHODS
+
+  /**
+   * Returns the current write position of this output.
+   * 
+   * @return a position, >= 0.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  long getPosition() throws IOException;
+
+  /**
+   * Overwrites already written bytes at the given position, without changing
+   * the current write position.
+   * 
+   * @param aPosition
+   *          the position to overwrite at, should be before the current write
+   *          position;
+   * @param aBuffer
+   *          the buffer containing the bytes to write;
+   * @param aOffset
+   *          the offset in the buffer;
+   * @param aLength
+   *          the number of bytes to write.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  void patch( long aPosition, byte[] aBuffer, int aOffset, int aLength ) throws IOException;
+}
@@ -0,0 +1,194 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import java.io.*;
+import java.util.*;
+
+
+/**
+ * Compiles ASN.1 modules into Java encoder/decoder classes, either as library
+ * or from the command line.
+ * <p>
+ * Usage from the command line:
+ * </p>
+ * 
+ * <pre>
+ * java nl.lxtreme.asn.compiler.AsnCompiler [-p &lt;package&gt;] [-d &lt;output dir&gt;] &lt;module.asn&gt;...
+ * </pre>
+ */
+public class AsnCompiler
+{
+  // CONSTANTS
+
+  private static final String ENCODING = "UTF-8";
+
+  // VARIABLES
+
+  private final String packageName;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnCompiler} instance.
+   * 
+   * @param aPackageName
+   *          the Java package to generate the classes in, use an empty string
+   *          for the default package; cannot be <code>null</code>.
+   */
+  public AsnCompiler( final String aPackageName )
+  {
+    if ( aPackageName == null )
+    {
+      throw new IllegalArgumentException( "Package name cannot be null!" );
+    }
+    this.packageName = aPackageName;
+  }
+
+  // METHODS
+
+  /**
+   * Runs the compiler from the command line.
+   * 
+   * @param aArgs
+   *          the command line arguments.
+   */
+  public static void main( final String[] aArgs )
+  {
+    String pkg = "";
+    File outputDir = new File( "." );
+    final List<File> modules = new ArrayList<File>();
+
+    for ( int i = 0; i < aArgs.length; i++ )
+    {
+      if ( "-p".equals( aArgs[i] ) && ( i + 1 < aArgs.length ) )
+      {
+        pkg = aArgs[++i];
+      }
+      else if ( "-d".equals( aArgs[i] ) && ( i + 1 < aArgs.length ) )
+      {
+        outputDir = new File( aArgs[++i] );
+      }
+      else if ( aArgs[i].startsWith( "-" ) )
+      {
+        modules.clear();
+        break;
+      }
+      else
+      {
+        modules.add( new File( aArgs[i] ) );
+      }
+    }
+
+    if ( modules.isEmpty() )
+    {
+      System.err.println( "Usage: " + AsnCompiler.class.getName()
+          + " [-p <package>] [-d <output dir>] <module.asn>..." );
+      System.exit( 2 );
+    }
+
+    final AsnCompiler compiler = new AsnCompiler( pkg );
+    try
+    {
+      for ( File module : modules )
+      {
+        for ( File file : compiler.compile( module, outputDir ) )
+        {
+          System.out.println( "Generated " + file );
+        }
+      }
+    }
+    catch ( AsnCompilerException exception )
+    {
+      System.err.println( "Failed to compile: " + exception.getMessage() );
+      System.exit( 1 );
+    }
+    catch ( IOException exception )
+    {
+      System.err.println( "I/O problem: " + exception.getMessage() );
+      System.exit( 1 );
+    }
+  }
+
+  /**
+   * Compiles the given ASN.1 module file and writes the generated sources to
+   * the given output directory, in a sub-directory for the Java package.
+   * 
+   * @param aModuleFile
+   *          the ASN.1 module file to compile, cannot be <code>null</code>;
+   * @param aOutputDir
+   *          the root directory to write the generated sources to, cannot be
+   *          <code>null</code>.
+   * @return the list of written files, never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems;
+   * @throws AsnCompilerException
+   *           in case the module is invalid or unsupported.
+   */
+  public List<File> compile( final File aModuleFile, final File aOutputDir ) throws IOException, AsnCompilerException
+  {
+    final Map<String, String> sources;
+
+    final Reader reader = new InputStreamReader( new FileInputStream( aModuleFile ), ENCODING );
+    try
+    {
+      sources = generate( AsnModuleParser.parse( reader ) );
+    }
+    finally
+    {
+      reader.close();
+    }
+
+    final File dir = new File( aOutputDir, this.packageName.replace( '.', File.separatorChar ) );
+    if ( !dir.isDirectory() && !dir.mkdirs() )
+    {
+      throw new IOException( "Failed to create output directory: " + dir );
+    }
+
+    final List<File> result = new ArrayList<File>();
+    for ( Map.Entry<String, String> entry : sources.entrySet() )
+    {
+      final File file = new File( dir, entry.getKey() + ".java" );
+
+      final Writer writer = new OutputStreamWriter( new FileOutputStream( file ), ENCODING );
+      try
+      {
+        writer.write( entry.getValue() );
+      }
+      finally
+      {
+        writer.close();
+      }
+
+      result.add( file );
+    }
+    return result;
+  }
+
+  /**
+   * Compiles the given ASN.1 module text.
+   * 
+   * @param aModuleText
+   *          the ASN.1 module text to compile, cannot be <code>null</code>.
+   * @return a map with the generated Java sources, keyed on their (simple)
+   *         class name, never <code>null</code>.
+   * @throws AsnCompilerException
+   *           in case the module is invalid or unsupported.
+   */
+  public Map<String, String> compile( final String aModuleText ) throws AsnCompilerException
+  {
+    return generate( new AsnModuleParser( aModuleText ).parseModule() );
+  }
+
+  /**
+   * Generates the Java sources for the given module.
+   */
+  private Map<String, String> generate( final AsnModule aModule ) throws AsnCompilerException
+  {
+    return new JavaCodecGenerator( this.packageName ).generate( aModule );
+  }
+}
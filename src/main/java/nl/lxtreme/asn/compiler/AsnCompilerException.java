@@ -0,0 +1,63 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+/**
+ * Thrown when an ASN.1 module cannot be parsed or cannot be translated into
+ * Java codecs.
+ */
+public class AsnCompilerException extends Exception
+{
+  // CONSTANTS
+
+  private static final long serialVersionUID = 1L;
+
+  // VARIABLES
+
+  private final int line;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnCompilerException} instance without line
+   * information.
+   * 
+   * @param aMessage
+   *          the detail message.
+   */
+  public AsnCompilerException( final String aMessage )
+  {
+    this( aMessage, -1 );
+  }
+
+  /**
+   * Creates a new {@link AsnCompilerException} instance.
+   * 
+   * @param aMessage
+   *          the detail message;
+   * @param aLine
+   *          the (1-based) line in the module text the problem was found on,
+   *          or -1 if unknown.
+   */
+  public AsnCompilerException( final String aMessage, final int aLine )
+  {
+    super( ( aLine > 0 ) ? ( "Line " + aLine + ": " + aMessage ) : aMessage );
+    this.line = aLine;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the line in the module text this exception relates to.
+   * 
+   * @return a (1-based) line number, or -1 if unknown.
+   */
+  public int getLine()
+  {
+    return this.line;
+  }
+}
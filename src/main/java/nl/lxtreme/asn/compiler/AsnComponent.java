@@ -0,0 +1,83 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+/**
+ * Represents a named component of a SEQUENCE, SET or CHOICE type.
+ */
+public final class AsnComponent
+{
+  // VARIABLES
+
+  private final String name;
+  private final AsnTypeDefinition type;
+  private final boolean optional;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnComponent} instance.
+   * 
+   * @param aName
+   *          the (ASN.1) name of this component, cannot be <code>null</code>;
+   * @param aType
+   *          the type of this component, cannot be <code>null</code>;
+   * @param aOptional
+   *          <code>true</code> if this component is OPTIONAL,
+   *          <code>false</code> otherwise.
+   */
+  public AsnComponent( final String aName, final AsnTypeDefinition aType, final boolean aOptional )
+  {
+    if ( aName == null )
+    {
+      throw new IllegalArgumentException( "Name cannot be null!" );
+    }
+    if ( aType == null )
+    {
+      throw new IllegalArgumentException( "Type cannot be null!" );
+    }
+    this.name = aName;
+    this.type = aType;
+    this.optional = aOptional;
+  }
+
+  // METHODS
+
+  /**
+   * @return the ASN.1 name of this component, never <code>null</code>.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * @return the type of this component, never <code>null</code>.
+   */
+  public AsnTypeDefinition getType()
+  {
+    return this.type;
+  }
+
+  /**
+   * @return <code>true</code> if this component is OPTIONAL,
+   *         <code>false</code> if it is mandatory.
+   */
+  public boolean isOptional()
+  {
+    return this.optional;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return this.name + " " + this.type + ( this.optional ? " OPTIONAL" : "" );
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import java.util.*;
+
+
+/**
+ * Represents a parsed ASN.1 module with its type assignments.
+ */
+public final class AsnModule
+{
+  // VARIABLES
+
+  private final String name;
+  private final AsnTagging defaultTagging;
+  private final Map<String, AsnTypeDefinition> assignments;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnModule} instance.
+   * 
+   * @param aName
+   *          the module reference, cannot be <code>null</code>;
+   * @param aDefaultTagging
+   *          the tagging mode used for tags without explicit mode, cannot be
+   *          <code>null</code>;
+   * @param aAssignments
+   *          the type assignments, keyed on type name in definition order,
+   *          cannot be <code>null</code>.
+   */
+  public AsnModule( final String aName, final AsnTagging aDefaultTagging,
+      final Map<String, AsnTypeDefinition> aAssignments )
+  {
+    if ( aName == null )
+    {
+      throw new IllegalArgumentException( "Name cannot be null!" );
+    }
+    if ( aDefaultTagging == null )
+    {
+      throw new IllegalArgumentException( "Default tagging cannot be null!" );
+    }
+    this.name = aName;
+    this.defaultTagging = aDefaultTagging;
+    this.assignments = Collections.unmodifiableMap( new LinkedHashMap<String, AsnTypeDefinition>( aAssignments ) );
+  }
+
+  // METHODS
+
+  /**
+   * Returns the type assignments of this module.
+   * 
+   * @return the type assignments, keyed on type name in definition order,
+   *         never <code>null</code>.
+   */
+  public Map<String, AsnTypeDefinition> getAssignments()
+  {
+    return this.assignments;
+  }
+
+  /**
+   * Returns the tagging mode that applies to tags without explicit mode.
+   * 
+   * @return the default tagging mode, never <code>null</code>.
+   */
+  public AsnTagging getDefaultTagging()
+  {
+    return this.defaultTagging;
+  }
+
+  /**
+   * @return the module reference, never <code>null</code>.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * Returns the type assigned to the given name.
+   * 
+   * @param aName
+   *          the name of the type assignment to return.
+   * @return the assigned type definition, or <code>null</code> if no such
+   *         assignment exists.
+   */
+  public AsnTypeDefinition getType( final String aName )
+  {
+    return this.assignments.get( aName );
+  }
+}
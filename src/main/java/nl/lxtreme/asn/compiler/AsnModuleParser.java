@@ -0,0 +1,870 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+import nl.lxtreme.asn.compiler.AsnTypeDefinition.Kind;
+
+
+/**
+ * Parses the textual notation of an ASN.1 module into an {@link AsnModule}.
+ * <p>
+ * The supported subset covers type assignments using the built-in types
+ * supported by the BER streams, SEQUENCE, SET, CHOICE, SEQUENCE OF and SET OF,
+ * tags with their tagging modes, value/SIZE constraints and named numbers.
+ * Value assignments, IMPORTS and EXPORTS are skipped; extension markers make
+ * the enclosing type extensible and its extension additions optional.
+ * </p>
+ */
+public class AsnModuleParser
+{
+  // INNER TYPES
+
+  /**
+   * Denotes a single lexical token of the module text.
+   */
+  private static class Token
+  {
+    // VARIABLES
+
+    final String text;
+    final int line;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Token} instance.
+     * 
+     * @param aText
+     *          the text of this token;
+     * @param aLine
+     *          the line this token was found on.
+     */
+    Token( final String aText, final int aLine )
+    {
+      this.text = aText;
+      this.line = aLine;
+    }
+  }
+
+  // CONSTANTS
+
+  /** Denotes the end of the token stream. */
+  private static final String EOF = "";
+
+  // VARIABLES
+
+  private final List<Token> tokens;
+  private int pos;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnModuleParser} instance.
+   * 
+   * @param aText
+   *          the ASN.1 module text to parse, cannot be <code>null</code>.
+   * @throws AsnCompilerException
+   *           in case the given text contains invalid tokens.
+   */
+  public AsnModuleParser( final String aText ) throws AsnCompilerException
+  {
+    if ( aText == null )
+    {
+      throw new IllegalArgumentException( "Text cannot be null!" );
+    }
+    this.tokens = tokenize( aText );
+  }
+
+  // METHODS
+
+  /**
+   * Convenience method to parse the ASN.1 module from the given reader.
+   * 
+   * @param aReader
+   *          the reader to read the module text from, cannot be
+   *          <code>null</code>.
+   * @return the parsed module, never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems;
+   * @throws AsnCompilerException
+   *           in case the module text is invalid or unsupported.
+   */
+  public static AsnModule parse( final Reader aReader ) throws IOException, AsnCompilerException
+  {
+    final StringBuilder sb = new StringBuilder();
+    final char[] buf = new char[4096];
+    int read;
+    while ( ( read = aReader.read( buf ) ) >= 0 )
+    {
+      sb.append( buf, 0, read );
+    }
+    return new AsnModuleParser( sb.toString() ).parseModule();
+  }
+
+  /**
+   * Parses the module text given at construction time.
+   * 
+   * @return the parsed module, never <code>null</code>.
+   * @throws AsnCompilerException
+   *           in case the module text is invalid or unsupported.
+   */
+  public AsnModule parseModule() throws AsnCompilerException
+  {
+    this.pos = 0;
+
+    final String name = expectIdentifier();
+    if ( peek( "{" ) )
+    {
+      // Module object identifier; not relevant for code generation...
+      skipBalanced( "{", "}" );
+    }
+    expect( "DEFINITIONS" );
+
+    AsnTagging tagging = AsnTagging.EXPLICIT;
+    if ( peek( "EXPLICIT" ) || peek( "IMPLICIT" ) || peek( "AUTOMATIC" ) )
+    {
+      tagging = AsnTagging.valueOf( next().text );
+      expect( "TAGS" );
+    }
+    if ( accept( "EXTENSIBILITY" ) )
+    {
+      expect( "IMPLIED" );
+    }
+    expect( "::=" );
+    expect( "BEGIN" );
+
+    if ( accept( "EXPORTS" ) )
+    {
+      skipUntil( ";" );
+    }
+    if ( accept( "IMPORTS" ) )
+    {
+      skipUntil( ";" );
+    }
+
+    final Map<String, AsnTypeDefinition> assignments = new LinkedHashMap<String, AsnTypeDefinition>();
+    while ( !accept( "END" ) )
+    {
+      final Token nameToken = current();
+      final String assignmentName = expectIdentifier();
+      if ( accept( "::=" ) )
+      {
+        if ( !Character.isUpperCase( assignmentName.charAt( 0 ) ) )
+        {
+          throw new AsnCompilerException( "Type reference should start with an upper case letter: " + assignmentName,
+              nameToken.line );
+        }
+        if ( assignments.containsKey( assignmentName ) )
+        {
+          throw new AsnCompilerException( "Duplicate type assignment: " + assignmentName, nameToken.line );
+        }
+        assignments.put( assignmentName, parseType() );
+      }
+      else
+      {
+        // Value assignment; not used for code generation...
+        parseType();
+        expect( "::=" );
+        skipValue();
+      }
+    }
+
+    if ( !isEOF( current() ) )
+    {
+      throw new AsnCompilerException( "Unexpected text after END: " + current().text, current().line );
+    }
+
+    return new AsnModule( name, tagging, assignments );
+  }
+
+  /**
+   * Tokenizes the given module text.
+   * 
+   * @param aText
+   *          the text to tokenize.
+   * @return the list of tokens, terminated by an {@link #EOF} token.
+   * @throws AsnCompilerException
+   *           in case of invalid characters.
+   */
+  private static List<Token> tokenize( final String aText ) throws AsnCompilerException
+  {
+    final List<Token> result = new ArrayList<Token>();
+    final int length = aText.length();
+
+    int line = 1;
+    int i = 0;
+    while ( i < length )
+    {
+      final char c = aText.charAt( i );
+      if ( c == '\n' )
+      {
+        line++;
+        i++;
+      }
+      else if ( Character.isWhitespace( c ) )
+      {
+        i++;
+      }
+      else if ( aText.startsWith( "--", i ) )
+      {
+        // Comment runs until the end of the line or the next "--"...
+        i += 2;
+        while ( ( i < length ) && ( aText.charAt( i ) != '\n' ) && !aText.startsWith( "--", i ) )
+        {
+          i++;
+        }
+        if ( aText.startsWith( "--", i ) )
+        {
+          i += 2;
+        }
+      }
+      else if ( aText.startsWith( "/*", i ) )
+      {
+        final int end = aText.indexOf( "*/", i + 2 );
+        if ( end < 0 )
+        {
+          throw new AsnCompilerException( "Unterminated comment!", line );
+        }
+        for ( int j = i; j < end; j++ )
+        {
+          if ( aText.charAt( j ) == '\n' )
+          {
+            line++;
+          }
+        }
+        i = end + 2;
+      }
+      else if ( aText.startsWith( "::=", i ) || aText.startsWith( "...", i ) || aText.startsWith( "[[", i )
+          || aText.startsWith( "]]", i ) )
+      {
+        final int len = ( c == ':' ) || ( c == '.' ) ? 3 : 2;
+        result.add( new Token( aText.substring( i, i + len ), line ) );
+        i += len;
+      }
+      else if ( aText.startsWith( "..", i ) )
+      {
+        result.add( new Token( "..", line ) );
+        i += 2;
+      }
+      else if ( "{}()[],;|".indexOf( c ) >= 0 )
+      {
+        result.add( new Token( String.valueOf( c ), line ) );
+        i++;
+      }
+      else if ( Character.isDigit( c ) || ( ( c == '-' ) && ( i + 1 < length ) && Character.isDigit( aText.charAt( i + 1 ) ) ) )
+      {
+        int j = i + 1;
+        while ( ( j < length ) && Character.isDigit( aText.charAt( j ) ) )
+        {
+          j++;
+        }
+        result.add( new Token( aText.substring( i, j ), line ) );
+        i = j;
+      }
+      else if ( Character.isLetter( c ) )
+      {
+        int j = i + 1;
+        while ( ( j < length ) && ( Character.isLetterOrDigit( aText.charAt( j ) ) || isIdentifierHyphen( aText, j ) ) )
+        {
+          j++;
+        }
+        result.add( new Token( aText.substring( i, j ), line ) );
+        i = j;
+      }
+      else if ( ( c == '"' ) || ( c == '\'' ) )
+      {
+        // String or binary/hex literal; only used in values...
+        final int end = aText.indexOf( c, i + 1 );
+        if ( end < 0 )
+        {
+          throw new AsnCompilerException( "Unterminated literal!", line );
+        }
+        int j = end + 1;
+        if ( ( c == '\'' ) && ( j < length ) && Character.isLetter( aText.charAt( j ) ) )
+        {
+          j++;
+        }
+        result.add( new Token( aText.substring( i, j ), line ) );
+        i = j;
+      }
+      else
+      {
+        throw new AsnCompilerException( "Unexpected character: '" + c + "'", line );
+      }
+    }
+
+    result.add( new Token( EOF, line ) );
+    return result;
+  }
+
+  /**
+   * Returns whether the character at the given index is a hyphen that is part
+   * of an identifier, i.e., not the start of a comment and not trailing.
+   */
+  private static boolean isIdentifierHyphen( final String aText, final int aIndex )
+  {
+    return ( aText.charAt( aIndex ) == '-' ) && ( aIndex + 1 < aText.length() )
+        && Character.isLetterOrDigit( aText.charAt( aIndex + 1 ) );
+  }
+
+  /**
+   * Consumes the current token if it equals the given text.
+   * 
+   * @return <code>true</code> if the token was consumed, <code>false</code>
+   *         otherwise.
+   */
+  private boolean accept( final String aText )
+  {
+    if ( peek( aText ) )
+    {
+      this.pos++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the current token, never <code>null</code>.
+   */
+  private Token current()
+  {
+    return this.tokens.get( this.pos );
+  }
+
+  /**
+   * Consumes the current token, which should equal the given text.
+   */
+  private void expect( final String aText ) throws AsnCompilerException
+  {
+    if ( !accept( aText ) )
+    {
+      throw unexpected( "'" + aText + "'" );
+    }
+  }
+
+  /**
+   * Consumes the current token, which should be an identifier.
+   * 
+   * @return the identifier, never <code>null</code>.
+   */
+  private String expectIdentifier() throws AsnCompilerException
+  {
+    final Token token = current();
+    if ( isEOF( token ) || !Character.isLetter( token.text.charAt( 0 ) ) )
+    {
+      throw unexpected( "identifier" );
+    }
+    this.pos++;
+    return token.text;
+  }
+
+  /**
+   * Consumes the current token, which should be a number.
+   * 
+   * @return the numeric value.
+   */
+  private long expectNumber() throws AsnCompilerException
+  {
+    final Token token = current();
+    try
+    {
+      final long result = Long.parseLong( token.text );
+      this.pos++;
+      return result;
+    }
+    catch ( NumberFormatException exception )
+    {
+      throw unexpected( "number" );
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the given token denotes the end of the module
+   *         text.
+   */
+  private boolean isEOF( final Token aToken )
+  {
+    return aToken.text.length() == 0;
+  }
+
+  /**
+   * @return <code>true</code> if the given token represents a number.
+   */
+  private boolean isNumber( final Token aToken )
+  {
+    final String text = aToken.text;
+    return ( text.length() > 0 ) && ( Character.isDigit( text.charAt( 0 ) ) || ( text.charAt( 0 ) == '-' ) );
+  }
+
+  /**
+   * @return the current token, which is consumed.
+   */
+  private Token next()
+  {
+    return this.tokens.get( this.pos++ );
+  }
+  private void parseConstraint( final AsnTypeDefinition aType ) throws AsnCompilerException
+  {
+    final int start = this.pos;
+    expect( "(" );
+
+    final boolean size = accept( "SIZE" );
+    if ( size )
+    {
+      expect( "(" );
+    }
+
+    final AsnRange range = parseRange();
+    if ( ( range != null ) && accept( "," ) )
+    {
+      // Extensible constraint, like "(0..10, ...)"; ignore the extension...
+      while ( !peek( ")" ) && !isEOF( current() ) )
+      {
+        this.pos++;
+      }
+    }
+    if ( ( range == null ) || !accept( ")" ) || ( size && !accept( ")" ) ) )
+    {
+      // Not a simple (SIZE) range constraint; skip it altogether...
+      this.pos = start;
+      skipBalanced( "(", ")" );
+      return;
+    }
+
+    if ( size )
+    {
+      aType.setSizeRange( range );
+    }
+    else
+    {
+      aType.setValueRange( range );
+    }
+  }
+
+  /**
+   * Parses the components of a SEQUENCE, SET or CHOICE.
+   * <p>
+   * Components following an extension marker are extension additions, which
+   * can be absent, so they are made optional. Version brackets are ignored.
+   * </p>
+   */
+  private AsnTypeDefinition parseConstructed( final Kind aKind ) throws AsnCompilerException
+  {
+    final boolean choice = ( aKind == Kind.CHOICE );
+    final List<AsnComponent> components = new ArrayList<AsnComponent>();
+    final Set<String> names = new HashSet<String>();
+    boolean extensible = false;
+    boolean additions = false;
+
+    expect( "{" );
+    while ( !accept( "}" ) )
+    {
+      if ( accept( "..." ) )
+      {
+        // A second marker ends the extension additions...
+        extensible = true;
+        additions = !additions;
+        continue;
+      }
+      if ( accept( "[[" ) || accept( "]]" ) || accept( "," ) )
+      {
+        continue;
+      }
+      if ( peek( "COMPONENTS" ) )
+      {
+        throw new AsnCompilerException( "COMPONENTS OF is not supported!", current().line );
+      }
+
+      final Token nameToken = current();
+      final String name = expectIdentifier();
+      if ( !Character.isLowerCase( name.charAt( 0 ) ) )
+      {
+        throw new AsnCompilerException( "Component name should start with a lower case letter: " + name,
+            nameToken.line );
+      }
+      if ( !names.add( name ) )
+      {
+        throw new AsnCompilerException( "Duplicate component: " + name, nameToken.line );
+      }
+
+      final AsnTypeDefinition type = parseType();
+
+      boolean optional = additions && !choice;
+      if ( !choice )
+      {
+        if ( accept( "OPTIONAL" ) )
+        {
+          optional = true;
+        }
+        else if ( peek( "DEFAULT" ) )
+        {
+          throw new AsnCompilerException( "DEFAULT values are not supported (" + name + ")!", current().line );
+        }
+      }
+
+      components.add( new AsnComponent( name, type, optional ) );
+    }
+
+    final AsnTypeDefinition result = AsnTypeDefinition.constructed( aKind, components );
+    result.setExtensible( extensible );
+    return result;
+  }
+
+  /**
+   * Parses an optional value or SIZE constraint and applies it to the given
+   * type definition.
+   */
+  /**
+   * Parses an optional list of named numbers, like
+   * <code>{ red(0), green(1) }</code>; unnumbered names (only allowed for
+   * ENUMERATED) are numbered automatically.
+   */
+  private Map<String, Long> parseNamedNumbers() throws AsnCompilerException
+  {
+    final Map<String, Long> result = new LinkedHashMap<String, Long>();
+    if ( !accept( "{" ) )
+    {
+      return result;
+    }
+
+    final List<String> unnumbered = new ArrayList<String>();
+    while ( !accept( "}" ) )
+    {
+      if ( accept( "," ) || accept( "..." ) )
+      {
+        continue;
+      }
+      final String name = expectIdentifier();
+      if ( accept( "(" ) )
+      {
+        result.put( name, Long.valueOf( expectNumber() ) );
+        expect( ")" );
+      }
+      else
+      {
+        result.put( name, null );
+        unnumbered.add( name );
+      }
+    }
+
+    long next = 0;
+    for ( String name : unnumbered )
+    {
+      while ( result.containsValue( Long.valueOf( next ) ) )
+      {
+        next++;
+      }
+      result.put( name, Long.valueOf( next ) );
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses a simple range, like <code>0..255</code>, <code>MIN..0</code> or
+   * <code>8</code>.
+   * 
+   * @return the parsed range, or <code>null</code> if the constraint is not a
+   *         simple range.
+   */
+  private AsnRange parseRange() throws AsnCompilerException
+  {
+    long lower;
+    if ( accept( "MIN" ) )
+    {
+      lower = Long.MIN_VALUE;
+    }
+    else if ( isNumber( current() ) )
+    {
+      lower = expectNumber();
+    }
+    else
+    {
+      return null;
+    }
+
+    long upper = lower;
+    if ( accept( ".." ) )
+    {
+      if ( accept( "MAX" ) )
+      {
+        upper = Long.MAX_VALUE;
+      }
+      else if ( isNumber( current() ) )
+      {
+        upper = expectNumber();
+      }
+      else
+      {
+        return null;
+      }
+    }
+
+    if ( lower > upper )
+    {
+      throw new AsnCompilerException( "Empty range: " + lower + ".." + upper, current().line );
+    }
+    return new AsnRange( lower, upper );
+  }
+
+  /**
+   * Parses a (possibly tagged and constrained) type.
+   */
+  private AsnTypeDefinition parseType() throws AsnCompilerException
+  {
+    AsnTag tag = null;
+    if ( accept( "[" ) )
+    {
+      AsnClass clazz = AsnClass.CONTEXT_SPECIFIC;
+      if ( accept( "UNIVERSAL" ) )
+      {
+        clazz = AsnClass.UNIVERSAL;
+      }
+      else if ( accept( "APPLICATION" ) )
+      {
+        clazz = AsnClass.APPLICATION;
+      }
+      else if ( accept( "PRIVATE" ) )
+      {
+        clazz = AsnClass.PRIVATE;
+      }
+      final long number = expectNumber();
+      if ( ( number < 0 ) || ( number > Integer.MAX_VALUE ) )
+      {
+        throw new AsnCompilerException( "Invalid tag number: " + number, current().line );
+      }
+      expect( "]" );
+
+      AsnTagging mode = null;
+      if ( accept( "IMPLICIT" ) )
+      {
+        mode = AsnTagging.IMPLICIT;
+      }
+      else if ( accept( "EXPLICIT" ) )
+      {
+        mode = AsnTagging.EXPLICIT;
+      }
+      tag = new AsnTag( clazz, ( int )number, mode );
+    }
+
+    final AsnTypeDefinition result = parseUntaggedType();
+    result.setTag( tag );
+
+    while ( peek( "(" ) )
+    {
+      parseConstraint( result );
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses the type following an optional tag.
+   */
+  private AsnTypeDefinition parseUntaggedType() throws AsnCompilerException
+  {
+    final Token token = current();
+    final Map<String, Long> none = Collections.emptyMap();
+
+    if ( accept( "BOOLEAN" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.BOOLEAN, none );
+    }
+    if ( accept( "INTEGER" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.INTEGER, parseNamedNumbers() );
+    }
+    if ( accept( "ENUMERATED" ) )
+    {
+      if ( !peek( "{" ) )
+      {
+        throw unexpected( "'{'" );
+      }
+      return AsnTypeDefinition.builtin( AsnType.ENUMERATED, parseNamedNumbers() );
+    }
+    if ( accept( "NULL" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.NULL, none );
+    }
+    if ( accept( "REAL" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.REAL, none );
+    }
+    if ( accept( "OCTET" ) )
+    {
+      expect( "STRING" );
+      return AsnTypeDefinition.builtin( AsnType.OCTET_STRING, none );
+    }
+    if ( accept( "BIT" ) )
+    {
+      expect( "STRING" );
+      return AsnTypeDefinition.builtin( AsnType.BIT_STRING, parseNamedNumbers() );
+    }
+    if ( accept( "OBJECT" ) )
+    {
+      expect( "IDENTIFIER" );
+      return AsnTypeDefinition.builtin( AsnType.OBJECT_ID, none );
+    }
+    if ( accept( "RELATIVE-OID" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.RELATIVE_OID, none );
+    }
+    if ( accept( "UTF8String" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.UTF8_STRING, none );
+    }
+    if ( accept( "PrintableString" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.PRINTABLE_STRING, none );
+    }
+    if ( accept( "IA5String" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.IA5_STRING, none );
+    }
+    if ( accept( "NumericString" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.NUMERIC_STRING, none );
+    }
+    if ( accept( "VisibleString" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.VISIBLE_STRING, none );
+    }
+    if ( accept( "UTCTime" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.UTC_TIME, none );
+    }
+    if ( accept( "GeneralizedTime" ) )
+    {
+      return AsnTypeDefinition.builtin( AsnType.GENERALIZED_TIME, none );
+    }
+    if ( accept( "SEQUENCE" ) || accept( "SET" ) )
+    {
+      final boolean sequence = "SEQUENCE".equals( token.text );
+      if ( peek( "{" ) )
+      {
+        return parseConstructed( sequence ? Kind.SEQUENCE : Kind.SET );
+      }
+
+      // SEQUENCE OF / SET OF, with an optional SIZE constraint...
+      AsnRange size = null;
+      if ( peek( "(" ) || peek( "SIZE" ) )
+      {
+        final boolean parenthesized = accept( "(" );
+        expect( "SIZE" );
+        expect( "(" );
+        size = parseRange();
+        if ( size == null )
+        {
+          throw unexpected( "size range" );
+        }
+        expect( ")" );
+        if ( parenthesized )
+        {
+          expect( ")" );
+        }
+      }
+      expect( "OF" );
+      if ( !isEOF( current() ) && Character.isLowerCase( current().text.charAt( 0 ) ) )
+      {
+        // Named element type: "SEQUENCE OF item Item"...
+        next();
+      }
+
+      final AsnTypeDefinition result = AsnTypeDefinition.collection( sequence ? Kind.SEQUENCE_OF : Kind.SET_OF,
+          parseType() );
+      result.setSizeRange( size );
+      return result;
+    }
+    if ( accept( "CHOICE" ) )
+    {
+      return parseConstructed( Kind.CHOICE );
+    }
+
+    final String name = expectIdentifier();
+    if ( !Character.isUpperCase( name.charAt( 0 ) ) )
+    {
+      throw new AsnCompilerException( "Type expected, got: " + name, token.line );
+    }
+    return AsnTypeDefinition.reference( name );
+  }
+
+  /**
+   * @return <code>true</code> if the current token equals the given text.
+   */
+  private boolean peek( final String aText )
+  {
+    return current().text.equals( aText );
+  }
+
+  /**
+   * Skips a balanced group of tokens, starting at the current (open) token.
+   */
+  private void skipBalanced( final String aOpen, final String aClose ) throws AsnCompilerException
+  {
+    expect( aOpen );
+    int depth = 1;
+    while ( depth > 0 )
+    {
+      final Token token = next();
+      if ( isEOF( token ) )
+      {
+        throw new AsnCompilerException( "Missing '" + aClose + "'!", token.line );
+      }
+      if ( token.text.equals( aOpen ) )
+      {
+        depth++;
+      }
+      else if ( token.text.equals( aClose ) )
+      {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Skips all tokens up to and including the given token.
+   */
+  private void skipUntil( final String aText ) throws AsnCompilerException
+  {
+    while ( !accept( aText ) )
+    {
+      if ( isEOF( next() ) )
+      {
+        throw new AsnCompilerException( "Missing '" + aText + "'!", current().line );
+      }
+    }
+  }
+
+  /**
+   * Skips a value, as used in value assignments.
+   */
+  private void skipValue() throws AsnCompilerException
+  {
+    if ( peek( "{" ) )
+    {
+      skipBalanced( "{", "}" );
+    }
+    else
+    {
+      next();
+    }
+  }
+
+  /**
+   * Creates an exception for an unexpected token.
+   */
+  private AsnCompilerException unexpected( final String aExpected )
+  {
+    final Token token = current();
+    final String found = ( isEOF( token ) ) ? "end of module" : ( "'" + token.text + "'" );
+    return new AsnCompilerException( "Expected " + aExpected + ", got " + found, token.line );
+  }
+}
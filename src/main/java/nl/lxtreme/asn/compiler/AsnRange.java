@@ -0,0 +1,70 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+/**
+ * Represents a value or size constraint, like <code>(0..255)</code> or
+ * <code>(SIZE(1..64))</code>, as found in an ASN.1 module.
+ */
+public final class AsnRange
+{
+  // VARIABLES
+
+  private final long lowerBound;
+  private final long upperBound;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnRange} instance.
+   * 
+   * @param aLowerBound
+   *          the inclusive lower bound, use {@link Long#MIN_VALUE} for
+   *          <code>MIN</code>;
+   * @param aUpperBound
+   *          the inclusive upper bound, use {@link Long#MAX_VALUE} for
+   *          <code>MAX</code>.
+   */
+  public AsnRange( final long aLowerBound, final long aUpperBound )
+  {
+    if ( aLowerBound > aUpperBound )
+    {
+      throw new IllegalArgumentException( "Lower bound cannot exceed upper bound!" );
+    }
+    this.lowerBound = aLowerBound;
+    this.upperBound = aUpperBound;
+  }
+
+  // METHODS
+
+  /**
+   * @return the inclusive lower bound of this range.
+   */
+  public long getLowerBound()
+  {
+    return this.lowerBound;
+  }
+
+  /**
+   * @return the inclusive upper bound of this range.
+   */
+  public long getUpperBound()
+  {
+    return this.upperBound;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    final String lower = ( this.lowerBound == Long.MIN_VALUE ) ? "MIN" : String.valueOf( this.lowerBound );
+    final String upper = ( this.upperBound == Long.MAX_VALUE ) ? "MAX" : String.valueOf( this.upperBound );
+    return lower + ".." + upper;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Represents a tag, like <code>[APPLICATION 3] IMPLICIT</code>, as found in an
+ * ASN.1 module.
+ */
+public final class AsnTag
+{
+  // VARIABLES
+
+  private final AsnClass clazz;
+  private final int number;
+  private final AsnTagging mode;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnTag} instance.
+   * 
+   * @param aClass
+   *          the class of this tag, cannot be <code>null</code>;
+   * @param aNumber
+   *          the tag number, >= 0;
+   * @param aMode
+   *          the tagging mode, or <code>null</code> to use the module default.
+   */
+  public AsnTag( final AsnClass aClass, final int aNumber, final AsnTagging aMode )
+  {
+    if ( aClass == null )
+    {
+      throw new IllegalArgumentException( "AsnClass cannot be null!" );
+    }
+    if ( aNumber < 0 )
+    {
+      throw new IllegalArgumentException( "Tag number cannot be negative!" );
+    }
+    this.clazz = aClass;
+    this.number = aNumber;
+    this.mode = aMode;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the class of this tag.
+   * 
+   * @return a {@link AsnClass}, never <code>null</code>.
+   */
+  public AsnClass getClazz()
+  {
+    return this.clazz;
+  }
+
+  /**
+   * Returns the tagging mode as given in the module text.
+   * 
+   * @return the tagging mode, or <code>null</code> if the module default
+   *         applies.
+   */
+  public AsnTagging getMode()
+  {
+    return this.mode;
+  }
+
+  /**
+   * Returns the number of this tag.
+   * 
+   * @return a tag number, >= 0.
+   */
+  public int getNumber()
+  {
+    return this.number;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    final String prefix = ( this.clazz == AsnClass.CONTEXT_SPECIFIC ) ? "" : ( this.clazz + " " );
+    return "[" + prefix + this.number + "]" + ( ( this.mode == null ) ? "" : ( " " + this.mode ) );
+  }
+}
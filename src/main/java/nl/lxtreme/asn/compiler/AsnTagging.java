@@ -0,0 +1,25 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+/**
+ * Denotes the tagging modes of ASN.1.
+ */
+public enum AsnTagging
+{
+  // CONSTANTS
+
+  /** The tag is added as extra (constructed) wrapper around the value. */
+  EXPLICIT,
+  /** The tag replaces the identifier of the tagged value. */
+  IMPLICIT,
+  /**
+   * Components of SEQUENCE, SET and CHOICE types are implicitly tagged with
+   * consecutive context-specific tags (only valid as module default).
+   */
+  AUTOMATIC;
+}
@@ -0,0 +1,325 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+
+
+/**
+ * Represents a type as found in an ASN.1 module, such as a built-in type, a
+ * reference to another type or a constructed type with its components.
+ */
+public final class AsnTypeDefinition
+{
+  // INNER TYPES
+
+  /**
+   * Denotes the various kinds of type definitions.
+   */
+  public static enum Kind
+  {
+    /** A built-in (UNIVERSAL) type, like INTEGER or UTF8String. */
+    BUILTIN,
+    /** A reference to another type assignment in the same module. */
+    REFERENCE,
+    /** A SEQUENCE with named components. */
+    SEQUENCE,
+    /** A SET with named components. */
+    SET,
+    /** A CHOICE between named alternatives. */
+    CHOICE,
+    /** A SEQUENCE OF a single element type. */
+    SEQUENCE_OF,
+    /** A SET OF a single element type. */
+    SET_OF;
+  }
+
+  // VARIABLES
+
+  private final Kind kind;
+  private final AsnType builtinType;
+  private final String reference;
+  private final List<AsnComponent> components;
+  private final AsnTypeDefinition elementType;
+  private final Map<String, Long> namedNumbers;
+
+  private AsnTag tag;
+  private AsnRange valueRange;
+  private AsnRange sizeRange;
+  private boolean extensible;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link AsnTypeDefinition} instance.
+   */
+  private AsnTypeDefinition( final Kind aKind, final AsnType aBuiltinType, final String aReference,
+      final List<AsnComponent> aComponents, final AsnTypeDefinition aElementType, final Map<String, Long> aNamedNumbers )
+  {
+    this.kind = aKind;
+    this.builtinType = aBuiltinType;
+    this.reference = aReference;
+    this.components = aComponents;
+    this.elementType = aElementType;
+    this.namedNumbers = aNamedNumbers;
+  }
+
+  // METHODS
+
+  /**
+   * Creates a new built-in type definition.
+   * 
+   * @param aType
+   *          the UNIVERSAL type, cannot be <code>null</code>;
+   * @param aNamedNumbers
+   *          the named numbers (or named bits) of this type, in definition
+   *          order, cannot be <code>null</code>.
+   * @return a new {@link AsnTypeDefinition}, never <code>null</code>.
+   */
+  public static AsnTypeDefinition builtin( final AsnType aType, final Map<String, Long> aNamedNumbers )
+  {
+    if ( aType == null )
+    {
+      throw new IllegalArgumentException( "AsnType cannot be null!" );
+    }
+    return new AsnTypeDefinition( Kind.BUILTIN, aType, null, null, null, aNamedNumbers );
+  }
+
+  /**
+   * Creates a new SEQUENCE, SET or CHOICE type definition.
+   * 
+   * @param aKind
+   *          either {@link Kind#SEQUENCE}, {@link Kind#SET} or
+   *          {@link Kind#CHOICE};
+   * @param aComponents
+   *          the components, in definition order, cannot be <code>null</code>.
+   * @return a new {@link AsnTypeDefinition}, never <code>null</code>.
+   */
+  public static AsnTypeDefinition constructed( final Kind aKind, final List<AsnComponent> aComponents )
+  {
+    if ( ( aKind != Kind.SEQUENCE ) && ( aKind != Kind.SET ) && ( aKind != Kind.CHOICE ) )
+    {
+      throw new IllegalArgumentException( "Invalid kind: " + aKind );
+    }
+    final Map<String, Long> empty = Collections.emptyMap();
+    return new AsnTypeDefinition( aKind, null, null, aComponents, null, empty );
+  }
+
+  /**
+   * Creates a new SEQUENCE OF or SET OF type definition.
+   * 
+   * @param aKind
+   *          either {@link Kind#SEQUENCE_OF} or {@link Kind#SET_OF};
+   * @param aElementType
+   *          the element type, cannot be <code>null</code>.
+   * @return a new {@link AsnTypeDefinition}, never <code>null</code>.
+   */
+  public static AsnTypeDefinition collection( final Kind aKind, final AsnTypeDefinition aElementType )
+  {
+    if ( ( aKind != Kind.SEQUENCE_OF ) && ( aKind != Kind.SET_OF ) )
+    {
+      throw new IllegalArgumentException( "Invalid kind: " + aKind );
+    }
+    final Map<String, Long> empty = Collections.emptyMap();
+    return new AsnTypeDefinition( aKind, null, null, null, aElementType, empty );
+  }
+
+  /**
+   * Creates a new reference to another type assignment.
+   * 
+   * @param aName
+   *          the name of the referenced type, cannot be <code>null</code>.
+   * @return a new {@link AsnTypeDefinition}, never <code>null</code>.
+   */
+  public static AsnTypeDefinition reference( final String aName )
+  {
+    final Map<String, Long> empty = Collections.emptyMap();
+    return new AsnTypeDefinition( Kind.REFERENCE, null, aName, null, null, empty );
+  }
+
+  /**
+   * Returns the UNIVERSAL type of a built-in type definition.
+   * 
+   * @return the built-in type, or <code>null</code> if this is not a
+   *         {@link Kind#BUILTIN} definition.
+   */
+  public AsnType getBuiltinType()
+  {
+    return this.builtinType;
+  }
+
+  /**
+   * Returns the components of a SEQUENCE, SET or CHOICE.
+   * 
+   * @return the components, in definition order, or <code>null</code> if this
+   *         definition has no components.
+   */
+  public List<AsnComponent> getComponents()
+  {
+    return this.components;
+  }
+
+  /**
+   * Returns the element type of a SEQUENCE OF or SET OF.
+   * 
+   * @return the element type, or <code>null</code> if this definition is not a
+   *         collection.
+   */
+  public AsnTypeDefinition getElementType()
+  {
+    return this.elementType;
+  }
+
+  /**
+   * @return the kind of this type definition, never <code>null</code>.
+   */
+  public Kind getKind()
+  {
+    return this.kind;
+  }
+
+  /**
+   * Returns the named numbers of an INTEGER or ENUMERATED type, or the named
+   * bits of a BIT STRING type.
+   * 
+   * @return the named numbers, in definition order, never <code>null</code>.
+   */
+  public Map<String, Long> getNamedNumbers()
+  {
+    return this.namedNumbers;
+  }
+
+  /**
+   * Returns the name of the referenced type assignment.
+   * 
+   * @return a type name, or <code>null</code> if this is not a
+   *         {@link Kind#REFERENCE} definition.
+   */
+  public String getReference()
+  {
+    return this.reference;
+  }
+
+  /**
+   * Returns the SIZE constraint of this type.
+   * 
+   * @return the permitted size range, or <code>null</code> if unconstrained.
+   */
+  public AsnRange getSizeRange()
+  {
+    return this.sizeRange;
+  }
+
+  /**
+   * Returns the tag of this type.
+   * 
+   * @return the tag, or <code>null</code> if this type is not tagged.
+   */
+  public AsnTag getTag()
+  {
+    return this.tag;
+  }
+
+  /**
+   * Returns the value constraint of this type.
+   * 
+   * @return the permitted value range, or <code>null</code> if unconstrained.
+   */
+  public AsnRange getValueRange()
+  {
+    return this.valueRange;
+  }
+
+  /**
+   * Returns whether this SEQUENCE, SET or CHOICE has an extension marker, that
+   * is, whether its values can contain components unknown to this definition.
+   * 
+   * @return <code>true</code> if this type is extensible, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isExtensible()
+  {
+    return this.extensible;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder();
+    if ( this.tag != null )
+    {
+      sb.append( this.tag ).append( ' ' );
+    }
+    switch ( this.kind )
+    {
+      case BUILTIN:
+        sb.append( this.builtinType );
+        break;
+      case REFERENCE:
+        sb.append( this.reference );
+        break;
+      case SEQUENCE_OF:
+      case SET_OF:
+        sb.append( this.kind ).append( ' ' ).append( this.elementType );
+        break;
+      default:
+        sb.append( this.kind ).append( ' ' ).append( this.components );
+        break;
+    }
+    if ( this.valueRange != null )
+    {
+      sb.append( " (" ).append( this.valueRange ).append( ')' );
+    }
+    if ( this.sizeRange != null )
+    {
+      sb.append( " (SIZE(" ).append( this.sizeRange ).append( "))" );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @param aExtensible
+   *          <code>true</code> if this type has an extension marker,
+   *          <code>false</code> otherwise.
+   */
+  final void setExtensible( final boolean aExtensible )
+  {
+    this.extensible = aExtensible;
+  }
+
+  /**
+   * @param aSizeRange
+   *          the SIZE constraint to set, may be <code>null</code>.
+   */
+  final void setSizeRange( final AsnRange aSizeRange )
+  {
+    this.sizeRange = aSizeRange;
+  }
+
+  /**
+   * @param aTag
+   *          the tag to set, may be <code>null</code>.
+   */
+  final void setTag( final AsnTag aTag )
+  {
+    this.tag = aTag;
+  }
+
+  /**
+   * @param aValueRange
+   *          the value constraint to set, may be <code>null</code>.
+   */
+  final void setValueRange( final AsnRange aValueRange )
+  {
+    this.valueRange = aValueRange;
+  }
+}
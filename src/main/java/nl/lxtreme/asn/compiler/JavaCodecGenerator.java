@@ -0,0 +1,1736 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+import nl.lxtreme.asn.compiler.AsnTypeDefinition.Kind;
+
+
+/**
+ * Generates Java encoder/decoder classes for the type assignments of an
+ * {@link AsnModule}, using {@link nl.lxtreme.asn.ber.BerInputStream} and
+ * {@link nl.lxtreme.asn.ber.BerOutputStream} as runtime.
+ * <p>
+ * For every SEQUENCE, SET, CHOICE and SEQUENCE/SET OF assignment a class is
+ * generated with public fields for its components, a static
+ * <code>decode</code> method and an <code>encode</code> method. Constructed
+ * types defined inline in a component are generated as nested classes. Type
+ * assignments of built-in types are inlined where they are referenced; for
+ * INTEGER, ENUMERATED and BIT STRING assignments with named numbers, a class
+ * with constants is generated. Constraints are checked on both encoding and
+ * decoding.
+ * </p>
+ * <p>
+ * Tagged types are supported for all tagging modes, including automatic
+ * tagging. The identifiers of all tags are precomputed as constants of the
+ * generated class. The alternatives of a CHOICE and the components of a SET
+ * are recognized by their tag using a {@link nl.lxtreme.asn.ber.BerTagSwitch},
+ * so the components of a SET can be decoded in any order.
+ * </p>
+ */
+public class JavaCodecGenerator
+{
+  // INNER TYPES
+
+  /**
+   * Denotes how a value is tagged: by the explicit tags wrapped around it, and
+   * by the identifier of the value itself.
+   */
+  private static final class Encoding
+  {
+    // VARIABLES
+
+    /** The explicit tags, outermost first. */
+    final List<AsnIdentifier> wrappers = new ArrayList<AsnIdentifier>();
+    /** The identifier of the value, <code>null</code> for an untagged CHOICE. */
+    AsnIdentifier identifier;
+    /** Whether the identifier is replaced by an implicit tag. */
+    boolean tagged;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link Encoding} instance.
+     */
+    Encoding( final AsnIdentifier aIdentifier )
+    {
+      this.identifier = aIdentifier;
+    }
+
+    // METHODS
+
+    /**
+     * @return the identifier that comes first in the encoding, or
+     *         <code>null</code> for an untagged CHOICE.
+     */
+    AsnIdentifier getFirst()
+    {
+      return this.wrappers.isEmpty() ? this.identifier : this.wrappers.get( 0 );
+    }
+  }
+
+  // CONSTANTS
+
+  private static final Set<String> JAVA_KEYWORDS = new HashSet<String>( Arrays.asList( "abstract", "assert",
+      "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double",
+      "else", "enum", "extends", "false", "final", "finally", "float", "for", "goto", "if", "implements", "import",
+      "instanceof", "int", "interface", "long", "native", "new", "null", "package", "private", "protected", "public",
+      "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+      "transient", "true", "try", "void", "volatile", "while" ) );
+
+  // VARIABLES
+
+  private final String packageName;
+
+  private AsnModule module;
+  private Map<AsnTypeDefinition, String> nestedNames;
+  private Set<String> usedNames;
+  private Map<AsnIdentifier, String> tagConstants;
+  private Map<String, String> switchConstants;
+  private StringBuilder code;
+  private int constantsPosition;
+  private int indent;
+  private int varCounter;
+  private boolean usesBigInteger;
+  private boolean usesCheckEnd;
+  private boolean usesCheckPresent;
+  private boolean usesCheckRange;
+  private boolean usesCheckSize;
+  private boolean usesIsNext;
+  private boolean usesReadExplicit;
+  private boolean usesSkipExtensions;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link JavaCodecGenerator} instance.
+   * 
+   * @param aPackageName
+   *          the Java package to generate the classes in, use an empty string
+   *          for the default package; cannot be <code>null</code>.
+   */
+  public JavaCodecGenerator( final String aPackageName )
+  {
+    if ( aPackageName == null )
+    {
+      throw new IllegalArgumentException( "Package name cannot be null!" );
+    }
+    this.packageName = aPackageName;
+  }
+
+  // METHODS
+
+  /**
+   * Converts the given ASN.1 type reference into a Java class name.
+   * 
+   * @param aName
+   *          the ASN.1 name to convert, cannot be <code>null</code>.
+   * @return a Java class name, never <code>null</code>.
+   */
+  public static String toClassName( final String aName )
+  {
+    final String name = toFieldName( aName );
+    return Character.toUpperCase( name.charAt( 0 ) ) + name.substring( 1 );
+  }
+
+  /**
+   * Converts the given ASN.1 identifier into a Java field name.
+   * 
+   * @param aName
+   *          the ASN.1 name to convert, cannot be <code>null</code>.
+   * @return a Java field name, never <code>null</code>.
+   */
+  public static String toFieldName( final String aName )
+  {
+    final StringBuilder sb = new StringBuilder();
+    boolean upper = false;
+    for ( int i = 0; i < aName.length(); i++ )
+    {
+      final char c = aName.charAt( i );
+      if ( c == '-' )
+      {
+        upper = true;
+      }
+      else
+      {
+        sb.append( upper ? Character.toUpperCase( c ) : c );
+        upper = false;
+      }
+    }
+    final String result = sb.toString();
+    return JAVA_KEYWORDS.contains( result ) ? ( result + "_" ) : result;
+  }
+
+  /**
+   * @return <code>true</code> if the given identifiers denote the same tag,
+   *         regardless of whether they are constructed or not.
+   */
+  private static boolean isSameTag( final AsnIdentifier aFirst, final AsnIdentifier aSecond )
+  {
+    return ( aFirst.getClazz() == aSecond.getClazz() ) && ( aFirst.getType() == aSecond.getType() );
+  }
+
+  /**
+   * Converts the given ASN.1 identifier into a Java constant name.
+   * 
+   * @param aName
+   *          the ASN.1 name to convert, cannot be <code>null</code>.
+   * @return a Java constant name, never <code>null</code>.
+   */
+  private static String toConstantName( final String aName )
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < aName.length(); i++ )
+    {
+      final char c = aName.charAt( i );
+      if ( ( c == '-' ) || ( c == '_' ) )
+      {
+        sb.append( '_' );
+      }
+      else
+      {
+        if ( Character.isUpperCase( c ) && ( i > 0 ) && Character.isLowerCase( aName.charAt( i - 1 ) ) )
+        {
+          sb.append( '_' );
+        }
+        sb.append( Character.toUpperCase( c ) );
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns a Java literal for the given bound.
+   */
+  private static String toLiteral( final long aValue )
+  {
+    if ( aValue == Long.MIN_VALUE )
+    {
+      return "Long.MIN_VALUE";
+    }
+    if ( aValue == Long.MAX_VALUE )
+    {
+      return "Long.MAX_VALUE";
+    }
+    return aValue + "L";
+  }
+
+  /**
+   * Generates the Java source code for all type assignments of the given
+   * module.
+   * 
+   * @param aModule
+   *          the module to generate code for, cannot be <code>null</code>.
+   * @return a map with the generated sources, keyed on their (simple) class
+   *         name, never <code>null</code>.
+   * @throws AsnCompilerException
+   *           in case the module uses constructs that cannot be generated.
+   */
+  public Map<String, String> generate( final AsnModule aModule ) throws AsnCompilerException
+  {
+    this.module = aModule;
+
+    final Map<String, String> result = new LinkedHashMap<String, String>();
+    for ( Map.Entry<String, AsnTypeDefinition> entry : aModule.getAssignments().entrySet() )
+    {
+      final String className = toClassName( entry.getKey() );
+      final AsnTypeDefinition type = entry.getValue();
+
+      validate( type, entry.getKey() );
+
+      this.nestedNames = new IdentityHashMap<AsnTypeDefinition, String>();
+      this.usedNames = new HashSet<String>();
+      for ( String name : aModule.getAssignments().keySet() )
+      {
+        this.usedNames.add( toClassName( name ) );
+      }
+      this.tagConstants = new LinkedHashMap<AsnIdentifier, String>();
+      this.switchConstants = new LinkedHashMap<String, String>();
+      this.code = new StringBuilder();
+      this.constantsPosition = -1;
+      this.indent = 0;
+      this.varCounter = 0;
+      this.usesBigInteger = false;
+      this.usesCheckEnd = false;
+      this.usesCheckPresent = false;
+      this.usesCheckRange = false;
+      this.usesCheckSize = false;
+      this.usesIsNext = false;
+      this.usesReadExplicit = false;
+      this.usesSkipExtensions = false;
+
+      switch ( type.getKind() )
+      {
+        case SEQUENCE:
+        case SET:
+        case CHOICE:
+          generateConstructedClass( className, type, true /* aTopLevel */);
+          break;
+
+        case SEQUENCE_OF:
+        case SET_OF:
+          generateCollectionClass( className, type );
+          break;
+
+        case BUILTIN:
+          if ( type.getNamedNumbers().isEmpty() )
+          {
+            // Inlined at the place(s) where it is referenced...
+            continue;
+          }
+          generateConstantsClass( className, entry.getKey(), type );
+          break;
+
+        default:
+          // Plain type references are resolved where they are used...
+          continue;
+      }
+
+      if ( this.constantsPosition >= 0 )
+      {
+        this.code.insert( this.constantsPosition, createConstants() );
+      }
+      result.put( className, createHeader( entry.getKey() ) + this.code );
+    }
+
+    return result;
+  }
+
+  /**
+   * Applies the given tag to the given encoding, taking the default tagging of
+   * the module into account.
+   */
+  private void applyTag( final Encoding aEncoding, final AsnTag aTag ) throws AsnCompilerException
+  {
+    if ( aTag.getNumber() >= AsnType.LONG_FORM_TYPE.ordinal() )
+    {
+      throw new AsnCompilerException( "Tag numbers above 30 are not supported by the BER runtime: " + aTag + "!" );
+    }
+
+    AsnTagging mode = aTag.getMode();
+    if ( mode == null )
+    {
+      mode = ( this.module.getDefaultTagging() == AsnTagging.EXPLICIT ) ? AsnTagging.EXPLICIT : AsnTagging.IMPLICIT;
+    }
+
+    final AsnIdentifier constructed = AsnIdentifier.valueOf( aTag.getClazz(), true, aTag.getNumber() );
+    if ( ( mode == AsnTagging.EXPLICIT ) || ( aEncoding.getFirst() == null ) )
+    {
+      // An untagged CHOICE has no tag to replace, hence is always tagged
+      // explicitly...
+      aEncoding.wrappers.add( 0, constructed );
+    }
+    else if ( !aEncoding.wrappers.isEmpty() )
+    {
+      aEncoding.wrappers.set( 0, constructed );
+    }
+    else
+    {
+      aEncoding.identifier = AsnIdentifier.valueOf( aTag.getClazz(), aEncoding.identifier.isConstructed(),
+          aTag.getNumber() );
+      aEncoding.tagged = true;
+    }
+  }
+
+  /**
+   * Emits a closing brace and decreases the indentation level.
+   */
+  private void close()
+  {
+    this.indent--;
+    line( "}" );
+  }
+
+  /**
+   * Assigns names to all constructed types that are defined inline in the
+   * given type definition.
+   */
+  private void collectNestedTypes( final AsnTypeDefinition aType, final String aName ) throws AsnCompilerException
+  {
+    final AsnTypeDefinition type = resolve( aType );
+    switch ( type.getKind() )
+    {
+      case SEQUENCE:
+      case SET:
+      case CHOICE:
+        String name = aName;
+        for ( int i = 2; !this.usedNames.add( name ); i++ )
+        {
+          name = aName + i;
+        }
+        this.nestedNames.put( type, name );
+        break;
+
+      case SEQUENCE_OF:
+      case SET_OF:
+        collectNestedTypes( type.getElementType(), aName + "Element" );
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Creates the declarations of the precomputed identifiers and tag switches
+   * used by a generated class.
+   */
+  private String createConstants()
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( Map.Entry<AsnIdentifier, String> entry : this.tagConstants.entrySet() )
+    {
+      final AsnIdentifier tag = entry.getKey();
+      sb.append( "  private static final AsnIdentifier " ).append( entry.getValue() )
+          .append( " = AsnIdentifier.valueOf( AsnClass." ).append( tag.getClazz().name() ).append( ", " )
+          .append( tag.isConstructed() ).append( ", " ).append( tag.getType().ordinal() ).append( " );\n" );
+    }
+    for ( Map.Entry<String, String> entry : this.switchConstants.entrySet() )
+    {
+      sb.append( "  private static final BerTagSwitch " ).append( entry.getKey() ).append( " = " )
+          .append( entry.getValue() ).append( ";\n" );
+    }
+    if ( sb.length() > 0 )
+    {
+      sb.append( '\n' );
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Creates the file header, package declaration and imports of a generated
+   * class.
+   */
+  private String createHeader( final String aTypeName )
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append( "/*\n" );
+    sb.append( " * Generated by the LibBER ASN.1 compiler from " ).append( this.module.getName() ).append( '.' )
+        .append( aTypeName ).append( "; do not edit!\n" );
+    sb.append( " */\n" );
+    if ( this.packageName.length() > 0 )
+    {
+      sb.append( "package " ).append( this.packageName ).append( ";\n" );
+    }
+    sb.append( "\n\n" );
+    sb.append( "import java.io.*;\n" );
+    if ( this.usesBigInteger )
+    {
+      sb.append( "import java.math.*;\n" );
+    }
+    sb.append( "import java.util.*;\n" );
+    sb.append( "\n" );
+    sb.append( "import nl.lxtreme.asn.*;\n" );
+    sb.append( "import nl.lxtreme.asn.ber.*;\n" );
+    sb.append( "\n\n" );
+    return sb.toString();
+  }
+
+  /**
+   * Emits the statement to verify that nothing follows the content decoded
+   * from the given input stream, or, for an extensible type, to skip the
+   * extension additions that follow it.
+   */
+  private void emitCheckEnd( final String aInput, final String aName, final boolean aExtensible )
+  {
+    if ( aExtensible )
+    {
+      this.usesSkipExtensions = true;
+      line( "skipExtensions( " + aInput + " );" );
+    }
+    else
+    {
+      this.usesCheckEnd = true;
+      line( "checkEnd( " + aInput + ", \"" + aName + "\" );" );
+    }
+  }
+
+  /**
+   * Emits the constraint checks for a value of the given type.
+   */
+  private void emitChecks( final AsnTypeDefinition aType, final String aExpr, final String aName )
+      throws AsnCompilerException
+  {
+    final AsnRange valueRange = getValueRange( aType );
+    if ( valueRange != null )
+    {
+      this.usesCheckRange = true;
+      line( "checkRange( " + aExpr + ", " + toLiteral( valueRange.getLowerBound() ) + ", "
+          + toLiteral( valueRange.getUpperBound() ) + ", \"" + aName + "\" );" );
+    }
+
+    final AsnRange sizeRange = getSizeRange( aType );
+    if ( sizeRange != null )
+    {
+      final AsnTypeDefinition type = resolve( aType );
+
+      final String size;
+      if ( ( type.getKind() == Kind.SEQUENCE_OF ) || ( type.getKind() == Kind.SET_OF ) )
+      {
+        size = aExpr + ".size()";
+      }
+      else if ( type.getBuiltinType() == AsnType.BIT_STRING )
+      {
+        size = aExpr + ".bitLength()";
+      }
+      else if ( "String".equals( getJavaType( type, false ) ) )
+      {
+        size = aExpr + ".length()";
+      }
+      else
+      {
+        size = aExpr + ".length";
+      }
+
+      this.usesCheckSize = true;
+      line( "checkSize( " + size + ", " + toLiteral( sizeRange.getLowerBound() ) + ", "
+          + toLiteral( sizeRange.getUpperBound() ) + ", \"" + aName + "\" );" );
+    }
+  }
+
+  /**
+   * Emits the statements to decode the alternatives of a CHOICE, whose
+   * identifier is looked up in a precomputed tag switch.
+   */
+  private void emitChoiceDecode( final String aClassName, final List<AsnComponent> aComponents,
+      final String aInput ) throws AsnCompilerException
+  {
+    final List<AsnIdentifier> tags = new ArrayList<AsnIdentifier>();
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      tags.add( getComponentEncoding( aComponents, i ).getFirst() );
+    }
+
+    line( "final AsnIdentifier id = " + aInput + ".peekIdentifier();" );
+    line( "if ( id == null )" );
+    open();
+    line( "return null;" );
+    close();
+    line( "final " + aClassName + " result = new " + aClassName + "();" );
+    line( "switch ( " + getSwitchConstant( aClassName, tags ) + ".indexOf( id ) )" );
+    open();
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+      final String field = "result." + toFieldName( component.getName() );
+
+      line( "case " + i + ":" );
+      open();
+      final String value = emitDecode( component.getType(), getComponentEncoding( aComponents, i ), aInput );
+      line( field + " = " + value + ";" );
+      emitChecks( component.getType(), field, component.getName() );
+      line( "break;" );
+      close();
+    }
+    line( "default:" );
+    open();
+    line( "throw new IOException( \"Unexpected tag for " + aClassName + ": \" + id );" );
+    close();
+    close();
+  }
+
+  /**
+   * Emits the statements to encode the alternative of a CHOICE that is
+   * present.
+   */
+  private void emitChoiceEncode( final String aClassName, final List<AsnComponent> aComponents,
+      final String aOutput ) throws AsnCompilerException
+  {
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+      final String field = "this." + toFieldName( component.getName() );
+
+      line( ( ( i == 0 ) ? "if" : "else if" ) + " ( " + field + " != null )" );
+      open();
+      emitChecks( component.getType(), field, component.getName() );
+      emitEncode( component.getType(), getComponentEncoding( aComponents, i ), field, aOutput );
+      close();
+    }
+    if ( !aComponents.isEmpty() )
+    {
+      line( "else" );
+    }
+    open();
+    line( "throw new IOException( \"No alternative of " + aClassName + " present!\" );" );
+    close();
+  }
+
+  /**
+   * Emits the statements to encode the components of a SEQUENCE or SET, in
+   * the order in which they are defined.
+   */
+  private void emitComponentsEncode( final List<AsnComponent> aComponents, final String aOutput )
+      throws AsnCompilerException
+  {
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+      final Encoding encoding = getComponentEncoding( aComponents, i );
+      final String field = "this." + toFieldName( component.getName() );
+      if ( isMandatoryNull( component ) )
+      {
+        emitEncode( component.getType(), encoding, field, aOutput );
+        continue;
+      }
+
+      final boolean primitive = !component.isOptional() && isPrimitive( component.getType() );
+      if ( component.isOptional() )
+      {
+        line( "if ( " + field + " != null )" );
+        open();
+      }
+      else if ( !primitive )
+      {
+        this.usesCheckPresent = true;
+        line( "checkPresent( " + field + ", \"" + component.getName() + "\" );" );
+      }
+      emitChecks( component.getType(), field, component.getName() );
+      emitEncode( component.getType(), encoding, field, aOutput );
+      if ( component.isOptional() )
+      {
+        close();
+      }
+    }
+  }
+
+  /**
+   * Emits the statements to decode a value of the given type from the given
+   * input stream.
+   * 
+   * @return the expression (variable) holding the decoded value, which is
+   *         <code>null</code> if the end of the input stream was reached.
+   */
+  private String emitDecode( final AsnTypeDefinition aType, final Encoding aEncoding, final String aInput )
+      throws AsnCompilerException
+  {
+    final AsnTypeDefinition type = resolve( aType );
+    final String javaType = getJavaType( type, true /* aBoxed */);
+    final String var = "v" + ( ++this.varCounter );
+
+    String input = aInput;
+    final List<String> wrapped = new ArrayList<String>();
+    for ( AsnIdentifier wrapper : aEncoding.wrappers )
+    {
+      final String next = "v" + ( ++this.varCounter ) + "Input";
+      this.usesReadExplicit = true;
+      line( "final BerInputStream " + next + " = readExplicit( " + input + ", " + getConstant( wrapper ) + " );" );
+      wrapped.add( next );
+      input = next;
+    }
+    final String tag = aEncoding.tagged ? getConstant( aEncoding.identifier ) : null;
+
+    final String result;
+    switch ( type.getKind() )
+    {
+      case REFERENCE:
+      case SEQUENCE:
+      case SET:
+      case CHOICE:
+        line( "final " + javaType + " " + var + " = " + javaType + ".decode( " + input
+            + ( ( tag == null ) ? "" : ( ", " + tag ) ) + " );" );
+        result = var;
+        break;
+
+      case SEQUENCE_OF:
+      case SET_OF:
+        final AsnTypeDefinition elementType = type.getElementType();
+        final String elementJavaType = getJavaType( elementType, true /* aBoxed */);
+        final String elements = var + "Input";
+
+        final String read;
+        if ( tag != null )
+        {
+          read = ".readConstructedAsStream( " + tag + " );";
+        }
+        else
+        {
+          read = ( type.getKind() == Kind.SET_OF ) ? ".readSetAsStream();" : ".readSequenceAsStream();";
+        }
+
+        line( javaType + " " + var + " = null;" );
+        line( "final BerInputStream " + elements + " = " + input + read );
+        line( "if ( " + elements + " != null )" );
+        open();
+        line( var + " = new ArrayList<" + elementJavaType + ">();" );
+        line( "while ( true )" );
+        open();
+        final String element = emitDecode( elementType, getEncoding( elementType, null ), elements );
+        line( "if ( " + element + " == null )" );
+        open();
+        line( "break;" );
+        close();
+        emitChecks( elementType, element, "element" );
+        line( var + ".add( " + element + " );" );
+        close();
+        close();
+        result = var;
+        break;
+
+      default:
+        if ( type.getBuiltinType() == AsnType.NULL )
+        {
+          // A NULL has no value to represent...
+          line( input + ".readNull(" + ( ( tag == null ) ? "" : ( " " + tag + " " ) ) + ");" );
+          result = "Boolean.TRUE";
+          break;
+        }
+        line( "final " + javaType + " " + var + " = " + input + ".read" + getAccessorSuffix( type ) + "("
+            + ( ( tag == null ) ? "" : ( " " + tag + " " ) ) + ");" );
+        result = var;
+        break;
+    }
+
+    // An explicit tag holds a single value, so nothing should follow it...
+    for ( int i = wrapped.size() - 1; i >= 0; i-- )
+    {
+      final AsnIdentifier wrapper = aEncoding.wrappers.get( i );
+      emitCheckEnd( wrapped.get( i ), new AsnTag( wrapper.getClazz(), wrapper.getType().ordinal(), null ).toString(),
+          false );
+    }
+    return result;
+  }
+
+  /**
+   * Emits the statements to encode the value of the given expression to the
+   * given output stream.
+   */
+  private void emitEncode( final AsnTypeDefinition aType, final Encoding aEncoding, final String aExpr,
+      final String aOutput ) throws AsnCompilerException
+  {
+    final AsnTypeDefinition type = resolve( aType );
+
+    String output = aOutput;
+    final List<String> wrapped = new ArrayList<String>();
+    for ( AsnIdentifier wrapper : aEncoding.wrappers )
+    {
+      final String next = "v" + ( ++this.varCounter ) + "Output";
+      line( "final BerOutputStream " + next + " = " + output + ".writeConstructedAsStream( "
+          + getConstant( wrapper ) + " );" );
+      wrapped.add( next );
+      output = next;
+    }
+    final String tag = aEncoding.tagged ? getConstant( aEncoding.identifier ) : null;
+
+    switch ( type.getKind() )
+    {
+      case REFERENCE:
+      case SEQUENCE:
+      case SET:
+      case CHOICE:
+        line( aExpr + ".encode( " + output + ( ( tag == null ) ? "" : ( ", " + tag ) ) + " );" );
+        break;
+
+      case SEQUENCE_OF:
+      case SET_OF:
+        final AsnTypeDefinition elementType = type.getElementType();
+        final String var = "v" + ( ++this.varCounter );
+        final String elements = var + "Output";
+
+        final String write;
+        if ( tag != null )
+        {
+          write = ".writeConstructedAsStream( " + tag + " );";
+        }
+        else
+        {
+          write = ( type.getKind() == Kind.SET_OF ) ? ".writeSetAsStream();" : ".writeSequenceAsStream();";
+        }
+
+        line( "final BerOutputStream " + elements + " = " + output + write );
+        line( "for ( final " + getJavaType( elementType, true /* aBoxed */) + " " + var + " : " + aExpr + " )" );
+        open();
+        this.usesCheckPresent = true;
+        line( "checkPresent( " + var + ", \"element\" );" );
+        emitChecks( elementType, var, "element" );
+        emitEncode( elementType, getEncoding( elementType, null ), var, elements );
+        close();
+        line( elements + ".close();" );
+        break;
+
+      default:
+        if ( type.getBuiltinType() == AsnType.NULL )
+        {
+          line( output + ".writeNull(" + ( ( tag == null ) ? "" : ( " " + tag + " " ) ) + ");" );
+        }
+        else
+        {
+          line( output + ".write" + getAccessorSuffix( type ) + "( " + ( ( tag == null ) ? "" : ( tag + ", " ) )
+              + aExpr + " );" );
+        }
+        break;
+    }
+
+    for ( int i = wrapped.size() - 1; i >= 0; i-- )
+    {
+      line( wrapped.get( i ) + ".close();" );
+    }
+  }
+
+  /**
+   * Emits the statements to decode the components of a SEQUENCE, in the order
+   * in which they are defined.
+   */
+  private void emitSequenceDecode( final String aClassName, final List<AsnComponent> aComponents,
+      final String aInput ) throws AsnCompilerException
+  {
+    line( "final " + aClassName + " result = new " + aClassName + "();" );
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+      final Encoding encoding = getComponentEncoding( aComponents, i );
+      final String field = "result." + toFieldName( component.getName() );
+      if ( isMandatoryNull( component ) )
+      {
+        emitDecode( component.getType(), encoding, aInput );
+        continue;
+      }
+
+      if ( component.isOptional() )
+      {
+        // Only decode it when its tag is next...
+        this.usesIsNext = true;
+        line( "if ( isNext( " + aInput + ", " + getConstant( encoding.getFirst() ) + " ) )" );
+        open();
+        final String value = emitDecode( component.getType(), encoding, aInput );
+        line( field + " = " + value + ";" );
+        if ( hasChecks( component.getType() ) )
+        {
+          line( "if ( " + field + " != null )" );
+          open();
+          emitChecks( component.getType(), field, component.getName() );
+          close();
+        }
+        close();
+      }
+      else
+      {
+        final String value = emitDecode( component.getType(), encoding, aInput );
+        this.usesCheckPresent = true;
+        line( field + " = checkPresent( " + value + ", \"" + component.getName() + "\" );" );
+        emitChecks( component.getType(), field, component.getName() );
+      }
+    }
+  }
+
+  /**
+   * Emits the statements to decode the components of a SET, in any order,
+   * looking up the identifier of each component in a precomputed tag switch.
+   * Unknown components are skipped if the SET is extensible.
+   */
+  private void emitSetDecode( final String aClassName, final List<AsnComponent> aComponents,
+      final boolean aExtensible, final String aInput ) throws AsnCompilerException
+  {
+    final List<AsnIdentifier> tags = new ArrayList<AsnIdentifier>();
+    final List<String> values = new ArrayList<String>();
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+      final String value = "v" + ( ++this.varCounter );
+      line( getJavaType( component.getType(), true /* aBoxed */) + " " + value + " = null;" );
+      tags.add( getComponentEncoding( aComponents, i ).getFirst() );
+      values.add( value );
+    }
+
+    line( "for ( AsnIdentifier id = " + aInput + ".peekIdentifier(); id != null; id = " + aInput
+        + ".peekIdentifier() )" );
+    open();
+    line( "switch ( " + getSwitchConstant( aClassName, tags ) + ".indexOf( id ) )" );
+    open();
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+
+      line( "case " + i + ":" );
+      open();
+      line( "if ( " + values.get( i ) + " != null )" );
+      open();
+      line( "throw new IOException( \"Duplicate component: " + component.getName() + "\" );" );
+      close();
+      final String value = emitDecode( component.getType(), getComponentEncoding( aComponents, i ), aInput );
+      line( values.get( i ) + " = " + value + ";" );
+      line( "break;" );
+      close();
+    }
+    line( "default:" );
+    open();
+    if ( aExtensible )
+    {
+      line( "// An extension addition unknown to this definition..." );
+      line( aInput + ".readAny();" );
+      line( "break;" );
+    }
+    else
+    {
+      line( "throw new IOException( \"Unexpected tag in " + aClassName + ": \" + id );" );
+    }
+    close();
+    close();
+    close();
+
+    line( "final " + aClassName + " result = new " + aClassName + "();" );
+    for ( int i = 0; i < aComponents.size(); i++ )
+    {
+      final AsnComponent component = aComponents.get( i );
+      final String field = "result." + toFieldName( component.getName() );
+      final String value = values.get( i );
+      if ( isMandatoryNull( component ) )
+      {
+        this.usesCheckPresent = true;
+        line( "checkPresent( " + value + ", \"" + component.getName() + "\" );" );
+      }
+      else if ( component.isOptional() )
+      {
+        line( field + " = " + value + ";" );
+        if ( hasChecks( component.getType() ) )
+        {
+          line( "if ( " + field + " != null )" );
+          open();
+          emitChecks( component.getType(), field, component.getName() );
+          close();
+        }
+      }
+      else
+      {
+        this.usesCheckPresent = true;
+        line( field + " = checkPresent( " + value + ", \"" + component.getName() + "\" );" );
+        emitChecks( component.getType(), field, component.getName() );
+      }
+    }
+  }
+
+  /**
+   * Generates a wrapper class for a SEQUENCE OF or SET OF assignment.
+   */
+  private void generateCollectionClass( final String aClassName, final AsnTypeDefinition aType )
+      throws AsnCompilerException
+  {
+    collectNestedTypes( aType.getElementType(), aClassName + "Element" );
+
+    final String javaType = getJavaType( aType, false );
+    final String elementJavaType = getJavaType( aType.getElementType(), true /* aBoxed */);
+    final Encoding encoding = getEncoding( aType, null );
+
+    line( "/**" );
+    line( " * Encoder/decoder for the ASN.1 type <code>" + aClassName + "</code>." );
+    line( " */" );
+    line( "public class " + aClassName );
+    open();
+    this.constantsPosition = this.code.length();
+    line( "public " + javaType + " elements = new ArrayList<" + elementJavaType + ">();" );
+    line( "" );
+
+    line( "/**" );
+    line( " * Decodes a value of type " + aClassName + " from the given input stream." );
+    line( " * " );
+    line( " * @return the decoded value, or <code>null</code> if the end of the stream is reached." );
+    line( " */" );
+    line( "public static " + aClassName + " decode( final BerInputStream aInput ) throws IOException" );
+    open();
+    final String value = emitDecode( aType, encoding, "aInput" );
+    line( "if ( " + value + " == null )" );
+    open();
+    line( "return null;" );
+    close();
+    emitChecks( aType, value, "elements" );
+    line( "final " + aClassName + " result = new " + aClassName + "();" );
+    line( "result.elements = " + value + ";" );
+    line( "return result;" );
+    close();
+    line( "" );
+
+    line( "/**" );
+    line( " * Encodes this value to the given output stream." );
+    line( " */" );
+    line( "public void encode( final BerOutputStream aOutput ) throws IOException" );
+    open();
+    this.usesCheckPresent = true;
+    line( "checkPresent( this.elements, \"elements\" );" );
+    emitChecks( aType, "this.elements", "elements" );
+    emitEncode( aType, encoding, "this.elements", "aOutput" );
+    close();
+
+    generateNestedClasses( aType.getElementType() );
+    generateHelpers();
+    close();
+  }
+
+  /**
+   * Generates a class with constants for the named numbers of a built-in type.
+   */
+  private void generateConstantsClass( final String aClassName, final String aTypeName, final AsnTypeDefinition aType )
+  {
+    line( "/**" );
+    line( " * Constants for the named " + ( aType.getBuiltinType() == AsnType.BIT_STRING ? "bits" : "numbers" )
+        + " of the ASN.1 type <code>" + aTypeName + "</code>." );
+    line( " */" );
+    line( "public final class " + aClassName );
+    open();
+    for ( Map.Entry<String, Long> entry : aType.getNamedNumbers().entrySet() )
+    {
+      line( "public static final int " + toConstantName( entry.getKey() ) + " = " + entry.getValue() + ";" );
+    }
+    line( "" );
+    line( "private " + aClassName + "()" );
+    open();
+    line( "// Not used." );
+    close();
+    close();
+  }
+
+  /**
+   * Generates a (nested) class for a SEQUENCE, SET or CHOICE type.
+   */
+  private void generateConstructedClass( final String aClassName, final AsnTypeDefinition aType,
+      final boolean aTopLevel ) throws AsnCompilerException
+  {
+    final List<AsnComponent> components = aType.getComponents();
+    final Kind kind = aType.getKind();
+    final boolean choice = ( kind == Kind.CHOICE );
+
+    // The tags of a nested type are handled where it is used...
+    final Encoding encoding = getClassEncoding( aType, aTopLevel );
+    final AsnIdentifier outer = encoding.getFirst();
+
+    // The constructed values surrounding the components, outermost first...
+    final List<AsnIdentifier> layers = new ArrayList<AsnIdentifier>( encoding.wrappers );
+    if ( !choice )
+    {
+      layers.add( encoding.identifier );
+    }
+
+    if ( aTopLevel )
+    {
+      this.nestedNames.put( aType, aClassName );
+    }
+    for ( AsnComponent component : components )
+    {
+      collectNestedTypes( component.getType(), toClassName( component.getName() ) );
+    }
+
+    line( "/**" );
+    line( " * Encoder/decoder for the ASN.1 " + kind + " type <code>" + aClassName + "</code>." );
+    line( " */" );
+    line( "public " + ( aTopLevel ? "" : "static " ) + "class " + aClassName );
+    open();
+    if ( aTopLevel )
+    {
+      this.constantsPosition = this.code.length();
+    }
+
+    // Constants for inline named numbers...
+    boolean hasConstants = false;
+    for ( AsnComponent component : components )
+    {
+      final AsnTypeDefinition type = component.getType();
+      if ( type.getKind() != Kind.BUILTIN )
+      {
+        continue;
+      }
+      for ( Map.Entry<String, Long> entry : type.getNamedNumbers().entrySet() )
+      {
+        line( "public static final int " + toConstantName( component.getName() + "-" + entry.getKey() ) + " = "
+            + entry.getValue() + ";" );
+        hasConstants = true;
+      }
+    }
+    if ( hasConstants )
+    {
+      line( "" );
+    }
+
+    // Fields; only one alternative of a CHOICE is present...
+    for ( AsnComponent component : components )
+    {
+      final AsnTypeDefinition type = resolve( component.getType() );
+      if ( isMandatoryNull( component ) )
+      {
+        continue;
+      }
+      final boolean optional = component.isOptional() || choice;
+      final String javaType = getJavaType( type, optional );
+      final boolean collection = ( type.getKind() == Kind.SEQUENCE_OF ) || ( type.getKind() == Kind.SET_OF );
+      if ( collection && !optional )
+      {
+        line( "public " + javaType + " " + toFieldName( component.getName() ) + " = new ArrayList<"
+            + getJavaType( type.getElementType(), true /* aBoxed */) + ">();" );
+      }
+      else
+      {
+        line( "public " + javaType + " " + toFieldName( component.getName() ) + ";" );
+      }
+    }
+    line( "" );
+
+    // Decoder...
+    line( "/**" );
+    line( " * Decodes a value of type " + aClassName + " from the given input stream." );
+    line( " * " );
+    line( " * @return the decoded value, or <code>null</code> if the end of the stream is reached." );
+    line( " */" );
+    line( "public static " + aClassName + " decode( final BerInputStream aInput ) throws IOException" );
+    open();
+    String input = "aInput";
+    final List<String> inputs = new ArrayList<String>();
+    if ( outer != null )
+    {
+      line( "return decode( aInput, " + getConstant( outer ) + " );" );
+      close();
+      line( "" );
+
+      line( "/**" );
+      line( " * Decodes a value of type " + aClassName + ", tagged with the given tag instead of its own tag, "
+          + "from the given input stream." );
+      line( " * " );
+      line( " * @return the decoded value, or <code>null</code> if the end of the stream is reached." );
+      line( " */" );
+      line( "public static " + aClassName + " decode( final BerInputStream aInput, final AsnIdentifier aTag ) "
+          + "throws IOException" );
+      open();
+      for ( int i = 0; i < layers.size(); i++ )
+      {
+        final String next = ( i < ( layers.size() - 1 ) ) ? ( "input" + ( i + 1 ) ) : "input";
+        if ( i == 0 )
+        {
+          line( "final BerInputStream " + next + " = aInput.readConstructedAsStream( aTag );" );
+          line( "if ( " + next + " == null )" );
+          open();
+          line( "return null;" );
+          close();
+        }
+        else
+        {
+          this.usesCheckPresent = true;
+          line( "final BerInputStream " + next + " = checkPresent( " + input + ".readConstructedAsStream( "
+              + getConstant( layers.get( i ) ) + " ), \"" + aClassName + "\" );" );
+        }
+        inputs.add( next );
+        input = next;
+      }
+    }
+    switch ( kind )
+    {
+      case CHOICE:
+        emitChoiceDecode( aClassName, components, input );
+        break;
+
+      case SET:
+        emitSetDecode( aClassName, components, aType.isExtensible(), input );
+        break;
+
+      default:
+        emitSequenceDecode( aClassName, components, input );
+        break;
+    }
+    // Check the end of the components, and of the explicit tags around them;
+    // the components of a SET are already read up to their end...
+    for ( int i = inputs.size() - 1; i >= 0; i-- )
+    {
+      final boolean content = !choice && ( i == ( inputs.size() - 1 ) );
+      if ( !content || ( kind != Kind.SET ) )
+      {
+        emitCheckEnd( inputs.get( i ), aClassName, content && aType.isExtensible() );
+      }
+    }
+    line( "return result;" );
+    close();
+    line( "" );
+
+    // Encoder...
+    line( "/**" );
+    line( " * Encodes this value to the given output stream." );
+    line( " */" );
+    line( "public void encode( final BerOutputStream aOutput ) throws IOException" );
+    open();
+    String output = "aOutput";
+    final List<String> outputs = new ArrayList<String>();
+    if ( outer != null )
+    {
+      line( "encode( aOutput, " + getConstant( outer ) + " );" );
+      close();
+      line( "" );
+
+      line( "/**" );
+      line( " * Encodes this value, tagged with the given tag instead of its own tag, to the given output stream." );
+      line( " */" );
+      line( "public void encode( final BerOutputStream aOutput, final AsnIdentifier aTag ) throws IOException" );
+      open();
+      for ( int i = 0; i < layers.size(); i++ )
+      {
+        final String next = ( i < ( layers.size() - 1 ) ) ? ( "output" + ( i + 1 ) ) : "output";
+        line( "final BerOutputStream " + next + " = " + output + ".writeConstructedAsStream( "
+            + ( ( i == 0 ) ? "aTag" : getConstant( layers.get( i ) ) ) + " );" );
+        outputs.add( next );
+        output = next;
+      }
+    }
+    if ( choice )
+    {
+      emitChoiceEncode( aClassName, components, output );
+    }
+    else
+    {
+      emitComponentsEncode( components, output );
+    }
+    for ( int i = outputs.size() - 1; i >= 0; i-- )
+    {
+      line( outputs.get( i ) + ".close();" );
+    }
+    close();
+
+    for ( AsnComponent component : components )
+    {
+      generateNestedClasses( component.getType() );
+    }
+    if ( aTopLevel )
+    {
+      generateHelpers();
+    }
+    close();
+  }
+
+  /**
+   * Generates the private helper methods used by the generated code.
+   */
+  private void generateHelpers()
+  {
+    if ( this.usesCheckEnd )
+    {
+      line( "" );
+      line( "private static void checkEnd( final BerInputStream aInput, final String aName ) throws IOException" );
+      open();
+      line( "final AsnIdentifier id = aInput.peekIdentifier();" );
+      line( "if ( id != null )" );
+      open();
+      line( "throw new IOException( \"Unexpected content at the end of \" + aName + \": \" + id );" );
+      close();
+      close();
+    }
+    if ( this.usesCheckPresent )
+    {
+      line( "" );
+      line( "private static <T> T checkPresent( final T aValue, final String aName ) throws IOException" );
+      open();
+      line( "if ( aValue == null )" );
+      open();
+      line( "throw new IOException( \"Missing mandatory value: \" + aName );" );
+      close();
+      line( "return aValue;" );
+      close();
+    }
+    if ( this.usesCheckRange )
+    {
+      line( "" );
+      line( "private static void checkRange( final long aValue, final long aLower, final long aUpper, final String aName ) throws IOException" );
+      open();
+      line( "if ( ( aValue < aLower ) || ( aValue > aUpper ) )" );
+      open();
+      line( "throw new IOException( \"Value of \" + aName + \" out of range: \" + aValue );" );
+      close();
+      close();
+    }
+    if ( this.usesCheckSize )
+    {
+      line( "" );
+      line( "private static void checkSize( final int aSize, final long aLower, final long aUpper, final String aName ) throws IOException" );
+      open();
+      line( "if ( ( aSize < aLower ) || ( aSize > aUpper ) )" );
+      open();
+      line( "throw new IOException( \"Size of \" + aName + \" out of range: \" + aSize );" );
+      close();
+      close();
+    }
+    if ( this.usesIsNext )
+    {
+      line( "" );
+      line( "private static boolean isNext( final BerInputStream aInput, final AsnIdentifier aTag ) throws IOException" );
+      open();
+      line( "final AsnIdentifier id = aInput.peekIdentifier();" );
+      line( "return ( id != null ) && ( id.getClazz() == aTag.getClazz() ) && ( id.getType() == aTag.getType() );" );
+      close();
+    }
+    if ( this.usesReadExplicit )
+    {
+      line( "" );
+      line( "private static BerInputStream readExplicit( final BerInputStream aInput, final AsnIdentifier aTag ) throws IOException" );
+      open();
+      line( "final BerInputStream result = aInput.readConstructedAsStream( aTag );" );
+      line( "// At the end of the stream, the tagged value is read as null..." );
+      line( "return ( result == null ) ? new BerInputStream( new ByteArrayInputStream( new byte[0] ) ) : result;" );
+      close();
+    }
+    if ( this.usesSkipExtensions )
+    {
+      line( "" );
+      line( "private static void skipExtensions( final BerInputStream aInput ) throws IOException" );
+      open();
+      line( "// Skip the extension additions unknown to this definition..." );
+      line( "while ( aInput.readAny() != null )" );
+      open();
+      line( "// Nop" );
+      close();
+      close();
+    }
+  }
+
+  /**
+   * Generates the nested classes for the constructed types defined inline in
+   * the given type.
+   */
+  private void generateNestedClasses( final AsnTypeDefinition aType ) throws AsnCompilerException
+  {
+    final AsnTypeDefinition type = resolve( aType );
+    switch ( type.getKind() )
+    {
+      case SEQUENCE:
+      case SET:
+      case CHOICE:
+        line( "" );
+        generateConstructedClass( this.nestedNames.get( type ), type, false /* aTopLevel */);
+        break;
+
+      case SEQUENCE_OF:
+      case SET_OF:
+        generateNestedClasses( type.getElementType() );
+        break;
+
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Returns the name suffix of the read/write methods for the given built-in
+   * type, e.g., <code>Int</code> for <code>readInt</code> and
+   * <code>writeInt</code>.
+   */
+  private String getAccessorSuffix( final AsnTypeDefinition aType ) throws AsnCompilerException
+  {
+    switch ( aType.getBuiltinType() )
+    {
+      case BOOLEAN:
+        return "Boolean";
+      case INTEGER:
+        return "Int";
+      case ENUMERATED:
+        return "EnumeratedValue";
+      case REAL:
+        return "Real";
+      case OCTET_STRING:
+        return "OctetString";
+      case BIT_STRING:
+        return "BitString";
+      case OBJECT_ID:
+        return "ObjectIdentifier";
+      case RELATIVE_OID:
+        return "RelativeObjectIdentifier";
+      case UTF8_STRING:
+        return "UTF8String";
+      case PRINTABLE_STRING:
+        return "PrintableString";
+      case IA5_STRING:
+        return "IA5String";
+      case UTC_TIME:
+        return "UtcTime";
+      case GENERALIZED_TIME:
+        return "GeneralizedTime";
+      default:
+        throw new AsnCompilerException( "Type not supported by the BER runtime: " + aType.getBuiltinType() );
+    }
+  }
+
+  /**
+   * Returns the encoding of a SEQUENCE, SET or CHOICE class itself; only the
+   * class of a type assignment handles the tag of its type.
+   */
+  private Encoding getClassEncoding( final AsnTypeDefinition aType, final boolean aTopLevel )
+      throws AsnCompilerException
+  {
+    final Encoding result = new Encoding( getOwnIdentifier( aType ) );
+    if ( aTopLevel && ( aType.getTag() != null ) )
+    {
+      applyTag( result, aType.getTag() );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the encoding of the component at the given index, which is tagged
+   * automatically if the module uses automatic tagging and none of the
+   * components is tagged.
+   */
+  private Encoding getComponentEncoding( final List<AsnComponent> aComponents, final int aIndex )
+      throws AsnCompilerException
+  {
+    boolean automatic = ( this.module.getDefaultTagging() == AsnTagging.AUTOMATIC );
+    for ( AsnComponent component : aComponents )
+    {
+      automatic &= ( component.getType().getTag() == null );
+    }
+    final AsnTag tag = automatic ? new AsnTag( AsnClass.CONTEXT_SPECIFIC, aIndex, null ) : null;
+    return getEncoding( aComponents.get( aIndex ).getType(), tag );
+  }
+
+  /**
+   * Returns the name of the constant holding the given identifier, declaring
+   * it if needed.
+   */
+  private String getConstant( final AsnIdentifier aTag )
+  {
+    String name = this.tagConstants.get( aTag );
+    if ( name == null )
+    {
+      final String tag = ( aTag.getClazz() == AsnClass.UNIVERSAL ) ? aTag.getType().name() : ( aTag.getClazz()
+          .name() + "_" + aTag.getType().ordinal() );
+      name = "TAG_" + tag + ( aTag.isConstructed() ? "_CONSTRUCTED" : "" );
+      this.tagConstants.put( aTag, name );
+    }
+    return name;
+  }
+
+  /**
+   * Returns the encoding of the given type, by applying all tags found until
+   * either a built-in type, an inline type or a generated class is reached.
+   * 
+   * @param aTag
+   *          the automatic tag of a component, or <code>null</code>.
+   */
+  private Encoding getEncoding( final AsnTypeDefinition aType, final AsnTag aTag ) throws AsnCompilerException
+  {
+    final List<AsnTag> tags = new ArrayList<AsnTag>();
+    if ( aTag != null )
+    {
+      tags.add( aTag );
+    }
+
+    AsnTypeDefinition type = aType;
+    for ( int i = 0;; i++ )
+    {
+      if ( type.getTag() != null )
+      {
+        tags.add( type.getTag() );
+      }
+      if ( type.getKind() != Kind.REFERENCE )
+      {
+        break;
+      }
+      final AsnTypeDefinition target = this.module.getType( type.getReference() );
+      if ( target == null )
+      {
+        throw new AsnCompilerException( "Unknown type: " + type.getReference() );
+      }
+      if ( ( target.getKind() == Kind.SEQUENCE ) || ( target.getKind() == Kind.SET )
+          || ( target.getKind() == Kind.CHOICE ) )
+      {
+        // The generated class handles the tag of its own type...
+        break;
+      }
+      if ( i > this.module.getAssignments().size() )
+      {
+        throw new AsnCompilerException( "Circular type reference: " + aType.getReference() );
+      }
+      type = target;
+    }
+
+    final Encoding result = new Encoding( getOwnIdentifier( type ) );
+    for ( int i = tags.size() - 1; i >= 0; i-- )
+    {
+      applyTag( result, tags.get( i ) );
+    }
+    return result;
+  }
+
+  /**
+   * Returns the Java type used to represent values of the given type.
+   */
+  private String getJavaType( final AsnTypeDefinition aType, final boolean aBoxed ) throws AsnCompilerException
+  {
+    final AsnTypeDefinition type = resolve( aType );
+    switch ( type.getKind() )
+    {
+      case REFERENCE:
+        return toClassName( type.getReference() );
+
+      case SEQUENCE:
+      case SET:
+      case CHOICE:
+        return this.nestedNames.get( type );
+
+      case SEQUENCE_OF:
+      case SET_OF:
+        return "List<" + getJavaType( type.getElementType(), true /* aBoxed */) + ">";
+
+      default:
+        switch ( type.getBuiltinType() )
+        {
+          case BOOLEAN:
+          case NULL:
+            return aBoxed ? "Boolean" : "boolean";
+          case INTEGER:
+          case ENUMERATED:
+            return aBoxed ? "Integer" : "int";
+          case REAL:
+            return aBoxed ? "Double" : "double";
+          case OCTET_STRING:
+            return "byte[]";
+          case BIT_STRING:
+            this.usesBigInteger = true;
+            return "BigInteger";
+          case OBJECT_ID:
+          case RELATIVE_OID:
+            return "int[]";
+          case UTF8_STRING:
+          case PRINTABLE_STRING:
+          case IA5_STRING:
+            return "String";
+          case UTC_TIME:
+          case GENERALIZED_TIME:
+            return "Calendar";
+          default:
+            throw new AsnCompilerException( "Type not supported by the BER runtime: " + type.getBuiltinType() );
+        }
+    }
+  }
+
+  /**
+   * Returns the identifier of an untagged value of the given type, or of the
+   * generated class it refers to.
+   * 
+   * @return the identifier, or <code>null</code> for an untagged CHOICE.
+   */
+  private AsnIdentifier getOwnIdentifier( final AsnTypeDefinition aType ) throws AsnCompilerException
+  {
+    switch ( aType.getKind() )
+    {
+      case REFERENCE:
+        return getClassEncoding( this.module.getType( aType.getReference() ), true /* aTopLevel */).getFirst();
+
+      case SEQUENCE:
+      case SEQUENCE_OF:
+        return AsnIdentifier.valueOf( AsnClass.UNIVERSAL, true, AsnType.SEQUENCE.ordinal() );
+
+      case SET:
+      case SET_OF:
+        return AsnIdentifier.valueOf( AsnClass.UNIVERSAL, true, AsnType.SET.ordinal() );
+
+      case BUILTIN:
+        return AsnIdentifier.valueOf( AsnClass.UNIVERSAL, false, aType.getBuiltinType().ordinal() );
+
+      default:
+        // A CHOICE has the tag of its alternative...
+        return null;
+    }
+  }
+
+  /**
+   * Returns the SIZE constraint that applies to the given type, following
+   * type references if necessary.
+   */
+  private AsnRange getSizeRange( final AsnTypeDefinition aType )
+  {
+    AsnTypeDefinition type = aType;
+    while ( ( type != null ) && ( type.getSizeRange() == null ) && ( type.getKind() == Kind.REFERENCE ) )
+    {
+      type = this.module.getType( type.getReference() );
+    }
+    return ( type == null ) ? null : type.getSizeRange();
+  }
+
+  /**
+   * Returns the name of the constant holding a tag switch for the given tags,
+   * declaring it.
+   */
+  private String getSwitchConstant( final String aClassName, final List<AsnIdentifier> aTags )
+  {
+    final StringBuilder sb = new StringBuilder( "new BerTagSwitch(" );
+    for ( int i = 0; i < aTags.size(); i++ )
+    {
+      sb.append( ( i == 0 ) ? " " : ", " ).append( getConstant( aTags.get( i ) ) );
+    }
+    sb.append( aTags.isEmpty() ? ")" : " )" );
+
+    final String name = toConstantName( aClassName ) + "_TAGS";
+    this.switchConstants.put( name, sb.toString() );
+    return name;
+  }
+
+  /**
+   * Returns the value constraint that applies to the given type, following
+   * type references if necessary.
+   */
+  private AsnRange getValueRange( final AsnTypeDefinition aType )
+  {
+    AsnTypeDefinition type = aType;
+    while ( ( type != null ) && ( type.getValueRange() == null ) && ( type.getKind() == Kind.REFERENCE ) )
+    {
+      type = this.module.getType( type.getReference() );
+    }
+    return ( type == null ) ? null : type.getValueRange();
+  }
+
+  /**
+   * @return <code>true</code> if values of the given type are constrained.
+   */
+  private boolean hasChecks( final AsnTypeDefinition aType )
+  {
+    return ( getValueRange( aType ) != null ) || ( getSizeRange( aType ) != null );
+  }
+
+  /**
+   * @return <code>true</code> if the given component is a mandatory NULL,
+   *         which has no value to represent.
+   */
+  private boolean isMandatoryNull( final AsnComponent aComponent ) throws AsnCompilerException
+  {
+    final AsnTypeDefinition type = resolve( aComponent.getType() );
+    return !aComponent.isOptional() && ( type.getBuiltinType() == AsnType.NULL );
+  }
+
+  /**
+   * @return <code>true</code> if the given type is represented by a primitive
+   *         Java type (when not boxed).
+   */
+  private boolean isPrimitive( final AsnTypeDefinition aType ) throws AsnCompilerException
+  {
+    final String javaType = getJavaType( aType, false /* aBoxed */);
+    return "int".equals( javaType ) || "boolean".equals( javaType );
+  }
+
+  /**
+   * Emits a single line of code at the current indentation level.
+   */
+  private void line( final String aLine )
+  {
+    if ( aLine.length() > 0 )
+    {
+      for ( int i = 0; i < this.indent; i++ )
+      {
+        this.code.append( "  " );
+      }
+      this.code.append( aLine );
+    }
+    this.code.append( '\n' );
+  }
+
+  /**
+   * Emits an opening brace and increases the indentation level.
+   */
+  private void open()
+  {
+    line( "{" );
+    this.indent++;
+  }
+
+  /**
+   * Resolves the given type to either a built-in type, a reference to a type
+   * assignment that results in a generated class, or an inline constructed
+   * type.
+   */
+  private AsnTypeDefinition resolve( final AsnTypeDefinition aType ) throws AsnCompilerException
+  {
+    AsnTypeDefinition type = aType;
+    for ( int i = 0; type.getKind() == Kind.REFERENCE; i++ )
+    {
+      final AsnTypeDefinition target = this.module.getType( type.getReference() );
+      if ( target == null )
+      {
+        throw new AsnCompilerException( "Unknown type: " + type.getReference() );
+      }
+      if ( ( target.getKind() == Kind.SEQUENCE ) || ( target.getKind() == Kind.SET )
+          || ( target.getKind() == Kind.CHOICE ) )
+      {
+        return type;
+      }
+      if ( i > this.module.getAssignments().size() )
+      {
+        throw new AsnCompilerException( "Circular type reference: " + aType.getReference() );
+      }
+      type = target;
+    }
+    return type;
+  }
+
+  /**
+   * Verifies that the given type only uses constructs the runtime supports.
+   */
+  private void validate( final AsnTypeDefinition aType, final String aName ) throws AsnCompilerException
+  {
+    // Verifies the tags as well...
+    getEncoding( aType, null );
+
+    final AsnTypeDefinition type = resolve( aType );
+    switch ( type.getKind() )
+    {
+      case SEQUENCE:
+      case SET:
+      case CHOICE:
+        final List<AsnComponent> components = type.getComponents();
+        final boolean sequence = ( type.getKind() == Kind.SEQUENCE );
+        for ( int i = 0; i < components.size(); i++ )
+        {
+          final AsnComponent component = components.get( i );
+          final String name = aName + "." + component.getName();
+          if ( !sequence || component.isOptional() )
+          {
+            // The component is recognized by its tag, which should differ
+            // from the tags of all components that can take its place...
+            final AsnIdentifier tag = getComponentEncoding( components, i ).getFirst();
+            if ( tag == null )
+            {
+              throw new AsnCompilerException( "Untagged CHOICE cannot be recognized by its tag (" + name + ")!" );
+            }
+            for ( int j = i + 1; j < components.size(); j++ )
+            {
+              final AsnComponent next = components.get( j );
+              final AsnIdentifier nextTag = getComponentEncoding( components, j ).getFirst();
+              if ( ( nextTag == null ) || isSameTag( tag, nextTag ) )
+              {
+                throw new AsnCompilerException( "Component is ambiguous with " + next.getName() + " (" + name
+                    + ")!" );
+              }
+              if ( sequence && !next.isOptional() )
+              {
+                break;
+              }
+            }
+          }
+          if ( resolve( component.getType() ).getBuiltinType() == AsnType.NULL )
+          {
+            if ( component.isOptional() )
+            {
+              throw new AsnCompilerException( "OPTIONAL NULL components are not supported (" + name + ")!" );
+            }
+            if ( type.getKind() == Kind.CHOICE )
+            {
+              throw new AsnCompilerException( "NULL alternatives are not supported (" + name + ")!" );
+            }
+          }
+          validate( component.getType(), name );
+        }
+        break;
+
+      case SEQUENCE_OF:
+      case SET_OF:
+        if ( resolve( type.getElementType() ).getBuiltinType() == AsnType.NULL )
+        {
+          throw new AsnCompilerException( "Collections of NULL are not supported (" + aName + ")!" );
+        }
+        validate( type.getElementType(), aName );
+        break;
+
+      case BUILTIN:
+        getJavaType( type, false );
+        break;
+
+      default:
+        // Reference to a generated class, which is verified on its own...
+        break;
+    }
+  }
+}
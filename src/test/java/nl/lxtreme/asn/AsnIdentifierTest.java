@@ -136,4 +136,25 @@ public class AsnIdentifierTest
     id = new AsnIdentifier( AsnClass.UNIVERSAL, true /* constructed */, AsnType.BIT_STRING );
     assertEquals( 0x23, id.getTag() );
   }
+
+  /**
+   * Test method for {@link nl.lxtreme.asn.AsnIdentifier#valueOf(int)}.
+   */
+  @Test
+  public void testValueOf()
+  {
+    AsnIdentifier id = AsnIdentifier.valueOf( 0x23 );
+
+    assertEquals( new AsnIdentifier( 0x23 ), id );
+    assertSame( id, AsnIdentifier.valueOf( 0x23 ) );
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.asn.AsnIdentifier#valueOf(int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testValueOfLongFormFail()
+  {
+    AsnIdentifier.valueOf( 0x1F );
+  }
 }
@@ -0,0 +1,92 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerArena}.
+ */
+public class BerArenaTest
+{
+  // METHODS
+
+  /**
+   * Test case for {@link BerArena#allocate(int)}.
+   */
+  @Test
+  public void testAllocateGrowsAndRetainsContent()
+  {
+    BerArena arena = new BerArena( 4, 16 );
+
+    int offset1 = arena.allocate( 3 );
+    arena.getBuffer()[offset1] = 0x12;
+
+    int offset2 = arena.allocate( 6 );
+    assertEquals( 3, offset2 );
+    assertEquals( 9, arena.getSize() );
+    assertTrue( arena.getCapacity() >= 9 );
+    assertEquals( 0x12, arena.getBuffer()[offset1] );
+  }
+
+  /**
+   * Test case for {@link BerArena#allocate(int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testAllocateNegativeLengthFails()
+  {
+    new BerArena().allocate( -1 );
+  }
+
+  /**
+   * Test case for {@link BerArena#reset()}.
+   */
+  @Test
+  public void testResetReleasesLargeBuffers()
+  {
+    BerArena arena = new BerArena( 4, 16 );
+
+    arena.allocate( 12 );
+    byte[] buffer = arena.getBuffer();
+    arena.reset();
+
+    assertEquals( 0, arena.getSize() );
+    assertSame( buffer, arena.getBuffer() );
+
+    arena.allocate( 32 );
+    arena.reset();
+
+    assertEquals( 4, arena.getCapacity() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#BerInputStream(InputStream, BerDecoderLimits, BerArena)}.
+   */
+  @Test
+  public void testSharedArenaIsReused() throws IOException
+  {
+    BerArena arena = new BerArena( 16, 16 );
+    byte[] buffer = arena.getBuffer();
+
+    for ( int i = 0; i < 10; i++ )
+    {
+      BerInputStream bis = new BerInputStream( new ByteArrayInputStream( new byte[] { ( byte )OCTET_STRING.ordinal(),
+          0x04, '1', '2', '3', '4', ( byte )INTEGER.ordinal(), 0x01, ( byte )i } ), BerDecoderLimits.UNLIMITED, arena );
+
+      assertEquals( "1234", bis.readString() );
+      assertEquals( Integer.valueOf( i ), bis.readInt() );
+    }
+
+    assertSame( buffer, arena.getBuffer() );
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.math.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerChannelWriter}.
+ */
+public class BerChannelWriterTest
+{
+  // INNER TYPES
+
+  /**
+   * Provides a {@link GatheringByteChannel} that records all buffers it is
+   * given, and writes at most a given number of bytes per call.
+   */
+  private static class RecordingChannel implements GatheringByteChannel
+  {
+    // VARIABLES
+
+    final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    final int maxBytesPerWrite;
+    int gatheringWrites;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new {@link RecordingChannel} instance.
+     * 
+     * @param aMaxBytesPerWrite
+     *          the maximum number of bytes written per call.
+     */
+    RecordingChannel( final int aMaxBytesPerWrite )
+    {
+      this.maxBytesPerWrite = aMaxBytesPerWrite;
+    }
+
+    // METHODS
+
+    @Override
+    public void close()
+    {
+      // Nop
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+      return true;
+    }
+
+    @Override
+    public int write( final ByteBuffer aSource )
+    {
+      return ( int )write( new ByteBuffer[] { aSource }, 0, 1 );
+    }
+
+    @Override
+    public long write( final ByteBuffer[] aSources )
+    {
+      return write( aSources, 0, aSources.length );
+    }
+
+    @Override
+    public long write( final ByteBuffer[] aSources, final int aOffset, final int aLength )
+    {
+      this.gatheringWrites++;
+
+      int count = 0;
+      for ( int i = aOffset; ( i < ( aOffset + aLength ) ) && ( count < this.maxBytesPerWrite ); i++ )
+      {
+        final ByteBuffer source = aSources[i];
+        if ( !this.buffers.contains( source ) )
+        {
+          this.buffers.add( source );
+        }
+        while ( source.hasRemaining() && ( count < this.maxBytesPerWrite ) )
+        {
+          this.written.write( source.get() );
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Test for {@link BerChannelWriter#BerChannelWriter(GatheringByteChannel, int, int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testCreateWithInvalidThresholdFail()
+  {
+    new BerChannelWriter( new RecordingChannel( 1 ), 16, 11 );
+  }
+
+  /**
+   * Test for {@link BerChannelWriter#writeOctetString(byte[])}.
+   */
+  @Test
+  public void testLargeContentIsNotCopied() throws IOException
+  {
+    final byte[] content = new byte[1000];
+    Arrays.fill( content, ( byte )0x55 );
+
+    final RecordingChannel channel = new RecordingChannel( Integer.MAX_VALUE );
+    final BerChannelWriter writer = new BerChannelWriter( channel );
+    writer.writeInt( 1 );
+    writer.writeOctetString( content );
+    writer.writeInt( 2 );
+    writer.flush();
+
+    // header + content + trailing integer, in a single gathering write...
+    assertEquals( 1, channel.gatheringWrites );
+    assertEquals( 3, channel.buffers.size() );
+    assertSame( content, channel.buffers.get( 1 ).array() );
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final BerOutputStream bos = new BerOutputStream( expected );
+    bos.writeInt( 1 );
+    bos.writeOctetString( content );
+    bos.writeInt( 2 );
+
+    assertArrayEquals( expected.toByteArray(), channel.written.toByteArray() );
+  }
+
+  /**
+   * Test for {@link BerChannelWriter#flush()}.
+   */
+  @Test
+  public void testPartialWrites() throws IOException
+  {
+    final RecordingChannel channel = new RecordingChannel( 7 );
+    final BerChannelWriter writer = new BerChannelWriter( channel, 16, 8 );
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final BerOutputStream bos = new BerOutputStream( expected );
+
+    for ( int i = 0; i < 100; i++ )
+    {
+      final byte[] content = new byte[i % 20];
+      Arrays.fill( content, ( byte )i );
+
+      writer.writeOctetString( content );
+      writer.writeInt( i * 1000 );
+      bos.writeOctetString( content );
+      bos.writeInt( i * 1000 );
+    }
+    writer.flush();
+
+    assertArrayEquals( expected.toByteArray(), channel.written.toByteArray() );
+  }
+
+  /**
+   * Test for {@link BerChannelWriter} that all values are written identically
+   * to {@link BerOutputStream}.
+   */
+  @Test
+  public void testWriteAllTypes() throws IOException
+  {
+    final Calendar cal = Calendar.getInstance( TimeZone.getTimeZone( "UTC" ) );
+    cal.setTimeInMillis( 673548340000L );
+
+    final RecordingChannel channel = new RecordingChannel( Integer.MAX_VALUE );
+    final BerChannelWriter writer = new BerChannelWriter( channel );
+    writer.writeSequenceHeader( 3 );
+    writer.writeBoolean( true );
+    writer.writeBitString( BigInteger.valueOf( 0x5A5 ) );
+    writer.writeEnumeratedValue( -3 );
+    writer.writeGeneralizedTime( cal );
+    writer.writeIA5String( "ia5" );
+    writer.writeInt( 0x123456 );
+    writer.writeNull();
+    writer.writeObjectIdentifier( new int[] { 1, 3, 6, 1 } );
+    writer.writeOctetString( ByteBuffer.wrap( new byte[] { 1, 2, 3 } ) );
+    writer.writePrintableString( "printable" );
+    writer.writeRelativeObjectIdentifier( new int[] { 300, 2 } );
+    writer.writeSetHeader( 0 );
+    writer.writeString( "string" );
+    writer.writeUtcTime( cal );
+    writer.writeUTF8String( "utf-\u00e9" );
+    writer.writeElement( BerElement.sequence( BerElement.intValue( 1 ), BerElement.nullValue() ) );
+    writer.flush();
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final BerOutputStream bos = new BerOutputStream( expected );
+    bos.writeSequenceHeader( 3 );
+    bos.writeBoolean( true );
+    bos.writeBitString( BigInteger.valueOf( 0x5A5 ) );
+    bos.writeEnumeratedValue( -3 );
+    bos.writeGeneralizedTime( cal );
+    bos.writeIA5String( "ia5" );
+    bos.writeInt( 0x123456 );
+    bos.writeNull();
+    bos.writeObjectIdentifier( new int[] { 1, 3, 6, 1 } );
+    bos.writeOctetString( new byte[] { 1, 2, 3 } );
+    bos.writePrintableString( "printable" );
+    bos.writeRelativeObjectIdentifier( new int[] { 300, 2 } );
+    bos.writeSetHeader( 0 );
+    bos.writeString( "string" );
+    bos.writeUtcTime( cal );
+    bos.writeUTF8String( "utf-\u00e9" );
+    bos.writeElement( BerElement.sequence( BerElement.intValue( 1 ), BerElement.nullValue() ) );
+
+    assertArrayEquals( expected.toByteArray(), channel.written.toByteArray() );
+  }
+}
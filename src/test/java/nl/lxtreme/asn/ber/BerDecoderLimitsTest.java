@@ -0,0 +1,144 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerDecoderLimits}.
+ */
+public class BerDecoderLimitsTest
+{
+  // CONSTANTS
+
+  private static int CONSTRUCTED = 0x20;
+
+  // METHODS
+
+  /**
+   * Test case for {@link BerDecoderLimits#BerDecoderLimits(int, int, long, int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testCreateNegativeLimitsFails()
+  {
+    new BerDecoderLimits( -1, 1, 1L, 1 );
+  }
+
+  /**
+   * Test case for {@link BerDecoderLimits#getMaxAllocation()}.
+   */
+  @Test
+  public void testMaxAllocationIsPerTopLevelValue() throws IOException
+  {
+    BerInputStream bis = createStream( new BerDecoderLimits( 16, 4, 6L, 4 ), //
+        OCTET_STRING.ordinal(), 0x04, '1', '2', '3', '4', //
+        OCTET_STRING.ordinal(), 0x04, '5', '6', '7', '8' );
+
+    assertEquals( "1234", bis.readString() );
+    assertEquals( "5678", bis.readString() );
+  }
+
+  /**
+   * Test case for {@link BerDecoderLimits#getMaxAllocation()}.
+   */
+  @Test( expected = IOException.class )
+  public void testMaxAllocationExceededFails() throws IOException
+  {
+    BerInputStream bis = createStream( new BerDecoderLimits( 16, 4, 6L, 4 ), //
+        SEQUENCE.ordinal() | CONSTRUCTED, 0x0C, //
+        OCTET_STRING.ordinal(), 0x04, '1', '2', '3', '4', //
+        OCTET_STRING.ordinal(), 0x04, '5', '6', '7', '8' );
+
+    BerInputStream seqIS = bis.readSequenceAsStream();
+    assertEquals( "1234", seqIS.readString() );
+    // Should fail...
+    seqIS.readString();
+  }
+
+  /**
+   * Test case for {@link BerDecoderLimits#getMaxDepth()}.
+   */
+  @Test
+  public void testMaxDepthExceededFails() throws IOException
+  {
+    BerInputStream bis = createStream( new BerDecoderLimits( 16, 1, 16L, 4 ), //
+        SEQUENCE.ordinal() | CONSTRUCTED, 0x05, //
+        SEQUENCE.ordinal() | CONSTRUCTED, 0x03, //
+        BOOLEAN.ordinal(), 0x01, 0xFF );
+
+    BerInputStream seqIS = bis.readSequenceAsStream();
+    assertNotNull( seqIS );
+
+    try
+    {
+      seqIS.readSequenceAsStream();
+      fail( "IOException expected!" );
+    }
+    catch ( IOException exception )
+    {
+      // Ok; expected...
+    }
+  }
+
+  /**
+   * Test case for {@link BerDecoderLimits#getMaxLength()}.
+   */
+  @Test( expected = IOException.class )
+  public void testMaxLengthExceededFails() throws IOException
+  {
+    // A length of 2GB should be rejected before anything is allocated...
+    BerInputStream bis = createStream( new BerDecoderLimits( 16, 4, 16L, 4 ), //
+        OCTET_STRING.ordinal(), 0x84, 0x7F, 0xFF, 0xFF, 0xFF );
+
+    bis.readOctetString();
+  }
+
+  /**
+   * Test case for {@link BerDecoderLimits#getMaxSegmentCount()}.
+   */
+  @Test( expected = IOException.class )
+  public void testMaxSegmentCountExceededFails() throws IOException
+  {
+    BerInputStream bis = createStream( new BerDecoderLimits( 16, 4, 32L, 2 ), //
+        OCTET_STRING.ordinal() | CONSTRUCTED, 0x09, //
+        OCTET_STRING.ordinal(), 0x01, '1', //
+        OCTET_STRING.ordinal(), 0x01, '2', //
+        OCTET_STRING.ordinal(), 0x01, '3' );
+
+    bis.readOctetString();
+  }
+
+  /**
+   * Test case for {@link BerDecoderLimits#UNLIMITED}.
+   */
+  @Test
+  public void testUnlimitedIsDefault() throws IOException
+  {
+    BerInputStream bis = new BerInputStream( new ByteArrayInputStream( new byte[0] ) );
+    assertSame( BerDecoderLimits.UNLIMITED, bis.getLimits() );
+  }
+
+  /**
+   * @param aLimits
+   * @param aValues
+   */
+  private BerInputStream createStream( final BerDecoderLimits aLimits, final int... aValues )
+  {
+    byte[] buffer = new byte[aValues.length];
+    for ( int i = 0; i < aValues.length; i++ )
+    {
+      buffer[i] = ( byte )aValues[i];
+    }
+    return new BerInputStream( new ByteArrayInputStream( buffer ), aLimits );
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+
+import nl.lxtreme.asn.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerElement}.
+ */
+public class BerElementTest
+{
+  // METHODS
+
+  /**
+   * Test case for {@link BerElement#constructed(AsnIdentifier, BerElement...)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testCreateConstructedWithPrimitiveIdentifierFail()
+  {
+    BerElement.constructed( new AsnIdentifier( AsnType.SEQUENCE ), BerElement.nullValue() );
+  }
+
+  /**
+   * Test case for {@link BerElement#encode()}.
+   */
+  @Test
+  public void testEncodeNestedSequences() throws IOException
+  {
+    BerElement element = createNestedSequences();
+
+    assertEquals( 0x1E, element.getEncodedLength() );
+    assertEquals( 0x1C, element.getContentLength() );
+    assertArrayEquals( encodeNestedSequencesAsStream(), element.encode() );
+  }
+
+  /**
+   * Test case for {@link BerElement#encode(ByteBuffer)}.
+   */
+  @Test
+  public void testEncodeToByteBuffer() throws IOException
+  {
+    BerElement element = createNestedSequences();
+    byte[] expected = encodeNestedSequencesAsStream();
+
+    ByteBuffer heap = ByteBuffer.allocate( element.getEncodedLength() + 2 );
+    heap.position( 2 );
+    element.encode( heap );
+    assertFalse( heap.hasRemaining() );
+
+    ByteBuffer direct = ByteBuffer.allocateDirect( element.getEncodedLength() );
+    element.encode( direct );
+    direct.flip();
+
+    byte[] actual = new byte[direct.remaining()];
+    direct.get( actual );
+    assertArrayEquals( expected, actual );
+  }
+
+  /**
+   * Test case for {@link BerElement#encode(ByteBuffer)}.
+   */
+  @Test( expected = BufferOverflowException.class )
+  public void testEncodeToTooSmallByteBufferFail() throws IOException
+  {
+    createNestedSequences().encode( ByteBuffer.allocate( 10 ) );
+  }
+
+  /**
+   * Test case for {@link BerElement#getEncodedLength(int)}.
+   */
+  @Test
+  public void testGetEncodedLength()
+  {
+    assertEquals( 2, BerElement.getEncodedLength( 0 ) );
+    assertEquals( 129, BerElement.getEncodedLength( 127 ) );
+    assertEquals( 131, BerElement.getEncodedLength( 128 ) );
+    assertEquals( 260, BerElement.getEncodedLength( 256 ) );
+    assertEquals( 0x1000006, BerElement.getEncodedLength( 0x1000000 ) );
+  }
+
+  /**
+   * Test case for {@link BerOutputStream#writeElement(BerElement)}.
+   */
+  @Test
+  public void testWriteElement() throws IOException
+  {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    new BerOutputStream( buffer ).writeElement( createNestedSequences() );
+
+    assertArrayEquals( encodeNestedSequencesAsStream(), buffer.toByteArray() );
+  }
+
+  /**
+   * Test case for {@link BerOutputStream#writeSequenceHeader(int)}.
+   */
+  @Test
+  public void testWriteSequenceHeader() throws IOException
+  {
+    BerElement element = createNestedSequences();
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    BerOutputStream bos = new BerOutputStream( buffer );
+    // Frame the element in another sequence...
+    bos.writeSequenceHeader( element.getEncodedLength() );
+    bos.writeElement( element );
+
+    assertArrayEquals( BerElement.sequence( element ).encode(), buffer.toByteArray() );
+  }
+
+  /**
+   * Creates the element tree used by most of the tests.
+   */
+  private BerElement createNestedSequences() throws IOException
+  {
+    return BerElement.sequence( //
+        BerElement.booleanValue( true ), //
+        BerElement.intValue( 0x1234 ), //
+        BerElement.sequence( //
+            BerElement.string( "4567" ), //
+            BerElement.intValue( 0x1892 ), //
+            BerElement.booleanValue( false ) ), //
+        BerElement.string( "1234" ) );
+  }
+
+  /**
+   * Encodes the same values as {@link #createNestedSequences()} using nested
+   * sequence streams.
+   */
+  private byte[] encodeNestedSequencesAsStream() throws IOException
+  {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    BerOutputStream bos = new BerOutputStream( buffer );
+
+    BerOutputStream mainSeqStream = bos.writeSequenceAsStream();
+    mainSeqStream.writeBoolean( true );
+    mainSeqStream.writeInt( 0x1234 );
+
+    BerOutputStream nestedSeqStream = mainSeqStream.writeSequenceAsStream();
+    nestedSeqStream.writeString( "4567" );
+    nestedSeqStream.writeInt( 0x1892 );
+    nestedSeqStream.writeBoolean( false );
+    nestedSeqStream.close();
+
+    mainSeqStream.writeString( "1234" );
+    mainSeqStream.close();
+
+    return buffer.toByteArray();
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerFlowDecoder}.
+ */
+public class BerFlowDecoderTest
+{
+  // INNER TYPES
+
+  /**
+   * Publishes chunks synchronously, as they are requested.
+   */
+  static final class ChunkPublisher implements Publisher<ByteBuffer>
+  {
+    // VARIABLES
+
+    private final List<ByteBuffer> chunks;
+    private final boolean fail;
+
+    private Subscriber<? super ByteBuffer> subscriber;
+    private int index;
+    private long demand;
+    private boolean emitting;
+    private boolean cancelled;
+
+    // CONSTRUCTORS
+
+    ChunkPublisher( final byte[] aData, final int aChunkSize, final boolean aFail )
+    {
+      this.chunks = new ArrayList<ByteBuffer>();
+      for ( int i = 0; i < aData.length; i += aChunkSize )
+      {
+        this.chunks.add( ByteBuffer.wrap( aData, i, Math.min( aChunkSize, aData.length - i ) ) );
+      }
+      this.fail = aFail;
+    }
+
+    // METHODS
+
+    @Override
+    public void subscribe( final Subscriber<? super ByteBuffer> aSubscriber )
+    {
+      this.subscriber = aSubscriber;
+      aSubscriber.onSubscribe( new Subscription()
+      {
+        @Override
+        public void cancel()
+        {
+          ChunkPublisher.this.cancelled = true;
+        }
+
+        @Override
+        public void request( final long aCount )
+        {
+          ChunkPublisher.this.demand += aCount;
+          emit();
+        }
+      } );
+    }
+
+    private void emit()
+    {
+      if ( this.emitting )
+      {
+        return;
+      }
+      this.emitting = true;
+      while ( !this.cancelled && ( this.demand > 0 ) && ( this.index < this.chunks.size() ) )
+      {
+        this.demand--;
+        this.subscriber.onNext( this.chunks.get( this.index++ ) );
+      }
+      if ( !this.cancelled && ( this.index == this.chunks.size() ) )
+      {
+        this.index++;
+        if ( this.fail )
+        {
+          this.subscriber.onError( new IOException( "Source failed!" ) );
+        }
+        else
+        {
+          this.subscriber.onComplete();
+        }
+      }
+      this.emitting = false;
+    }
+  }
+
+  /**
+   * Collects records, requesting a given number initially.
+   */
+  static final class RecordCollector implements Subscriber<Integer>
+  {
+    // VARIABLES
+
+    final List<Integer> records = new ArrayList<Integer>();
+    final long initialRequest;
+
+    Subscription subscription;
+    Throwable error;
+    boolean completed;
+
+    // CONSTRUCTORS
+
+    RecordCollector( final long aInitialRequest )
+    {
+      this.initialRequest = aInitialRequest;
+    }
+
+    // METHODS
+
+    @Override
+    public void onComplete()
+    {
+      this.completed = true;
+    }
+
+    @Override
+    public void onError( final Throwable aThrowable )
+    {
+      this.error = aThrowable;
+    }
+
+    @Override
+    public void onNext( final Integer aRecord )
+    {
+      this.records.add( aRecord );
+    }
+
+    @Override
+    public void onSubscribe( final Subscription aSubscription )
+    {
+      this.subscription = aSubscription;
+      aSubscription.request( this.initialRequest );
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Test for {@link BerFlowDecoder#subscribe(Subscriber)}.
+   */
+  @Test
+  public void testDecodeChunkedRecords() throws IOException
+  {
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER );
+    final RecordCollector collector = new RecordCollector( Long.MAX_VALUE );
+    decoder.subscribe( collector );
+
+    new ChunkPublisher( IntRecords.encode( 0, 1000 ), 3, false ).subscribe( decoder );
+
+    assertNull( collector.error );
+    assertTrue( collector.completed );
+    assertEquals( 1000, collector.records.size() );
+    for ( int i = 0; i < 1000; i++ )
+    {
+      assertEquals( Integer.valueOf( i ), collector.records.get( i ) );
+    }
+  }
+
+  /**
+   * Test for {@link BerFlowDecoder#subscribe(Subscriber)}.
+   */
+  @Test
+  public void testDecodeExceedingBufferSizeFails() throws IOException
+  {
+    final byte[] record = BerElement.octetString( new byte[100] ).encode();
+
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER,
+        BerDecoderLimits.UNLIMITED, 64 );
+    final RecordCollector collector = new RecordCollector( 1 );
+    decoder.subscribe( collector );
+
+    final ChunkPublisher publisher = new ChunkPublisher( record, 16, false );
+    publisher.subscribe( decoder );
+
+    assertTrue( collector.error instanceof IOException );
+    assertTrue( publisher.cancelled );
+  }
+
+  /**
+   * Test for {@link BerFlowDecoder#subscribe(Subscriber)}.
+   */
+  @Test
+  public void testDecodeHonorsDemand() throws IOException
+  {
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER );
+    final RecordCollector collector = new RecordCollector( 2 );
+    decoder.subscribe( collector );
+
+    final ChunkPublisher publisher = new ChunkPublisher( IntRecords.encode( 0, 100 ), 6, false );
+    publisher.subscribe( decoder );
+
+    assertEquals( Arrays.asList( 0, 1 ), collector.records );
+    // Each chunk holds two records, so no more chunks should be requested...
+    assertEquals( 1, publisher.index );
+
+    collector.subscription.request( 3 );
+    assertEquals( Arrays.asList( 0, 1, 2, 3, 4 ), collector.records );
+    assertEquals( 3, publisher.index );
+    assertFalse( collector.completed );
+
+    collector.subscription.request( Long.MAX_VALUE );
+    assertEquals( 100, collector.records.size() );
+    assertTrue( collector.completed );
+  }
+
+  /**
+   * Test for {@link BerFlowDecoder#onError(Throwable)}.
+   */
+  @Test
+  public void testDecodeSourceFails() throws IOException
+  {
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER );
+    final RecordCollector collector = new RecordCollector( Long.MAX_VALUE );
+    decoder.subscribe( collector );
+
+    new ChunkPublisher( IntRecords.encode( 0, 10 ), 5, true ).subscribe( decoder );
+
+    assertEquals( 10, collector.records.size() );
+    assertEquals( "Source failed!", collector.error.getMessage() );
+    assertFalse( collector.completed );
+  }
+
+  /**
+   * Test for {@link BerFlowDecoder#subscribe(Subscriber)}.
+   */
+  @Test
+  public void testDecodeTruncatedRecordFails() throws IOException
+  {
+    final byte[] records = IntRecords.encode( 0, 10 );
+
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER );
+    final RecordCollector collector = new RecordCollector( Long.MAX_VALUE );
+    decoder.subscribe( collector );
+
+    new ChunkPublisher( Arrays.copyOf( records, records.length - 1 ), 4, false ).subscribe( decoder );
+
+    assertEquals( 9, collector.records.size() );
+    assertTrue( collector.error instanceof EOFException );
+  }
+
+  /**
+   * Test for {@link BerFlowDecoder} with a {@link SubmissionPublisher}.
+   */
+  @Test
+  public void testDecodeWithSubmissionPublisher() throws Exception
+  {
+    final byte[] records = IntRecords.encode( 0, 5000 );
+
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER );
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final BerFlowEncoder<Integer> encoder = new BerFlowEncoder<Integer>( baos, new BerFlowEncoder.Encoder<Integer>()
+    {
+      @Override
+      public void encode( final BerOutputStream aOutput, final Integer aRecord ) throws IOException
+      {
+        aOutput.writeInt( aRecord.intValue() );
+      }
+    }, 100 );
+    decoder.subscribe( encoder );
+
+    final SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<ByteBuffer>( ForkJoinPool.commonPool(),
+        4 );
+    publisher.subscribe( decoder );
+    for ( int i = 0; i < records.length; i += 7 )
+    {
+      publisher.submit( ByteBuffer.wrap( records, i, Math.min( 7, records.length - i ) ) );
+    }
+    publisher.close();
+
+    encoder.getCompletion().get( 10, TimeUnit.SECONDS );
+    assertArrayEquals( records, baos.toByteArray() );
+  }
+
+  /**
+   * Test for {@link BerFlowDecoder#subscribe(Subscriber)}.
+   */
+  @Test
+  public void testSubscribeTwiceFails() throws IOException
+  {
+    final BerFlowDecoder<Integer> decoder = new BerFlowDecoder<Integer>( IntRecords.DECODER );
+    decoder.subscribe( new RecordCollector( 1 ) );
+
+    final RecordCollector collector = new RecordCollector( 1 );
+    decoder.subscribe( collector );
+    assertTrue( collector.error instanceof IllegalStateException );
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerFlowEncoder}.
+ */
+public class BerFlowEncoderTest
+{
+  // INNER TYPES
+
+  /**
+   * Records the writes done to it.
+   */
+  static final class RecordingOutputStream extends ByteArrayOutputStream
+  {
+    // VARIABLES
+
+    int writes;
+    boolean fail;
+
+    // METHODS
+
+    @Override
+    public synchronized void write( final byte[] aBuffer, final int aOffset, final int aLength )
+    {
+      this.writes++;
+      super.write( aBuffer, aOffset, aLength );
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      if ( this.fail )
+      {
+        throw new IOException( "Sink failed!" );
+      }
+    }
+  }
+
+  // CONSTANTS
+
+  private static final BerFlowEncoder.Encoder<Integer> INT_ENCODER = new BerFlowEncoder.Encoder<Integer>()
+  {
+    @Override
+    public void encode( final BerOutputStream aOutput, final Integer aRecord ) throws IOException
+    {
+      aOutput.writeInt( aRecord.intValue() );
+    }
+  };
+
+  // METHODS
+
+  /**
+   * Test for {@link BerFlowEncoder#onNext(Object)}.
+   */
+  @Test
+  public void testEncodeInBatches() throws Exception
+  {
+    final RecordingOutputStream sink = new RecordingOutputStream();
+    final BerFlowEncoder<Integer> encoder = new BerFlowEncoder<Integer>( sink, INT_ENCODER, 10 );
+
+    final List<Long> requests = new ArrayList<Long>();
+    encoder.onSubscribe( new Subscription()
+    {
+      @Override
+      public void cancel()
+      {
+        fail( "Should not be cancelled!" );
+      }
+
+      @Override
+      public void request( final long aCount )
+      {
+        requests.add( Long.valueOf( aCount ) );
+      }
+    } );
+    assertEquals( Arrays.asList( 10L ), requests );
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for ( int i = 0; i < 25; i++ )
+    {
+      encoder.onNext( Integer.valueOf( i ) );
+      expected.write( BerElement.intValue( i ).encode() );
+    }
+    assertEquals( 2, sink.writes );
+    assertEquals( Arrays.asList( 10L, 10L, 10L ), requests );
+
+    encoder.onComplete();
+    assertEquals( 3, sink.writes );
+    assertNull( encoder.getCompletion().get() );
+    assertArrayEquals( expected.toByteArray(), sink.toByteArray() );
+  }
+
+  /**
+   * Test for {@link BerFlowEncoder#onNext(Object)}.
+   */
+  @Test
+  public void testEncodeRecordFails() throws Exception
+  {
+    final RecordingOutputStream sink = new RecordingOutputStream();
+    final BerFlowEncoder<Integer> encoder = new BerFlowEncoder<Integer>( sink, new BerFlowEncoder.Encoder<Integer>()
+    {
+      @Override
+      public void encode( final BerOutputStream aOutput, final Integer aRecord ) throws IOException
+      {
+        aOutput.writeInt( aRecord.intValue() );
+        if ( aRecord.intValue() == 3 )
+        {
+          // Fails halfway the record...
+          throw new IllegalStateException( "Record failed!" );
+        }
+      }
+    }, 10 );
+
+    final List<String> calls = new ArrayList<String>();
+    encoder.onSubscribe( new Subscription()
+    {
+      @Override
+      public void cancel()
+      {
+        calls.add( "cancel" );
+      }
+
+      @Override
+      public void request( final long aCount )
+      {
+        calls.add( "request" );
+      }
+    } );
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for ( int i = 0; i < 5; i++ )
+    {
+      encoder.onNext( Integer.valueOf( i ) );
+      if ( i < 3 )
+      {
+        expected.write( BerElement.intValue( i ).encode() );
+      }
+    }
+    assertEquals( Arrays.asList( "request", "cancel" ), calls );
+    // Only the complete records are written...
+    assertArrayEquals( expected.toByteArray(), sink.toByteArray() );
+
+    try
+    {
+      encoder.getCompletion().get();
+      fail( "ExecutionException expected!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      assertEquals( "Record failed!", exception.getCause().getMessage() );
+    }
+  }
+
+  /**
+   * Test for {@link BerFlowEncoder#onComplete()}.
+   */
+  @Test( expected = ExecutionException.class )
+  public void testEncodeSinkFails() throws Exception
+  {
+    final RecordingOutputStream sink = new RecordingOutputStream();
+    sink.fail = true;
+
+    final BerFlowEncoder<Integer> encoder = new BerFlowEncoder<Integer>( sink, INT_ENCODER );
+    final SubmissionPublisher<Integer> publisher = new SubmissionPublisher<Integer>();
+    publisher.subscribe( encoder );
+    publisher.submit( Integer.valueOf( 1 ) );
+    publisher.close();
+
+    encoder.getCompletion().get( 10, TimeUnit.SECONDS );
+  }
+
+  /**
+   * Test for {@link BerFlowEncoder#onError(Throwable)}.
+   */
+  @Test
+  public void testEncodeSourceFails() throws Exception
+  {
+    final RecordingOutputStream sink = new RecordingOutputStream();
+    final BerFlowEncoder<Integer> encoder = new BerFlowEncoder<Integer>( sink, INT_ENCODER );
+
+    final SubmissionPublisher<Integer> publisher = new SubmissionPublisher<Integer>();
+    publisher.subscribe( encoder );
+    publisher.submit( Integer.valueOf( 1 ) );
+    publisher.closeExceptionally( new IllegalStateException( "Source failed!" ) );
+
+    try
+    {
+      encoder.getCompletion().get( 10, TimeUnit.SECONDS );
+      fail( "ExecutionException expected!" );
+    }
+    catch ( ExecutionException exception )
+    {
+      assertEquals( "Source failed!", exception.getCause().getMessage() );
+    }
+  }
+}
@@ -37,6 +37,138 @@ public class BerInputStreamTest
     assertEquals( aCal1.getTime(), aCal2.getTime() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#peekIdentifier()}.
+   */
+  @Test
+  public void testPeekIdentifier() throws IOException
+  {
+    prepareContent( INTEGER, 0x01, 0x2A, BOOLEAN.ordinal(), 0x01, 0xFF );
+
+    assertEquals( new AsnIdentifier( INTEGER ), this.bis.peekIdentifier() );
+    assertEquals( new AsnIdentifier( INTEGER ), this.bis.peekIdentifier() );
+    assertEquals( Integer.valueOf( 42 ), this.bis.readInt() );
+
+    assertEquals( new AsnIdentifier( BOOLEAN ), this.bis.peekIdentifier() );
+    assertEquals( 1, this.bis.peekLength() );
+    assertEquals( Boolean.TRUE, this.bis.readBoolean() );
+
+    assertNull( this.bis.peekIdentifier() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#peekIdentifier()}.
+   */
+  @Test
+  public void testPeekIdentifierInIndefiniteSequenceStream() throws IOException
+  {
+    prepareContent( SEQUENCE.ordinal() | CONSTRUCTED, 0x80, INTEGER.ordinal(), 0x01, 0x01, 0x00, 0x00,
+        NULL.ordinal(), 0x00 );
+
+    final BerInputStream seq = this.bis.readSequenceAsStream();
+    assertEquals( new AsnIdentifier( INTEGER ), seq.peekIdentifier() );
+    assertEquals( Integer.valueOf( 1 ), seq.readInt() );
+    assertNull( seq.peekIdentifier() );
+    assertNull( seq.readInt() );
+
+    assertEquals( new AsnIdentifier( NULL ), this.bis.peekIdentifier() );
+    this.bis.readNull();
+    assertNull( this.bis.peekIdentifier() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#peekIdentifier()}.
+   */
+  @Test
+  public void testPeekIdentifierInNestedSequenceStreams() throws IOException
+  {
+    prepareContent( SEQUENCE.ordinal() | CONSTRUCTED, 0x08, SET.ordinal() | CONSTRUCTED, 0x03, INTEGER.ordinal(), 0x01,
+        0x05, BOOLEAN.ordinal(), 0x01, 0x00 );
+
+    assertEquals( AsnIdentifier.valueOf( SEQUENCE.ordinal() | CONSTRUCTED ), this.bis.peekIdentifier() );
+    assertEquals( 8, this.bis.peekLength() );
+
+    final BerInputStream seq = this.bis.readSequenceAsStream();
+    assertEquals( 3, seq.peekLength() );
+
+    final BerInputStream set = seq.readSetAsStream();
+    assertEquals( new AsnIdentifier( INTEGER ), set.peekIdentifier() );
+    assertEquals( Integer.valueOf( 5 ), set.readInt() );
+    assertNull( set.peekIdentifier() );
+
+    assertEquals( new AsnIdentifier( BOOLEAN ), seq.peekIdentifier() );
+    assertEquals( Boolean.FALSE, seq.readBoolean() );
+    assertNull( seq.peekIdentifier() );
+    assertNull( this.bis.peekIdentifier() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#peekLength()}.
+   */
+  @Test
+  public void testPeekLongFormLength() throws IOException
+  {
+    final int[] content = new int[3 + 300];
+    content[0] = 0x82;
+    content[1] = 0x01;
+    content[2] = 0x2C;
+    prepareContent( OCTET_STRING, content );
+
+    assertEquals( 300, this.bis.peekLength() );
+    assertEquals( 300, this.bis.readOctetString().length );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#peekLength()}.
+   */
+  @Test( expected = EOFException.class )
+  public void testPeekLengthAtEndOfStreamFail() throws IOException
+  {
+    prepareContent( INTEGER );
+    this.bis.peekLength();
+  }
+
+
+  /**
+   * Test case for {@link BerInputStream#readAny()}.
+   */
+  @Test
+  public void testReadAny() throws IOException
+  {
+    prepareContent( SEQUENCE.ordinal() | CONSTRUCTED, 0x06, INTEGER.ordinal(), 0x01, 0x2A, BOOLEAN.ordinal(), 0x01,
+        0x00, SET.ordinal() | CONSTRUCTED, 0x80, SEQUENCE.ordinal() | CONSTRUCTED, 0x80, NULL.ordinal(), 0x00, 0x00,
+        0x00, 0x00, 0x00, INTEGER.ordinal(), 0x01, 0x01 );
+
+    final BerNode seq = this.bis.readAny();
+    assertEquals( 8, seq.getEncodedLength() );
+    assertEquals( 2, seq.getChildCount() );
+    assertEquals( Integer.valueOf( 42 ), seq.getChild( 0 ).getValue() );
+    assertEquals( Boolean.FALSE, seq.getChild( 1 ).getValue() );
+
+    final BerNode set = this.bis.readAny();
+    assertEquals( 10, set.getEncodedLength() );
+    assertEquals( 1, set.getChildCount() );
+    assertEquals( 1, set.getChild( 0 ).getChildCount() );
+    assertNull( set.getChild( 0 ).getChild( 0 ).getValue() );
+
+    // The stream should be positioned right after the indefinite value...
+    assertEquals( Integer.valueOf( 1 ), this.bis.readInt() );
+    assertNull( this.bis.readAny() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readAny()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadAnyExceedingDepthFail() throws IOException
+  {
+    final byte[] content = { ( byte )( SEQUENCE.ordinal() | CONSTRUCTED ), ( byte )0x80,
+        ( byte )( SEQUENCE.ordinal() | CONSTRUCTED ), ( byte )0x80, 0x00, 0x00, 0x00, 0x00 };
+    this.bis = new BerInputStream( new ByteArrayInputStream( content ), new BerDecoderLimits( 100, 1, 1000, 10 ) );
+    this.bis.readAny();
+  }
+
+
   /**
    * Test case for {@link BerInputStream#readSequenceAsStream()}.
    */
@@ -89,6 +221,80 @@ public class BerInputStreamTest
     assertEquals( expectedValue, this.bis.readBitString() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#readBitStringAsBitSet()}.
+   */
+  @Test
+  public void testReadBitStringAsBitSet() throws IOException
+  {
+    final BitSet expectedValue = new BitSet();
+    for ( int bit : new int[] { 1, 2, 4, 5, 6, 9, 11, 12, 13, 15, 16, 17 } )
+    {
+      expectedValue.set( bit );
+    }
+
+    // padded with '100000', which is to be ignored...
+    prepareContent( BIT_STRING, 0x04, 0x06, 0x6e, 0x5d, 0xe0 );
+    assertEquals( expectedValue, this.bis.readBitStringAsBitSet() );
+
+    // constructed form...
+    prepareContent( BIT_STRING.ordinal() | CONSTRUCTED, 0x09, //
+        BIT_STRING.ordinal(), 0x03, 0x00, 0x6e, 0x5d, //
+        BIT_STRING.ordinal(), 0x02, 0x06, 0xc0 );
+    assertEquals( expectedValue, this.bis.readBitStringAsBitSet() );
+
+    // empty bit string...
+    prepareContent( BIT_STRING, 0x01, 0x00 );
+    assertEquals( new BitSet(), this.bis.readBitStringAsBitSet() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readBitStringAsBytes()}.
+   */
+  @Test
+  public void testReadBitStringAsBytes() throws IOException
+  {
+    prepareContent( BIT_STRING, 0x04, 0x06, 0x6e, 0x5d, 0xc0 );
+    assertArrayEquals( new byte[] { 0x06, 0x6e, 0x5d, ( byte )0xc0 }, this.bis.readBitStringAsBytes() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readBitStringAsLong()}.
+   */
+  @Test
+  public void testReadBitStringAsLong() throws IOException
+  {
+    // padded with '100000', which is to be ignored...
+    prepareContent( BIT_STRING, 0x04, 0x06, 0x6e, 0x5d, 0xe0 );
+    assertEquals( Long.valueOf( 0x3BA76L ), this.bis.readBitStringAsLong() );
+
+    // 64 bits, with trailing zero octets...
+    prepareContent( BIT_STRING, 0x0B, 0x00, 0x80, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00 );
+    assertEquals( Long.valueOf( 0x8000000000000001L ), this.bis.readBitStringAsLong() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readBitStringAsLong()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadBitStringAsLongWithTooManyBitsFail() throws IOException
+  {
+    prepareContent( BIT_STRING, 0x0A, 0x07, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x80 );
+    this.bis.readBitStringAsLong();
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readBitString()}.
+   */
+  @Test
+  public void testReadBitStringEmptyConstructed() throws IOException
+  {
+    // The ignored bits do not fit in the (empty) content...
+    BerInputStream input = new BerInputStream( new ByteArrayInputStream( new byte[] { 0x23, 0x00 } ),
+        BerDecoderLimits.UNLIMITED, new BerArena( 0, 0 ) );
+    assertEquals( BigInteger.ZERO, input.readBitString() );
+  }
+
   /**
    * Test case for {@link BerInputStream#readBoolean()}.
    */
@@ -137,6 +343,20 @@ public class BerInputStreamTest
     assertEquals( -1, seqIS.read() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#readConstructedAsStream(AsnIdentifier)}.
+   */
+  @Test
+  public void testReadExplicitlyTaggedInt() throws IOException
+  {
+    prepareContent( 0xA1, 0x03, 0x02, 0x01, 0x2A );
+
+    final BerInputStream tagged = this.bis.readConstructedAsStream( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC,
+        true, 1 ) );
+    assertEquals( Integer.valueOf( 42 ), tagged.readInt() );
+    assertNull( tagged.readInt() );
+  }
+
   /**
    * Test case for {@link BerInputStream#readGeneralizedTime()}.
    */
@@ -197,6 +417,29 @@ public class BerInputStreamTest
     assertEquals( "test1@rsa.com", this.bis.readIA5String() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#readInt(AsnIdentifier)}.
+   */
+  @Test
+  public void testReadImplicitlyTaggedInt() throws IOException
+  {
+    prepareContent( 0x83, 0x02, 0x01, 0x00 );
+    assertEquals( Integer.valueOf( 256 ), this.bis.readInt( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 3 ) ) );
+
+    prepareContent( 0x45, 0x01, 0xFF );
+    assertEquals( Boolean.TRUE, this.bis.readBoolean( AsnIdentifier.valueOf( AsnClass.APPLICATION, false, 5 ) ) );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readInt(AsnIdentifier)}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadImplicitlyTaggedIntWithWrongClassFail() throws IOException
+  {
+    prepareContent( 0x43, 0x01, 0x00 );
+    this.bis.readInt( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 3 ) );
+  }
+
   /**
    * Test case for {@link BerInputStream#readSequenceAsStream()}.
    */
@@ -221,6 +464,67 @@ public class BerInputStreamTest
     this.bis.readInt();
   }
 
+  /**
+   * Test case for {@link BerInputStream#readOctetString()}.
+   */
+  @Test
+  public void testReadIndefiniteOctetString() throws IOException
+  {
+    byte[] bs = new byte[] { 0x01, 0x23, 0x45, 0x67, ( byte )0x89, ( byte )0xab, ( byte )0xcd, ( byte )0xef };
+
+    prepareContent( OCTET_STRING.ordinal() | CONSTRUCTED, 0x80, //
+        OCTET_STRING.ordinal(), 0x04, 0x01, 0x23, 0x45, 0x67, //
+        OCTET_STRING.ordinal(), 0x04, 0x89, 0xab, 0xcd, 0xef, //
+        0x00, 0x00 );
+    assertArrayEquals( bs, this.bis.readOctetString() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readOctetString()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadIndefiniteOctetStringWithoutEndOfContentsFail() throws IOException
+  {
+    prepareContent( OCTET_STRING.ordinal() | CONSTRUCTED, 0x80, //
+        OCTET_STRING.ordinal(), 0x04, 0x01, 0x23, 0x45, 0x67 );
+
+    // Should fail...
+    this.bis.readOctetString();
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readSequenceAsStream()}.
+   */
+  @Test
+  public void testReadIndefiniteSequenceStreams() throws IOException
+  {
+    prepareContent( SEQUENCE.ordinal() | CONSTRUCTED, 0x80, //
+        BOOLEAN.ordinal(), 0x01, 0xFF, //
+        SET.ordinal() | CONSTRUCTED, 0x80, //
+        INTEGER.ordinal(), 0x01, 0x12, //
+        0x00, 0x00, //
+        SEQUENCE.ordinal() | CONSTRUCTED, 0x02, //
+        NULL.ordinal(), 0x00, //
+        0x00, 0x00, //
+        OCTET_STRING.ordinal(), 0x01, 'a' //
+    );
+
+    BerInputStream seqIS = this.bis.readSequenceAsStream();
+    assertEquals( true, seqIS.readBoolean() );
+
+    BerInputStream setIS = seqIS.readSetAsStream();
+    assertEquals( Integer.valueOf( 0x12 ), setIS.readInt() );
+    assertNull( setIS.readInt() );
+
+    BerInputStream nestedSeqIS = seqIS.readSequenceAsStream();
+    assertNull( nestedSeqIS.readNull() );
+    assertEquals( -1, nestedSeqIS.read() );
+
+    assertNull( seqIS.readInt() );
+
+    assertEquals( "a", this.bis.readString() );
+  }
+
   /**
    * Test case for {@link BerInputStream#readInt()}.
    */
@@ -286,6 +590,18 @@ public class BerInputStreamTest
     assertArrayEquals( asciiTable, this.bis.readOctetString() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#readOctetString()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadLengthWithTooManyOctetsFail() throws IOException
+  {
+    prepareContent( OCTET_STRING, 0x85, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00 );
+
+    // Should fail...
+    this.bis.readOctetString();
+  }
+
   /**
    * Test case for {@link BerInputStream#readSequenceAsStream()}.
    */
@@ -367,6 +683,34 @@ public class BerInputStreamTest
     assertArrayEquals( bs, this.bis.readOctetString() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#readOctetString()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadOctetStringExceedingSequenceFail() throws IOException
+  {
+    prepareContent( SEQUENCE.ordinal() | CONSTRUCTED, 0x03, //
+        OCTET_STRING.ordinal(), 0x7F, 0x00 );
+
+    BerInputStream seqIS = this.bis.readSequenceAsStream();
+    // Should fail...
+    seqIS.readOctetString();
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readOctetString()}.
+   */
+  @Test
+  public void testReadOctetStringWithLongFormSegments() throws IOException
+  {
+    byte[] bs = new byte[] { 0x01, 0x23, 0x45, 0x67, ( byte )0x89, ( byte )0xab, ( byte )0xcd, ( byte )0xef };
+
+    prepareContent( OCTET_STRING.ordinal() | CONSTRUCTED, 0x0e, //
+        OCTET_STRING.ordinal(), 0x81, 0x04, 0x01, 0x23, 0x45, 0x67, //
+        OCTET_STRING.ordinal(), 0x81, 0x04, 0x89, 0xab, 0xcd, 0xef );
+    assertArrayEquals( bs, this.bis.readOctetString() );
+  }
+
   /**
    * Test case for {@link BerInputStream#readSequenceAsStream()}.
    */
@@ -398,6 +742,51 @@ public class BerInputStreamTest
     assertEquals( "Test User 1", this.bis.readPrintableString() );
   }
 
+  /**
+   * Test case for {@link BerInputStream#readReal()}.
+   */
+  @Test
+  public void testReadReal() throws IOException
+  {
+    // binary, base 2: 3 x 2^-2...
+    prepareContent( REAL, 0x03, 0x80, 0xFE, 0x03 );
+    assertEquals( 0.75, this.bis.readReal().doubleValue(), 0.0 );
+
+    // binary, base 16, scaling factor 1, two-octet exponent: -5 x 2^1 x 16^-2...
+    prepareContent( REAL, 0x04, 0xE5, 0xFF, 0xFE, 0x05 );
+    assertEquals( -10.0 / 256.0, this.bis.readReal().doubleValue(), 0.0 );
+
+    // binary, base 8, with a mantissa with leading zero octets: 1 x 8^-1...
+    prepareContent( REAL, 0x04, 0x90, 0xFF, 0x00, 0x01 );
+    assertEquals( 0.125, this.bis.readReal().doubleValue(), 0.0 );
+
+    // decimal, NR3 form...
+    prepareContent( REAL, 0x07, 0x03, '1', '2', '5', 'E', '-', '2' );
+    assertEquals( 1.25, this.bis.readReal().doubleValue(), 0.0 );
+
+    // decimal, NR2 form with a decimal comma...
+    prepareContent( REAL, 0x06, 0x02, ' ', '-', '1', ',', '5' );
+    assertEquals( -1.5, this.bis.readReal().doubleValue(), 0.0 );
+
+    // special values...
+    prepareContent( REAL, 0x00 );
+    assertEquals( 0.0, this.bis.readReal().doubleValue(), 0.0 );
+    prepareContent( REAL, 0x01, 0x41 );
+    assertEquals( Double.NEGATIVE_INFINITY, this.bis.readReal().doubleValue(), 0.0 );
+    prepareContent( REAL, 0x01, 0x42 );
+    assertTrue( this.bis.readReal().isNaN() );
+  }
+
+  /**
+   * Test case for {@link BerInputStream#readReal()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadRealWithReservedBaseFail() throws IOException
+  {
+    prepareContent( REAL, 0x03, 0xB0, 0x00, 0x01 );
+    this.bis.readReal();
+  }
+
   /**
    * Test case for {@link BerInputStream#readRelativeObjectIdentifier()}.
    */
@@ -480,6 +869,16 @@ public class BerInputStreamTest
     this.bis.readUtcTime();
   }
 
+  /**
+   * Test case for {@link BerInputStream#readInt()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadUntaggedIntWithContextSpecificTagFail() throws IOException
+  {
+    prepareContent( 0x82, 0x01, 0x00 );
+    this.bis.readInt();
+  }
+
   /**
    * Test case for {@link BerInputStream#readUtcTime()}.
    */
@@ -0,0 +1,114 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerIntegerCache}.
+ */
+public class BerIntegerCacheTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link BerIntegerCache#contains(int)}.
+   */
+  @Test
+  public void testContains()
+  {
+    final BerIntegerCache cache = new BerIntegerCache( -1024, 65535 );
+
+    assertTrue( cache.contains( -1024 ) );
+    assertTrue( cache.contains( 0 ) );
+    assertTrue( cache.contains( 65535 ) );
+    assertFalse( cache.contains( -1025 ) );
+    assertFalse( cache.contains( 65536 ) );
+  }
+
+  /**
+   * Test for {@link BerIntegerCache#BerIntegerCache(int, int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testCreateWithInvalidRangeFail()
+  {
+    new BerIntegerCache( 10, 9 );
+  }
+
+  /**
+   * Test for {@link BerIntegerCache#BerIntegerCache(int, int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testCreateWithTooLargeRangeFail()
+  {
+    new BerIntegerCache( Integer.MIN_VALUE, Integer.MAX_VALUE );
+  }
+
+  /**
+   * Test that cached values are written identically to non-cached values.
+   */
+  @Test
+  public void testWriteCachedValues() throws IOException
+  {
+    final int[] values = { Integer.MIN_VALUE, -70000, -32769, -32768, -129, -128, -1, 0, 1, 127, 128, 255, 256,
+        32767, 32768, 65535, 65536, 0x7FFFFF, 0x800000, Integer.MAX_VALUE };
+
+    final ByteArrayOutputStream cached = new ByteArrayOutputStream();
+    final BerOutputStream cachedBos = new BerOutputStream( cached );
+    cachedBos.setIntegerCache( new BerIntegerCache( Integer.MIN_VALUE, Integer.MIN_VALUE + 10 ) );
+
+    final ByteArrayOutputStream uncached = new ByteArrayOutputStream();
+    final BerOutputStream uncachedBos = new BerOutputStream( uncached );
+    uncachedBos.setIntegerCache( null );
+
+    final ByteArrayOutputStream defaultCached = new ByteArrayOutputStream();
+    final BerOutputStream defaultBos = new BerOutputStream( defaultCached );
+    assertSame( BerIntegerCache.DEFAULT, defaultBos.getIntegerCache() );
+
+    for ( int value : values )
+    {
+      cachedBos.writeInt( value );
+      cachedBos.writeEnumeratedValue( value );
+      uncachedBos.writeInt( value );
+      uncachedBos.writeEnumeratedValue( value );
+      defaultBos.writeInt( value );
+      defaultBos.writeEnumeratedValue( value );
+    }
+
+    final BerOutputStream rangeBos = new BerOutputStream( new ByteArrayOutputStream() );
+    rangeBos.setIntegerCache( new BerIntegerCache( -1024, 65535 ) );
+    for ( int value = -1024; value <= 65535; value += 7 )
+    {
+      final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      final BerOutputStream expectedBos = new BerOutputStream( expected );
+      expectedBos.setIntegerCache( null );
+      expectedBos.writeInt( value );
+
+      final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      final BerOutputStream actualBos = new BerOutputStream( actual );
+      actualBos.setIntegerCache( rangeBos.getIntegerCache() );
+      actualBos.writeInt( value );
+
+      assertArrayEquals( expected.toByteArray(), actual.toByteArray() );
+    }
+
+    assertArrayEquals( uncached.toByteArray(), cached.toByteArray() );
+    assertArrayEquals( uncached.toByteArray(), defaultCached.toByteArray() );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( uncached.toByteArray() ) );
+    for ( int value : values )
+    {
+      assertEquals( Integer.valueOf( value ), bis.readInt() );
+      assertEquals( Integer.valueOf( value ), bis.readEnumeratedValue() );
+    }
+  }
+}
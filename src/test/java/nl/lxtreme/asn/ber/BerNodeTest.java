@@ -0,0 +1,132 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.math.*;
+
+import nl.lxtreme.asn.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerNode}.
+ */
+public class BerNodeTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link BerNode#getChildren()}.
+   */
+  @Test
+  public void testGetChildren() throws IOException
+  {
+    final byte[] encoded = BerElement.sequence( BerElement.intValue( 42 ), BerElement.utf8String( "abc" ),
+        BerElement.set( BerElement.booleanValue( true ), BerElement.nullValue() ) ).encode();
+
+    final BerNode node = BerNode.parse( encoded );
+    assertEquals( AsnIdentifier.valueOf( SEQUENCE.ordinal() | 0x20 ), node.getIdentifier() );
+    assertEquals( encoded.length, node.getEncodedLength() );
+    assertEquals( 3, node.getChildCount() );
+
+    final BerNode set = node.getChild( 2 );
+    assertTrue( set.isConstructed() );
+    assertEquals( 2, set.getChildCount() );
+    assertEquals( encoded.length - set.getEncodedLength(), set.getOffset() );
+    assertEquals( Boolean.TRUE, set.getChild( 0 ).getValue() );
+    assertNull( set.getChild( 1 ).getValue() );
+
+    assertEquals( Integer.valueOf( 42 ), node.getChild( 0 ).getValue() );
+    assertEquals( "abc", node.getChild( 1 ).getValue() );
+    assertEquals( node.getChildren(), node.getValue() );
+  }
+
+  /**
+   * Test for {@link BerNode#getInputStream()}.
+   */
+  @Test
+  public void testGetInputStreamOfTaggedNode() throws IOException
+  {
+    final AsnIdentifier tag = AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 1 );
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final BerOutputStream bos = new BerOutputStream( baos );
+    bos.writeInt( tag, 300 );
+
+    final BerNode node = BerNode.parse( baos.toByteArray() );
+    assertEquals( tag, node.getIdentifier() );
+    // The type of a context-specific value is unknown...
+    assertArrayEquals( new byte[] { 0x01, 0x2C }, ( byte[] )node.getValue() );
+    assertEquals( Integer.valueOf( 300 ), node.getInputStream().readInt( tag ) );
+  }
+
+  /**
+   * Test for {@link BerNode#getValue()}.
+   */
+  @Test
+  public void testGetValue() throws IOException
+  {
+    assertEquals( BigInteger.valueOf( 0x5A5 ), BerNode.parse( BerElement.bitString( BigInteger.valueOf( 0x5A5 ) )
+        .encode() ).getValue() );
+    assertArrayEquals( new int[] { 1, 3, 6, 1 }, ( int[] )BerNode.parse( BerElement.objectIdentifier(
+        new int[] { 1, 3, 6, 1 } ).encode() ).getValue() );
+    assertEquals( "printable", BerNode.parse( BerElement.printableString( "printable" ).encode() ).getValue() );
+    assertEquals( Integer.valueOf( -3 ), BerNode.parse( BerElement.enumeratedValue( -3 ).encode() ).getValue() );
+  }
+
+  /**
+   * Test for {@link BerNode#parse(byte[])}.
+   */
+  @Test
+  public void testParseIndefiniteLength() throws IOException
+  {
+    final byte[] encoded = { 0x30, ( byte )0x80, 0x02, 0x01, 0x07, 0x31, ( byte )0x80, 0x05, 0x00, 0x00, 0x00,
+        0x01, 0x01, ( byte )0xFF, 0x00, 0x00, 0x02, 0x01, 0x01 };
+
+    final BerNode node = BerNode.parse( encoded );
+    assertEquals( 16, node.getEncodedLength() );
+    assertEquals( 12, node.getContentLength() );
+    assertEquals( 3, node.getChildCount() );
+    assertEquals( Integer.valueOf( 7 ), node.getChild( 0 ).getValue() );
+    assertEquals( 1, node.getChild( 1 ).getChildCount() );
+    assertEquals( Boolean.TRUE, node.getChild( 2 ).getValue() );
+  }
+
+  /**
+   * Test for {@link BerNode#getChildren()}.
+   */
+  @Test( expected = IOException.class )
+  public void testParseInvalidChildLengthFail() throws IOException
+  {
+    final BerNode node = BerNode.parse( new byte[] { 0x30, 0x03, 0x02, 0x05, 0x01 } );
+    // Only the children are invalid, which is detected upon access...
+    node.getChildren();
+  }
+
+  /**
+   * Test for {@link BerNode#parse(byte[])}.
+   */
+  @Test( expected = IOException.class )
+  public void testParseMissingEndOfContentsFail() throws IOException
+  {
+    BerNode.parse( new byte[] { 0x30, ( byte )0x80, 0x02, 0x01, 0x07 } );
+  }
+
+  /**
+   * Test for {@link BerNode#parse(byte[])}.
+   */
+  @Test( expected = IOException.class )
+  public void testParseTooLongLengthFail() throws IOException
+  {
+    BerNode.parse( new byte[] { 0x04, 0x05, 0x01, 0x02 } );
+  }
+}
@@ -11,6 +11,8 @@ import static org.junit.Assert.*;
 
 import java.io.*;
 import java.math.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
 
 import nl.lxtreme.asn.*;
@@ -23,6 +25,11 @@ import org.junit.*;
  */
 public class BerOutputStreamTest
 {
+  // CONSTANTS
+
+  private static final byte[] BACK_PATCHED_SEQUENCE = { 0x30, ( byte )0x84, 0x00, 0x00, 0x00, 0x0C, 0x02, 0x01, 0x01,
+      0x31, ( byte )0x84, 0x00, 0x00, 0x00, 0x03, 0x01, 0x01, ( byte )0xFF, 0x05, 0x00 };
+
   // VARIABLES
 
   private ByteArrayOutputStream buffer;
@@ -40,6 +47,112 @@ public class BerOutputStreamTest
     this.bos = new BerOutputStream( this.buffer );
   }
 
+  /**
+   * Test for {@link BerOutputStream#setBackPatching(boolean)}.
+   */
+  @Test( expected = IllegalStateException.class )
+  public void testSetBackPatchingWithoutSeekableOutputFail()
+  {
+    this.bos.setBackPatching( true );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#BerOutputStream(FileChannel)}.
+   */
+  @Test
+  public void testWriteBackPatchedLargeSequenceToFile() throws IOException
+  {
+    final File file = File.createTempFile( "libber", ".bin" );
+    file.deleteOnExit();
+
+    final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+    try
+    {
+      final BerOutputStream out = new BerOutputStream( raf.getChannel() );
+      out.setBackPatching( true );
+
+      // Larger than the write buffer, so its length is patched in the file...
+      final BerOutputStream seq = out.writeSequenceAsStream();
+      for ( int i = 0; i < 20000; i++ )
+      {
+        seq.writeInt( i );
+      }
+      // ...while this one is still buffered when its length is patched...
+      final BerOutputStream set = seq.writeSetAsStream();
+      set.writeBoolean( true );
+      set.close();
+      seq.close();
+      out.close();
+
+      assertEquals( raf.length(), raf.getFilePointer() );
+
+      raf.seek( 0L );
+      final BerInputStream bis = new BerInputStream( new FileInputStream( raf.getFD() ) );
+      final BerInputStream seqIn = bis.readSequenceAsStream();
+      for ( int i = 0; i < 20000; i++ )
+      {
+        assertEquals( Integer.valueOf( i ), seqIn.readInt() );
+      }
+      final BerInputStream setIn = seqIn.readSetAsStream();
+      assertEquals( Boolean.TRUE, setIn.readBoolean() );
+      assertNull( bis.peekIdentifier() );
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  /**
+   * Test for {@link BerOutputStream#setBackPatching(boolean)}.
+   */
+  @Test
+  public void testWriteBackPatchedSequenceToByteBuffer() throws IOException
+  {
+    final ByteBuffer bb = ByteBuffer.allocate( 32 );
+    writeBackPatchedSequence( new BerOutputStream( bb ) );
+
+    assertArrayEquals( BACK_PATCHED_SEQUENCE, Arrays.copyOf( bb.array(), bb.position() ) );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( BACK_PATCHED_SEQUENCE ) );
+    final BerInputStream seq = bis.readSequenceAsStream();
+    assertEquals( Integer.valueOf( 1 ), seq.readInt() );
+    final BerInputStream set = seq.readSetAsStream();
+    assertEquals( Boolean.TRUE, set.readBoolean() );
+    bis.readNull();
+  }
+
+  /**
+   * Test for {@link BerOutputStream#BerOutputStream(RandomAccessFile)}.
+   */
+  @Test
+  public void testWriteBackPatchedSequenceToFile() throws IOException
+  {
+    final File file = File.createTempFile( "libber", ".bin" );
+    file.deleteOnExit();
+
+    final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+    try
+    {
+      raf.write( 'x' );
+      final BerOutputStream out = new BerOutputStream( raf );
+      writeBackPatchedSequence( out );
+      out.flush();
+
+      assertEquals( 1 + BACK_PATCHED_SEQUENCE.length, raf.length() );
+      assertEquals( raf.length(), raf.getFilePointer() );
+
+      final byte[] written = new byte[BACK_PATCHED_SEQUENCE.length];
+      raf.seek( 1L );
+      raf.readFully( written );
+      assertArrayEquals( BACK_PATCHED_SEQUENCE, written );
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
   /**
    * Test for {@link BerOutputStream#writeBitString(java.math.BigInteger)}.
    */
@@ -55,6 +168,61 @@ public class BerOutputStreamTest
     assertContent( BIT_STRING, 0x07, 0x00, 0x00, 0xa3, 0xb5, 0xf2, 0x91, 0xcd );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeBitString(BitSet)}.
+   */
+  @Test
+  public void testWriteBitStringFromBitSet() throws IOException
+  {
+    final BitSet bits = new BitSet();
+    bits.set( 0 );
+    bits.set( 9 );
+    bits.set( 10 );
+
+    this.bos.writeBitString( bits );
+    this.bos.writeBitString( new BitSet() );
+    assertContent( BIT_STRING, 0x03, 0x05, 0x80, 0x60, //
+        BIT_STRING.ordinal(), 0x01, 0x00 );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeBitString(byte[], int)}.
+   */
+  @Test
+  public void testWriteBitStringFromBytes() throws IOException
+  {
+    this.bos.writeBitString( new byte[] { 0x6e, 0x5d, ( byte )0xc0 }, 6 );
+    assertContent( BIT_STRING, 0x04, 0x06, 0x6e, 0x5d, 0xc0 );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeBitString(byte[], int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testWriteBitStringFromBytesWithInvalidUnusedBitsFail() throws IOException
+  {
+    this.bos.writeBitString( new byte[] { 0x01 }, 8 );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeBitString(long)}.
+   */
+  @Test
+  public void testWriteBitStringFromLong() throws IOException
+  {
+    this.bos.writeBitString( 0x601L );
+    this.bos.writeBitString( 0L );
+    this.bos.writeBitString( 0x8000000000000001L );
+    assertContent( BIT_STRING, 0x03, 0x05, 0x80, 0x60, //
+        BIT_STRING.ordinal(), 0x01, 0x00, //
+        BIT_STRING.ordinal(), 0x09, 0x00, 0x80, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x01 );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( this.buffer.toByteArray() ) );
+    assertEquals( Long.valueOf( 0x601L ), bis.readBitStringAsLong() );
+    assertEquals( Long.valueOf( 0L ), bis.readBitStringAsLong() );
+    assertEquals( Long.valueOf( 0x8000000000000001L ), bis.readBitStringAsLong() );
+  }
+
   /**
    * Test for {@link BerOutputStream#writeBoolean(boolean)}.
    */
@@ -70,6 +238,73 @@ public class BerOutputStreamTest
     assertContent( BOOLEAN, 0x01, 0xFF );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeBitString(java.math.BigInteger)} with
+   * CER encoding enabled.
+   */
+  @Test
+  public void testWriteCerSegmentedBitString() throws IOException
+  {
+    final BigInteger value = BigInteger.ONE.shiftLeft( 8 * 1500 + 3 );
+
+    this.bos.setCerEncoding( true );
+    this.bos.writeBitString( value );
+
+    final byte[] content = this.buffer.toByteArray();
+    // constructed bit string with indefinite length...
+    assertEquals( BIT_STRING.ordinal() | 0x20, content[0] );
+    assertEquals( ( byte )0x80, content[1] );
+    // first segment: 999 data octets, no unused bits...
+    assertEquals( BIT_STRING.ordinal(), content[2] );
+    assertEquals( ( byte )0x82, content[3] );
+    assertEquals( 0x03, content[4] );
+    assertEquals( ( byte )0xE8, content[5] );
+    assertEquals( 0x00, content[6] );
+    // ends with end-of-contents...
+    assertEquals( 0x00, content[content.length - 2] );
+    assertEquals( 0x00, content[content.length - 1] );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( content ) );
+    assertEquals( value, bis.readBitString() );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeOctetString(byte[])} with CER
+   * encoding enabled.
+   */
+  @Test
+  public void testWriteCerSegmentedOctetString() throws IOException
+  {
+    final byte[] value = new byte[2500];
+    for ( int i = 0; i < value.length; i++ )
+    {
+      value[i] = ( byte )i;
+    }
+
+    this.bos.setCerEncoding( true );
+    this.bos.writeOctetString( value );
+    // Small strings are written as is...
+    this.bos.writeOctetString( new byte[] { 0x01 } );
+
+    final byte[] content = this.buffer.toByteArray();
+    // 2 + (4 + 1000) + (4 + 1000) + (4 + 500) + 2 + 3
+    assertEquals( 2519, content.length );
+    assertEquals( OCTET_STRING.ordinal() | 0x20, content[0] );
+    assertEquals( ( byte )0x80, content[1] );
+    assertEquals( OCTET_STRING.ordinal(), content[2] );
+    assertEquals( ( byte )0x82, content[3] );
+    assertEquals( 0x03, content[4] );
+    assertEquals( ( byte )0xE8, content[5] );
+    assertEquals( OCTET_STRING.ordinal(), content[2010] );
+    assertEquals( ( byte )0x82, content[2011] );
+    assertEquals( 0x01, content[2012] );
+    assertEquals( ( byte )0xF4, content[2013] );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( content ) );
+    assertArrayEquals( value, bis.readOctetString() );
+    assertArrayEquals( new byte[] { 0x01 }, bis.readOctetString() );
+  }
+
   /**
    * Test for {@link BerOutputStream#writeSequenceAsStream()}.
    */
@@ -100,6 +335,20 @@ public class BerOutputStreamTest
     );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeConstructedAsStream(AsnIdentifier)}.
+   */
+  @Test
+  public void testWriteExplicitlyTaggedInt() throws IOException
+  {
+    final BerOutputStream tagged = this.bos.writeConstructedAsStream( AsnIdentifier.valueOf(
+        AsnClass.CONTEXT_SPECIFIC, true, 1 ) );
+    tagged.writeInt( 42 );
+    tagged.close();
+
+    assertContent( 0xA1, 0x03, 0x02, 0x01, 0x2A );
+  }
+
   /**
    * Test case for {@link BerOutputStream#writeGeneralizedTime(Calendar)}.
    */
@@ -161,6 +410,66 @@ public class BerOutputStreamTest
     assertContent( IA5_STRING, 0x0d, 0x74, 0x65, 0x73, 0x74, 0x31, 0x40, 0x72, 0x73, 0x61, 0x2e, 0x63, 0x6f, 0x6d );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeIA5String(String)}.
+   */
+  @Test
+  public void testWriteIA5StringWithNonAsciiCharacters() throws IOException
+  {
+    this.bos.writeIA5String( "\u00e9t\u20ACe\ud83d\ude00" );
+    assertContent( IA5_STRING, 0x05, '?', 't', '?', 'e', '?' );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeInt(AsnIdentifier, int)}.
+   */
+  @Test
+  public void testWriteImplicitlyTaggedValues() throws IOException
+  {
+    final AsnIdentifier tag = AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 3 );
+
+    this.bos.writeInt( tag, 256 );
+    assertContent( 0x83, 0x02, 0x01, 0x00 );
+
+    this.buffer.reset();
+
+    this.bos.writeOctetString( tag, new byte[] { 0x01, 0x02 } );
+    assertContent( 0x83, 0x02, 0x01, 0x02 );
+
+    this.buffer.reset();
+
+    this.bos.writeNull( AsnIdentifier.valueOf( AsnClass.APPLICATION, false, 30 ) );
+    assertContent( 0x5E, 0x00 );
+
+    this.buffer.reset();
+
+    this.bos.writeUTF8String( AsnIdentifier.valueOf( AsnClass.PRIVATE, true, 0 ), "ab" );
+    assertContent( 0xC0, 0x02, 'a', 'b' );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeInt(AsnIdentifier, int)} and
+   * {@link BerInputStream#readInt(AsnIdentifier)}.
+   */
+  @Test
+  public void testWriteImplicitlyTaggedValuesRoundTrip() throws IOException
+  {
+    final AsnIdentifier intTag = AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 0 );
+    final AsnIdentifier realTag = AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 1 );
+    final AsnIdentifier stringTag = AsnIdentifier.valueOf( AsnClass.APPLICATION, false, 2 );
+
+    this.bos.writeInt( intTag, -129 );
+    this.bos.writeReal( realTag, 0.375 );
+    this.bos.writeIA5String( stringTag, "tagged" );
+    this.bos.writeBitString( intTag, 0x5L );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( this.buffer.toByteArray() ) );
+    assertEquals( Integer.valueOf( -129 ), bis.readInt( intTag ) );
+    assertEquals( Double.valueOf( 0.375 ), bis.readReal( realTag ) );
+    assertEquals( "tagged", bis.readIA5String( stringTag ) );
+    assertEquals( Long.valueOf( 0x5L ), bis.readBitStringAsLong( intTag ) );
+  }
+
   /**
    * Test for {@link BerOutputStream#writeInt(int)}.
    */
@@ -206,6 +515,30 @@ public class BerOutputStreamTest
     assertContent( INTEGER, 0x04, 0x80, 0x00, 0x00, 0x00 );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeUTF8String(String)}.
+   */
+  @Test
+  public void testWriteLongUTF8String() throws IOException
+  {
+    final StringBuilder sb = new StringBuilder();
+    for ( int i = 0; i < 100; i++ )
+    {
+      sb.append( "a\u00e9\u20AC\ud83d\ude00" );
+    }
+    // Unpaired surrogate...
+    sb.append( '\ud83d' );
+    final String value = sb.toString();
+
+    this.bos.writeUTF8String( value );
+
+    final byte[] expected = value.getBytes( "UTF8" );
+    final byte[] content = this.buffer.toByteArray();
+    assertEquals( 1001, expected.length );
+    assertEquals( expected.length + 4, content.length );
+    assertArrayEquals( expected, Arrays.copyOfRange( content, 4, content.length ) );
+  }
+
   /**
    * Test for {@link BerOutputStream#writeOctetString(byte[])}.
    */
@@ -303,6 +636,90 @@ public class BerOutputStreamTest
     assertContent( OCTET_STRING, content.length, 0x12, 0x34, 0x56, 0x78, 0x78, 0x65, 0x43, 0x21 );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeOctetString(FileChannel, long, int)}.
+   */
+  @Test
+  public void testWriteOctetStringFromFileChannel() throws IOException
+  {
+    final File file = File.createTempFile( "libber", ".bin" );
+    file.deleteOnExit();
+
+    final FileOutputStream fos = new FileOutputStream( file );
+    try
+    {
+      fos.write( new byte[] { 'x', 'h', 'e', 'l', 'l', 'o', 'x' } );
+    }
+    finally
+    {
+      fos.close();
+    }
+
+    final RandomAccessFile raf = new RandomAccessFile( file, "r" );
+    try
+    {
+      final FileChannel fc = raf.getChannel();
+
+      // Copied through the heap...
+      this.bos.writeOctetString( fc, 1L, 5 );
+      assertContent( OCTET_STRING, 0x05, 'h', 'e', 'l', 'l', 'o' );
+
+      this.buffer.reset();
+
+      // Transferred directly to the channel...
+      final BerOutputStream channelBos = new BerOutputStream( Channels.newChannel( this.buffer ) );
+      channelBos.writeOctetString( fc, 1L, 5 );
+      assertContent( OCTET_STRING, 0x05, 'h', 'e', 'l', 'l', 'o' );
+
+      assertEquals( 0L, fc.position() );
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeOctetString(InputStream, int)}.
+   */
+  @Test
+  public void testWriteOctetStringFromInputStream() throws IOException
+  {
+    final byte[] value = new byte[20000];
+    for ( int i = 0; i < value.length; i++ )
+    {
+      value[i] = ( byte )( i * 31 );
+    }
+
+    this.bos.writeOctetString( new ByteArrayInputStream( value ), value.length );
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( this.buffer.toByteArray() ) );
+    assertArrayEquals( value, bis.readOctetString() );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeOctetString(InputStream, int)}.
+   */
+  @Test( expected = EOFException.class )
+  public void testWriteOctetStringFromShortInputStreamFail() throws IOException
+  {
+    // Should fail...
+    this.bos.writeOctetString( new ByteArrayInputStream( new byte[] { 'a', 'b' } ), 3 );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeOctetString(ReadableByteChannel, int)}.
+   */
+  @Test
+  public void testWriteOctetStringFromReadableByteChannel() throws IOException
+  {
+    final InputStream is = new ByteArrayInputStream( new byte[] { 'h', 'e', 'l', 'l', 'o', 'x' } );
+
+    this.bos.setCerEncoding( true );
+    this.bos.writeOctetString( Channels.newChannel( is ), 5 );
+    assertContent( OCTET_STRING, 0x05, 'h', 'e', 'l', 'l', 'o' );
+  }
+
   /**
    * Test for {@link BerOutputStream#writePrintableString(String)}.
    */
@@ -321,6 +738,52 @@ public class BerOutputStreamTest
 
     this.bos.writePrintableString( "" );
     assertContent( PRINTABLE_STRING, 0x00 );
+
+    this.buffer.reset();
+
+    this.bos.writePrintableString( "a_b*c(1)=?'+,-./:;\n" );
+    assertContent( PRINTABLE_STRING, 0x0F, 'a', 'b', 'c', '(', '1', ')', '=', '?', '\'', '+', ',', '-', '.', '/', ':' );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeReal(double)}.
+   */
+  @Test
+  public void testWriteReal() throws IOException
+  {
+    this.bos.writeReal( 0.0 );
+    this.bos.writeReal( 1.0 );
+    this.bos.writeReal( -0.75 );
+    this.bos.writeReal( 1024.0 );
+    this.bos.writeReal( Double.POSITIVE_INFINITY );
+    this.bos.writeReal( -0.0 );
+    assertContent( REAL, 0x00, //
+        REAL.ordinal(), 0x03, 0x80, 0x00, 0x01, // 1 x 2^0
+        REAL.ordinal(), 0x03, 0xC0, 0xFE, 0x03, // -3 x 2^-2
+        REAL.ordinal(), 0x03, 0x80, 0x0A, 0x01, // 1 x 2^10
+        REAL.ordinal(), 0x01, 0x40, //
+        REAL.ordinal(), 0x01, 0x43 );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeReal(double)} that all kinds of
+   * double values are written exactly.
+   */
+  @Test
+  public void testWriteRealRoundTrip() throws IOException
+  {
+    final double[] values = { Math.PI, -Math.E, 1.0e300, -1.0e-300, Double.MAX_VALUE, Double.MIN_VALUE,
+        Double.MIN_NORMAL, 0.1, Double.NEGATIVE_INFINITY, Double.NaN, -0.0, 123456789.0 };
+    for ( double value : values )
+    {
+      this.bos.writeReal( value );
+    }
+
+    final BerInputStream bis = new BerInputStream( new ByteArrayInputStream( this.buffer.toByteArray() ) );
+    for ( double value : values )
+    {
+      assertEquals( Double.doubleToLongBits( value ), Double.doubleToLongBits( bis.readReal().doubleValue() ) );
+    }
   }
 
   /**
@@ -343,6 +806,57 @@ public class BerOutputStreamTest
     assertContent( RELATIVE_OID, 0x07, 0x01, 0x02, 0x86, 0x48, 0x86, 0xf7, 0x0d );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeSequenceAsIndefiniteStream()}.
+   */
+  @Test
+  public void testWriteSequenceAsIndefiniteStream() throws IOException
+  {
+    final BerOutputStream seqStream = this.bos.writeSequenceAsIndefiniteStream();
+    seqStream.writeBoolean( true );
+
+    // Values should be written directly...
+    assertContent( SEQUENCE.ordinal() | 0x20, 0x80, //
+        BOOLEAN.ordinal(), 0x01, 0xFF );
+
+    final BerOutputStream setStream = seqStream.writeSetAsIndefiniteStream();
+    setStream.writeInt( 0x12 );
+    setStream.close();
+    // Closing twice should not write another end-of-contents...
+    setStream.close();
+
+    seqStream.close();
+
+    assertContent( SEQUENCE.ordinal() | 0x20, 0x80, //
+        BOOLEAN.ordinal(), 0x01, 0xFF, //
+        SET.ordinal() | 0x20, 0x80, //
+        INTEGER.ordinal(), 0x01, 0x12, //
+        0x00, 0x00, //
+        0x00, 0x00 //
+    );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeSequenceAsStream()} with CER encoding
+   * enabled.
+   */
+  @Test
+  public void testWriteSequenceAsStreamWithCerEncoding() throws IOException
+  {
+    this.bos.setCerEncoding( true );
+
+    final BerOutputStream seqStream = this.bos.writeSequenceAsStream();
+    assertTrue( seqStream.isCerEncoding() );
+
+    seqStream.writeString( "1234" );
+    seqStream.close();
+
+    assertContent( SEQUENCE.ordinal() | 0x20, 0x80, //
+        OCTET_STRING.ordinal(), 0x04, '1', '2', '3', '4', //
+        0x00, 0x00 //
+    );
+  }
+
   /**
    * Test for {@link BerOutputStream#writeSequenceAsStream()}.
    */
@@ -361,6 +875,59 @@ public class BerOutputStreamTest
         OCTET_STRING.ordinal(), 0x04, '1', '2', '3', '4' );
   }
 
+  /**
+   * Test for {@link BerOutputStream#writeSequenceAsStream()} that consecutive
+   * values at the same depth are written by the same stream.
+   */
+  @Test
+  public void testWriteSequencesAsStreamReusesStreams() throws IOException
+  {
+    final BerOutputStream outer = this.bos.writeSequenceAsStream();
+    final BerOutputStream inner = outer.writeSequenceAsStream();
+    inner.writeInt( 1 );
+    inner.close();
+    outer.close();
+
+    assertSame( outer, this.bos.writeSequenceAsStream() );
+    assertSame( inner, outer.writeSetAsStream() );
+    // A sibling stream cannot share the stream that is still open...
+    assertNotSame( inner, outer.writeSetAsStream() );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeSequenceAsStream()} that reused
+   * buffers do not leak content between consecutive values.
+   */
+  @Test
+  public void testWriteSequencesOfVaryingSizeAsStream() throws IOException
+  {
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final BerOutputStream expectedBos = new BerOutputStream( expected );
+
+    final int[] sizes = { 10, 5000, 0, 300, 70000, 1, 2000 };
+    for ( int size : sizes )
+    {
+      final byte[] content = new byte[size];
+      Arrays.fill( content, ( byte )size );
+
+      final BerOutputStream outer = this.bos.writeSequenceAsStream();
+      final BerOutputStream inner = outer.writeSetAsStream();
+      inner.writeOctetString( content );
+      inner.close();
+      outer.writeInt( size );
+      outer.close();
+
+      final int innerLength = BerElement.getEncodedLength( content.length );
+      expectedBos.writeSequenceHeader( BerElement.getEncodedLength( innerLength )
+          + BerElement.getEncodedLength( BerEncoding.getIntegerLength( size ) ) );
+      expectedBos.writeSetHeader( innerLength );
+      expectedBos.writeOctetString( content );
+      expectedBos.writeInt( size );
+    }
+
+    assertArrayEquals( expected.toByteArray(), this.buffer.toByteArray() );
+  }
+
   /**
    * Test for {@link BerOutputStream#writeSetAsStream()}.
    */
@@ -379,6 +946,65 @@ public class BerOutputStreamTest
         OCTET_STRING.ordinal(), 0x04, '1', '2', '3', '4' );
   }
 
+  /**
+   * Test for {@link BerOutputStream#BerOutputStream(ByteBuffer)}.
+   */
+  @Test
+  public void testWriteToByteBuffer() throws IOException
+  {
+    ByteBuffer bb = ByteBuffer.allocate( 8 );
+    BerOutputStream bbos = new BerOutputStream( bb );
+
+    bbos.writeInt( 0x1234 );
+    bbos.writeBoolean( true );
+
+    assertEquals( 7, bb.position() );
+    assertArrayEquals( new byte[] { ( byte )INTEGER.ordinal(), 0x02, 0x12, 0x34, ( byte )BOOLEAN.ordinal(), 0x01,
+        ( byte )0xFF }, Arrays.copyOf( bb.array(), bb.position() ) );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#BerOutputStream(ByteBuffer)}.
+   */
+  @Test( expected = IOException.class )
+  public void testWriteToByteBufferOverflowFail() throws IOException
+  {
+    BerOutputStream bbos = new BerOutputStream( ByteBuffer.allocate( 4 ) );
+
+    bbos.writeOctetString( new byte[] { 1, 2, 3 } );
+  }
+
+  /**
+   * Test for {@link BerOutputStream#writeInt(int)}.
+   */
+  @Test
+  public void testWriteUsesBulkWrites() throws IOException
+  {
+    final int[] calls = { 0 };
+    BerOutputStream cbos = new BerOutputStream( new OutputStream()
+    {
+      @Override
+      public void write( final byte[] aBuffer, final int aOffset, final int aLength )
+      {
+        calls[0]++;
+      }
+
+      @Override
+      public void write( final int aByte )
+      {
+        fail( "Unexpected single byte write!" );
+      }
+    } );
+
+    cbos.writeInt( 0x12345678 );
+    cbos.writeString( "hello world" );
+    assertEquals( 2, calls[0] );
+
+    // Large values are written as header + content...
+    cbos.writeOctetString( new byte[1024] );
+    assertEquals( 4, calls[0] );
+  }
+
   /**
    * Test case for {@link BerOutputStream#writeUtcTime(Date)}.
    */
@@ -477,4 +1103,27 @@ public class BerOutputStreamTest
     final byte[] real = this.buffer.toByteArray();
     assertArrayEquals( expected, real );
   }
+
+  /**
+   * Writes a sequence with a nested set, followed by a null value, with
+   * back-patching enabled.
+   * 
+   * @param aOutStream
+   *          the output stream to write to.
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  private void writeBackPatchedSequence( final BerOutputStream aOutStream ) throws IOException
+  {
+    aOutStream.setBackPatching( true );
+
+    final BerOutputStream seq = aOutStream.writeSequenceAsStream();
+    seq.writeInt( 1 );
+    final BerOutputStream set = seq.writeSetAsStream();
+    set.writeBoolean( true );
+    set.close();
+    seq.close();
+
+    aOutStream.writeNull();
+  }
 }
@@ -0,0 +1,175 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerRecords}.
+ */
+public class BerRecordsTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link BerRecords.BufferSpliterator#trySplit()}.
+   */
+  @Test
+  public void testSplitAtRecordBoundary() throws IOException
+  {
+    final byte[] records = IntRecords.encode( 0, 500 );
+
+    final Spliterator<Integer> suffix = new BerRecords.BufferSpliterator<Integer>( ByteBuffer.wrap( records ), 0,
+        records.length, IntRecords.DECODER, BerDecoderLimits.UNLIMITED );
+    final Spliterator<Integer> prefix = suffix.trySplit();
+    assertNotNull( prefix );
+
+    final List<Integer> result = new ArrayList<Integer>();
+    while ( prefix.tryAdvance( result::add ) )
+    {
+      // Nop
+    }
+    assertTrue( result.size() > 0 );
+    assertTrue( result.size() < 500 );
+    while ( suffix.tryAdvance( result::add ) )
+    {
+      // Nop
+    }
+    assertEquals( expectedRecords( 500 ), result );
+  }
+
+  /**
+   * Test for {@link BerRecords.BufferSpliterator#trySplit()}.
+   */
+  @Test
+  public void testSplitSingleRecord() throws IOException
+  {
+    final byte[] records = IntRecords.encode( 0, 1 );
+
+    final Spliterator<Integer> spliterator = new BerRecords.BufferSpliterator<Integer>( ByteBuffer.wrap( records ),
+        0, records.length, IntRecords.DECODER, BerDecoderLimits.UNLIMITED );
+    assertNull( spliterator.trySplit() );
+  }
+
+  /**
+   * Test for {@link BerRecords#stream(byte[], BerRecords.Decoder)}.
+   */
+  @Test
+  public void testStreamBuffer() throws IOException
+  {
+    final List<Integer> result = BerRecords.stream( IntRecords.encode( 0, 1000 ), IntRecords.DECODER ).collect(
+        Collectors.toList() );
+    assertEquals( expectedRecords( 1000 ), result );
+  }
+
+  /**
+   * Test for {@link BerRecords#stream(byte[], BerRecords.Decoder)}.
+   */
+  @Test
+  public void testStreamBufferInParallel() throws IOException
+  {
+    final List<Integer> result = BerRecords.stream( IntRecords.encode( 0, 10000 ), IntRecords.DECODER ).parallel()
+        .collect( Collectors.toList() );
+    assertEquals( expectedRecords( 10000 ), result );
+  }
+
+  /**
+   * Test for {@link BerRecords#stream(byte[], BerRecords.Decoder)}.
+   */
+  @Test
+  public void testStreamIndefiniteLengthRecords() throws IOException
+  {
+    // SEQUENCE { INTEGER 5 }, SEQUENCE { SEQUENCE { INTEGER 6 } }...
+    final byte[] records = { 0x30, ( byte )0x80, 0x02, 0x01, 0x05, 0x00, 0x00, //
+        0x30, ( byte )0x80, 0x30, ( byte )0x80, 0x02, 0x01, 0x06, 0x00, 0x00, 0x00, 0x00 };
+
+    final BerRecords.Decoder<Integer> decoder = new BerRecords.Decoder<Integer>()
+    {
+      @Override
+      public Integer decode( final BerInputStream aInput ) throws IOException
+      {
+        BerInputStream seq = aInput.readSequenceAsStream();
+        if ( seq.peekIdentifier().isConstructed() )
+        {
+          seq = seq.readSequenceAsStream();
+        }
+        return seq.readInt();
+      }
+    };
+
+    final List<Integer> result = BerRecords.stream( records, decoder ).collect( Collectors.toList() );
+    assertEquals( Arrays.asList( 5, 6 ), result );
+  }
+
+  /**
+   * Test for {@link BerRecords#stream(InputStream, BerRecords.Decoder)}.
+   */
+  @Test
+  public void testStreamInputStream() throws IOException
+  {
+    final ByteArrayInputStream input = new ByteArrayInputStream( IntRecords.encode( 0, 100 ) );
+
+    final Stream<Integer> stream = BerRecords.stream( input, IntRecords.DECODER );
+    // Only the records needed should be read...
+    assertEquals( Arrays.asList( 0, 1, 2 ), stream.limit( 3 ).collect( Collectors.toList() ) );
+    assertTrue( input.available() > 0 );
+    stream.close();
+  }
+
+  /**
+   * Test for {@link BerRecords#stream(Path, BerRecords.Decoder)}.
+   */
+  @Test
+  public void testStreamPath() throws IOException
+  {
+    final Path file = Files.createTempFile( "records", ".ber" );
+    try
+    {
+      Files.write( file, IntRecords.encode( 0, 5000 ) );
+
+      final long sum = BerRecords.stream( file, IntRecords.DECODER ).parallel().mapToLong( Integer::longValue ).sum();
+      assertEquals( ( 5000L * 4999L ) / 2L, sum );
+    }
+    finally
+    {
+      Files.delete( file );
+    }
+  }
+
+  /**
+   * Test for {@link BerRecords#stream(byte[], BerRecords.Decoder)}.
+   */
+  @Test( expected = UncheckedIOException.class )
+  public void testStreamTruncatedRecordFail() throws IOException
+  {
+    final byte[] records = IntRecords.encode( 0, 10 );
+
+    BerRecords.stream( Arrays.copyOf( records, records.length - 1 ), IntRecords.DECODER ).count();
+  }
+
+  /**
+   * Returns the list 0..count-1.
+   */
+  private List<Integer> expectedRecords( final int aCount )
+  {
+    final List<Integer> result = new ArrayList<Integer>();
+    for ( int i = 0; i < aCount; i++ )
+    {
+      result.add( Integer.valueOf( i ) );
+    }
+    return result;
+  }
+}
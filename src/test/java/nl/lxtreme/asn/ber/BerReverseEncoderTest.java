@@ -0,0 +1,147 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.math.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerReverseEncoder}.
+ */
+public class BerReverseEncoderTest
+{
+  // VARIABLES
+
+  private ByteArrayOutputStream buffer;
+  private BerOutputStream bos;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.buffer = new ByteArrayOutputStream();
+    this.bos = new BerOutputStream( this.buffer );
+  }
+
+  /**
+   * Test for {@link BerReverseEncoder#endSequence(int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testEndSequenceWithInvalidMarkFail()
+  {
+    BerReverseEncoder encoder = new BerReverseEncoder();
+    encoder.writeInt( 1 );
+    encoder.endSequence( 10 );
+  }
+
+  /**
+   * Test for {@link BerReverseEncoder#reset()}.
+   */
+  @Test
+  public void testReset()
+  {
+    BerReverseEncoder encoder = new BerReverseEncoder();
+    encoder.writeInt( 1 );
+    encoder.reset();
+
+    assertEquals( 0, encoder.size() );
+
+    encoder.writeNull();
+    assertArrayEquals( new byte[] { 0x05, 0x00 }, encoder.toByteArray() );
+  }
+
+  /**
+   * Test for {@link BerReverseEncoder#writeOctetString(byte[])}.
+   */
+  @Test
+  public void testWriteLongOctetString() throws IOException
+  {
+    byte[] content = new byte[300];
+    for ( int i = 0; i < content.length; i++ )
+    {
+      content[i] = ( byte )i;
+    }
+
+    // Start small, to force the buffer to grow...
+    BerReverseEncoder encoder = new BerReverseEncoder( 1 );
+    encoder.writeOctetString( content );
+    encoder.writeInt( 0x123456 );
+
+    this.bos.writeInt( 0x123456 );
+    this.bos.writeOctetString( content );
+
+    assertArrayEquals( this.buffer.toByteArray(), encoder.toByteArray() );
+  }
+
+  /**
+   * Test for {@link BerReverseEncoder#endSequence(int)} and
+   * {@link BerReverseEncoder#endSet(int)}.
+   */
+  @Test
+  public void testWriteNestedSequences() throws IOException
+  {
+    BerReverseEncoder encoder = new BerReverseEncoder();
+
+    int mainMark = encoder.mark();
+    encoder.writeString( "1234" );
+
+    int setMark = encoder.mark();
+    encoder.writeNull();
+    encoder.writeBitString( new BigInteger( "A3B5F291CD", 16 ) );
+    encoder.endSet( setMark );
+
+    int nestedMark = encoder.mark();
+    encoder.writeBoolean( false );
+    encoder.writeEnumeratedValue( -129 );
+    encoder.writeString( "4567" );
+    encoder.endSequence( nestedMark );
+
+    encoder.writeObjectIdentifier( new int[] { 1, 3, 6, 1, 4, 1, 0x7FFFFF } );
+    encoder.writeInt( 0x1234 );
+    encoder.writeBoolean( true );
+    encoder.endSequence( mainMark );
+
+    BerOutputStream mainSeqStream = this.bos.writeSequenceAsStream();
+    mainSeqStream.writeBoolean( true );
+    mainSeqStream.writeInt( 0x1234 );
+    mainSeqStream.writeObjectIdentifier( new int[] { 1, 3, 6, 1, 4, 1, 0x7FFFFF } );
+
+    BerOutputStream nestedSeqStream = mainSeqStream.writeSequenceAsStream();
+    nestedSeqStream.writeString( "4567" );
+    nestedSeqStream.writeEnumeratedValue( -129 );
+    nestedSeqStream.writeBoolean( false );
+    nestedSeqStream.close();
+
+    BerOutputStream setStream = mainSeqStream.writeSetAsStream();
+    setStream.writeBitString( new BigInteger( "A3B5F291CD", 16 ) );
+    setStream.writeNull();
+    setStream.close();
+
+    mainSeqStream.writeString( "1234" );
+    mainSeqStream.close();
+
+    assertArrayEquals( this.buffer.toByteArray(), encoder.toByteArray() );
+
+    // Verify the encoding can be read back...
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    encoder.writeTo( out );
+
+    BerInputStream seqIS = new BerInputStream( new ByteArrayInputStream( out.toByteArray() ) ).readSequenceAsStream();
+    assertEquals( Boolean.TRUE, seqIS.readBoolean() );
+    assertEquals( Integer.valueOf( 0x1234 ), seqIS.readInt() );
+    assertArrayEquals( new int[] { 1, 3, 6, 1, 4, 1, 0x7FFFFF }, seqIS.readObjectIdentifier() );
+  }
+}
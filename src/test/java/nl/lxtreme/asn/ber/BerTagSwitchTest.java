@@ -0,0 +1,69 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import nl.lxtreme.asn.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerTagSwitch}.
+ */
+public class BerTagSwitchTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link BerTagSwitch#BerTagSwitch(AsnIdentifier...)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testCreateWithDuplicateTagsFail()
+  {
+    new BerTagSwitch( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 1 ),
+        AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, true, 1 ) );
+  }
+
+  /**
+   * Test for {@link BerTagSwitch#indexOf(AsnIdentifier)}.
+   */
+  @Test
+  public void testIndexOfIdentifier()
+  {
+    final BerTagSwitch tagSwitch = new BerTagSwitch( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 0 ),
+        AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, true, 1 ), new AsnIdentifier( AsnType.INTEGER ) );
+
+    assertEquals( 3, tagSwitch.getSize() );
+    assertEquals( 0, tagSwitch.indexOf( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 0 ) ) );
+    assertEquals( 0, tagSwitch.indexOf( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, true, 0 ) ) );
+    assertEquals( 1, tagSwitch.indexOf( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 1 ) ) );
+    assertEquals( 2, tagSwitch.indexOf( new AsnIdentifier( AsnType.INTEGER ) ) );
+    assertEquals( BerTagSwitch.NO_MATCH, tagSwitch.indexOf( AsnIdentifier.valueOf( AsnClass.APPLICATION, false, 0 ) ) );
+    assertEquals( BerTagSwitch.NO_MATCH, tagSwitch.indexOf( ( AsnIdentifier )null ) );
+  }
+
+  /**
+   * Test for {@link BerTagSwitch#indexOf(int)}.
+   */
+  @Test
+  public void testIndexOfOctet()
+  {
+    final BerTagSwitch tagSwitch = new BerTagSwitch( AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, false, 3 ),
+        AsnIdentifier.valueOf( AsnClass.APPLICATION, true, 30 ) );
+
+    assertEquals( 2, tagSwitch.getSize() );
+    assertEquals( 0, tagSwitch.indexOf( 0x83 ) );
+    assertEquals( 0, tagSwitch.indexOf( 0xA3 ) );
+    assertEquals( 1, tagSwitch.indexOf( 0x5E ) );
+    assertEquals( 1, tagSwitch.indexOf( 0x7E ) );
+    assertEquals( BerTagSwitch.NO_MATCH, tagSwitch.indexOf( 0x03 ) );
+    assertEquals( BerTagSwitch.NO_MATCH, tagSwitch.indexOf( -1 ) );
+    assertEquals( BerTagSwitch.NO_MATCH, tagSwitch.indexOf( 0x183 ) );
+  }
+}
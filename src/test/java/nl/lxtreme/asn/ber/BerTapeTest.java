@@ -0,0 +1,163 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import nl.lxtreme.asn.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerTape}.
+ */
+public class BerTapeTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link BerTape.Cursor}.
+   */
+  @Test
+  public void testNavigateWithCursor() throws IOException
+  {
+    final byte[] encoded = BerElement.sequence( BerElement.intValue( -300 ),
+        BerElement.sequence( BerElement.booleanValue( true ), BerElement.nullValue() ), BerElement.intValue( 7 ) )
+        .encode();
+
+    final BerTape tape = BerTape.parse( encoded );
+    assertEquals( 6, tape.getCount() );
+
+    final BerTape.Cursor cursor = tape.newCursor();
+    assertTrue( cursor.isValid() );
+    assertEquals( AsnIdentifier.valueOf( SEQUENCE.ordinal() | 0x20 ), cursor.getIdentifier() );
+    assertTrue( cursor.isConstructed() );
+
+    assertTrue( cursor.toFirstChild() );
+    assertEquals( -300, cursor.getInt() );
+    assertFalse( cursor.toFirstChild() );
+
+    assertTrue( cursor.toNextSibling() );
+    assertTrue( cursor.toFirstChild() );
+    assertTrue( cursor.getBoolean() );
+    assertTrue( cursor.toNextSibling() );
+    assertEquals( NULL.ordinal(), cursor.getTag() );
+    assertFalse( cursor.toNextSibling() );
+
+    assertTrue( cursor.toParent() );
+    assertTrue( cursor.toNextSibling() );
+    assertEquals( 7L, cursor.getLong() );
+    assertEquals( 5, cursor.getIndex() );
+
+    assertTrue( cursor.toParent() );
+    assertFalse( cursor.toParent() );
+    assertFalse( cursor.toNextSibling() );
+  }
+
+  /**
+   * Test for {@link BerTape#parse(byte[])}.
+   */
+  @Test
+  public void testParseEmptyBuffer() throws IOException
+  {
+    final BerTape tape = BerTape.parse( new byte[0] );
+    assertEquals( 0, tape.getCount() );
+    assertFalse( tape.newCursor().isValid() );
+  }
+
+  /**
+   * Test for {@link BerTape#parse(byte[], int, int, BerDecoderLimits)}.
+   */
+  @Test( expected = IOException.class )
+  public void testParseExceedingDepthFail() throws IOException
+  {
+    final byte[] encoded = { 0x30, 0x04, 0x30, 0x02, 0x30, 0x00 };
+    BerTape.parse( encoded, 0, encoded.length, new BerDecoderLimits( 100, 2, 1000, 10 ) );
+  }
+
+  /**
+   * Test for {@link BerTape#parse(byte[])}.
+   */
+  @Test
+  public void testParseIndefiniteLength() throws IOException
+  {
+    final byte[] encoded = { 0x30, ( byte )0x80, 0x02, 0x01, 0x07, 0x31, ( byte )0x80, 0x05, 0x00, 0x00, 0x00,
+        0x30, 0x00, 0x00, 0x00, 0x02, 0x01, 0x01 };
+
+    final BerTape tape = BerTape.parse( encoded );
+    assertEquals( 6, tape.getCount() );
+
+    // SEQUENCE { INTEGER, SET { NULL }, SEQUENCE {} }, INTEGER
+    assertEquals( BerTape.NONE, tape.getParent( 0 ) );
+    assertEquals( 11, tape.getContentLength( 0 ) );
+    assertEquals( 5, tape.getNextSibling( 0 ) );
+    assertEquals( 1, tape.getFirstChild( 0 ) );
+    assertEquals( 2, tape.getNextSibling( 1 ) );
+    assertEquals( 2, tape.getContentLength( 2 ) );
+    assertEquals( 3, tape.getFirstChild( 2 ) );
+    assertEquals( 2, tape.getParent( 3 ) );
+    assertEquals( 4, tape.getNextSibling( 2 ) );
+    assertEquals( 0, tape.getContentLength( 4 ) );
+    assertEquals( BerTape.NONE, tape.getFirstChild( 4 ) );
+    assertEquals( BerTape.NONE, tape.getNextSibling( 4 ) );
+    assertEquals( BerTape.NONE, tape.getParent( 5 ) );
+    assertEquals( 17, tape.getContentOffset( 5 ) );
+  }
+
+  /**
+   * Test for {@link BerTape#parse(byte[])}.
+   */
+  @Test
+  public void testParseManyValues() throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final BerOutputStream bos = new BerOutputStream( baos );
+    for ( int i = 0; i < 1000; i++ )
+    {
+      final BerOutputStream seq = bos.writeSequenceAsStream();
+      seq.writeInt( i );
+      seq.writeUTF8String( "value" + i );
+      seq.close();
+    }
+
+    final BerTape tape = BerTape.parse( baos.toByteArray() );
+    assertEquals( 3000, tape.getCount() );
+
+    final BerTape.Cursor cursor = tape.newCursor();
+    int i = 0;
+    do
+    {
+      cursor.toFirstChild();
+      assertEquals( i++, cursor.getInt() );
+      cursor.toParent();
+    }
+    while ( cursor.toNextSibling() );
+    assertEquals( 1000, i );
+  }
+
+  /**
+   * Test for {@link BerTape#parse(byte[])}.
+   */
+  @Test( expected = IOException.class )
+  public void testParseMissingEndOfContentsFail() throws IOException
+  {
+    BerTape.parse( new byte[] { 0x30, 0x05, 0x30, ( byte )0x80, 0x02, 0x01, 0x01 } );
+  }
+
+  /**
+   * Test for {@link BerTape#parse(byte[])}.
+   */
+  @Test( expected = IOException.class )
+  public void testParseTooLongChildFail() throws IOException
+  {
+    BerTape.parse( new byte[] { 0x30, 0x03, 0x04, 0x05, 0x01, 0x02, 0x03, 0x04, 0x05 } );
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerTemplate}.
+ */
+public class BerTemplateTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link BerTemplate.Builder#build()}.
+   */
+  @Test
+  public void testConstantTemplateIsFolded() throws IOException
+  {
+    final BerTemplate.Builder builder = new BerTemplate.Builder();
+    builder.beginSequence();
+    builder.writeInt( 1 );
+    builder.beginSet();
+    builder.end();
+    builder.writeObjectIdentifier( new int[] { 1, 3, 6, 1 } );
+    builder.end();
+
+    final BerTemplate template = builder.build();
+    assertEquals( 0, template.getSlotCount() );
+
+    final BerElement expected = BerElement.sequence( BerElement.intValue( 1 ), BerElement.set(),
+        BerElement.objectIdentifier( new int[] { 1, 3, 6, 1 } ) );
+    assertArrayEquals( expected.encode(), template.createMessage().encode() );
+  }
+
+  /**
+   * Test for {@link BerTemplate.Builder#end()}.
+   */
+  @Test( expected = IllegalStateException.class )
+  public void testEndWithoutBeginFail()
+  {
+    new BerTemplate.Builder().end();
+  }
+
+  /**
+   * Test for {@link BerTemplate.Message#setInt(int, int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testSetSlotWithWrongTypeFail()
+  {
+    final BerTemplate.Builder builder = new BerTemplate.Builder();
+    final int slot = builder.addSlot( OCTET_STRING );
+
+    // Should fail...
+    builder.build().createMessage().setInt( slot, 1 );
+  }
+
+  /**
+   * Test for {@link BerTemplate.Message#encode()}.
+   */
+  @Test( expected = IllegalStateException.class )
+  public void testUnsetSlotFail()
+  {
+    final BerTemplate.Builder builder = new BerTemplate.Builder();
+    builder.addSlot( INTEGER );
+
+    // Should fail...
+    builder.build().createMessage().encode();
+  }
+
+  /**
+   * Test for {@link BerTemplate.Message#writeTo(BerOutputStream)}.
+   */
+  @Test
+  public void testWriteMessageWithSlots() throws IOException
+  {
+    final int[] trapOID = { 1, 3, 6, 1, 4, 1, 4242 };
+
+    final BerTemplate.Builder builder = new BerTemplate.Builder();
+    builder.beginSequence();
+    builder.writeInt( 1 );
+    builder.writeString( "public" );
+    builder.beginSequence();
+    builder.writeObjectIdentifier( trapOID );
+    final int id = builder.addSlot( INTEGER );
+    final int payload = builder.addSlot( OCTET_STRING );
+    builder.beginSequence();
+    builder.writeNull();
+    builder.end();
+    builder.end();
+    final int flag = builder.addSlot( BOOLEAN );
+    builder.writeEnumeratedValue( 3 );
+    builder.end();
+
+    final BerTemplate template = builder.build();
+    assertEquals( 3, template.getSlotCount() );
+    assertEquals( OCTET_STRING, template.getSlotType( payload ) );
+
+    final BerTemplate.Message message = template.createMessage();
+    // Reuse the same message for payloads with different length encodings...
+    for ( int length : new int[] { 0, 5, 200, 70000 } )
+    {
+      final byte[] content = new byte[length];
+      message.setInt( id, length * 31 );
+      message.setOctetString( payload, content );
+      message.setBoolean( flag, ( length % 2 ) == 0 );
+
+      final BerElement expected = BerElement.sequence( BerElement.intValue( 1 ), BerElement.string( "public" ), //
+          BerElement.sequence( BerElement.objectIdentifier( trapOID ), BerElement.intValue( length * 31 ),
+              BerElement.octetString( content ), BerElement.sequence( BerElement.nullValue() ) ), //
+          BerElement.booleanValue( ( length % 2 ) == 0 ), BerElement.enumeratedValue( 3 ) );
+
+      assertEquals( expected.getEncodedLength(), message.getEncodedLength() );
+      assertArrayEquals( expected.encode(), message.encode() );
+
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      message.writeTo( new BerOutputStream( baos ) );
+      assertArrayEquals( expected.encode(), baos.toByteArray() );
+    }
+  }
+}
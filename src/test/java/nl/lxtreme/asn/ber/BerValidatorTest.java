@@ -0,0 +1,221 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static nl.lxtreme.asn.AsnType.*;
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import nl.lxtreme.asn.ber.BerValidator.Violation;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link BerValidator}.
+ */
+public class BerValidatorTest
+{
+  // CONSTANTS
+
+  private static final int CONSTRUCTED = 0x20;
+
+  // VARIABLES
+
+  private BerValidator validator;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.validator = new BerValidator( 4, 1024 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testConstructedIntegerIsRejected()
+  {
+    assertInvalid( Violation.CONSTRUCTED_PRIMITIVE, 0, INTEGER.ordinal() | CONSTRUCTED, 0x03, //
+        INTEGER.ordinal(), 0x01, 0x01 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testDepthLimitIsEnforced()
+  {
+    final int seq = SEQUENCE.ordinal() | CONSTRUCTED;
+    assertValid( seq, 0x08, seq, 0x06, seq, 0x04, seq, 0x02, NULL.ordinal(), 0x00 );
+    assertInvalid( Violation.DEPTH_EXCEEDED, 8, seq, 0x0A, seq, 0x08, seq, 0x06, seq, 0x04, seq, 0x02, NULL.ordinal(),
+        0x00 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testHostileLengthIsRejected()
+  {
+    // Claims 2 GB of content...
+    assertInvalid( Violation.LENGTH_EXCEEDS_CONTAINER, 0, OCTET_STRING.ordinal(), 0x84, 0x7F, 0xFF, 0xFF, 0xFF, 0x01 );
+    // Length does not fit in the enclosing sequence...
+    assertInvalid( Violation.LENGTH_EXCEEDS_CONTAINER, 2, SEQUENCE.ordinal() | CONSTRUCTED, 0x03, //
+        OCTET_STRING.ordinal(), 0x02, 0x01, 0x02 );
+    // Too many length octets...
+    assertInvalid( Violation.INVALID_LENGTH, 0, OCTET_STRING.ordinal(), 0x85, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testIndefiniteLength()
+  {
+    assertValid( SEQUENCE.ordinal() | CONSTRUCTED, 0x80, //
+        INTEGER.ordinal(), 0x01, 0x05, //
+        OCTET_STRING.ordinal() | CONSTRUCTED, 0x80, OCTET_STRING.ordinal(), 0x01, 'a', 0x00, 0x00, //
+        0x00, 0x00 );
+
+    assertInvalid( Violation.MISSING_END_OF_CONTENTS, 5, SEQUENCE.ordinal() | CONSTRUCTED, 0x80, //
+        INTEGER.ordinal(), 0x01, 0x05 );
+    assertInvalid( Violation.INDEFINITE_PRIMITIVE, 0, OCTET_STRING.ordinal(), 0x80, 0x00, 0x00 );
+    assertInvalid( Violation.UNEXPECTED_END_OF_CONTENTS, 3, INTEGER.ordinal(), 0x01, 0x05, 0x00, 0x00 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testPrimitiveContentRules()
+  {
+    assertValid( BOOLEAN.ordinal(), 0x01, 0xFF, NULL.ordinal(), 0x00, INTEGER.ordinal(), 0x02, 0x00, 0x80 );
+
+    assertInvalid( Violation.INVALID_CONTENT, 0, BOOLEAN.ordinal(), 0x02, 0xFF, 0xFF );
+    assertInvalid( Violation.INVALID_CONTENT, 0, NULL.ordinal(), 0x01, 0x00 );
+    assertInvalid( Violation.INVALID_CONTENT, 0, INTEGER.ordinal(), 0x00 );
+    assertInvalid( Violation.INVALID_CONTENT, 0, INTEGER.ordinal(), 0x02, 0x00, 0x7F );
+    assertInvalid( Violation.INVALID_CONTENT, 0, INTEGER.ordinal(), 0x02, 0xFF, 0x80 );
+    // Last sub-identifier not terminated...
+    assertInvalid( Violation.INVALID_CONTENT, 0, OBJECT_ID.ordinal(), 0x02, 0x2B, 0x86 );
+    // Sub-identifier with leading 0x80...
+    assertInvalid( Violation.INVALID_CONTENT, 0, OBJECT_ID.ordinal(), 0x03, 0x2B, 0x80, 0x01 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testPrimitiveSequenceIsRejected()
+  {
+    assertInvalid( Violation.PRIMITIVE_CONSTRUCTED, 0, SEQUENCE.ordinal(), 0x00 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testSizeLimitIsEnforced()
+  {
+    this.validator = new BerValidator( 4, 4 );
+    assertValid( INTEGER.ordinal(), 0x02, 0x12, 0x34 );
+    assertInvalid( Violation.SIZE_EXCEEDED, 0, INTEGER.ordinal(), 0x03, 0x12, 0x34, 0x56 );
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testTagNumbers()
+  {
+    // [APPLICATION 200] IMPLICIT INTEGER...
+    assertValid( 0x5F, 0x81, 0x48, 0x01, 0x05 );
+
+    assertInvalid( Violation.INVALID_IDENTIFIER, 0, 0x5F, 0x80, 0x48, 0x01, 0x05 );
+    assertInvalid( Violation.INVALID_IDENTIFIER, 0, 0x5F, 0x81 );
+    assertInvalid( Violation.INVALID_LENGTH, 0, INTEGER.ordinal() );
+  }
+
+  /**
+   * Test case for {@link BerValidator#validate(byte[], int, int)}.
+   */
+  @Test
+  public void testValidateThrowsIOException()
+  {
+    byte[] buffer = { ( byte )NULL.ordinal(), 0x01, 0x00 };
+    try
+    {
+      this.validator.validate( buffer, 0, buffer.length );
+      fail( "Expected IOException!" );
+    }
+    catch ( IOException exception )
+    {
+      assertTrue( exception.getMessage().contains( "INVALID_CONTENT" ) );
+    }
+  }
+
+  /**
+   * Test case for {@link BerValidator#isValid(byte[])}.
+   */
+  @Test
+  public void testValidNestedSequence() throws IOException
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    BerOutputStream bos = new BerOutputStream( baos );
+    BerOutputStream seq = bos.writeSequenceAsStream();
+    seq.writeInt( 1234 );
+    seq.writeObjectIdentifier( new int[] { 1, 2, 840, 113549 } );
+    BerOutputStream set = seq.writeSetAsStream();
+    set.writeUTF8String( "h\u20ACllo" );
+    set.writeBoolean( true );
+    set.close();
+    seq.close();
+    bos.flush();
+
+    assertTrue( this.validator.isValid( baos.toByteArray() ) );
+    assertNull( this.validator.getViolation() );
+    assertEquals( -1, this.validator.getViolationOffset() );
+  }
+
+  /**
+   * Asserts the given bytes are rejected.
+   */
+  private void assertInvalid( final Violation aViolation, final int aOffset, final int... aBytes )
+  {
+    assertFalse( this.validator.isValid( toBytes( aBytes ) ) );
+    assertEquals( aViolation, this.validator.getViolation() );
+    assertEquals( aOffset, this.validator.getViolationOffset() );
+  }
+
+  /**
+   * Asserts the given bytes are accepted.
+   */
+  private void assertValid( final int... aBytes )
+  {
+    assertTrue( String.valueOf( this.validator.getViolation() ), this.validator.isValid( toBytes( aBytes ) ) );
+  }
+
+  /**
+   * Converts the given integers to a byte array.
+   */
+  private byte[] toBytes( final int... aBytes )
+  {
+    byte[] result = new byte[aBytes.length];
+    for ( int i = 0; i < aBytes.length; i++ )
+    {
+      result[i] = ( byte )aBytes[i];
+    }
+    return result;
+  }
+}
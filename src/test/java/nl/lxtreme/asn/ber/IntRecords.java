@@ -0,0 +1,60 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import java.io.*;
+
+
+/**
+ * Provides records consisting of a single integer, as used by the tests of
+ * the record based streams.
+ */
+final class IntRecords
+{
+  // CONSTANTS
+
+  /** Decodes a single integer record. */
+  static final BerRecords.Decoder<Integer> DECODER = new BerRecords.Decoder<Integer>()
+  {
+    @Override
+    public Integer decode( final BerInputStream aInput ) throws IOException
+    {
+      return aInput.readInt();
+    }
+  };
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new {@link IntRecords} instance, not used.
+   */
+  private IntRecords()
+  {
+    // Nop
+  }
+
+  // METHODS
+
+  /**
+   * Encodes the given range of integers as records.
+   * 
+   * @param aFirst
+   *          the first integer to encode;
+   * @param aCount
+   *          the number of integers to encode, >= 0.
+   * @return the encoded records, never <code>null</code>.
+   */
+  static byte[] encode( final int aFirst, final int aCount ) throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    for ( int i = aFirst; i < ( aFirst + aCount ); i++ )
+    {
+      baos.write( BerElement.intValue( i ).encode() );
+    }
+    return baos.toByteArray();
+  }
+}
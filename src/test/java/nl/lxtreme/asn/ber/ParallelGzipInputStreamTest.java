@@ -0,0 +1,240 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link ParallelGzipInputStream}.
+ */
+public class ParallelGzipInputStreamTest
+{
+  // METHODS
+
+  /**
+   * Test for {@link ParallelGzipInputStream#findCandidate(ByteBuffer, int, int)}.
+   */
+  @Test
+  public void testFindCandidate() throws IOException
+  {
+    final byte[] data = gzip( new byte[10], false );
+    final byte[] twice = concat( data, data );
+
+    assertEquals( 0, ParallelGzipInputStream.findCandidate( ByteBuffer.wrap( twice ), 0, twice.length ) );
+    assertEquals( data.length, ParallelGzipInputStream.findCandidate( ByteBuffer.wrap( twice ), 1, twice.length ) );
+    assertEquals( -1, ParallelGzipInputStream.findCandidate( ByteBuffer.wrap( twice ), data.length + 1,
+        twice.length ) );
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream#read()}.
+   */
+  @Test( expected = IOException.class )
+  public void testReadCorruptMemberFail() throws IOException
+  {
+    final byte[] member = gzip( IntRecords.encode( 0, 100 ), false );
+    // Corrupt the CRC...
+    member[member.length - 8] ^= 0x01;
+
+    final InputStream input = new ParallelGzipInputStream( concat( gzip( IntRecords.encode( 0, 100 ), false ),
+        member ) );
+    while ( input.read() >= 0 )
+    {
+      // Nop
+    }
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream#read(byte[], int, int)}.
+   */
+  @Test
+  public void testReadLargeMemberWhileInflating() throws IOException
+  {
+    final byte[] data = IntRecords.encode( 0, 50000 );
+    final byte[] compressed = concat( gzip( data, false ), gzip( data, false ) );
+
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    try
+    {
+      // Each member exceeds the maximum member size...
+      final InputStream input = new ParallelGzipInputStream( ByteBuffer.wrap( compressed ), executor, 2, 1000 );
+      assertArrayEquals( concat( data, data ), readAll( input ) );
+      input.close();
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream#read(byte[], int, int)}.
+   */
+  @Test
+  public void testReadMemberContainingGzipHeader() throws IOException
+  {
+    // Stored, so the inner GZIP header ends up as-is in the compressed data...
+    final byte[] data = concat( IntRecords.encode( 0, 100 ), gzip( IntRecords.encode( 100, 100 ), false ) );
+    final byte[] compressed = concat( gzip( data, true ), gzip( data, true ) );
+    assertTrue( ParallelGzipInputStream.findCandidate( ByteBuffer.wrap( compressed ), 1, compressed.length ) < gzip(
+        data, true ).length );
+
+    final InputStream input = new ParallelGzipInputStream( compressed );
+    assertArrayEquals( concat( data, data ), readAll( input ) );
+    input.close();
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream#read(byte[], int, int)}.
+   */
+  @Test
+  public void testReadMembersAroundMaximumSize() throws IOException
+  {
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    final Random random = new Random( 1234L );
+    // Only the first 1000 bytes of the larger members are inflated in advance...
+    for ( int size : new int[] { 999, 1000, 1001, 5000, 10, 1000 } )
+    {
+      final byte[] data = new byte[size];
+      random.nextBytes( data );
+      expected.write( data );
+      compressed.write( gzip( data, false ) );
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+    try
+    {
+      final InputStream input = new ParallelGzipInputStream( ByteBuffer.wrap( compressed.toByteArray() ), executor,
+          3, 1000 );
+      assertArrayEquals( expected.toByteArray(), readAll( input ) );
+      input.close();
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream} as source of a
+   * {@link BerInputStream}.
+   */
+  @Test
+  public void testReadMultipleMembers() throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    for ( int i = 0; i < 50; i++ )
+    {
+      baos.write( gzip( IntRecords.encode( i * 1000, 1000 ), false ) );
+    }
+
+    final BerInputStream input = new BerInputStream( new ParallelGzipInputStream( baos.toByteArray() ) );
+    for ( int i = 0; i < 50000; i++ )
+    {
+      assertEquals( Integer.valueOf( i ), input.readInt() );
+    }
+    assertNull( input.peekIdentifier() );
+    input.close();
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream#read()}.
+   */
+  @Test( expected = ZipException.class )
+  public void testReadNotGzipFail() throws IOException
+  {
+    new ParallelGzipInputStream( IntRecords.encode( 0, 10 ) ).read();
+  }
+
+  /**
+   * Test for {@link ParallelGzipInputStream#ParallelGzipInputStream(Path)}.
+   */
+  @Test
+  public void testReadPath() throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for ( int i = 0; i < 20; i++ )
+    {
+      final byte[] data = IntRecords.encode( i * 500, 500 );
+      baos.write( gzip( data, false ) );
+      expected.write( data );
+    }
+    // Trailing garbage should be ignored...
+    baos.write( new byte[16] );
+
+    final Path file = Files.createTempFile( "records", ".ber.gz" );
+    try
+    {
+      Files.write( file, baos.toByteArray() );
+
+      final InputStream input = new ParallelGzipInputStream( file );
+      assertArrayEquals( expected.toByteArray(), readAll( input ) );
+      input.close();
+    }
+    finally
+    {
+      Files.delete( file );
+    }
+  }
+
+  /**
+   * Concatenates the given arrays.
+   */
+  private static byte[] concat( final byte[] aFirst, final byte[] aSecond )
+  {
+    final byte[] result = Arrays.copyOf( aFirst, aFirst.length + aSecond.length );
+    System.arraycopy( aSecond, 0, result, aFirst.length, aSecond.length );
+    return result;
+  }
+
+  /**
+   * Compresses the given data as a single GZIP member.
+   */
+  private static byte[] gzip( final byte[] aData, final boolean aStored ) throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final GZIPOutputStream gzos = new GZIPOutputStream( baos )
+    {
+      {
+        if ( aStored )
+        {
+          this.def.setLevel( Deflater.NO_COMPRESSION );
+        }
+      }
+    };
+    gzos.write( aData );
+    gzos.close();
+    return baos.toByteArray();
+  }
+
+  /**
+   * Reads the given input stream until its end.
+   */
+  private static byte[] readAll( final InputStream aInput ) throws IOException
+  {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[777];
+    int count;
+    while ( ( count = aInput.read( buffer, 0, buffer.length ) ) >= 0 )
+    {
+      baos.write( buffer, 0, count );
+    }
+    return baos.toByteArray();
+  }
+}
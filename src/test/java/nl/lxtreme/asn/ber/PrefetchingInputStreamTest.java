@@ -0,0 +1,285 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.ber;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link PrefetchingInputStream}.
+ */
+public class PrefetchingInputStreamTest
+{
+  // INNER TYPES
+
+  /**
+   * Counts the bytes read from it, and optionally fails after all bytes are
+   * read.
+   */
+  static final class CountingInputStream extends FilterInputStream
+  {
+    // VARIABLES
+
+    volatile int count;
+    volatile boolean closed;
+    boolean fail;
+
+    // CONSTRUCTORS
+
+    CountingInputStream( final byte[] aData )
+    {
+      super( new ByteArrayInputStream( aData ) );
+    }
+
+    // METHODS
+
+    @Override
+    public void close()
+    {
+      this.closed = true;
+    }
+
+    @Override
+    public int read( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+    {
+      // Return few bytes at a time, like a pipe...
+      final int result = super.read( aBuffer, aOffset, Math.min( aLength, 7 ) );
+      if ( ( result < 0 ) && this.fail )
+      {
+        throw new IOException( "Source failed!" );
+      }
+      if ( result > 0 )
+      {
+        this.count += result;
+      }
+      return result;
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Test for {@link PrefetchingInputStream#close()}.
+   */
+  @Test
+  public void testCloseStopsReadingAhead() throws Exception
+  {
+    final CountingInputStream source = new CountingInputStream( new byte[1000] );
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try
+    {
+      final PrefetchingInputStream input = new PrefetchingInputStream( source, 10, 2, executor );
+      assertEquals( 0, input.read() );
+      input.close();
+      assertTrue( source.closed );
+
+      // The reading task should end, freeing up the executor...
+      assertTrue( executor.submit( new Callable<Boolean>()
+      {
+        @Override
+        public Boolean call()
+        {
+          return Boolean.TRUE;
+        }
+      } ).get( 10, TimeUnit.SECONDS ) );
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Test for {@link PrefetchingInputStream#read()}.
+   */
+  @Test
+  public void testReadAheadIsBounded() throws Exception
+  {
+    final CountingInputStream source = new CountingInputStream( new byte[1000] );
+
+    // Each read of the source yields a block of 7 bytes...
+    final PrefetchingInputStream input = new PrefetchingInputStream( source, 10, 3, null );
+    awaitCount( source, 21 );
+
+    // Releasing the first block allows one more block to be read...
+    assertEquals( 7, input.skip( 10 ) );
+    assertEquals( 0, input.read() );
+    awaitCount( source, 28 );
+    input.close();
+  }
+
+  /**
+   * Test for {@link PrefetchingInputStream#read(byte[], int, int)}.
+   */
+  @Test
+  public void testReadAllBytes() throws IOException
+  {
+    final byte[] data = new byte[100000];
+    new Random( 1234L ).nextBytes( data );
+
+    final PrefetchingInputStream input = new PrefetchingInputStream( new CountingInputStream( data ), 1000, 3, null );
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[333];
+    int b;
+    while ( ( b = input.read() ) >= 0 )
+    {
+      baos.write( b );
+      final int count = input.read( buffer, 0, buffer.length );
+      if ( count > 0 )
+      {
+        baos.write( buffer, 0, count );
+      }
+    }
+    input.close();
+
+    assertArrayEquals( data, baos.toByteArray() );
+  }
+
+  /**
+   * Test for {@link PrefetchingInputStream} as source of a
+   * {@link BerInputStream}.
+   */
+  @Test
+  public void testReadRecords() throws IOException
+  {
+    final BerInputStream input = new BerInputStream( new PrefetchingInputStream( new ByteArrayInputStream(
+        IntRecords.encode( 0, 10000 ) ), 100, 2, null ) );
+    for ( int i = 0; i < 10000; i++ )
+    {
+      assertEquals( Integer.valueOf( i ), input.readInt() );
+    }
+    assertNull( input.peekIdentifier() );
+    input.close();
+  }
+
+  /**
+   * Test for {@link PrefetchingInputStream#read(byte[], int, int)}.
+   */
+  @Test( timeout = 10000 )
+  public void testReadPartialBlock() throws IOException
+  {
+    final PipedOutputStream pipe = new PipedOutputStream();
+    final PrefetchingInputStream input = new PrefetchingInputStream( new PipedInputStream( pipe ), 1000, 2, null );
+
+    // Like a request, which is answered before anything else is sent...
+    pipe.write( new byte[] { 1, 2, 3 } );
+    pipe.flush();
+
+    final byte[] buffer = new byte[3];
+    int length = 0;
+    while ( length < buffer.length )
+    {
+      length += input.read( buffer, length, buffer.length - length );
+    }
+    assertArrayEquals( new byte[] { 1, 2, 3 }, buffer );
+
+    pipe.close();
+    assertEquals( -1, input.read() );
+    input.close();
+  }
+
+  /**
+   * Test for {@link PrefetchingInputStream#read()}.
+   */
+  @Test
+  public void testReadSourceFails() throws IOException
+  {
+    final CountingInputStream source = new CountingInputStream( new byte[25] );
+    source.fail = true;
+
+    final PrefetchingInputStream input = new PrefetchingInputStream( source, 10, 2, null );
+    // All bytes read before the failure should be delivered...
+    for ( int i = 0; i < 25; i++ )
+    {
+      assertEquals( 0, input.read() );
+    }
+    // The failure should be reported by all reads, not only the first...
+    for ( int i = 0; i < 2; i++ )
+    {
+      try
+      {
+        input.read();
+        fail( "IOException expected!" );
+      }
+      catch ( IOException exception )
+      {
+        assertEquals( "Source failed!", exception.getCause().getMessage() );
+      }
+    }
+    input.close();
+  }
+
+  /**
+   * Test for {@link PrefetchingInputStream#read(byte[], int, int)}.
+   */
+  @Test
+  public void testReadSourceFailsAfterPartialBlock() throws IOException
+  {
+    final InputStream source = new InputStream()
+    {
+      private boolean first = true;
+
+      @Override
+      public int read() throws IOException
+      {
+        throw new IOException( "Source failed!" );
+      }
+
+      @Override
+      public int read( final byte[] aBuffer, final int aOffset, final int aLength ) throws IOException
+      {
+        if ( !this.first )
+        {
+          throw new IOException( "Source failed!" );
+        }
+        this.first = false;
+        for ( int i = 0; i < 10; i++ )
+        {
+          aBuffer[aOffset + i] = ( byte )i;
+        }
+        return 10;
+      }
+    };
+
+    final PrefetchingInputStream input = new PrefetchingInputStream( source, 100, 2, null );
+    for ( int i = 0; i < 10; i++ )
+    {
+      assertEquals( i, input.read() );
+    }
+    try
+    {
+      input.read();
+      fail( "IOException expected!" );
+    }
+    catch ( IOException exception )
+    {
+      assertEquals( "Source failed!", exception.getCause().getMessage() );
+    }
+    input.close();
+  }
+
+  /**
+   * Waits until the given number of bytes is read from the given source, and
+   * verifies no more bytes are read after that.
+   */
+  private static void awaitCount( final CountingInputStream aSource, final int aCount ) throws InterruptedException
+  {
+    final long deadline = System.currentTimeMillis() + 10000L;
+    while ( ( aSource.count < aCount ) && ( System.currentTimeMillis() < deadline ) )
+    {
+      Thread.sleep( 5 );
+    }
+    Thread.sleep( 50 );
+    assertEquals( aCount, aSource.count );
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import nl.lxtreme.asn.*;
+import nl.lxtreme.asn.compiler.AsnTypeDefinition.Kind;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link AsnModuleParser}.
+ */
+public class AsnModuleParserTest
+{
+  // METHODS
+
+  /**
+   * Test case for {@link AsnModuleParser#parseModule()}.
+   */
+  @Test
+  public void testParseCollectionWithSizeConstraint() throws Exception
+  {
+    AsnModule module = parse( "Test DEFINITIONS ::= BEGIN " //
+        + "Names ::= SEQUENCE SIZE(1..8) OF UTF8String (SIZE(0..64)) " //
+        + "Ids ::= SET (SIZE(0..MAX)) OF INTEGER " //
+        + "END" );
+
+    AsnTypeDefinition names = module.getType( "Names" );
+    assertEquals( Kind.SEQUENCE_OF, names.getKind() );
+    assertEquals( 1, names.getSizeRange().getLowerBound() );
+    assertEquals( 8, names.getSizeRange().getUpperBound() );
+    assertEquals( AsnType.UTF8_STRING, names.getElementType().getBuiltinType() );
+    assertEquals( 64, names.getElementType().getSizeRange().getUpperBound() );
+
+    AsnTypeDefinition ids = module.getType( "Ids" );
+    assertEquals( Kind.SET_OF, ids.getKind() );
+    assertEquals( Long.MAX_VALUE, ids.getSizeRange().getUpperBound() );
+  }
+
+  /**
+   * Test case for {@link AsnModuleParser#parseModule()}.
+   */
+  @Test
+  public void testParseEnumeratedWithImplicitNumbers() throws Exception
+  {
+    AsnModule module = parse( "Test DEFINITIONS ::= BEGIN " //
+        + "Color ::= ENUMERATED { red, green(0), blue, ... } " //
+        + "END" );
+
+    Map<String, Long> numbers = module.getType( "Color" ).getNamedNumbers();
+    assertEquals( Arrays.asList( "red", "green", "blue" ), new ArrayList<String>( numbers.keySet() ) );
+    assertEquals( Long.valueOf( 1 ), numbers.get( "red" ) );
+    assertEquals( Long.valueOf( 0 ), numbers.get( "green" ) );
+    assertEquals( Long.valueOf( 2 ), numbers.get( "blue" ) );
+  }
+
+  /**
+   * Test case for {@link AsnModuleParser#parseModule()}.
+   */
+  @Test( expected = AsnCompilerException.class )
+  public void testParseMissingEndFails() throws Exception
+  {
+    parse( "Test DEFINITIONS ::= BEGIN Foo ::= INTEGER" );
+  }
+
+  /**
+   * Test case for {@link AsnModuleParser#parseModule()}.
+   */
+  @Test
+  public void testParseSequenceWithComments() throws Exception
+  {
+    AsnModule module = parse( "Test { iso(1) 2 3 } DEFINITIONS IMPLICIT TAGS ::= BEGIN\n" //
+        + "IMPORTS Other FROM OtherModule;\n" //
+        + "-- a comment\n" //
+        + "Person ::= SEQUENCE { -- inline comment -- \n" //
+        + "  name   UTF8String,\n" //
+        + "  age    INTEGER (0..150),\n" //
+        + "  tag    [APPLICATION 3] EXPLICIT OCTET STRING,\n" //
+        + "  ...,\n" //
+        + "  email  IA5String OPTIONAL /* block */\n" //
+        + "}\n" //
+        + "maxAge INTEGER ::= 150\n" //
+        + "END\n" );
+
+    assertEquals( "Test", module.getName() );
+    assertEquals( AsnTagging.IMPLICIT, module.getDefaultTagging() );
+    assertEquals( 1, module.getAssignments().size() );
+
+    AsnTypeDefinition person = module.getType( "Person" );
+    assertEquals( Kind.SEQUENCE, person.getKind() );
+
+    List<AsnComponent> components = person.getComponents();
+    assertEquals( 4, components.size() );
+
+    assertEquals( "name", components.get( 0 ).getName() );
+    assertEquals( AsnType.UTF8_STRING, components.get( 0 ).getType().getBuiltinType() );
+
+    AsnRange range = components.get( 1 ).getType().getValueRange();
+    assertEquals( 0, range.getLowerBound() );
+    assertEquals( 150, range.getUpperBound() );
+
+    AsnTag tag = components.get( 2 ).getType().getTag();
+    assertEquals( AsnClass.APPLICATION, tag.getClazz() );
+    assertEquals( 3, tag.getNumber() );
+    assertEquals( AsnTagging.EXPLICIT, tag.getMode() );
+
+    assertTrue( components.get( 3 ).isOptional() );
+  }
+
+  /**
+   * Test case for {@link AsnModuleParser#parseModule()}.
+   */
+  @Test( expected = AsnCompilerException.class )
+  public void testParseUnknownCharacterFails() throws Exception
+  {
+    parse( "Test DEFINITIONS ::= BEGIN Foo ::= INTEGER # END" );
+  }
+
+  /**
+   * Parses the given module text.
+   */
+  private AsnModule parse( final String aText ) throws AsnCompilerException
+  {
+    return new AsnModuleParser( aText ).parseModule();
+  }
+}
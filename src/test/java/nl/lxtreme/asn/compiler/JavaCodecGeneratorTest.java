@@ -0,0 +1,408 @@
+/*
+ * LibBER - Small BER transcoding library.
+ * 
+ * (C) Copyright 2012 - J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.asn.compiler;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+
+import javax.tools.*;
+
+import nl.lxtreme.asn.ber.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link JavaCodecGenerator}.
+ */
+public class JavaCodecGeneratorTest
+{
+  // CONSTANTS
+
+  private static final String MODULE = "Test DEFINITIONS ::= BEGIN\n" //
+      + "Age ::= INTEGER (0..150)\n" //
+      + "Status ::= ENUMERATED { active(1), retired(2) }\n" //
+      + "Person ::= SEQUENCE {\n" //
+      + "  name     UTF8String (SIZE(1..32)),\n" //
+      + "  nickname PrintableString OPTIONAL,\n" //
+      + "  age      Age,\n" //
+      + "  height   REAL,\n" //
+      + "  status   Status,\n" //
+      + "  address  SEQUENCE { street IA5String, number INTEGER },\n" //
+      + "  phones   SEQUENCE OF PrintableString,\n" //
+      + "  flag     BOOLEAN OPTIONAL\n" //
+      + "}\n" //
+      + "People ::= SET OF Person\n" //
+      + "END\n";
+
+  private static final String EXTENSIBLE_MODULE = "Extensible DEFINITIONS ::= BEGIN\n" //
+      + "Inner ::= SEQUENCE { a INTEGER, ... }\n" //
+      + "Outer ::= SEQUENCE { inner Inner, b INTEGER }\n" //
+      + "Closed ::= SEQUENCE { inner SEQUENCE { a INTEGER }, b INTEGER }\n" //
+      + "Versioned ::= SEQUENCE { a INTEGER, ..., b BOOLEAN }\n" //
+      + "Wrapped ::= SEQUENCE { a [1] INTEGER }\n" //
+      + "END\n";
+
+  private static final String TAGGED_MODULE = "Tagged DEFINITIONS AUTOMATIC TAGS ::= BEGIN\n" //
+      + "Label ::= [APPLICATION 5] EXPLICIT UTF8String\n" //
+      + "Square ::= [APPLICATION 1] SEQUENCE { side INTEGER, label UTF8String OPTIONAL }\n" //
+      + "Shape ::= CHOICE { circle INTEGER, square Square }\n" //
+      + "Marker ::= [PRIVATE 7] CHOICE { dot BOOLEAN, cross INTEGER }\n" //
+      + "Point ::= SET { x INTEGER, y INTEGER }\n" //
+      + "Drawing ::= SET {\n" //
+      + "  title    Label,\n" //
+      + "  shapes   SEQUENCE OF Shape,\n" //
+      + "  origin   Shape,\n" //
+      + "  scale    REAL,\n" //
+      + "  visible  BOOLEAN OPTIONAL,\n" //
+      + "  marker   Marker OPTIONAL\n" //
+      + "}\n" //
+      + "END\n";
+
+  // METHODS
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test( expected = AsnCompilerException.class )
+  public void testGenerateAmbiguousChoiceFails() throws Exception
+  {
+    new AsnCompiler( "" ).compile( "Test DEFINITIONS ::= BEGIN " //
+        + "Foo ::= CHOICE { a INTEGER, b [0] BOOLEAN, c INTEGER } END" );
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test( expected = AsnCompilerException.class )
+  public void testGenerateAmbiguousOptionalFails() throws Exception
+  {
+    new AsnCompiler( "" ).compile( "Test DEFINITIONS ::= BEGIN " //
+        + "Foo ::= SEQUENCE { a INTEGER OPTIONAL, b BOOLEAN OPTIONAL, c INTEGER } END" );
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test
+  public void testGenerateSources() throws Exception
+  {
+    Map<String, String> sources = new AsnCompiler( "test.codec" ).compile( MODULE );
+
+    assertEquals( new HashSet<String>( Arrays.asList( "Status", "Person", "People" ) ), sources.keySet() );
+
+    String person = sources.get( "Person" );
+    assertTrue( person.contains( "package test.codec;" ) );
+    assertTrue( person.contains( "public int age;" ) );
+    assertTrue( person.contains( "public double height;" ) );
+    assertTrue( person.contains( "public Boolean flag;" ) );
+    assertTrue( person.contains( "public List<String> phones = new ArrayList<String>();" ) );
+    assertTrue( person.contains( "public static class Address" ) );
+    assertTrue( person.contains( "checkRange( result.age, 0L, 150L, \"age\" );" ) );
+
+    assertTrue( sources.get( "Status" ).contains( "public static final int RETIRED = 2;" ) );
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test
+  public void testGenerateTaggedSources() throws Exception
+  {
+    Map<String, String> sources = new AsnCompiler( "test.tagged" ).compile( TAGGED_MODULE );
+
+    assertEquals( new HashSet<String>( Arrays.asList( "Square", "Shape", "Marker", "Point", "Drawing" ) ),
+        sources.keySet() );
+
+    String shape = sources.get( "Shape" );
+    assertTrue( shape.contains( "private static final AsnIdentifier TAG_CONTEXT_SPECIFIC_1_CONSTRUCTED = "
+        + "AsnIdentifier.valueOf( AsnClass.CONTEXT_SPECIFIC, true, 1 );" ) );
+    assertTrue( shape.contains( "private static final BerTagSwitch SHAPE_TAGS = new BerTagSwitch( "
+        + "TAG_CONTEXT_SPECIFIC_0, TAG_CONTEXT_SPECIFIC_1_CONSTRUCTED );" ) );
+    assertTrue( shape.contains( "Square.decode( aInput, TAG_CONTEXT_SPECIFIC_1_CONSTRUCTED );" ) );
+
+    String square = sources.get( "Square" );
+    assertTrue( square.contains( "return decode( aInput, TAG_APPLICATION_1_CONSTRUCTED );" ) );
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test
+  public void testGeneratedCodecRoundTrip() throws Exception
+  {
+    ClassLoader loader = compile( new AsnCompiler( "test.codec" ).compile( MODULE ) );
+    Assume.assumeNotNull( loader );
+
+    Class<?> personClass = loader.loadClass( "test.codec.Person" );
+    Class<?> addressClass = loader.loadClass( "test.codec.Person$Address" );
+
+    Object address = addressClass.getDeclaredConstructor().newInstance();
+    addressClass.getField( "street" ).set( address, "Main Street" );
+    addressClass.getField( "number" ).set( address, 42 );
+
+    Object person = personClass.getDeclaredConstructor().newInstance();
+    personClass.getField( "name" ).set( person, "John" );
+    personClass.getField( "nickname" ).set( person, "Johnny" );
+    personClass.getField( "age" ).set( person, 37 );
+    personClass.getField( "height" ).set( person, 1.85 );
+    personClass.getField( "status" ).set( person, 2 );
+    personClass.getField( "address" ).set( person, address );
+    personClass.getField( "phones" ).set( person, Arrays.asList( "555 1234", "555 4321" ) );
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    BerOutputStream bos = new BerOutputStream( baos );
+    personClass.getMethod( "encode", BerOutputStream.class ).invoke( person, bos );
+    bos.flush();
+
+    BerInputStream bis = new BerInputStream( new ByteArrayInputStream( baos.toByteArray() ) );
+    Object decoded = personClass.getMethod( "decode", BerInputStream.class ).invoke( null, bis );
+
+    assertEquals( "John", personClass.getField( "name" ).get( decoded ) );
+    assertEquals( "Johnny", personClass.getField( "nickname" ).get( decoded ) );
+    assertEquals( 37, personClass.getField( "age" ).get( decoded ) );
+    assertEquals( 1.85, personClass.getField( "height" ).get( decoded ) );
+    assertEquals( 2, personClass.getField( "status" ).get( decoded ) );
+    assertNull( personClass.getField( "flag" ).get( decoded ) );
+    assertEquals( Arrays.asList( "555 1234", "555 4321" ), personClass.getField( "phones" ).get( decoded ) );
+
+    // An absent OPTIONAL component should be skipped...
+    personClass.getField( "nickname" ).set( person, null );
+    baos.reset();
+    personClass.getMethod( "encode", BerOutputStream.class ).invoke( person, bos );
+    bos.flush();
+
+    bis = new BerInputStream( new ByteArrayInputStream( baos.toByteArray() ) );
+    decoded = personClass.getMethod( "decode", BerInputStream.class ).invoke( null, bis );
+    assertNull( personClass.getField( "nickname" ).get( decoded ) );
+    assertEquals( 37, personClass.getField( "age" ).get( decoded ) );
+
+    Object decodedAddress = personClass.getField( "address" ).get( decoded );
+    assertEquals( "Main Street", addressClass.getField( "street" ).get( decodedAddress ) );
+    assertEquals( 42, addressClass.getField( "number" ).get( decodedAddress ) );
+
+    // Constraint violations should be detected upon encoding...
+    personClass.getField( "age" ).set( person, 151 );
+    try
+    {
+      personClass.getMethod( "encode", BerOutputStream.class ).invoke( person, bos );
+      fail( "Expected IOException!" );
+    }
+    catch ( InvocationTargetException exception )
+    {
+      assertTrue( exception.getCause() instanceof IOException );
+    }
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test
+  public void testGeneratedDecoderChecksEndOfContent() throws Exception
+  {
+    ClassLoader loader = compile( new AsnCompiler( "test.extensible" ).compile( EXTENSIBLE_MODULE ) );
+    Assume.assumeNotNull( loader );
+
+    // The inner value has an extension addition, followed by a sibling...
+    byte[] data = { 0x30, 0x0B, 0x30, 0x06, 0x02, 0x01, 0x01, 0x02, 0x01, 0x09, 0x02, 0x01, 0x07 };
+
+    Class<?> outerClass = loader.loadClass( "test.extensible.Outer" );
+    Object outer = decode( outerClass, data );
+    assertEquals( 7, outerClass.getField( "b" ).get( outer ) );
+    Object inner = outerClass.getField( "inner" ).get( outer );
+    assertEquals( 1, inner.getClass().getField( "a" ).get( inner ) );
+
+    // An extension addition can be absent...
+    Class<?> versionedClass = loader.loadClass( "test.extensible.Versioned" );
+    Object versioned = decode( versionedClass, new byte[] { 0x30, 0x03, 0x02, 0x01, 0x01 } );
+    assertNull( versionedClass.getField( "b" ).get( versioned ) );
+
+    // Without an extension marker, unknown content should not be accepted...
+    assertDecodeFails( loader.loadClass( "test.extensible.Closed" ), data );
+    // ...nor a second value inside an explicit tag...
+    Class<?> wrappedClass = loader.loadClass( "test.extensible.Wrapped" );
+    assertEquals( 5, wrappedClass.getField( "a" ).get(
+        decode( wrappedClass, new byte[] { 0x30, 0x05, ( byte )0xA1, 0x03, 0x02, 0x01, 0x05 } ) ) );
+    assertDecodeFails( wrappedClass, new byte[] { 0x30, 0x08, ( byte )0xA1, 0x06, 0x02, 0x01, 0x05, 0x02, 0x01,
+        0x06 } );
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test
+  public void testGeneratedSetDecodesInAnyOrder() throws Exception
+  {
+    ClassLoader loader = compile( new AsnCompiler( "test.tagged" ).compile( TAGGED_MODULE ) );
+    Assume.assumeNotNull( loader );
+
+    Class<?> pointClass = loader.loadClass( "test.tagged.Point" );
+
+    Object point = pointClass.getDeclaredConstructor().newInstance();
+    pointClass.getField( "x" ).set( point, 1 );
+    pointClass.getField( "y" ).set( point, 2 );
+    // Components are tagged automatically...
+    assertArrayEquals( new byte[] { 0x31, 0x06, ( byte )0x80, 0x01, 0x01, ( byte )0x81, 0x01, 0x02 },
+        encode( point ) );
+
+    Object decoded = decode( pointClass,
+        new byte[] { 0x31, 0x06, ( byte )0x81, 0x01, 0x02, ( byte )0x80, 0x01, 0x01 } );
+    assertEquals( 1, pointClass.getField( "x" ).get( decoded ) );
+    assertEquals( 2, pointClass.getField( "y" ).get( decoded ) );
+
+    // A mandatory component should be present...
+    try
+    {
+      decode( pointClass, new byte[] { 0x31, 0x03, ( byte )0x81, 0x01, 0x02 } );
+      fail( "Expected IOException!" );
+    }
+    catch ( InvocationTargetException exception )
+    {
+      assertTrue( exception.getCause() instanceof IOException );
+    }
+  }
+
+  /**
+   * Test case for {@link JavaCodecGenerator#generate(AsnModule)}.
+   */
+  @Test
+  public void testGeneratedTaggedCodecRoundTrip() throws Exception
+  {
+    ClassLoader loader = compile( new AsnCompiler( "test.tagged" ).compile( TAGGED_MODULE ) );
+    Assume.assumeNotNull( loader );
+
+    Class<?> drawingClass = loader.loadClass( "test.tagged.Drawing" );
+    Class<?> shapeClass = loader.loadClass( "test.tagged.Shape" );
+    Class<?> squareClass = loader.loadClass( "test.tagged.Square" );
+    Class<?> markerClass = loader.loadClass( "test.tagged.Marker" );
+
+    Object square = squareClass.getDeclaredConstructor().newInstance();
+    squareClass.getField( "side" ).set( square, 3 );
+    squareClass.getField( "label" ).set( square, "x" );
+
+    Object circle = shapeClass.getDeclaredConstructor().newInstance();
+    shapeClass.getField( "circle" ).set( circle, 5 );
+    Object origin = shapeClass.getDeclaredConstructor().newInstance();
+    shapeClass.getField( "square" ).set( origin, square );
+
+    Object marker = markerClass.getDeclaredConstructor().newInstance();
+    markerClass.getField( "cross" ).set( marker, 9 );
+
+    Object drawing = drawingClass.getDeclaredConstructor().newInstance();
+    drawingClass.getField( "title" ).set( drawing, "Sketch" );
+    drawingClass.getField( "shapes" ).set( drawing, Arrays.asList( circle, origin ) );
+    drawingClass.getField( "origin" ).set( drawing, origin );
+    drawingClass.getField( "scale" ).set( drawing, 2.5 );
+    drawingClass.getField( "marker" ).set( drawing, marker );
+
+    Object decoded = decode( drawingClass, encode( drawing ) );
+    assertEquals( "Sketch", drawingClass.getField( "title" ).get( decoded ) );
+    assertEquals( 2.5, drawingClass.getField( "scale" ).get( decoded ) );
+    assertNull( drawingClass.getField( "visible" ).get( decoded ) );
+    assertEquals( 9, markerClass.getField( "cross" ).get( drawingClass.getField( "marker" ).get( decoded ) ) );
+
+    List<?> shapes = ( List<?> )drawingClass.getField( "shapes" ).get( decoded );
+    assertEquals( 2, shapes.size() );
+    assertEquals( 5, shapeClass.getField( "circle" ).get( shapes.get( 0 ) ) );
+    assertNull( shapeClass.getField( "square" ).get( shapes.get( 0 ) ) );
+
+    Object decodedSquare = shapeClass.getField( "square" ).get( drawingClass.getField( "origin" ).get( decoded ) );
+    assertEquals( 3, squareClass.getField( "side" ).get( decodedSquare ) );
+    assertEquals( "x", squareClass.getField( "label" ).get( decodedSquare ) );
+
+    // A CHOICE without any alternative present cannot be encoded...
+    drawingClass.getField( "origin" ).set( drawing, shapeClass.getDeclaredConstructor().newInstance() );
+    try
+    {
+      encode( drawing );
+      fail( "Expected IOException!" );
+    }
+    catch ( InvocationTargetException exception )
+    {
+      assertTrue( exception.getCause() instanceof IOException );
+    }
+  }
+
+  /**
+   * Verifies that decoding a value of the given generated class from the
+   * given data fails.
+   */
+  private void assertDecodeFails( final Class<?> aClass, final byte[] aData ) throws Exception
+  {
+    try
+    {
+      decode( aClass, aData );
+      fail( "Expected IOException!" );
+    }
+    catch ( InvocationTargetException exception )
+    {
+      assertTrue( exception.getCause() instanceof IOException );
+    }
+  }
+
+  /**
+   * Compiles the given sources into a temporary directory.
+   * 
+   * @return a class loader for the compiled classes, or <code>null</code> if
+   *         no Java compiler is available.
+   */
+  private ClassLoader compile( final Map<String, String> aSources ) throws IOException
+  {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if ( compiler == null )
+    {
+      return null;
+    }
+
+    File dir = File.createTempFile( "codec", "" );
+    assertTrue( dir.delete() && dir.mkdirs() );
+    dir.deleteOnExit();
+
+    List<String> args = new ArrayList<String>( Arrays.asList( "-d", dir.getPath(), "-cp",
+        System.getProperty( "java.class.path" ) ) );
+    for ( Map.Entry<String, String> entry : aSources.entrySet() )
+    {
+      File file = new File( dir, entry.getKey() + ".java" );
+      file.deleteOnExit();
+
+      Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+      writer.write( entry.getValue() );
+      writer.close();
+
+      args.add( file.getPath() );
+    }
+
+    assertEquals( 0, compiler.run( null, null, null, args.toArray( new String[args.size()] ) ) );
+
+    return new URLClassLoader( new URL[] { dir.toURI().toURL() }, getClass().getClassLoader() );
+  }
+
+  /**
+   * Decodes a value of the given generated class from the given data.
+   */
+  private Object decode( final Class<?> aClass, final byte[] aData ) throws Exception
+  {
+    BerInputStream bis = new BerInputStream( new ByteArrayInputStream( aData ) );
+    return aClass.getMethod( "decode", BerInputStream.class ).invoke( null, bis );
+  }
+
+  /**
+   * Encodes the given value of a generated class.
+   */
+  private byte[] encode( final Object aValue ) throws Exception
+  {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    BerOutputStream bos = new BerOutputStream( baos );
+    aValue.getClass().getMethod( "encode", BerOutputStream.class ).invoke( aValue, bos );
+    bos.flush();
+    return baos.toByteArray();
+  }
+}